@@ -27,14 +27,20 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -57,6 +63,8 @@ import org.jivesoftware.smack.filter.IQReplyFilter;
 import org.jivesoftware.smack.filter.StanzaFilter;
 import org.jivesoftware.smack.filter.StanzaIdFilter;
 import org.jivesoftware.smack.iqrequest.IQRequestHandler;
+import org.jivesoftware.smack.metrics.AbstractConnectionMetrics;
+import org.jivesoftware.smack.metrics.ConnectionMetrics;
 import org.jivesoftware.smack.packet.Bind;
 import org.jivesoftware.smack.packet.ErrorIQ;
 import org.jivesoftware.smack.packet.IQ;
@@ -80,6 +88,7 @@ import org.jivesoftware.smack.util.Objects;
 import org.jivesoftware.smack.util.PacketParserUtils;
 import org.jivesoftware.smack.util.ParserUtils;
 import org.jivesoftware.smack.util.SmackExecutorThreadFactory;
+import org.jivesoftware.smack.util.StripedExecutor;
 import org.jivesoftware.smack.util.StringUtils;
 import org.jivesoftware.smack.util.dns.HostAddress;
 import org.jxmpp.jid.DomainBareJid;
@@ -87,6 +96,7 @@ import org.jxmpp.jid.EntityFullJid;
 import org.jxmpp.jid.Jid;
 import org.jxmpp.jid.parts.Resourcepart;
 import org.jxmpp.util.XmppStringUtils;
+import org.jxmpp.util.cache.LruCache;
 import org.xmlpull.v1.XmlPullParser;
 
 
@@ -230,6 +240,17 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
 
     private ParsingExceptionCallback parsingExceptionCallback = SmackConfiguration.getDefaultParsingExceptionCallback();
 
+    /**
+     * The metrics this connection reports into.
+     */
+    private volatile ConnectionMetrics connectionMetrics = AbstractConnectionMetrics.NO_OP;
+
+    /**
+     * The send timestamps, in nanoseconds, of the outstanding IQ requests keyed by their stanza ID. Only used if
+     * {@link #connectionMetrics} are set. Bounded so that unanswered requests do not accumulate.
+     */
+    private final LruCache<String, Long> pendingIqRequests = new LruCache<>(1000);
+
     /**
      * ExecutorService used to invoke the PacketListeners on newly arrived and parsed stanzas. It is
      * important that we use a <b>single threaded ExecutorService</b> in order to guarantee that the
@@ -267,6 +288,25 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
     private final ExecutorService singleThreadedExecutorService = Executors.newSingleThreadExecutor(new SmackExecutorThreadFactory(
                     this, "Single Threaded Executor"));
 
+    /**
+     * The serial executors of synchronous stanza listeners and IQ request handlers which got isolated because they
+     * exceeded the slow listener threshold. Keyed by the listener or handler.
+     */
+    private final Map<Object, ExecutorService> isolatedListenerExecutors = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum number of stanzas queued for an isolated listener. Once the queue is full, the dispatching thread
+     * blocks until the listener caught up, so that a permanently slow listener can not accumulate an unbounded backlog
+     * while still receiving every stanza in order.
+     */
+    static final int ISOLATED_LISTENER_QUEUE_CAPACITY = 1000;
+
+    /**
+     * The parallel stanza dispatch configuration, or <code>null</code> if synchronous stanza listeners are invoked by
+     * the single threaded executor.
+     */
+    private final AtomicReference<ParallelDispatch> parallelDispatch = new AtomicReference<>();
+
     /**
      * The used host to establish the connection to
      */
@@ -533,29 +573,78 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
             throw new ResourceBindingNotOfferedException();
         }
 
+        StanzaCollector packetCollector = sendBindRequest(resource);
+        processBindResponse(packetCollector);
+
+        if (isLegacySessionRequired()) {
+            packetCollector = sendSessionRequest();
+            packetCollector.nextResultOrThrow();
+        }
+    }
+
+    /**
+     * Send the resource binding request without waiting for the response. The returned collector must be handed to
+     * {@link #processBindResponse(StanzaCollector)}, or cancelled.
+     *
+     * @param resource the resource to bind, may be <code>null</code>.
+     * @return the collector for the response of the resource binding request.
+     * @throws NotConnectedException
+     * @throws InterruptedException
+     */
+    protected final StanzaCollector sendBindRequest(Resourcepart resource) throws NotConnectedException,
+                    InterruptedException {
         // Resource binding, see RFC6120 7.
         // Note that we can not use IQReplyFilter here, since the users full JID is not yet
         // available. It will become available right after the resource has been successfully bound.
         Bind bindResource = Bind.newSet(resource);
-        StanzaCollector packetCollector = createStanzaCollectorAndSend(new StanzaIdFilter(bindResource), bindResource);
+        return createStanzaCollectorAndSend(new StanzaIdFilter(bindResource), bindResource);
+    }
+
+    /**
+     * Wait for the response of a resource binding request send with {@link #sendBindRequest(Resourcepart)} and set
+     * the connection's user to the bound JID.
+     *
+     * @param packetCollector the collector returned by {@link #sendBindRequest(Resourcepart)}.
+     * @throws NoResponseException
+     * @throws XMPPErrorException
+     * @throws NotConnectedException
+     * @throws InterruptedException
+     */
+    protected final void processBindResponse(StanzaCollector packetCollector) throws NoResponseException,
+                    XMPPErrorException, NotConnectedException, InterruptedException {
         Bind response = packetCollector.nextResultOrThrow();
         // Set the connections user to the result of resource binding. It is important that we don't infer the user
         // from the login() arguments and the configurations service name, as, for example, when SASL External is used,
         // the username is not given to login but taken from the 'external' certificate.
         user = response.getJid();
         xmppServiceDomain = user.asDomainBareJid();
+    }
 
+    /**
+     * Send a legacy session establishment request without waiting for the response.
+     *
+     * @return the collector for the response of the session request.
+     * @throws NotConnectedException
+     * @throws InterruptedException
+     */
+    protected final StanzaCollector sendSessionRequest() throws NotConnectedException, InterruptedException {
+        Session session = new Session();
+        return createStanzaCollectorAndSend(new StanzaIdFilter(session), session);
+    }
+
+    /**
+     * Check if the last received stream features require the establishment of a legacy session.
+     *
+     * @return true if a legacy session has to be established after resource binding.
+     */
+    protected final boolean isLegacySessionRequired() {
         Session.Feature sessionFeature = getFeature(Session.ELEMENT, Session.NAMESPACE);
         // Only bind the session if it's announced as stream feature by the server, is not optional and not disabled
         // For more information see http://tools.ietf.org/html/draft-cridland-xmpp-session-01
         // TODO remove this suppression once "disable legacy session" code has been removed from Smack
         @SuppressWarnings("deprecation")
         boolean legacySessionDisabled = getConfiguration().isLegacySessionDisabled();
-        if (sessionFeature != null && !sessionFeature.isOptional() && !legacySessionDisabled) {
-            Session session = new Session();
-            packetCollector = createStanzaCollectorAndSend(new StanzaIdFilter(session), session);
-            packetCollector.nextResultOrThrow();
-        }
+        return sessionFeature != null && !sessionFeature.isOptional() && !legacySessionDisabled;
     }
 
     protected void afterSuccessfulLogin(final boolean resumed) throws NotConnectedException, InterruptedException {
@@ -609,6 +698,19 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
      * @return a list of host addresses where DNS (SRV) RR resolution failed.
      */
     protected List<HostAddress> populateHostAddresses() {
+        return populateHostAddresses(false);
+    }
+
+    /**
+     * Populates {@link #hostAddresses} with the resolved addresses or with the configured host address. If no host
+     * address was configured and all lookups failed, for example with NX_DOMAIN, then {@link #hostAddresses} will be
+     * populated with the empty list.
+     *
+     * @param directTls true if the Direct TLS (XEP-0368) endpoints of the service should be resolved too.
+     * @return a list of host addresses where DNS (SRV) RR resolution failed.
+     * @see DNSUtil#resolveXMPPServiceDomain(String, List, ConnectionConfiguration.DnssecMode, boolean)
+     */
+    protected List<HostAddress> populateHostAddresses(boolean directTls) {
         List<HostAddress> failedAddresses = new LinkedList<>();
         if (config.hostAddress != null) {
             hostAddresses = new ArrayList<>(1);
@@ -623,7 +725,8 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
             }
         } else {
             // N.B.: Important to use config.serviceName and not AbstractXMPPConnection.serviceName
-            hostAddresses = DNSUtil.resolveXMPPServiceDomain(config.getXMPPServiceDomain().toString(), failedAddresses, config.getDnssecMode());
+            hostAddresses = DNSUtil.resolveXMPPServiceDomain(config.getXMPPServiceDomain().toString(), failedAddresses,
+                            config.getDnssecMode(), directTls);
         }
         // Either the populated host addresses are not empty *or* there must be at least one failed address.
         assert(!hostAddresses.isEmpty() || !failedAddresses.isEmpty());
@@ -682,7 +785,13 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         // Invoke interceptors for the new stanza that is about to be sent. Interceptors may modify
         // the content of the stanza.
         firePacketInterceptors(stanza);
+        final ConnectionMetrics metrics = connectionMetrics;
+        if (metrics != AbstractConnectionMetrics.NO_OP && stanza instanceof IQ && ((IQ) stanza).isRequestIQ()
+                        && stanza.getStanzaId() != null) {
+            pendingIqRequests.put(stanza.getStanzaId(), System.nanoTime());
+        }
         sendStanzaInternal(stanza);
+        metrics.stanzaSent(stanza);
     }
 
     /**
@@ -730,6 +839,7 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
             LOGGER.log(Level.FINE, "Was interrupted while sending unavailable presence. Continuing to disconnect the connection", e);
         }
         shutdown();
+        shutdownIsolatedListenerExecutors();
         callConnectionClosedListener();
     }
 
@@ -819,9 +929,14 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
 
     @Override
     public boolean removeSyncStanzaListener(StanzaListener packetListener) {
+        boolean removed;
         synchronized (syncRecvListeners) {
-            return syncRecvListeners.remove(packetListener) != null;
+            removed = syncRecvListeners.remove(packetListener) != null;
+        }
+        if (removed && !isolatedListenerExecutors.isEmpty()) {
+            shutdownIsolatedListenerExecutor(packetListener);
         }
+        return removed;
     }
 
     @Override
@@ -1017,17 +1132,147 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         this.replyToUnkownIq = replyToUnknownIq;
     }
 
+    private static long slowListenerThresholdDefault = 0;
+
+    /**
+     * Set the default slow listener threshold in milliseconds used by new connections. The pre-configured default is
+     * '0', which disables the slow listener detection.
+     *
+     * @param slowListenerThresholdDefault the threshold in milliseconds.
+     * @see #setSlowListenerThreshold(long)
+     */
+    public static void setSlowListenerThresholdDefault(long slowListenerThresholdDefault) {
+        AbstractXMPPConnection.slowListenerThresholdDefault = slowListenerThresholdDefault;
+    }
+
+    private volatile long slowListenerThreshold = slowListenerThresholdDefault;
+
+    /**
+     * Set the threshold in milliseconds after which a stanza listener or IQ request handler is considered slow. Slow
+     * listeners are logged and reported to the {@link ConnectionMetrics} of this connection. A value of '0' or less
+     * disables the slow listener detection.
+     *
+     * @param slowListenerThreshold the threshold in milliseconds.
+     * @see #setIsolateSlowListeners(boolean)
+     */
+    public void setSlowListenerThreshold(long slowListenerThreshold) {
+        this.slowListenerThreshold = slowListenerThreshold;
+    }
+
+    /**
+     * Get the threshold in milliseconds after which a stanza listener or IQ request handler is considered slow.
+     *
+     * @return the slow listener threshold in milliseconds.
+     */
+    public long getSlowListenerThreshold() {
+        return slowListenerThreshold;
+    }
+
+    private static boolean isolateSlowListenersDefault = false;
+
+    /**
+     * Set if new connections isolate slow synchronous listeners. The pre-configured default is 'false'.
+     *
+     * @param isolateSlowListenersDefault
+     * @see #setIsolateSlowListeners(boolean)
+     */
+    public static void setIsolateSlowListenersDefault(boolean isolateSlowListenersDefault) {
+        AbstractXMPPConnection.isolateSlowListenersDefault = isolateSlowListenersDefault;
+    }
+
+    private volatile boolean isolateSlowListeners = isolateSlowListenersDefault;
+
+    /**
+     * Set if synchronous stanza listeners and IQ request handlers in {@link IQRequestHandler.Mode#sync} mode, which
+     * exceeded the slow listener threshold, are moved onto their own serial executor. An isolated listener still
+     * processes the stanzas in the order they arrived, but no longer holds back the other synchronous listeners of this
+     * connection.
+     *
+     * @param isolateSlowListeners true to isolate slow listeners.
+     * @see #setSlowListenerThreshold(long)
+     */
+    public void setIsolateSlowListeners(boolean isolateSlowListeners) {
+        this.isolateSlowListeners = isolateSlowListeners;
+    }
+
+    /**
+     * Enable parallel dispatch of incoming stanzas to synchronous stanza listeners and IQ request handlers in
+     * {@link IQRequestHandler.Mode#sync} mode, using one stripe per available processor.
+     *
+     * @param keyExtractor the dispatch key extractor, or <code>null</code> to disable parallel dispatch.
+     * @see #setParallelStanzaDispatch(DispatchKeyExtractor, int)
+     */
+    public void setParallelStanzaDispatch(DispatchKeyExtractor keyExtractor) {
+        setParallelStanzaDispatch(keyExtractor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Enable parallel dispatch of incoming stanzas to synchronous stanza listeners and IQ request handlers in
+     * {@link IQRequestHandler.Mode#sync} mode.
+     * <p>
+     * By default, all synchronous listeners of a connection are invoked by a single thread, which keeps the order of
+     * all incoming stanzas but limits the listener processing to one core. With parallel dispatch, stanzas are
+     * processed on a striped executor: the order is only kept between stanzas with the same dispatch key, e.g. the
+     * same sender when using {@link BareJidDispatchKeyExtractor}, while stanzas with different keys are processed in
+     * parallel. Note that synchronous listeners then may be invoked concurrently and have to be thread-safe.
+     * </p>
+     * <p>
+     * Stanzas for which the key extractor returns <code>null</code> are processed by the single threaded executor. They
+     * are ordered relative to each other, but <b>not</b> relative to stanzas with a dispatch key.
+     * </p>
+     * <p>
+     * The dispatch may be changed while the connection is in use. Stanzas already dispatched with the previous
+     * configuration are still processed, but may then run concurrently with stanzas of the same key dispatched with the
+     * new configuration.
+     * </p>
+     *
+     * @param keyExtractor the dispatch key extractor, or <code>null</code> to disable parallel dispatch.
+     * @param parallelism the number of stripes.
+     */
+    public void setParallelStanzaDispatch(DispatchKeyExtractor keyExtractor, int parallelism) {
+        ParallelDispatch newParallelDispatch = null;
+        if (keyExtractor != null) {
+            StripedExecutor executor = new StripedExecutor(parallelism,
+                            new SmackExecutorThreadFactory(this, "Parallel Dispatch Executor"));
+            newParallelDispatch = new ParallelDispatch(keyExtractor, executor);
+        }
+        ParallelDispatch oldParallelDispatch = parallelDispatch.getAndSet(newParallelDispatch);
+        if (oldParallelDispatch != null) {
+            // Let the already dispatched stanzas get processed.
+            oldParallelDispatch.retire();
+        }
+    }
+
+    /**
+     * Get the dispatch key extractor used for parallel stanza dispatch.
+     *
+     * @return the dispatch key extractor, or <code>null</code> if parallel stanza dispatch is disabled.
+     * @see #setParallelStanzaDispatch(DispatchKeyExtractor, int)
+     */
+    public DispatchKeyExtractor getDispatchKeyExtractor() {
+        final ParallelDispatch parallelDispatch = this.parallelDispatch.get();
+        if (parallelDispatch == null) {
+            return null;
+        }
+        return parallelDispatch.keyExtractor;
+    }
+
     protected void parseAndProcessStanza(XmlPullParser parser) throws Exception {
         ParserUtils.assertAtStartTag(parser);
         int parserDepth = parser.getDepth();
         Stanza stanza = null;
+        final ConnectionMetrics metrics = connectionMetrics;
+        final long parseStart = System.nanoTime();
+        long parseTime = 0;
         try {
             stanza = PacketParserUtils.parseStanza(parser);
+            parseTime = System.nanoTime() - parseStart;
         }
         catch (Exception e) {
             CharSequence content = PacketParserUtils.parseContentDepth(parser,
                             parserDepth);
             UnparseableStanza message = new UnparseableStanza(content, e);
+            metrics.stanzaParsingFailed(message);
             ParsingExceptionCallback callback = getParsingExceptionCallback();
             if (callback != null) {
                 callback.handleUnparsableStanza(message);
@@ -1035,6 +1280,7 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         }
         ParserUtils.assertAtEndTag(parser);
         if (stanza != null) {
+            metrics.stanzaParsed(stanza, parseTime);
             processStanza(stanza);
         }
     }
@@ -1050,6 +1296,17 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
     protected void processStanza(final Stanza stanza) throws InterruptedException {
         assert(stanza != null);
         lastStanzaReceived = System.currentTimeMillis();
+        final ConnectionMetrics metrics = connectionMetrics;
+        metrics.stanzaReceived(stanza);
+        if (stanza instanceof IQ && !pendingIqRequests.isEmpty()) {
+            IQ iq = (IQ) stanza;
+            if (!iq.isRequestIQ() && iq.getStanzaId() != null) {
+                Long sendTimestamp = pendingIqRequests.remove(iq.getStanzaId());
+                if (sendTimestamp != null) {
+                    metrics.iqResponseReceived(iq, System.nanoTime() - sendTimestamp);
+                }
+            }
+        }
         // Deliver the incoming packet to listeners.
         executorService.executeBlocking(new Runnable() {
             @Override
@@ -1103,20 +1360,31 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
                         LOGGER.log(Level.WARNING, "Exception while sending error IQ to unkown IQ request", e);
                     }
                 } else {
-                    ExecutorService executorService = null;
+                    Executor executorService = null;
+                    final boolean sync;
                     switch (iqRequestHandler.getMode()) {
                     case sync:
-                        executorService = singleThreadedExecutorService;
+                        sync = true;
+                        // If the handler was not isolated, executorService stays null and the request is dispatched
+                        // via executeSync() below.
+                        executorService = isolatedListenerExecutors.get(iqRequestHandler);
                         break;
                     case async:
+                        sync = false;
                         executorService = cachedExecutorService;
                         break;
+                    default:
+                        throw new AssertionError();
                     }
                     final IQRequestHandler finalIqRequestHandler = iqRequestHandler;
-                    executorService.execute(new Runnable() {
+                    Runnable handlerTask = new Runnable() {
                         @Override
                         public void run() {
+                            final long handlerStart = System.nanoTime();
                             IQ response = finalIqRequestHandler.handleIQRequest(iq);
+                            final long handlerTime = System.nanoTime() - handlerStart;
+                            connectionMetrics.iqRequestHandlerInvoked(finalIqRequestHandler, iq, handlerTime);
+                            checkListenerExecutionTime(finalIqRequestHandler, iq, handlerTime, sync);
                             if (response == null) {
                                 // It is not ideal if the IQ request handler does not return an IQ response, because RFC
                                 // 6120 § 8.1.2 does specify that a response is mandatory. But some APIs, mostly the
@@ -1132,7 +1400,12 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
                                 LOGGER.log(Level.WARNING, "Exception while sending response to IQ request", e);
                             }
                         }
-                    });
+                    };
+                    if (executorService != null) {
+                        executorService.execute(handlerTask);
+                    } else {
+                        executeSync(iq, handlerTask);
+                    }
                     // The following returns makes it impossible for packet listeners and collectors to
                     // filter for IQ request stanzas, i.e. IQs of type 'set' or 'get'. This is the
                     // desired behavior.
@@ -1160,11 +1433,15 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
             asyncGo(new Runnable() {
                 @Override
                 public void run() {
+                    final long listenerStart = System.nanoTime();
                     try {
                         listener.processStanza(packet);
                     } catch (Exception e) {
                         LOGGER.log(Level.SEVERE, "Exception in async packet listener", e);
                     }
+                    final long listenerTime = System.nanoTime() - listenerStart;
+                    connectionMetrics.stanzaListenerInvoked(listener, packet, listenerTime);
+                    checkListenerExecutionTime(listener, packet, listenerTime, false);
                 }
             });
         }
@@ -1185,18 +1462,25 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         }
 
         // Decouple incoming stanza processing from listener invocation. Unlike async listeners, this uses a single
-        // threaded executor service and therefore keeps the order.
-        singleThreadedExecutorService.execute(new Runnable() {
+        // threaded executor service, or the stripe of the stanza's dispatch key, and therefore keeps the order.
+        executeSync(packet, new Runnable() {
             @Override
             public void run() {
-                for (StanzaListener listener : listenersToNotify) {
-                    try {
-                        listener.processStanza(packet);
-                    } catch(NotConnectedException e) {
-                        LOGGER.log(Level.WARNING, "Got not connected exception, aborting", e);
+                for (final StanzaListener listener : listenersToNotify) {
+                    ExecutorService isolatedExecutor = isolatedListenerExecutors.get(listener);
+                    if (isolatedExecutor != null) {
+                        // This listener was isolated because it is slow, hand the stanza over to its own serial
+                        // executor so that it does not hold back the other listeners.
+                        isolatedExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                invokeSyncStanzaListener(listener, packet);
+                            }
+                        });
+                        continue;
+                    }
+                    if (!invokeSyncStanzaListener(listener, packet)) {
                         break;
-                    } catch (Exception e) {
-                        LOGGER.log(Level.SEVERE, "Exception in packet listener", e);
                     }
                 }
             }
@@ -1204,6 +1488,210 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
 
     }
 
+    /**
+     * Invoke the given synchronous stanza listener.
+     *
+     * @param listener the listener.
+     * @param packet the stanza.
+     * @return false if the listener threw a {@link NotConnectedException}, true otherwise.
+     */
+    private boolean invokeSyncStanzaListener(StanzaListener listener, Stanza packet) {
+        final long listenerStart = System.nanoTime();
+        try {
+            listener.processStanza(packet);
+        } catch (NotConnectedException e) {
+            LOGGER.log(Level.WARNING, "Got not connected exception, aborting", e);
+            return false;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Exception in packet listener", e);
+        } finally {
+            final long listenerTime = System.nanoTime() - listenerStart;
+            connectionMetrics.stanzaListenerInvoked(listener, packet, listenerTime);
+            checkListenerExecutionTime(listener, packet, listenerTime, true);
+        }
+        return true;
+    }
+
+    /**
+     * Check if a stanza listener or IQ request handler exceeded the slow listener threshold. If so, log it, report it
+     * to the connection metrics and, if enabled, isolate it on its own serial executor.
+     *
+     * @param listener the stanza listener or IQ request handler.
+     * @param stanza the processed stanza.
+     * @param nanos the execution time in nanoseconds.
+     * @param sync true if the listener is invoked synchronously, i.e. in order with the other listeners.
+     */
+    private void checkListenerExecutionTime(final Object listener, Stanza stanza, long nanos, boolean sync) {
+        final long threshold = slowListenerThreshold;
+        if (threshold <= 0 || nanos < TimeUnit.MILLISECONDS.toNanos(threshold)) {
+            return;
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        connectionMetrics.slowListenerDetected(listener, stanza, nanos);
+        if (!sync || !isolateSlowListeners || isolatedListenerExecutors.containsKey(listener)) {
+            LOGGER.warning(this + ": Listener " + listener + " took " + millis + "ms to process " + stanza);
+            return;
+        }
+        synchronized (isolatedListenerExecutors) {
+            if (isolatedListenerExecutors.containsKey(listener) || !isListenerRegistered(listener)) {
+                return;
+            }
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(ISOLATED_LISTENER_QUEUE_CAPACITY),
+                            new SmackExecutorThreadFactory(this, "Isolated Listener Executor"),
+                            new RejectedExecutionHandler() {
+                                @Override
+                                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                                    if (executor.isShutdown()) {
+                                        return;
+                                    }
+                                    // Apply backpressure instead of dropping the stanza: synchronous listeners are
+                                    // guaranteed to receive every stanza in order.
+                                    LOGGER.fine(AbstractXMPPConnection.this + ": Isolated listener " + listener
+                                                    + " has " + ISOLATED_LISTENER_QUEUE_CAPACITY
+                                                    + " pending stanzas, waiting for it to catch up");
+                                    try {
+                                        executor.getQueue().put(r);
+                                    }
+                                    catch (InterruptedException e) {
+                                        LOGGER.log(Level.WARNING, "Interrupted while waiting for isolated listener "
+                                                        + listener + ", dropping stanza", e);
+                                        Thread.currentThread().interrupt();
+                                        return;
+                                    }
+                                    // The worker thread may have timed out in the meantime.
+                                    executor.prestartCoreThread();
+                                }
+                            });
+            executor.allowCoreThreadTimeOut(true);
+            isolatedListenerExecutors.put(listener, executor);
+        }
+        LOGGER.warning(this + ": Listener " + listener + " took " + millis + "ms to process " + stanza
+                        + ", moving it to its own executor");
+    }
+
+    private boolean isListenerRegistered(Object listener) {
+        if (listener instanceof IQRequestHandler) {
+            IQRequestHandler handler = (IQRequestHandler) listener;
+            final String key = XmppStringUtils.generateKey(handler.getElement(), handler.getNamespace());
+            switch (handler.getType()) {
+            case set:
+                synchronized (setIqRequestHandler) {
+                    return setIqRequestHandler.get(key) == handler;
+                }
+            case get:
+                synchronized (getIqRequestHandler) {
+                    return getIqRequestHandler.get(key) == handler;
+                }
+            default:
+                return false;
+            }
+        }
+        synchronized (syncRecvListeners) {
+            return syncRecvListeners.containsKey(listener);
+        }
+    }
+
+    /**
+     * Run the given task on the executor for synchronous listeners, i.e. the single threaded executor or, if parallel
+     * dispatch is enabled, the stripe of the stanza's dispatch key.
+     *
+     * @param stanza the stanza the task processes.
+     * @param task the task.
+     */
+    private void executeSync(Stanza stanza, Runnable task) {
+        while (true) {
+            final ParallelDispatch parallelDispatch = this.parallelDispatch.get();
+            if (parallelDispatch == null) {
+                singleThreadedExecutorService.execute(task);
+                return;
+            }
+            Object key = parallelDispatch.keyExtractor.getDispatchKey(stanza);
+            if (key == null) {
+                singleThreadedExecutorService.execute(task);
+                return;
+            }
+            if (!parallelDispatch.enter()) {
+                // The parallel dispatch was replaced concurrently, retry with the new one.
+                continue;
+            }
+            try {
+                parallelDispatch.executor.execute(key, task);
+            } finally {
+                parallelDispatch.exit();
+            }
+            return;
+        }
+    }
+
+    private static final class ParallelDispatch {
+        private final DispatchKeyExtractor keyExtractor;
+        private final StripedExecutor executor;
+
+        /**
+         * The number of submissions currently in progress. The executor is only shut down once the parallel dispatch
+         * got retired and there are no more in-flight submissions, as otherwise those would be rejected.
+         */
+        private final AtomicInteger inFlightSubmissions = new AtomicInteger();
+
+        private volatile boolean retired;
+
+        private ParallelDispatch(DispatchKeyExtractor keyExtractor, StripedExecutor executor) {
+            this.keyExtractor = keyExtractor;
+            this.executor = executor;
+        }
+
+        private boolean enter() {
+            inFlightSubmissions.incrementAndGet();
+            if (retired) {
+                exit();
+                return false;
+            }
+            return true;
+        }
+
+        private void exit() {
+            if (inFlightSubmissions.decrementAndGet() == 0 && retired) {
+                executor.shutdown();
+            }
+        }
+
+        /**
+         * Retire this parallel dispatch. Already submitted tasks are still processed.
+         */
+        private void retire() {
+            retired = true;
+            if (inFlightSubmissions.get() == 0) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private void shutdownIsolatedListenerExecutor(Object listener) {
+        ExecutorService executor;
+        synchronized (isolatedListenerExecutors) {
+            executor = isolatedListenerExecutors.remove(listener);
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Shut down the executors of all isolated listeners. Already queued stanzas are still processed. Listeners which
+     * are still slow after the connection got re-established will be isolated again.
+     */
+    private void shutdownIsolatedListenerExecutors() {
+        List<ExecutorService> executors;
+        synchronized (isolatedListenerExecutors) {
+            executors = new ArrayList<>(isolatedListenerExecutors.values());
+            isolatedListenerExecutors.clear();
+        }
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+    }
+
     /**
      * Sets whether the connection has already logged in the server. This method assures that the
      * {@link #wasAuthenticated} flag is never reset once it has ever been set.
@@ -1261,6 +1749,7 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         if (logWarning) {
             LOGGER.log(Level.WARNING, "Connection " + this + " closed with error", e);
         }
+        shutdownIsolatedListenerExecutors();
         for (ConnectionListener listener : connectionListeners) {
             try {
                 listener.connectionClosedOnError(e);
@@ -1374,6 +1863,13 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
             cachedExecutorService.shutdown();
             removeCallbacksService.shutdownNow();
             singleThreadedExecutorService.shutdownNow();
+            for (ExecutorService isolatedExecutor : isolatedListenerExecutors.values()) {
+                isolatedExecutor.shutdownNow();
+            }
+            ParallelDispatch parallelDispatch = this.parallelDispatch.get();
+            if (parallelDispatch != null) {
+                parallelDispatch.executor.shutdownNow();
+            }
         } catch (Throwable t) {
             LOGGER.log(Level.WARNING, "finalize() threw trhowable", t);
         }
@@ -1602,18 +2098,25 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
     @Override
     public IQRequestHandler unregisterIQRequestHandler(String element, String namespace, IQ.Type type) {
         final String key = XmppStringUtils.generateKey(element, namespace);
+        IQRequestHandler removed;
         switch (type) {
         case set:
             synchronized (setIqRequestHandler) {
-                return setIqRequestHandler.remove(key);
+                removed = setIqRequestHandler.remove(key);
             }
+            break;
         case get:
             synchronized (getIqRequestHandler) {
-                return getIqRequestHandler.remove(key);
+                removed = getIqRequestHandler.remove(key);
             }
+            break;
         default:
             throw new IllegalArgumentException("Only IQ type of 'get' and 'set' allowed");
         }
+        if (removed != null && !isolatedListenerExecutors.isEmpty()) {
+            shutdownIsolatedListenerExecutor(removed);
+        }
+        return removed;
     }
 
     private long lastStanzaReceived;
@@ -1642,6 +2145,41 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         return parsingExceptionCallback;
     }
 
+    /**
+     * Set the metrics this connection reports into. Use <code>null</code> to stop reporting metrics.
+     * <p>
+     * Note that the byte counts are only reported for connections established after the metrics have been set.
+     * </p>
+     *
+     * @param connectionMetrics the connection metrics or <code>null</code>.
+     * @see ConnectionMetrics
+     */
+    public void setConnectionMetrics(ConnectionMetrics connectionMetrics) {
+        if (connectionMetrics == null) {
+            connectionMetrics = AbstractConnectionMetrics.NO_OP;
+            pendingIqRequests.clear();
+        }
+        this.connectionMetrics = connectionMetrics;
+    }
+
+    /**
+     * Get the metrics this connection reports into.
+     *
+     * @return the connection metrics, never <code>null</code>.
+     */
+    public ConnectionMetrics getConnectionMetrics() {
+        return connectionMetrics;
+    }
+
+    /**
+     * Check if metrics for this connection are enabled, i.e. if they are not the no-op metrics.
+     *
+     * @return true if metrics are reported.
+     */
+    protected final boolean isConnectionMetricsEnabled() {
+        return connectionMetrics != AbstractConnectionMetrics.NO_OP;
+    }
+
     @Override
     public final String toString() {
         EntityFullJid localEndpoint = getUser();
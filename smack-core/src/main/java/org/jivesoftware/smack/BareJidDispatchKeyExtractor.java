@@ -0,0 +1,43 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import org.jivesoftware.smack.packet.Stanza;
+
+import org.jxmpp.jid.Jid;
+
+/**
+ * A {@link DispatchKeyExtractor} using the bare JID of the stanza's sender as key. This keeps the order of all stanzas
+ * from the same entity, and, since the room is the bare JID of an occupant, also of all stanzas from the same MUC room.
+ */
+public final class BareJidDispatchKeyExtractor implements DispatchKeyExtractor {
+
+    public static final BareJidDispatchKeyExtractor INSTANCE = new BareJidDispatchKeyExtractor();
+
+    private BareJidDispatchKeyExtractor() {
+    }
+
+    @Override
+    public Object getDispatchKey(Stanza stanza) {
+        Jid from = stanza.getFrom();
+        if (from == null) {
+            return null;
+        }
+        return from.asBareJid();
+    }
+
+}
@@ -27,6 +27,7 @@ import java.util.Set;
 import org.jivesoftware.smack.packet.Session;
 import org.jivesoftware.smack.proxy.ProxyInfo;
 import org.jivesoftware.smack.sasl.SASLMechanism;
+import org.jivesoftware.smack.sasl.SASLTokenProvider;
 import org.jivesoftware.smack.sasl.core.SASLAnonymous;
 import org.jivesoftware.smack.util.CollectionUtil;
 import org.jivesoftware.smack.util.Objects;
@@ -77,6 +78,8 @@ public abstract class ConnectionConfiguration {
      */
     private final CallbackHandler callbackHandler;
 
+    private final SASLTokenProvider saslTokenProvider;
+
     private final boolean debuggerEnabled;
 
     // Holds the socket factory that is used to generate the socket in the connection
@@ -128,6 +131,7 @@ public abstract class ConnectionConfiguration {
         username = builder.username;
         password = builder.password;
         callbackHandler = builder.callbackHandler;
+        saslTokenProvider = builder.saslTokenProvider;
 
         // Resource can be null, this means that the server must provide one
         resource = builder.resource;
@@ -316,6 +320,15 @@ public abstract class ConnectionConfiguration {
         return callbackHandler;
     }
 
+    /**
+     * Returns the provider of tokens for fast re-authentication.
+     *
+     * @return the SASL token provider or <code>null</code>.
+     */
+    public SASLTokenProvider getSaslTokenProvider() {
+        return saslTokenProvider;
+    }
+
     /**
      * Returns the socket factory used to create new xmppConnection sockets.
      * This is useful when connecting through SOCKS5 proxies.
@@ -518,6 +531,7 @@ public abstract class ConnectionConfiguration {
         private boolean legacySessionDisabled = false;
         private ProxyInfo proxy;
         private CallbackHandler callbackHandler;
+        private SASLTokenProvider saslTokenProvider;
         private boolean debuggerEnabled = SmackConfiguration.DEBUG;
         private SocketFactory socketFactory;
         private DomainBareJid xmppServiceDomain;
@@ -665,6 +679,19 @@ public abstract class ConnectionConfiguration {
             return getThis();
         }
 
+        /**
+         * Sets a provider of tokens for fast re-authentication. If the provider has a token for the user and the
+         * server announces the token's SASL mechanism, then the token is tried before the regular SASL mechanisms.
+         *
+         * @param saslTokenProvider the SASL token provider.
+         * @return a reference to this builder.
+         * @see SASLTokenProvider
+         */
+        public B setSaslTokenProvider(SASLTokenProvider saslTokenProvider) {
+            this.saslTokenProvider = saslTokenProvider;
+            return getThis();
+        }
+
         public B setDnssecMode(DnssecMode dnssecMode) {
             this.dnssecMode = Objects.requireNonNull(dnssecMode, "DNSSEC mode must not be null");
             return getThis();
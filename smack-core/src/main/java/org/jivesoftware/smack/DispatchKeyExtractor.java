@@ -0,0 +1,44 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import org.jivesoftware.smack.packet.Stanza;
+
+/**
+ * Extracts the key used to order the processing of incoming stanzas when parallel stanza dispatch is enabled. Stanzas
+ * with the same key are processed in the order they were received, while stanzas with different keys may be processed
+ * in parallel.
+ * <p>
+ * Implementations must be fast and must not block, as they are invoked by the thread processing the incoming stanzas.
+ * Returning <code>null</code> causes the stanza to be processed on the connection's single threaded executor.
+ * </p>
+ *
+ * @see AbstractXMPPConnection#setParallelStanzaDispatch(DispatchKeyExtractor, int)
+ * @see BareJidDispatchKeyExtractor
+ */
+public interface DispatchKeyExtractor {
+
+    /**
+     * Get the dispatch key of the given stanza. The returned key must implement {@link Object#hashCode()} and
+     * {@link Object#equals(Object)}.
+     *
+     * @param stanza the incoming stanza.
+     * @return the dispatch key or <code>null</code>.
+     */
+    Object getDispatchKey(Stanza stanza);
+
+}
@@ -18,13 +18,20 @@ package org.jivesoftware.smack;
 
 import org.jivesoftware.smack.XMPPException.StreamErrorException;
 import org.jivesoftware.smack.packet.StreamError;
-import org.jivesoftware.smack.util.Async;
+import org.jivesoftware.smack.util.SmackExecutorThreadFactory;
+import org.jivesoftware.smack.util.TokenBucket;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.Map;
 import java.util.Random;
 import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,7 +40,7 @@ import java.util.logging.Logger;
  * the application explicitly closing it, the manager automatically tries to reconnect to
  * the server.<p>
  *
- * There are two possible reconnection policies:
+ * There are three possible reconnection policies:
  *
  * {@link ReconnectionPolicy#RANDOM_INCREASING_DELAY} - The reconnection mechanism will try to reconnect periodically:
  * <ol>
@@ -45,6 +52,14 @@ import java.util.logging.Logger;
  * {@link ReconnectionPolicy#FIXED_DELAY} - The reconnection mechanism will try to reconnect after a fixed delay 
  * independently from the number of reconnection attempts already performed
  *
+ * {@link ReconnectionPolicy#DECORRELATED_JITTER_BACKOFF} - The reconnection mechanism will try to reconnect after an
+ * exponentially increasing, randomized delay.
+ * <p>
+ * The countdown and the reconnection attempts of all connections are performed by a scheduler and an executor shared
+ * by all reconnection managers. Additionally, the rate of reconnection attempts of all connections can be limited with
+ * {@link #setGlobalReconnectionRateLimit(double, int)}.
+ * </p>
+ *
  * @author Francisco Vives
  * @author Luca Stucchi
  */
@@ -100,15 +115,58 @@ public final class ReconnectionManager {
         return enabledPerDefault;
     }
 
+    /**
+     * The scheduler shared by all reconnection managers. It only performs the countdown until the next reconnection
+     * attempt, the attempts itself are performed by {@link #RECONNECTION_EXECUTOR}.
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+                    new SmackExecutorThreadFactory("Reconnection Scheduler"));
+
+    /**
+     * The executor performing the (blocking) reconnection attempts of all reconnection managers.
+     */
+    private static final ExecutorService RECONNECTION_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60,
+                    TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new SmackExecutorThreadFactory(
+                                    "Reconnection Manager"));
+
+    private static volatile TokenBucket globalReconnectionRateLimiter;
+
+    /**
+     * Limit the rate of reconnection attempts of all connections in this JVM. If the limit is exceeded, reconnection
+     * attempts are delayed until a token becomes available. This prevents a large number of connections from
+     * overloading the server, and the DNS, TLS and SASL paths, after a server restart. The limit is disabled per
+     * default.
+     *
+     * @param attemptsPerSecond the number of reconnection attempts per second.
+     * @param burst the number of reconnection attempts which may be performed at once.
+     */
+    public static void setGlobalReconnectionRateLimit(double attemptsPerSecond, int burst) {
+        globalReconnectionRateLimiter = new TokenBucket(attemptsPerSecond, burst);
+    }
+
+    /**
+     * Disable the global reconnection rate limit.
+     *
+     * @see #setGlobalReconnectionRateLimit(double, int)
+     */
+    public static void disableGlobalReconnectionRateLimit() {
+        globalReconnectionRateLimiter = null;
+    }
+
     // Holds the connection to the server
     private final WeakReference<AbstractXMPPConnection> weakRefConnection;
     private final int randomBase = new Random().nextInt(13) + 2; // between 2 and 15 seconds
+    private final Runnable countdownRunnable;
     private final Runnable reconnectionRunnable;
 
     private static int defaultFixedDelay = 15;
+    private static int defaultJitterBackoffBase = 1;
+    private static int defaultJitterBackoffCap = 300;
     private static ReconnectionPolicy defaultReconnectionPolicy = ReconnectionPolicy.RANDOM_INCREASING_DELAY;
 
     private volatile int fixedDelay = defaultFixedDelay;
+    private volatile int jitterBackoffBase = defaultJitterBackoffBase;
+    private volatile int jitterBackoffCap = defaultJitterBackoffCap;
     private volatile ReconnectionPolicy reconnectionPolicy = defaultReconnectionPolicy;
 
     /**
@@ -122,6 +180,20 @@ public final class ReconnectionManager {
         setDefaultReconnectionPolicy(ReconnectionPolicy.FIXED_DELAY);
     }
 
+    /**
+     * Set the default base and maximum delay in seconds of the decorrelated jitter backoff. Also set the default
+     * connection policy to {@link ReconnectionPolicy#DECORRELATED_JITTER_BACKOFF}.
+     *
+     * @param base the minimum delay in seconds.
+     * @param cap the maximum delay in seconds.
+     */
+    public static void setDefaultJitterBackoff(int base, int cap) {
+        checkJitterBackoff(base, cap);
+        defaultJitterBackoffBase = base;
+        defaultJitterBackoffCap = cap;
+        setDefaultReconnectionPolicy(ReconnectionPolicy.DECORRELATED_JITTER_BACKOFF);
+    }
+
     /**
      * Set the default Reconnection Policy to use.
      * 
@@ -142,6 +214,29 @@ public final class ReconnectionManager {
         setReconnectionPolicy(ReconnectionPolicy.FIXED_DELAY);
     }
 
+    /**
+     * Set the base and maximum delay in seconds of the decorrelated jitter backoff. Also set the connection policy to
+     * {@link ReconnectionPolicy#DECORRELATED_JITTER_BACKOFF}.
+     *
+     * @param base the minimum delay in seconds.
+     * @param cap the maximum delay in seconds.
+     */
+    public void setJitterBackoff(int base, int cap) {
+        checkJitterBackoff(base, cap);
+        this.jitterBackoffBase = base;
+        this.jitterBackoffCap = cap;
+        setReconnectionPolicy(ReconnectionPolicy.DECORRELATED_JITTER_BACKOFF);
+    }
+
+    private static void checkJitterBackoff(int base, int cap) {
+        if (base <= 0) {
+            throw new IllegalArgumentException("base must be positive");
+        }
+        if (cap < base) {
+            throw new IllegalArgumentException("cap must not be smaller than base");
+        }
+    }
+
     /**
      * Set the Reconnection Policy to use.
      * 
@@ -158,117 +253,132 @@ public final class ReconnectionManager {
 
     boolean done = false;
 
-    private Thread reconnectionThread;
+    /**
+     * Flag that indicates if a reconnection is in progress, i.e. if the countdown or a reconnection attempt is
+     * scheduled. Guarded by 'this'.
+     */
+    private boolean reconnectionInProgress;
 
-    private ReconnectionManager(AbstractXMPPConnection connection) {
-        weakRefConnection = new WeakReference<AbstractXMPPConnection>(connection);
+    /**
+     * Holds the current number of reconnection attempts
+     */
+    private int attempts = 0;
+
+    /**
+     * The previous delay in milliseconds of the decorrelated jitter backoff.
+     */
+    private long previousJitterDelay;
 
-        reconnectionRunnable = new Thread() {
+    /**
+     * The remaining seconds of the current countdown.
+     */
+    private int remainingSeconds;
 
-            /**
-             * Holds the current number of reconnection attempts
-             */
-            private int attempts = 0;
+    /**
+     * True if a token of the global reconnection rate limiter has already been reserved for the next attempt.
+     */
+    private boolean tokenReserved;
+
+    private ReconnectionManager(AbstractXMPPConnection connection) {
+        weakRefConnection = new WeakReference<AbstractXMPPConnection>(connection);
 
+        countdownRunnable = new Runnable() {
             /**
-             * Returns the number of seconds until the next reconnection attempt.
-             *
-             * @return the number of seconds until the next reconnection attempt.
+             * Notifies the listeners once per second about how much time remains before the next reconnection
+             * attempt. Once the countdown reached zero, the reconnection attempt is handed over to the reconnection
+             * executor.
              */
-            private int timeDelay() {
-                attempts++;
-
-                // Delay variable to be assigned
-                int delay;
-                switch (reconnectionPolicy) {
-                case FIXED_DELAY:
-                    delay = fixedDelay;
-                    break;
-                case RANDOM_INCREASING_DELAY:
-                    if (attempts > 13) {
-                        delay = randomBase * 6 * 5; // between 2.5 and 7.5 minutes (~5 minutes)
-                    }
-                    else if (attempts > 7) {
-                        delay = randomBase * 6; // between 30 and 90 seconds (~1 minutes)
+            @Override
+            public void run() {
+                final AbstractXMPPConnection connection = weakRefConnection.get();
+                if (connection == null || !isReconnectionPossible(connection)) {
+                    reconnectionFinished();
+                    return;
+                }
+                if (remainingSeconds > 0) {
+                    for (ConnectionListener listener : connection.connectionListeners) {
+                        listener.reconnectingIn(remainingSeconds);
                     }
-                    else {
-                        delay = randomBase; // 10 seconds
+                    remainingSeconds--;
+                    SCHEDULER.schedule(this, 1, TimeUnit.SECONDS);
+                    return;
+                }
+
+                final TokenBucket rateLimiter = globalReconnectionRateLimiter;
+                if (rateLimiter != null && !tokenReserved) {
+                    tokenReserved = true;
+                    long waitNanos = rateLimiter.reserve();
+                    if (waitNanos > 0) {
+                        SCHEDULER.schedule(this, waitNanos, TimeUnit.NANOSECONDS);
+                        return;
                     }
-                    break;
-                default:
-                    throw new AssertionError("Unknown reconnection policy " + reconnectionPolicy);
                 }
+                tokenReserved = false;
 
-                return delay;
+                for (ConnectionListener listener : connection.connectionListeners) {
+                    listener.reconnectingIn(0);
+                }
+                RECONNECTION_EXECUTOR.execute(reconnectionRunnable);
             }
+        };
 
+        reconnectionRunnable = new Runnable() {
             /**
-             * The process will try the reconnection until the connection succeed or the user cancel it
+             * Makes a reconnection attempt and schedules the next one if the connection is still not established.
              */
             @Override
             public void run() {
                 final AbstractXMPPConnection connection = weakRefConnection.get();
                 if (connection == null) {
+                    reconnectionFinished();
                     return;
                 }
-                // The process will try to reconnect until the connection is established or
-                // the user cancel the reconnection process AbstractXMPPConnection.disconnect().
-                while (isReconnectionPossible(connection)) {
-                    // Find how much time we should wait until the next reconnection
-                    int remainingSeconds = timeDelay();
-                    // Sleep until we're ready for the next reconnection attempt. Notify
-                    // listeners once per second about how much time remains before the next
-                    // reconnection attempt.
-                    while (isReconnectionPossible(connection) && remainingSeconds > 0) {
+                try {
+                    if (isReconnectionPossible(connection)) {
+                        connection.getConnectionMetrics().reconnectionAttempted();
                         try {
-                            Thread.sleep(1000);
-                            remainingSeconds--;
-                            for (ConnectionListener listener : connection.connectionListeners) {
-                                listener.reconnectingIn(remainingSeconds);
-                            }
+                            connection.connect();
+                        } catch (SmackException.AlreadyConnectedException e) {
+                            LOGGER.log(Level.FINER, "Connection was already connected on reconnection attempt", e);
                         }
-                        catch (InterruptedException e) {
-                            LOGGER.log(Level.FINE, "waiting for reconnection interrupted", e);
-                            break;
-                        }
-                    }
-
-                    for (ConnectionListener listener : connection.connectionListeners) {
-                        listener.reconnectingIn(0);
                     }
-
-                    // Makes a reconnection attempt
-                    try {
-                        if (isReconnectionPossible(connection)) {
-                            try {
-                                connection.connect();
-                            } catch (SmackException.AlreadyConnectedException e) {
-                                LOGGER.log(Level.FINER, "Connection was already connected on reconnection attempt", e);
-                            }
-                        }
-                        // TODO Starting with Smack 4.2, connect() will no
-                        // longer login automatically. So change this and the
-                        // previous lines to connection.connect().login() in the
-                        // 4.2, or any later, branch.
-                        if (!connection.isAuthenticated()) {
-                            connection.login();
-                        }
-                        // Successfully reconnected.
-                        attempts = 0;
+                    // TODO Starting with Smack 4.2, connect() will no
+                    // longer login automatically. So change this and the
+                    // previous lines to connection.connect().login() in the
+                    // 4.2, or any later, branch.
+                    if (!connection.isAuthenticated()) {
+                        connection.login();
                     }
-                    catch (SmackException.AlreadyLoggedInException e) {
-                        // This can happen if another thread concurrently triggers a reconnection
-                        // and/or login. Obviously it should not be handled as a reconnection
-                        // failure. See also SMACK-725.
-                        LOGGER.log(Level.FINER, "Reconnection not required, was already logged in", e);
+                    // Successfully reconnected.
+                    attempts = 0;
+                    previousJitterDelay = 0;
+                    connection.getConnectionMetrics().reconnectionSuccessful();
+                }
+                catch (SmackException.AlreadyLoggedInException e) {
+                    // This can happen if another thread concurrently triggers a reconnection
+                    // and/or login. Obviously it should not be handled as a reconnection
+                    // failure. See also SMACK-725.
+                    LOGGER.log(Level.FINER, "Reconnection not required, was already logged in", e);
+                }
+                catch (SmackException | IOException | XMPPException | InterruptedException e) {
+                    // Fires the failed reconnection notification
+                    for (ConnectionListener listener : connection.connectionListeners) {
+                        listener.reconnectionFailed(e);
                     }
-                    catch (SmackException | IOException | XMPPException | InterruptedException e) {
-                        // Fires the failed reconnection notification
-                        for (ConnectionListener listener : connection.connectionListeners) {
-                            listener.reconnectionFailed(e);
-                        }
+                }
+                catch (RuntimeException e) {
+                    // E.g. thrown by a provider, SASL mechanism or listener. The reconnection must go on, otherwise
+                    // reconnectionInProgress would stay set and no further reconnection would ever be attempted.
+                    LOGGER.log(Level.WARNING, "Reconnection attempt failed", e);
+                    for (ConnectionListener listener : connection.connectionListeners) {
+                        listener.reconnectionFailed(e);
                     }
                 }
+                finally {
+                    // The process will try to reconnect until the connection is established or
+                    // the user cancel the reconnection process AbstractXMPPConnection.disconnect().
+                    continueOrFinishReconnection(connection);
+                }
             }
         };
 
@@ -278,6 +388,86 @@ public final class ReconnectionManager {
         }
     }
 
+    /**
+     * Returns the number of milliseconds until the next reconnection attempt.
+     *
+     * @return the number of milliseconds until the next reconnection attempt.
+     */
+    private long timeDelay() {
+        attempts++;
+
+        // Delay variable to be assigned
+        long delay;
+        switch (reconnectionPolicy) {
+        case FIXED_DELAY:
+            delay = fixedDelay * 1000L;
+            break;
+        case RANDOM_INCREASING_DELAY:
+            if (attempts > 13) {
+                delay = randomBase * 6 * 5; // between 2.5 and 7.5 minutes (~5 minutes)
+            }
+            else if (attempts > 7) {
+                delay = randomBase * 6; // between 30 and 90 seconds (~1 minutes)
+            }
+            else {
+                delay = randomBase; // 10 seconds
+            }
+            delay *= 1000;
+            break;
+        case DECORRELATED_JITTER_BACKOFF:
+            delay = decorrelatedJitterDelay(previousJitterDelay, jitterBackoffBase * 1000L, jitterBackoffCap * 1000L,
+                            RANDOM);
+            previousJitterDelay = delay;
+            break;
+        default:
+            throw new AssertionError("Unknown reconnection policy " + reconnectionPolicy);
+        }
+
+        return delay;
+    }
+
+    private static final Random RANDOM = new Random();
+
+    /**
+     * Calculate the next delay of the "decorrelated jitter" backoff: a random value between the base delay and three
+     * times the previous delay, capped by the maximum delay. The first attempt uses the base delay as previous delay,
+     * so that already the first delay is spread between the base delay and three times of it.
+     *
+     * @param previous the previous delay, or '0' if this is the first attempt.
+     * @param base the base delay.
+     * @param cap the maximum delay.
+     * @param random the source of randomness.
+     * @return the next delay.
+     */
+    static long decorrelatedJitterDelay(long previous, long base, long cap, Random random) {
+        final long upperBound = Math.max(base, Math.min(cap, Math.max(base, previous) * 3));
+        final long range = upperBound - base;
+        long delay = base;
+        if (range > 0) {
+            delay += (long) (random.nextDouble() * (range + 1));
+        }
+        return Math.min(cap, delay);
+    }
+
+    private void scheduleNextAttempt() {
+        // Find how much time we should wait until the next reconnection
+        long delay = timeDelay();
+        remainingSeconds = (int) (delay / 1000);
+        SCHEDULER.schedule(countdownRunnable, delay % 1000, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void reconnectionFinished() {
+        reconnectionInProgress = false;
+    }
+
+    private synchronized void continueOrFinishReconnection(XMPPConnection connection) {
+        if (isReconnectionPossible(connection)) {
+            scheduleNextAttempt();
+        } else {
+            reconnectionInProgress = false;
+        }
+    }
+
     /**
      * Enable the automatic reconnection mechanism. Does nothing if already enabled.
      */
@@ -338,14 +528,15 @@ public final class ReconnectionManager {
             LOGGER.fine("Connection is null, will not reconnect");
             return;
         }
-        // Since there is no thread running, creates a new one to attempt
-        // the reconnection.
-        // avoid to run duplicated reconnectionThread -- fd: 16/09/2010
-        if (reconnectionThread != null && reconnectionThread.isAlive())
+        // Avoid running duplicated reconnections.
+        if (reconnectionInProgress) {
             return;
+        }
+        reconnectionInProgress = true;
 
-        reconnectionThread = Async.go(reconnectionRunnable,
-                        "Smack Reconnection Manager (" + connection.getConnectionCounter() + ')');
+        // Reconnections of all connections are performed by a shared scheduler and executor instead of a thread per
+        // reconnecting connection.
+        scheduleNextAttempt();
     }
 
     private final ConnectionListener connectionListener = new AbstractConnectionListener() {
@@ -394,6 +585,15 @@ public final class ReconnectionManager {
          * Policy using fixed amount of time between reconnection attempts.
          */
         FIXED_DELAY,
+
+        /**
+         * Policy using an exponential backoff with "decorrelated jitter": every delay is a random value between a base
+         * delay and three times the previous delay, capped by a maximum delay. The randomness prevents a large number
+         * of connections, which got disconnected at the same time, from reconnecting in lockstep.
+         *
+         * @see ReconnectionManager#setJitterBackoff(int, int)
+         */
+        DECORRELATED_JITTER_BACKOFF,
         ;
     }
 }
@@ -22,6 +22,8 @@ import org.jivesoftware.smack.XMPPException.XMPPErrorException;
 import org.jivesoftware.smack.packet.Mechanisms;
 import org.jivesoftware.smack.sasl.SASLErrorException;
 import org.jivesoftware.smack.sasl.SASLMechanism;
+import org.jivesoftware.smack.sasl.SASLToken;
+import org.jivesoftware.smack.sasl.SASLTokenProvider;
 import org.jivesoftware.smack.sasl.core.ScramSha1PlusMechanism;
 import org.jivesoftware.smack.sasl.packet.SaslStreamElements.SASLFailure;
 import org.jivesoftware.smack.sasl.packet.SaslStreamElements.Success;
@@ -40,6 +42,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -173,7 +176,11 @@ public final class SASLAuthentication {
      * the full JID provided by the server while binding a resource to the connection.<p>
      *
      * The server may assign a full JID with a username or resource different than the requested
-     * by this method.
+     * by this method.<p>
+     *
+     * If a {@link SASLTokenProvider} is configured and has a token for the user whose SASL mechanism is announced by
+     * the server, then authentication with the token is tried first. If the server rejects the token, then the
+     * regular SASL mechanism selection is performed within the same stream.
      *
      * @param username the username that is authenticating with the server.
      * @param password the password to send to the server.
@@ -188,8 +195,38 @@ public final class SASLAuthentication {
     public void authenticate(String username, String password, EntityBareJid authzid, SSLSession sslSession)
                     throws XMPPErrorException, SASLErrorException, IOException,
                     SmackException, InterruptedException {
-        currentMechanism = selectMechanism(authzid);
         final CallbackHandler callbackHandler = configuration.getCallbackHandler();
+        final DomainBareJid xmppServiceDomain = connection.getXMPPServiceDomain();
+        final SASLTokenProvider tokenProvider = configuration.getSaslTokenProvider();
+
+        if (tokenProvider != null && username != null && callbackHandler == null) {
+            SASLToken token = tokenProvider.getToken(username, xmppServiceDomain);
+            if (token != null && isTokenMechanismUsable(token.getMechanism(), authzid)) {
+                currentMechanism = token.getMechanism().instanceForAuthentication(connection, configuration);
+                try {
+                    authenticate(username, token.getToken(), authzid, sslSession, null);
+                    tokenProvider.authenticated(username, xmppServiceDomain, currentMechanism.getName(), true);
+                    return;
+                }
+                catch (SASLErrorException e) {
+                    LOGGER.log(Level.FINE, "Re-authentication with " + token + " failed, falling back to "
+                                    + "regular SASL mechanism selection", e);
+                    tokenProvider.tokenRejected(username, xmppServiceDomain, token);
+                    init();
+                }
+            }
+        }
+
+        currentMechanism = selectMechanism(authzid);
+        authenticate(username, password, authzid, sslSession, callbackHandler);
+        if (tokenProvider != null && username != null) {
+            tokenProvider.authenticated(username, xmppServiceDomain, currentMechanism.getName(), false);
+        }
+    }
+
+    private void authenticate(String username, String password, EntityBareJid authzid, SSLSession sslSession,
+                    CallbackHandler callbackHandler) throws SASLErrorException, SmackException,
+                    InterruptedException {
         final String host = connection.getHost();
         final DomainBareJid xmppServiceDomain = connection.getXMPPServiceDomain();
 
@@ -320,6 +357,17 @@ public final class SASLAuthentication {
         return lastUsedMech.getName();
     }
 
+    private boolean isTokenMechanismUsable(SASLMechanism mechanism, EntityBareJid authzid) {
+        final String mechanismName = mechanism.getName();
+        if (authzid != null && !mechanism.authzidSupported()) {
+            return false;
+        }
+        if (!configuration.isEnabledSaslMechanism(mechanismName)) {
+            return false;
+        }
+        return getServerMechanisms().contains(mechanismName);
+    }
+
     private SASLMechanism selectMechanism(EntityBareJid authzid) throws SmackException {
         Iterator<SASLMechanism> it = REGISTERED_MECHANISMS.iterator();
         final List<String> serverMechanisms = getServerMechanisms();
@@ -76,15 +76,7 @@ public class SynchronizationPoint<E extends Exception> {
         connectionLock.lock();
         try {
             if (request != null) {
-                if (request instanceof Stanza) {
-                    connection.sendStanza((Stanza) request);
-                }
-                else if (request instanceof Nonza){
-                    connection.sendNonza((Nonza) request);
-                } else {
-                    throw new IllegalStateException("Unsupported element type");
-                }
-                state = State.RequestSent;
+                sendRequestInternal(request);
             }
             waitForConditionOrTimeout();
         }
@@ -94,6 +86,38 @@ public class SynchronizationPoint<E extends Exception> {
         return checkForResponse();
     }
 
+    /**
+     * Send the given top level stream element without waiting for a response. Use {@link #checkIfSuccessOrWait()}
+     * or {@link #checkIfSuccessOrWaitOrThrow()} to wait for the response later on.
+     *
+     * @param request the plain stream element to send.
+     * @throws NotConnectedException if the connection is not connected.
+     * @throws InterruptedException
+     */
+    public void sendRequest(TopLevelStreamElement request) throws NotConnectedException, InterruptedException {
+        assert (state == State.Initial);
+        connectionLock.lock();
+        try {
+            sendRequestInternal(request);
+        }
+        finally {
+            connectionLock.unlock();
+        }
+    }
+
+    private void sendRequestInternal(TopLevelStreamElement request) throws NotConnectedException,
+                    InterruptedException {
+        if (request instanceof Stanza) {
+            connection.sendStanza((Stanza) request);
+        }
+        else if (request instanceof Nonza){
+            connection.sendNonza((Nonza) request);
+        } else {
+            throw new IllegalStateException("Unsupported element type");
+        }
+        state = State.RequestSent;
+    }
+
     /**
      * Send the given plain stream element and wait for a response.
      *
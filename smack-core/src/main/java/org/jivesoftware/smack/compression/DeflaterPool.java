@@ -0,0 +1,107 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.compression;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.Deflater;
+
+/**
+ * A bounded pool of {@link Deflater} instances.
+ * <p>
+ * Every Deflater holds a considerable amount of native memory, which is only freed once {@link Deflater#end()} is
+ * invoked, or the Deflater got finalized. Instead of creating a new Deflater on every connection attempt and leaving
+ * the old one to the garbage collector, Deflaters are reset and kept for re-use. Deflaters exceeding the pool size
+ * are ended right away.
+ * </p>
+ */
+public final class DeflaterPool {
+
+    /**
+     * The default maximum number of pooled Deflaters.
+     */
+    public static final int DEFAULT_MAX_POOLED_DEFLATERS = 4;
+
+    private static final Deque<Deflater> POOL = new ArrayDeque<Deflater>();
+
+    private static int maxPooledDeflaters = DEFAULT_MAX_POOLED_DEFLATERS;
+
+    private DeflaterPool() {
+    }
+
+    /**
+     * Set the maximum number of pooled Deflaters. Use 0 to disable pooling. The default is
+     * {@value #DEFAULT_MAX_POOLED_DEFLATERS}.
+     *
+     * @param maxPooledDeflaters the maximum number of pooled Deflaters.
+     */
+    public static void setMaxPooledDeflaters(int maxPooledDeflaters) {
+        if (maxPooledDeflaters < 0) {
+            throw new IllegalArgumentException("maxPooledDeflaters must not be negative");
+        }
+        synchronized (POOL) {
+            DeflaterPool.maxPooledDeflaters = maxPooledDeflaters;
+            while (POOL.size() > maxPooledDeflaters) {
+                POOL.removeFirst().end();
+            }
+        }
+    }
+
+    /**
+     * Get a Deflater with the given compression level and strategy. The Deflater should be returned with
+     * {@link #release(Deflater)} once it is no longer used.
+     *
+     * @param level the compression level, see {@link Deflater#setLevel(int)}.
+     * @param strategy the compression strategy, see {@link Deflater#setStrategy(int)}.
+     * @return a Deflater.
+     */
+    public static Deflater acquire(int level, int strategy) {
+        Deflater deflater;
+        synchronized (POOL) {
+            deflater = POOL.pollFirst();
+        }
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        } else {
+            deflater.setLevel(level);
+        }
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+
+    /**
+     * Return the given Deflater to the pool. The Deflater must not be used afterwards.
+     *
+     * @param deflater the Deflater to return.
+     */
+    public static void release(Deflater deflater) {
+        deflater.reset();
+        synchronized (POOL) {
+            if (POOL.size() < maxPooledDeflaters) {
+                POOL.addFirst(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    static int size() {
+        synchronized (POOL) {
+            return POOL.size();
+        }
+    }
+}
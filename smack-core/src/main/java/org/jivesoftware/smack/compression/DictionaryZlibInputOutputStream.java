@@ -0,0 +1,138 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.compression;
+
+import java.util.Map;
+import java.util.SortedSet;
+
+import org.jivesoftware.smack.provider.ProviderManager;
+import org.jivesoftware.smack.util.StringUtils;
+
+/**
+ * A "zlib" based compression handler which primes the Deflater and Inflater with a preset dictionary of XMPP
+ * vocabulary.
+ * <p>
+ * Plain zlib compresses the first kilobytes of a session poorly, as it has not seen the repetitive namespaces and
+ * element names of XMPP yet. The preset dictionary built by {@link #buildDictionary()} contains the element names and
+ * namespaces registered with the {@link ProviderManager}, followed by the most common XMPP vocabulary.
+ * </p>
+ * <p>
+ * Both peers have to use the very same dictionary, and there is no standardized compression method for this. Hence
+ * this handler is not registered by default, and uses the compression method {@value #COMPRESSION_METHOD}. Register
+ * it with {@link org.jivesoftware.smack.SmackConfiguration#addCompressionHandler(XMPPInputOutputStream)} if the
+ * service supports it. The dictionary is identified by its Adler-32 checksum in the zlib stream header, so a
+ * dictionary mismatch results in an exception instead of garbage.
+ * </p>
+ * <p>
+ * Note that the dictionary is only used for the data up to the first {@link XMPPInputOutputStream.FlushMethod#FULL_FLUSH
+ * full flush}, which is the default flush method. Use {@link XMPPInputOutputStream.FlushMethod#SYNC_FLUSH} to benefit
+ * from the dictionary for the whole session.
+ * </p>
+ */
+public class DictionaryZlibInputOutputStream extends Java7ZlibInputOutputStream {
+
+    public static final String COMPRESSION_METHOD = "zlib-xmpp-dictionary";
+
+    /**
+     * The size of the zlib window. Only the last 32 KiB of a dictionary are used.
+     */
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * The most common XMPP vocabulary. Since matches with shorter distances are cheaper, zlib favors the end of the
+     * dictionary, hence the most common strings come last.
+     */
+    private static final String[] COMMON_VOCABULARY = new String[] {
+        "<stream:stream xmlns='jabber:client' xmlns:stream='http://etherx.jabber.org/streams' version='1.0' ",
+        "<stream:features>",
+        "</stream:features>",
+        "<c xmlns='http://jabber.org/protocol/caps' hash='sha-1' node='",
+        "<delay xmlns='urn:xmpp:delay' stamp='",
+        "<query xmlns='jabber:iq:roster'>",
+        "<item jid='",
+        " subscription='both'",
+        "<show>away</show>",
+        "<status>",
+        "</status>",
+        "<priority>",
+        "</priority>",
+        "<error type='cancel'>",
+        "xmlns='urn:ietf:params:xml:ns:xmpp-stanzas'/>",
+        "<r xmlns='urn:xmpp:sm:3'/>",
+        "<a xmlns='urn:xmpp:sm:3' h='",
+        "<iq type='result' ",
+        "<iq type='get' ",
+        "<iq type='set' ",
+        "</iq>",
+        "<presence ",
+        "</presence>",
+        "<message type='groupchat' ",
+        "<message type='chat' ",
+        "<body>",
+        "</body>",
+        "</message>",
+        " xml:lang='en'",
+        " from='",
+        " to='",
+        " id='",
+        "'/>",
+    };
+
+    /**
+     * Create a new handler using the dictionary built by {@link #buildDictionary()}. Make sure that all providers are
+     * registered at this point.
+     */
+    public DictionaryZlibInputOutputStream() {
+        this(buildDictionary());
+    }
+
+    /**
+     * Create a new handler using the given preset dictionary.
+     *
+     * @param dictionary the preset dictionary.
+     */
+    public DictionaryZlibInputOutputStream(byte[] dictionary) {
+        super(COMPRESSION_METHOD, dictionary);
+    }
+
+    /**
+     * Build a preset dictionary from the element names and namespaces registered with the {@link ProviderManager}
+     * and the most common XMPP vocabulary. The result is deterministic for a given set of registered providers.
+     *
+     * @return the preset dictionary.
+     */
+    public static byte[] buildDictionary() {
+        StringBuilder sb = new StringBuilder(MAX_DICTIONARY_SIZE);
+        for (Map.Entry<String, SortedSet<String>> entry : ProviderManager.getRegisteredElements().entrySet()) {
+            String namespace = entry.getKey();
+            for (String elementName : entry.getValue()) {
+                sb.append('<').append(elementName).append(" xmlns='").append(namespace).append("'>");
+            }
+        }
+        for (String vocabulary : COMMON_VOCABULARY) {
+            sb.append(vocabulary);
+        }
+        byte[] dictionary = StringUtils.toBytes(sb.toString());
+        if (dictionary.length <= MAX_DICTIONARY_SIZE) {
+            return dictionary;
+        }
+        byte[] truncatedDictionary = new byte[MAX_DICTIONARY_SIZE];
+        System.arraycopy(dictionary, dictionary.length - MAX_DICTIONARY_SIZE, truncatedDictionary, 0,
+                        MAX_DICTIONARY_SIZE);
+        return truncatedDictionary;
+    }
+}
@@ -19,8 +19,6 @@ package org.jivesoftware.smack.compression;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
@@ -32,6 +30,11 @@ import java.util.zip.InflaterInputStream;
  * Java7, so it will only work with Java7 or higher (hence it's name). On Android, the required
  * <code>deflate()</code> method is available on API 19 or higher.
  * <p>
+ * The compression level, strategy and buffer size can be configured with {@link #setCompressionLevel(int)},
+ * {@link #setCompressionStrategy(int)} and {@link #setBufferSize(int)}. The Deflaters are taken from the
+ * {@link DeflaterPool}, and returned to it once the stream is closed.
+ * </p>
+ * <p>
  * See also:
  * <ul>
  * <li><a href="http://docs.oracle.com/javase/7/docs/api/java/util/zip/Deflater.html#deflate(byte[], int, int, int)">The required deflate() method (Java7)</a>
@@ -41,26 +44,92 @@ import java.util.zip.InflaterInputStream;
  * @author Florian Schmaus
  */
 public class Java7ZlibInputOutputStream extends XMPPInputOutputStream {
-    private final static Method method;
     private final static boolean supported;
-    private final static int compressionLevel = Deflater.DEFAULT_COMPRESSION;
 
-    private static final int SYNC_FLUSH_INT = 2;
-    private static final int FULL_FLUSH_INT = 3;
+    /**
+     * The default size of the buffers used for compression and decompression.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private static int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+    private static int bufferSize = DEFAULT_BUFFER_SIZE;
 
     static {
-        Method m = null;
+        boolean deflateWithFlushModeAvailable = false;
         try {
-            m = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+            Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+            deflateWithFlushModeAvailable = true;
         } catch (SecurityException e) {
         } catch (NoSuchMethodException e) {
         }
-        method = m;
-        supported = (method != null);
+        supported = deflateWithFlushModeAvailable;
     }
 
+    /**
+     * Set the compression level used for new streams. The default is {@link Deflater#DEFAULT_COMPRESSION}. Lower
+     * levels, like {@link Deflater#BEST_SPEED}, considerably reduce the CPU time per stanza, while usually compressing
+     * typical XMPP traffic only slightly worse.
+     *
+     * @param compressionLevel the compression level, from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public static void setCompressionLevel(int compressionLevel) {
+        if ((compressionLevel < 0 || compressionLevel > 9) && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        Java7ZlibInputOutputStream.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Set the compression strategy used for new streams. The default is {@link Deflater#DEFAULT_STRATEGY}.
+     *
+     * @param compressionStrategy one of {@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED} or
+     *        {@link Deflater#HUFFMAN_ONLY}.
+     */
+    public static void setCompressionStrategy(int compressionStrategy) {
+        switch (compressionStrategy) {
+        case Deflater.DEFAULT_STRATEGY:
+        case Deflater.FILTERED:
+        case Deflater.HUFFMAN_ONLY:
+            break;
+        default:
+            throw new IllegalArgumentException("Invalid compression strategy: " + compressionStrategy);
+        }
+        Java7ZlibInputOutputStream.compressionStrategy = compressionStrategy;
+    }
+
+    /**
+     * Set the size of the buffers used for compression and decompression of new streams. The default is
+     * {@value #DEFAULT_BUFFER_SIZE} bytes.
+     *
+     * @param bufferSize the buffer size in bytes.
+     */
+    public static void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        Java7ZlibInputOutputStream.bufferSize = bufferSize;
+    }
+
+    /**
+     * The optional preset dictionary, see {@link Deflater#setDictionary(byte[])}.
+     */
+    private final byte[] dictionary;
+
     public Java7ZlibInputOutputStream() {
-        super("zlib");
+        this("zlib", null);
+    }
+
+    /**
+     * Create a new "zlib" based compression handler which primes the Deflater and Inflater with the given preset
+     * dictionary.
+     *
+     * @param compressionMethod the name of the compression method.
+     * @param dictionary the preset dictionary or <code>null</code>.
+     */
+    protected Java7ZlibInputOutputStream(String compressionMethod, byte[] dictionary) {
+        super(compressionMethod);
+        this.dictionary = dictionary;
     }
 
     @Override
@@ -70,64 +139,136 @@ public class Java7ZlibInputOutputStream extends XMPPInputOutputStream {
 
     @Override
     public InputStream getInputStream(InputStream inputStream) {
-        return new InflaterInputStream(inputStream, new Inflater(), 512) {
-            /**
-             * Provide a more InputStream compatible version. A return value of 1 means that it is likely to read one
-             * byte without blocking, 0 means that the system is known to block for more input.
-             * 
-             * @return 0 if no data is available, 1 otherwise
-             * @throws IOException
-             */
-            @Override
-            public int available() throws IOException {
-                /*
-                 * aSmack related remark (where KXmlParser is used):
-                 * This is one of the funny code blocks. InflaterInputStream.available violates the contract of
-                 * InputStream.available, which breaks kXML2.
-                 * 
-                 * I'm not sure who's to blame, oracle/sun for a broken api or the google guys for mixing a sun bug with
-                 * a xml reader that can't handle it....
-                 * 
-                 * Anyway, this simple if breaks suns distorted reality, but helps to use the api as intended.
-                 */
-                if (inf.needsInput()) {
-                    return 0;
-                }
-                return super.available();
-            }
-        };
+        return new ZlibInputStream(inputStream, bufferSize, dictionary);
     }
 
     @Override
     public OutputStream getOutputStream(OutputStream outputStream) {
-        final int flushMethodInt;
+        final int flushMode;
         if (flushMethod == FlushMethod.SYNC_FLUSH) {
-            flushMethodInt = SYNC_FLUSH_INT;
+            flushMode = Deflater.SYNC_FLUSH;
         } else {
-            flushMethodInt = FULL_FLUSH_INT;
+            flushMode = Deflater.FULL_FLUSH;
+        }
+        final Deflater deflater = DeflaterPool.acquire(compressionLevel, compressionStrategy);
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        return new ZlibOutputStream(outputStream, deflater, bufferSize, flushMode);
+    }
+
+    private static final class ZlibInputStream extends InflaterInputStream {
+        private final byte[] dictionary;
+        private boolean closed;
+
+        private ZlibInputStream(InputStream inputStream, int bufferSize, byte[] dictionary) {
+            super(inputStream, new Inflater(), bufferSize);
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * Provide a more InputStream compatible version. A return value of 1 means that it is likely to read one
+         * byte without blocking, 0 means that the system is known to block for more input.
+         * 
+         * @return 0 if no data is available, 1 otherwise
+         * @throws IOException
+         */
+        @Override
+        public int available() throws IOException {
+            /*
+             * aSmack related remark (where KXmlParser is used):
+             * This is one of the funny code blocks. InflaterInputStream.available violates the contract of
+             * InputStream.available, which breaks kXML2.
+             * 
+             * I'm not sure who's to blame, oracle/sun for a broken api or the google guys for mixing a sun bug with
+             * a xml reader that can't handle it....
+             * 
+             * Anyway, this simple if breaks suns distorted reality, but helps to use the api as intended.
+             */
+            if (inf.needsInput()) {
+                return 0;
+            }
+            return super.available();
         }
-        return new DeflaterOutputStream(outputStream, new Deflater(compressionLevel)) {
-            @Override
-            public void flush() throws IOException {
-                if (!supported) {
-                    super.flush();
-                    return;
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            // InflaterInputStream signals that a preset dictionary is required by returning -1.
+            while (read == -1 && inf.needsDictionary()) {
+                if (dictionary == null) {
+                    throw new IOException("Compressed stream requires a preset dictionary");
                 }
                 try {
-                    int count;
-                    while ((count = (Integer) method.invoke(def, buf, 0, buf.length, flushMethodInt)) != 0) {
-                        out.write(buf, 0, count);
-                    }
-                } catch (IllegalArgumentException e) {
-                    throw new IOException("Can't flush");
-                } catch (IllegalAccessException e) {
-                    throw new IOException("Can't flush");
-                } catch (InvocationTargetException e) {
-                    throw new IOException("Can't flush");
+                    inf.setDictionary(dictionary);
                 }
-                super.flush();
+                catch (IllegalArgumentException e) {
+                    throw new IOException("Compressed stream requires a different preset dictionary", e);
+                }
+                read = super.read(b, off, len);
             }
-        };
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // Free the native memory of the Inflater right away, instead of waiting for its finalization.
+            inf.end();
+            in.close();
+        }
     }
 
+    private static final class ZlibOutputStream extends DeflaterOutputStream {
+        private final int flushMode;
+        private boolean closed;
+
+        private ZlibOutputStream(OutputStream outputStream, Deflater deflater, int bufferSize, int flushMode) {
+            super(outputStream, deflater, bufferSize);
+            this.flushMode = flushMode;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            super.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            ensureOpen();
+            if (!supported) {
+                super.flush();
+                return;
+            }
+            int count;
+            while ((count = def.deflate(buf, 0, buf.length, flushMode)) != 0) {
+                out.write(buf, 0, count);
+            }
+            out.flush();
+        }
+
+        /**
+         * Close this stream and return the Deflater to the {@link DeflaterPool}. The compressed stream is not
+         * finished, as this stream is only closed once the underlying connection is gone.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            DeflaterPool.release(def);
+            out.close();
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+    }
 }
@@ -0,0 +1,112 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.metrics;
+
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.UnparseableStanza;
+import org.jivesoftware.smack.iqrequest.IQRequestHandler;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Stanza;
+
+/**
+ * The AbstractConnectionMetrics class provides an empty implementation for all methods defined by the
+ * {@link ConnectionMetrics} interface. This is a convenience class which should be used in case you do not need to
+ * implement all methods.
+ */
+public class AbstractConnectionMetrics implements ConnectionMetrics {
+
+    /**
+     * Connection metrics which discard everything. This is the default of every connection.
+     */
+    public static final ConnectionMetrics NO_OP = new AbstractConnectionMetrics();
+
+    @Override
+    public void stanzaReceived(Stanza stanza) {
+        // do nothing
+    }
+
+    @Override
+    public void stanzaSent(Stanza stanza) {
+        // do nothing
+    }
+
+    @Override
+    public void bytesReceived(int count) {
+        // do nothing
+    }
+
+    @Override
+    public void bytesSent(int count) {
+        // do nothing
+    }
+
+    @Override
+    public void writerQueueSize(int size) {
+        // do nothing
+    }
+
+    @Override
+    public void unacknowledgedStanzas(int count) {
+        // do nothing
+    }
+
+    @Override
+    public void stanzaParsed(Stanza stanza, long nanos) {
+        // do nothing
+    }
+
+    @Override
+    public void stanzaParsingFailed(UnparseableStanza unparseableStanza) {
+        // do nothing
+    }
+
+    @Override
+    public void stanzaListenerInvoked(StanzaListener listener, Stanza stanza, long nanos) {
+        // do nothing
+    }
+
+    @Override
+    public void iqRequestHandlerInvoked(IQRequestHandler handler, IQ request, long nanos) {
+        // do nothing
+    }
+
+    @Override
+    public void iqResponseReceived(IQ response, long nanos) {
+        // do nothing
+    }
+
+    @Override
+    public void reconnectionAttempted() {
+        // do nothing
+    }
+
+    @Override
+    public void reconnectionSuccessful() {
+        // do nothing
+    }
+
+    @Override
+    public void slowListenerDetected(Object listenerOrHandler, Stanza stanza, long nanos) {
+        // do nothing
+    }
+
+    @Override
+    public void tlsHandshakeCompleted(long nanos, boolean resumed) {
+        // do nothing
+    }
+
+}
@@ -0,0 +1,152 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.metrics;
+
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.UnparseableStanza;
+import org.jivesoftware.smack.iqrequest.IQRequestHandler;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Stanza;
+
+/**
+ * Receives metrics about the operation of a connection.
+ * <p>
+ * Implementations are invoked from Smack's reader, writer and listener threads, often for every stanza. They must
+ * therefore be thread-safe, must not block and should return as fast as possible. {@link AbstractConnectionMetrics}
+ * provides an empty implementation of all methods, {@link SimpleConnectionMetrics} a ready to use implementation
+ * based on counters and latency histograms. An implementation which is backed by e.g. JDK Flight Recorder events or
+ * the metrics library of your choice is easily possible.
+ * </p>
+ *
+ * @see org.jivesoftware.smack.AbstractXMPPConnection#setConnectionMetrics(ConnectionMetrics)
+ */
+public interface ConnectionMetrics {
+
+    /**
+     * Invoked for every stanza received by the connection.
+     *
+     * @param stanza the received stanza.
+     */
+    public void stanzaReceived(Stanza stanza);
+
+    /**
+     * Invoked for every stanza put into the outgoing queue of the connection.
+     *
+     * @param stanza the sent stanza.
+     */
+    public void stanzaSent(Stanza stanza);
+
+    /**
+     * Invoked when bytes have been read from the connection. The count is taken at the application layer, after
+     * TLS decryption but before decompression, and does therefore not include the TLS record overhead.
+     *
+     * @param count the number of bytes read.
+     */
+    public void bytesReceived(int count);
+
+    /**
+     * Invoked when bytes have been written to the connection. The count is taken at the application layer, after
+     * compression but before TLS encryption, and does therefore not include the TLS record overhead.
+     *
+     * @param count the number of bytes written.
+     */
+    public void bytesSent(int count);
+
+    /**
+     * Reports the number of elements waiting in the writer queue of the connection.
+     *
+     * @param size the current size of the writer queue.
+     */
+    public void writerQueueSize(int size);
+
+    /**
+     * Reports the number of stanzas not yet acknowledged by the server via Stream Management (XEP-198).
+     *
+     * @param count the current number of unacknowledged stanzas.
+     */
+    public void unacknowledgedStanzas(int count);
+
+    /**
+     * Invoked after a stanza has been parsed.
+     *
+     * @param stanza the parsed stanza.
+     * @param nanos the time it took to parse the stanza in nanoseconds.
+     */
+    public void stanzaParsed(Stanza stanza, long nanos);
+
+    /**
+     * Invoked if an incoming stanza could not be parsed.
+     *
+     * @param unparseableStanza the unparseable stanza.
+     */
+    public void stanzaParsingFailed(UnparseableStanza unparseableStanza);
+
+    /**
+     * Invoked after a stanza listener, synchronous or asynchronous, processed an incoming stanza.
+     *
+     * @param listener the invoked listener.
+     * @param stanza the stanza processed by the listener.
+     * @param nanos the execution time of the listener in nanoseconds.
+     */
+    public void stanzaListenerInvoked(StanzaListener listener, Stanza stanza, long nanos);
+
+    /**
+     * Invoked after an IQ request handler processed an incoming IQ request.
+     *
+     * @param handler the invoked handler.
+     * @param request the IQ request processed by the handler.
+     * @param nanos the execution time of the handler in nanoseconds.
+     */
+    public void iqRequestHandlerInvoked(IQRequestHandler handler, IQ request, long nanos);
+
+    /**
+     * Invoked when the response to an IQ request sent by this connection was received.
+     *
+     * @param response the IQ response of type 'result' or 'error'.
+     * @param nanos the round-trip time in nanoseconds.
+     */
+    public void iqResponseReceived(IQ response, long nanos);
+
+    /**
+     * Invoked when an automatic reconnection attempt is started.
+     */
+    public void reconnectionAttempted();
+
+    /**
+     * Invoked when the connection was reconnected successfully.
+     */
+    public void reconnectionSuccessful();
+
+    /**
+     * Invoked when a stanza listener or IQ request handler exceeded the slow listener threshold of the connection.
+     *
+     * @param listenerOrHandler the {@link StanzaListener} or {@link IQRequestHandler}.
+     * @param stanza the stanza which was processed.
+     * @param nanos the execution time in nanoseconds.
+     * @see org.jivesoftware.smack.AbstractXMPPConnection#setSlowListenerThreshold(long)
+     */
+    public void slowListenerDetected(Object listenerOrHandler, Stanza stanza, long nanos);
+
+    /**
+     * Invoked when a TLS handshake was completed.
+     *
+     * @param nanos the duration of the handshake in nanoseconds.
+     * @param resumed true if a previous TLS session was resumed.
+     */
+    public void tlsHandshakeCompleted(long nanos, boolean resumed);
+
+}
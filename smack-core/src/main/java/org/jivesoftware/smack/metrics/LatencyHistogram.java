@@ -0,0 +1,165 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies with exponentially growing buckets.
+ * <p>
+ * Bucket 0 counts latencies below one microsecond, bucket <i>i</i> counts latencies of at least 2<sup>i-1</sup> and
+ * below 2<sup>i</sup> microseconds. The last bucket also counts all larger latencies. This gives a resolution which is
+ * good enough to reason about e.g. IQ round-trip times, while recording a value is just a few atomic increments.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of buckets. The last bucket starts at 2^30 microseconds, which is about 18 minutes.
+     */
+    public static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record the given latency.
+     *
+     * @param nanos the latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketFor(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long currentMax;
+        do {
+            currentMax = maxNanos.get();
+        } while (nanos > currentMax && !maxNanos.compareAndSet(currentMax, nanos));
+    }
+
+    static int bucketFor(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Get the number of recorded latencies.
+     *
+     * @return the number of recorded latencies.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the number of recorded latencies in the given bucket.
+     *
+     * @param bucket the bucket index.
+     * @return the number of latencies in the bucket.
+     */
+    public long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * Get the exclusive upper bound of the given bucket in microseconds.
+     *
+     * @param bucket the bucket index.
+     * @return the upper bound of the bucket in microseconds.
+     */
+    public static long getBucketUpperBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * Get the mean of all recorded latencies in nanoseconds.
+     *
+     * @return the mean latency in nanoseconds or 0 if nothing was recorded.
+     */
+    public long getMeanNanos() {
+        long currentCount = count.get();
+        if (currentCount == 0) {
+            return 0;
+        }
+        return totalNanos.get() / currentCount;
+    }
+
+    /**
+     * Get the largest recorded latency in nanoseconds.
+     *
+     * @return the maximum latency in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Get an upper bound estimate of the given percentile. The returned value is the upper bound of the bucket the
+     * percentile falls in.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the estimated percentile in microseconds or 0 if nothing was recorded.
+     */
+    public long getPercentileMicros(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long currentCount = count.get();
+        if (currentCount == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(currentCount * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold) {
+                return getBucketUpperBoundMicros(i);
+            }
+        }
+        return getBucketUpperBoundMicros(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Reset this histogram.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram(count=" + getCount() + ", mean=" + TimeUnit.NANOSECONDS.toMicros(getMeanNanos())
+                        + "us, p50<" + getPercentileMicros(50) + "us, p99<" + getPercentileMicros(99) + "us, max="
+                        + TimeUnit.NANOSECONDS.toMicros(getMaxNanos()) + "us)";
+    }
+}
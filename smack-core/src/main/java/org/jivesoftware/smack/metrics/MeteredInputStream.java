@@ -0,0 +1,53 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream reporting the number of read bytes to {@link ConnectionMetrics}.
+ */
+public class MeteredInputStream extends FilterInputStream {
+
+    private final ConnectionMetrics metrics;
+
+    public MeteredInputStream(InputStream inputStream, ConnectionMetrics metrics) {
+        super(inputStream);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int res = super.read();
+        if (res >= 0) {
+            metrics.bytesReceived(1);
+        }
+        return res;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = in.read(b, off, len);
+        if (count > 0) {
+            metrics.bytesReceived(count);
+        }
+        return count;
+    }
+
+}
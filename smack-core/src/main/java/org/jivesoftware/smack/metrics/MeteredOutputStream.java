@@ -0,0 +1,48 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream reporting the number of written bytes to {@link ConnectionMetrics}.
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+
+    private final ConnectionMetrics metrics;
+
+    public MeteredOutputStream(OutputStream outputStream, ConnectionMetrics metrics) {
+        super(outputStream);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        metrics.bytesSent(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // Don't use FilterOutputStream.write(byte[], int, int), as it writes byte by byte.
+        out.write(b, off, len);
+        metrics.bytesSent(len);
+    }
+
+}
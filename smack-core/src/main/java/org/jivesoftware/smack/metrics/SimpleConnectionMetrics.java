@@ -0,0 +1,259 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.UnparseableStanza;
+import org.jivesoftware.smack.iqrequest.IQRequestHandler;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.Stanza;
+
+/**
+ * Connection metrics based on atomic counters and {@link LatencyHistogram}s.
+ * <p>
+ * A single instance may be shared by multiple connections, the values are then aggregated over all of them.
+ * </p>
+ * <pre>
+ * {@code
+ * SimpleConnectionMetrics metrics = new SimpleConnectionMetrics();
+ * connection.setConnectionMetrics(metrics);
+ * ...
+ * LOGGER.info("IQ round-trip times: " + metrics.getIqRoundTripTimes());
+ * }
+ * </pre>
+ */
+public class SimpleConnectionMetrics implements ConnectionMetrics {
+
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicLong presencesReceived = new AtomicLong();
+    private final AtomicLong iqsReceived = new AtomicLong();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong presencesSent = new AtomicLong();
+    private final AtomicLong iqsSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicInteger writerQueueSize = new AtomicInteger();
+    private final AtomicInteger maxWriterQueueSize = new AtomicInteger();
+    private final AtomicInteger unacknowledgedStanzas = new AtomicInteger();
+    private final AtomicLong parsingFailures = new AtomicLong();
+    private final AtomicLong reconnectionAttempts = new AtomicLong();
+    private final AtomicLong reconnectionSuccesses = new AtomicLong();
+    private final AtomicLong slowListenerInvocations = new AtomicLong();
+    private final AtomicLong tlsSessionsResumed = new AtomicLong();
+
+    private final LatencyHistogram parseTimes = new LatencyHistogram();
+    private final LatencyHistogram listenerExecutionTimes = new LatencyHistogram();
+    private final LatencyHistogram iqRequestHandlerExecutionTimes = new LatencyHistogram();
+    private final LatencyHistogram iqRoundTripTimes = new LatencyHistogram();
+    private final LatencyHistogram tlsHandshakeTimes = new LatencyHistogram();
+
+    @Override
+    public void stanzaReceived(Stanza stanza) {
+        count(stanza, messagesReceived, presencesReceived, iqsReceived);
+    }
+
+    @Override
+    public void stanzaSent(Stanza stanza) {
+        count(stanza, messagesSent, presencesSent, iqsSent);
+    }
+
+    private static void count(Stanza stanza, AtomicLong messages, AtomicLong presences, AtomicLong iqs) {
+        if (stanza instanceof Message) {
+            messages.incrementAndGet();
+        } else if (stanza instanceof Presence) {
+            presences.incrementAndGet();
+        } else if (stanza instanceof IQ) {
+            iqs.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void bytesReceived(int count) {
+        bytesReceived.addAndGet(count);
+    }
+
+    @Override
+    public void bytesSent(int count) {
+        bytesSent.addAndGet(count);
+    }
+
+    @Override
+    public void writerQueueSize(int size) {
+        writerQueueSize.set(size);
+        int currentMax;
+        do {
+            currentMax = maxWriterQueueSize.get();
+        } while (size > currentMax && !maxWriterQueueSize.compareAndSet(currentMax, size));
+    }
+
+    @Override
+    public void unacknowledgedStanzas(int count) {
+        unacknowledgedStanzas.set(count);
+    }
+
+    @Override
+    public void stanzaParsed(Stanza stanza, long nanos) {
+        parseTimes.record(nanos);
+    }
+
+    @Override
+    public void stanzaParsingFailed(UnparseableStanza unparseableStanza) {
+        parsingFailures.incrementAndGet();
+    }
+
+    @Override
+    public void stanzaListenerInvoked(StanzaListener listener, Stanza stanza, long nanos) {
+        listenerExecutionTimes.record(nanos);
+    }
+
+    @Override
+    public void iqRequestHandlerInvoked(IQRequestHandler handler, IQ request, long nanos) {
+        iqRequestHandlerExecutionTimes.record(nanos);
+    }
+
+    @Override
+    public void iqResponseReceived(IQ response, long nanos) {
+        iqRoundTripTimes.record(nanos);
+    }
+
+    @Override
+    public void reconnectionAttempted() {
+        reconnectionAttempts.incrementAndGet();
+    }
+
+    @Override
+    public void reconnectionSuccessful() {
+        reconnectionSuccesses.incrementAndGet();
+    }
+
+    @Override
+    public void slowListenerDetected(Object listenerOrHandler, Stanza stanza, long nanos) {
+        slowListenerInvocations.incrementAndGet();
+    }
+
+    @Override
+    public void tlsHandshakeCompleted(long nanos, boolean resumed) {
+        tlsHandshakeTimes.record(nanos);
+        if (resumed) {
+            tlsSessionsResumed.incrementAndGet();
+        }
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived.get();
+    }
+
+    public long getPresencesReceived() {
+        return presencesReceived.get();
+    }
+
+    public long getIqsReceived() {
+        return iqsReceived.get();
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    public long getPresencesSent() {
+        return presencesSent.get();
+    }
+
+    public long getIqsSent() {
+        return iqsSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public int getWriterQueueSize() {
+        return writerQueueSize.get();
+    }
+
+    public int getMaxWriterQueueSize() {
+        return maxWriterQueueSize.get();
+    }
+
+    public int getUnacknowledgedStanzas() {
+        return unacknowledgedStanzas.get();
+    }
+
+    public long getParsingFailures() {
+        return parsingFailures.get();
+    }
+
+    public long getReconnectionAttempts() {
+        return reconnectionAttempts.get();
+    }
+
+    public long getReconnectionSuccesses() {
+        return reconnectionSuccesses.get();
+    }
+
+    public long getSlowListenerInvocations() {
+        return slowListenerInvocations.get();
+    }
+
+    public long getTlsSessionsResumed() {
+        return tlsSessionsResumed.get();
+    }
+
+    public LatencyHistogram getTlsHandshakeTimes() {
+        return tlsHandshakeTimes;
+    }
+
+    public LatencyHistogram getParseTimes() {
+        return parseTimes;
+    }
+
+    public LatencyHistogram getListenerExecutionTimes() {
+        return listenerExecutionTimes;
+    }
+
+    public LatencyHistogram getIqRequestHandlerExecutionTimes() {
+        return iqRequestHandlerExecutionTimes;
+    }
+
+    public LatencyHistogram getIqRoundTripTimes() {
+        return iqRoundTripTimes;
+    }
+
+    @Override
+    public String toString() {
+        return "SimpleConnectionMetrics(received: " + getMessagesReceived() + " messages, " + getPresencesReceived()
+                        + " presences, " + getIqsReceived() + " IQs, " + getBytesReceived() + " bytes; sent: "
+                        + getMessagesSent() + " messages, " + getPresencesSent() + " presences, " + getIqsSent()
+                        + " IQs, " + getBytesSent() + " bytes; writer queue size: " + getWriterQueueSize()
+                        + " (max " + getMaxWriterQueueSize() + "); unacknowledged stanzas: "
+                        + getUnacknowledgedStanzas() + "; parsing failures: " + getParsingFailures()
+                        + "; reconnections: " + getReconnectionSuccesses() + '/' + getReconnectionAttempts()
+                        + "; slow listener invocations: " + getSlowListenerInvocations()
+                        + "; TLS handshakes: " + tlsHandshakeTimes.getCount() + " (" + getTlsSessionsResumed()
+                        + " resumed)"
+                        + "; IQ round-trip times: " + iqRoundTripTimes + ')';
+    }
+}
@@ -20,6 +20,10 @@ package org.jivesoftware.smack.provider;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.jivesoftware.smack.SmackConfiguration;
@@ -310,6 +314,37 @@ public final class ProviderManager {
         streamFeatureProviders.remove(key);
     }
 
+    /**
+     * Get the element names and namespaces of all registered IQ, extension and stream feature providers.
+     *
+     * @return a sorted map from the namespace to the sorted set of element names registered for the namespace.
+     */
+    public static SortedMap<String, SortedSet<String>> getRegisteredElements() {
+        SortedMap<String, SortedSet<String>> elements = new TreeMap<>();
+        addElements(iqProviders, elements);
+        addElements(extensionProviders, elements);
+        addElements(streamFeatureProviders, elements);
+        return elements;
+    }
+
+    private static void addElements(Map<String, ?> providers, SortedMap<String, SortedSet<String>> elements) {
+        for (String key : providers.keySet()) {
+            // See XmppStringUtils.generateKey(String, String).
+            int separator = key.indexOf('\t');
+            if (separator < 0) {
+                continue;
+            }
+            String elementName = key.substring(0, separator);
+            String namespace = key.substring(separator + 1);
+            SortedSet<String> elementNames = elements.get(namespace);
+            if (elementNames == null) {
+                elementNames = new TreeSet<>();
+                elements.put(namespace, elementNames);
+            }
+            elementNames.add(elementName);
+        }
+    }
+
     private static String getKey(String elementName, String namespace) {
         return XmppStringUtils.generateKey(elementName, namespace);
     }
@@ -0,0 +1,58 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.sasl;
+
+import org.jivesoftware.smack.util.Objects;
+
+/**
+ * A token for fast re-authentication together with the token based SASL mechanism it is used with. The token is
+ * passed as password to the mechanism.
+ *
+ * @see SASLTokenProvider
+ */
+public final class SASLToken {
+
+    private final SASLMechanism mechanism;
+    private final String token;
+
+    /**
+     * Create a new re-authentication token.
+     *
+     * @param mechanism the SASL mechanism the token is used with. Only used as prototype, see
+     *        {@link SASLMechanism#instanceForAuthentication(org.jivesoftware.smack.XMPPConnection,
+     *        org.jivesoftware.smack.ConnectionConfiguration)}.
+     * @param token the token.
+     */
+    public SASLToken(SASLMechanism mechanism, String token) {
+        this.mechanism = Objects.requireNonNull(mechanism, "Mechanism must not be null");
+        this.token = Objects.requireNonNull(token, "Token must not be null");
+    }
+
+    public SASLMechanism getMechanism() {
+        return mechanism;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    @Override
+    public String toString() {
+        // Do not leak the token.
+        return "SASLToken(" + mechanism.getName() + ')';
+    }
+}
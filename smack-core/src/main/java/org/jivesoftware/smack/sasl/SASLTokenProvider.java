@@ -0,0 +1,62 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.sasl;
+
+import org.jxmpp.jid.DomainBareJid;
+
+/**
+ * A provider of tokens for fast re-authentication.
+ * <p>
+ * Computing the keys of password based SASL mechanisms, like SCRAM, is deliberately expensive. If the server supports
+ * a token based SASL mechanism, then a re-authentication token obtained after a successful login can be used to
+ * authenticate subsequent connections, e.g. on reconnect, instead. How the token is obtained from the server, and
+ * how and where it is stored, is up to the implementation. If the server rejects the token, then Smack falls back to
+ * the regular SASL mechanism selection within the same stream.
+ * </p>
+ *
+ * @see org.jivesoftware.smack.ConnectionConfiguration.Builder#setSaslTokenProvider(SASLTokenProvider)
+ */
+public interface SASLTokenProvider {
+
+    /**
+     * Get the re-authentication token of the given user.
+     *
+     * @param username the username that is authenticating with the server.
+     * @param xmppServiceDomain the XMPP service domain of the server.
+     * @return the token or <code>null</code> if there is none.
+     */
+    SASLToken getToken(String username, DomainBareJid xmppServiceDomain);
+
+    /**
+     * Invoked if the server rejected the given token. Implementations should forget the token.
+     *
+     * @param username the username that tried to authenticate.
+     * @param xmppServiceDomain the XMPP service domain of the server.
+     * @param token the rejected token.
+     */
+    void tokenRejected(String username, DomainBareJid xmppServiceDomain, SASLToken token);
+
+    /**
+     * Invoked after SASL authentication was successful.
+     *
+     * @param username the username that authenticated.
+     * @param xmppServiceDomain the XMPP service domain of the server.
+     * @param mechanism the name of the used SASL mechanism.
+     * @param tokenUsed true if a token provided by this provider was used.
+     */
+    void authenticated(String username, DomainBareJid xmppServiceDomain, String mechanism, boolean tokenUsed);
+}
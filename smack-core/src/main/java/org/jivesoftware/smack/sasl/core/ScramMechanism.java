@@ -32,7 +32,6 @@ import org.jivesoftware.smack.util.ByteUtils;
 import org.jivesoftware.smack.util.SHA1;
 import org.jivesoftware.smack.util.StringUtils;
 import org.jivesoftware.smack.util.stringencoder.Base64;
-import org.jxmpp.util.cache.Cache;
 import org.jxmpp.util.cache.LruCache;
 
 public abstract class ScramMechanism extends SASLMechanism {
@@ -49,7 +48,65 @@ public abstract class ScramMechanism extends SASLMechanism {
         }
     };
 
-    private static final Cache<String, Keys> CACHE = new LruCache<String, Keys>(10);
+    /**
+     * The default number of cached SCRAM keys.
+     */
+    public static final int DEFAULT_KEY_CACHE_SIZE = 100;
+
+    /**
+     * A random per-process secret used to derive the key cache's keys, so that the cache does not hold plaintext
+     * passwords, nor values which could be used for an offline dictionary attack without knowing the secret.
+     */
+    private static final byte[] KEY_CACHE_SECRET = new byte[32];
+
+    static {
+        new SecureRandom().nextBytes(KEY_CACHE_SECRET);
+    }
+
+    private static final LruCache<String, Keys> CACHE = new LruCache<String, Keys>(DEFAULT_KEY_CACHE_SIZE);
+
+    private static long keyCacheExpiration;
+
+    /**
+     * Set the maximum number of ClientKey/ServerKey pairs cached for later reauthentication. Avoiding to re-compute
+     * the keys saves the costly Hi() (PBKDF2) function on reconnects. Set to 0 to disable the cache. Shrinking the
+     * cache clears it. The default is {@value #DEFAULT_KEY_CACHE_SIZE}.
+     *
+     * @param size the maximum number of cached keys.
+     */
+    public static void setKeyCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative");
+        }
+        synchronized (CACHE) {
+            if (size < CACHE.getMaxCacheSize()) {
+                CACHE.clear();
+            }
+            CACHE.setMaxCacheSize(size);
+        }
+    }
+
+    /**
+     * Set the time in milliseconds after which a cached ClientKey/ServerKey pair is evicted. Use 0, the default, to
+     * only evict keys once the cache is full.
+     *
+     * @param expiration the expiration time in milliseconds.
+     */
+    public static void setKeyCacheExpiration(long expiration) {
+        if (expiration < 0) {
+            throw new IllegalArgumentException("expiration must not be negative");
+        }
+        keyCacheExpiration = expiration;
+    }
+
+    /**
+     * Remove all cached ClientKey/ServerKey pairs.
+     */
+    public static void clearKeyCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
 
     private final ScramHmac scramHmac;
 
@@ -171,11 +228,9 @@ public abstract class ScramMechanism extends SASLMechanism {
 
             // RFC 5802 § 5.1 "Note that a client implementation MAY cache ClientKey&ServerKey … for later reauthentication …
             // as it is likely that the server is going to advertise the same salt value upon reauthentication."
-            // Note that we also mangle the mechanism's name into the cache key, since the cache is used by multiple
-            // mechanisms.
-            final String cacheKey = password + ',' + salt + ',' + getName();
+            final String cacheKey = getKeyCacheKey(password, salt, iterations);
             byte[] serverKey, clientKey;
-            Keys keys = CACHE.lookup(cacheKey);
+            Keys keys = lookupKeys(cacheKey);
             if (keys == null) {
                 // SaltedPassword := Hi(Normalize(password), salt, i)
                 byte[] saltedPassword = hi(saslPrep(password), Base64.decode(salt), iterations);
@@ -187,7 +242,11 @@ public abstract class ScramMechanism extends SASLMechanism {
                 clientKey = hmac(saltedPassword, CLIENT_KEY_BYTES);
 
                 keys = new Keys(clientKey, serverKey);
-                CACHE.put(cacheKey, keys);
+                synchronized (CACHE) {
+                    if (CACHE.getMaxCacheSize() > 0) {
+                        CACHE.put(cacheKey, keys);
+                    }
+                }
             }
             else {
                 serverKey = keys.serverKey;
@@ -225,6 +284,41 @@ public abstract class ScramMechanism extends SASLMechanism {
         return null;
     }
 
+    /**
+     * Get the key under which the ClientKey/ServerKey pair derived from the given values is cached. The password is
+     * only included in the form of a HMAC keyed with a random per-process secret.
+     * <p>
+     * This method is package-private for unit testing purposes.
+     * </p>
+     *
+     * @param password the password.
+     * @param salt the Base64 encoded salt announced by the server.
+     * @param iterations the iteration count announced by the server.
+     * @return the cache key.
+     * @throws SmackException
+     */
+    String getKeyCacheKey(String password, String salt, int iterations) throws SmackException {
+        byte[] passwordMac = hmac(KEY_CACHE_SECRET, ByteUtils.concact(toBytes(password), toBytes(',' + salt)));
+        // Note that we also mangle the mechanism's name into the cache key, since the cache is used by multiple
+        // mechanisms.
+        return getName() + ',' + iterations + ',' + Base64.encodeToString(passwordMac);
+    }
+
+    private static Keys lookupKeys(String cacheKey) {
+        synchronized (CACHE) {
+            Keys keys = CACHE.lookup(cacheKey);
+            if (keys == null) {
+                return null;
+            }
+            final long expiration = keyCacheExpiration;
+            if (expiration > 0 && System.currentTimeMillis() - keys.creationTimestamp > expiration) {
+                CACHE.remove(cacheKey);
+                return null;
+            }
+            return keys;
+        }
+    }
+
     private final String getGS2Header() {
         String authzidPortion = "";
         if (authorizationId != null) {
@@ -407,6 +501,7 @@ public abstract class ScramMechanism extends SASLMechanism {
     private static class Keys {
         private final byte[] clientKey;
         private final byte[] serverKey;
+        private final long creationTimestamp = System.currentTimeMillis();
 
         public Keys(byte[] clientKey, byte[] serverKey) {
             this.clientKey = clientKey;
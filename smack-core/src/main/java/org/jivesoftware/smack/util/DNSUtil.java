@@ -18,8 +18,10 @@ package org.jivesoftware.smack.util;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.logging.Level;
@@ -131,9 +133,30 @@ public class DNSUtil {
      *      XMPP server can be reached at for the specified domain.
      */
     public static List<HostAddress> resolveXMPPServiceDomain(String domain, List<HostAddress> failedAddresses, DnssecMode dnssecMode) {
+        return resolveXMPPServiceDomain(domain, failedAddresses, dnssecMode, false);
+    }
+
+    /**
+     * Returns a list of HostAddresses under which the specified XMPP server can be reached at for client-to-server
+     * communication. If <code>directTls</code> is true, then the "_xmpps-client._tcp.example.com" SRV records, which
+     * announce endpoints where TLS is established immediately after the TCP connection (XEP-0368), are looked up in
+     * addition to the "_xmpp-client._tcp.example.com" records. The records of both kinds are sorted together by their
+     * priority and weight, the resulting host addresses of the first kind are marked with
+     * {@link HostAddress#isDirectTls()}.
+     *
+     * @param domain the domain.
+     * @param failedAddresses on optional list that will be populated with host addresses that failed to resolve.
+     * @param dnssecMode the DNSSEC mode.
+     * @param directTls true to include Direct TLS endpoints.
+     * @return List of HostAddress, which encompasses the hostname and port that the
+     *      XMPP server can be reached at for the specified domain.
+     * @see <a href="https://xmpp.org/extensions/xep-0368.html">XEP-0368: SRV records for XMPP over TLS</a>
+     */
+    public static List<HostAddress> resolveXMPPServiceDomain(String domain, List<HostAddress> failedAddresses,
+                    DnssecMode dnssecMode, boolean directTls) {
         domain = idnaTransformer.transform(domain);
 
-        return resolveDomain(domain, DomainType.Client, failedAddresses, dnssecMode);
+        return resolveDomain(domain, DomainType.Client, failedAddresses, dnssecMode, directTls);
     }
 
     /**
@@ -153,7 +176,7 @@ public class DNSUtil {
     public static List<HostAddress> resolveXMPPServerDomain(String domain, List<HostAddress> failedAddresses, DnssecMode dnssecMode) {
         domain = idnaTransformer.transform(domain);
 
-        return resolveDomain(domain, DomainType.Server, failedAddresses, dnssecMode);
+        return resolveDomain(domain, DomainType.Server, failedAddresses, dnssecMode, false);
     }
 
     /**
@@ -161,10 +184,11 @@ public class DNSUtil {
      * @param domain the domain.
      * @param domainType the XMPP domain type, server or client.
      * @param failedAddresses a list that will be populated with host addresses that failed to resolve.
+     * @param directTls true to include the Direct TLS SRV records of client domains.
      * @return a list of resolver host addresses for this domain.
      */
     private static List<HostAddress> resolveDomain(String domain, DomainType domainType,
-                    List<HostAddress> failedAddresses, DnssecMode dnssecMode) {
+                    List<HostAddress> failedAddresses, DnssecMode dnssecMode, boolean directTls) {
         if (dnsResolver == null) {
             throw new IllegalStateException("No DNS Resolver active in Smack");
         }
@@ -185,15 +209,33 @@ public class DNSUtil {
         }
 
         List<SRVRecord> srvRecords = dnsResolver.lookupSRVRecords(srvDomain, failedAddresses, dnssecMode);
-        if (srvRecords != null && !srvRecords.isEmpty()) {
-            if (LOGGER.isLoggable(Level.FINE)) {
-                String logMessage = "Resolved SRV RR for " + srvDomain + ":";
-                for (SRVRecord r : srvRecords)
-                    logMessage += " " + r;
-                LOGGER.fine(logMessage);
+        Set<SRVRecord> directTlsRecords = Collections.emptySet();
+        if (directTls && domainType == DomainType.Client) {
+            String directTlsSrvDomain = "_xmpps-client._tcp." + domain;
+            List<SRVRecord> directTlsSrvRecords = dnsResolver.lookupSRVRecords(directTlsSrvDomain, failedAddresses,
+                            dnssecMode);
+            if (directTlsSrvRecords != null && !isServiceNotAvailable(directTlsSrvRecords)) {
+                logSrvRecords(directTlsSrvDomain, directTlsSrvRecords);
+                directTlsRecords = Collections.newSetFromMap(new IdentityHashMap<SRVRecord, Boolean>());
+                directTlsRecords.addAll(directTlsSrvRecords);
+                if (srvRecords == null || isServiceNotAvailable(srvRecords)) {
+                    srvRecords = new ArrayList<>(directTlsSrvRecords);
+                } else {
+                    srvRecords = new ArrayList<>(srvRecords);
+                    srvRecords.addAll(directTlsSrvRecords);
+                }
             }
+        }
+        if (srvRecords != null && !srvRecords.isEmpty()) {
+            logSrvRecords(srvDomain, srvRecords);
             List<HostAddress> sortedRecords = sortSRVRecords(srvRecords);
-            addresses.addAll(sortedRecords);
+            for (HostAddress sortedRecord : sortedRecords) {
+                if (directTlsRecords.contains(sortedRecord)) {
+                    sortedRecord = new HostAddress(sortedRecord.getFQDN(), sortedRecord.getPort(),
+                                    sortedRecord.getInetAddresses(), true);
+                }
+                addresses.add(sortedRecord);
+            }
         } else {
             LOGGER.info("Could not resolve DNS SRV resource records for " + srvDomain + ". Consider adding those.");
         }
@@ -216,6 +258,23 @@ public class DNSUtil {
         return addresses;
     }
 
+    private static void logSrvRecords(String srvDomain, List<SRVRecord> srvRecords) {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            String logMessage = "Resolved SRV RR for " + srvDomain + ":";
+            for (SRVRecord r : srvRecords)
+                logMessage += " " + r;
+            LOGGER.fine(logMessage);
+        }
+    }
+
+    /**
+     * Check if the given SRV records state that the service is decidedly not available, i.e. if there is precisely one
+     * SRV RR with the target "." (RFC 2782).
+     */
+    private static boolean isServiceNotAvailable(List<SRVRecord> records) {
+        return records.size() == 1 && records.get(0).getFQDN().equals(".");
+    }
+
     /**
      * Sort a given list of SRVRecords as described in RFC 2782
      * Note that we follow the RFC with one exception. In a group of the same priority, only the first entry
@@ -227,7 +286,7 @@ public class DNSUtil {
     private static List<HostAddress> sortSRVRecords(List<SRVRecord> records) {
         // RFC 2782, Usage rules: "If there is precisely one SRV RR, and its Target is "."
         // (the root domain), abort."
-        if (records.size() == 1 && records.get(0).getFQDN().equals("."))
+        if (isServiceNotAvailable(records))
             return Collections.emptyList();
 
         // sorting the records improves the performance of the bisection later
@@ -34,10 +34,24 @@ public final class SmackExecutorThreadFactory implements ThreadFactory {
         this.name = name;
     }
 
+    /**
+     * Create a new thread factory for executors shared by all connections.
+     *
+     * @param name the name of the threads.
+     */
+    public SmackExecutorThreadFactory(String name) {
+        this.connectionCounterValue = -1;
+        this.name = name;
+    }
+
     @Override
     public Thread newThread(Runnable runnable) {
         Thread thread = new Thread(runnable);
-        thread.setName("Smack-" + name + ' ' + count++ + " (" + connectionCounterValue + ")");
+        if (connectionCounterValue < 0) {
+            thread.setName("Smack-" + name + ' ' + count++);
+        } else {
+            thread.setName("Smack-" + name + ' ' + count++ + " (" + connectionCounterValue + ")");
+        }
         thread.setDaemon(true);
         return thread;
     }
@@ -0,0 +1,88 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor consisting of a fixed number of serial stripes. Tasks submitted with the same key are always run on the
+ * same stripe, and therefore in the order they were submitted, while tasks with different keys may run in parallel.
+ * Idle stripe threads time out, so an unused striped executor does not hold any threads.
+ */
+public final class StripedExecutor {
+
+    private final ThreadPoolExecutor[] stripes;
+
+    public StripedExecutor(int stripeCount, ThreadFactory threadFactory) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("stripeCount must be positive");
+        }
+        stripes = new ThreadPoolExecutor[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            ThreadPoolExecutor stripe = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), threadFactory);
+            stripe.allowCoreThreadTimeOut(true);
+            stripes[i] = stripe;
+        }
+    }
+
+    /**
+     * Run the given task on the stripe of the given key.
+     *
+     * @param key the key.
+     * @param task the task.
+     */
+    public void execute(Object key, Runnable task) {
+        getStripe(key).execute(task);
+    }
+
+    /**
+     * Get the serial executor responsible for the given key.
+     *
+     * @param key the key.
+     * @return the stripe of the key.
+     */
+    public Executor getStripe(Object key) {
+        return stripes[stripeIndex(key.hashCode(), stripes.length)];
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+
+    public void shutdownNow() {
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdownNow();
+        }
+    }
+
+    static int stripeIndex(int hashCode, int stripeCount) {
+        // Spread the higher bits, as many hash codes only differ in them.
+        int h = hashCode ^ (hashCode >>> 16);
+        return (h & Integer.MAX_VALUE) % stripeCount;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket rate limiter. The bucket holds up to <code>burst</code> tokens and is refilled with a constant rate.
+ * <p>
+ * Instead of rejecting callers when the bucket is empty, {@link #reserve()} hands out future tokens and returns the
+ * time the caller has to wait until its token becomes available. This spreads a large number of simultaneous requests,
+ * e.g. reconnection attempts after a server restart, evenly over time.
+ * </p>
+ */
+public final class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double burst;
+
+    /**
+     * The number of available tokens at {@link #lastRefill}. Negative if future tokens have been reserved.
+     */
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     * Create a new token bucket, which is initially full.
+     *
+     * @param tokensPerSecond the refill rate.
+     * @param burst the maximum number of tokens.
+     */
+    public TokenBucket(double tokensPerSecond, int burst) {
+        if (tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("tokensPerSecond must be positive");
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take a token from the bucket, reserving a future one if the bucket is empty.
+     *
+     * @return the time in nanoseconds until the reserved token becomes available, '0' if it is available now.
+     */
+    public long reserve() {
+        return reserve(System.nanoTime());
+    }
+
+    synchronized long reserve(long now) {
+        final long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * tokensPerNano);
+            lastRefill = now;
+        }
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / tokensPerNano);
+    }
+}
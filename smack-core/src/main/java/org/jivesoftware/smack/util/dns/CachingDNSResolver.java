@@ -0,0 +1,364 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util.dns;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.jivesoftware.smack.ConnectionConfiguration.DnssecMode;
+import org.jivesoftware.smack.util.Async;
+import org.jivesoftware.smack.util.Objects;
+
+import org.jxmpp.util.cache.LruCache;
+
+/**
+ * A DNS resolver caching the results of another resolver. The cache is shared by all connections using this resolver,
+ * so that many connections to the same XMPP service domain, e.g. when they reconnect after a server restart, only
+ * cause a single DNS lookup.
+ * <p>
+ * SRV results are cached for the TTL of the records, if the resolver provides it (see {@link SRVRecord#getTtl()}),
+ * which currently only the dnsjava based resolver does. All other results, including A/AAAA lookups, are cached for a
+ * configurable default TTL, since the resolvers do not report their TTL. Failed lookups are cached for the
+ * negative TTL. Expired positive results are still served for the stale-while-revalidate period, while the result is
+ * refreshed in the background. Concurrent lookups of the same name which miss the cache are coalesced into one lookup.
+ * </p>
+ * <pre>
+ * {@code
+ * DNSUtil.setDNSResolver(new CachingDNSResolver(DNSUtil.getDNSResolver()));
+ * }
+ * </pre>
+ */
+public class CachingDNSResolver extends DNSResolver {
+
+    private final DNSResolver resolver;
+
+    private final LruCache<String, CacheEntry<?>> cache;
+
+    private final ConcurrentHashMap<String, Object> lookupLocks = new ConcurrentHashMap<>();
+
+    private volatile long defaultTtl = TimeUnit.SECONDS.toNanos(60);
+    private volatile long maxTtl = TimeUnit.HOURS.toNanos(1);
+    private volatile long negativeTtl = TimeUnit.SECONDS.toNanos(30);
+    private volatile long staleWhileRevalidate = TimeUnit.SECONDS.toNanos(60);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a new caching DNS resolver with a maximum of 1000 cache entries.
+     *
+     * @param resolver the resolver performing the actual lookups.
+     */
+    public CachingDNSResolver(DNSResolver resolver) {
+        this(resolver, 1000);
+    }
+
+    /**
+     * Create a new caching DNS resolver.
+     *
+     * @param resolver the resolver performing the actual lookups.
+     * @param maxEntries the maximum number of cache entries.
+     */
+    public CachingDNSResolver(DNSResolver resolver, int maxEntries) {
+        super(Objects.requireNonNull(resolver, "resolver must not be null").isSupportingDnssec());
+        this.resolver = resolver;
+        this.cache = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * Set the TTL in seconds used for results without TTL information. The default is 60 seconds.
+     *
+     * @param seconds the default TTL in seconds.
+     */
+    public void setDefaultTtl(long seconds) {
+        defaultTtl = TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    /**
+     * Set the maximum TTL in seconds. Results reported with a longer TTL are cached for the maximum TTL. The default is
+     * one hour.
+     *
+     * @param seconds the maximum TTL in seconds.
+     */
+    public void setMaxTtl(long seconds) {
+        maxTtl = TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    /**
+     * Set the time in seconds failed lookups are cached. The default is 30 seconds. Use '0' to disable negative
+     * caching.
+     *
+     * @param seconds the negative TTL in seconds.
+     */
+    public void setNegativeTtl(long seconds) {
+        negativeTtl = TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    /**
+     * Set the time in seconds an expired result may still be used while it is refreshed in the background. The default
+     * is 60 seconds. Use '0' to always perform a blocking lookup once a result expired.
+     *
+     * @param seconds the stale-while-revalidate period in seconds.
+     */
+    public void setStaleWhileRevalidate(long seconds) {
+        staleWhileRevalidate = TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    @Override
+    protected List<SRVRecord> lookupSRVRecords0(final String name, List<HostAddress> failedAddresses,
+                    final DnssecMode dnssecMode) {
+        List<SRVRecord> srvRecords = lookup("SRV " + dnssecMode + ' ' + name, new Lookup<List<SRVRecord>>() {
+            @Override
+            public List<SRVRecord> lookup(List<HostAddress> failedAddresses) {
+                return resolver.lookupSRVRecords0(name, failedAddresses, dnssecMode);
+            }
+
+            @Override
+            public long getTtl(List<SRVRecord> srvRecords) {
+                long ttl = Long.MAX_VALUE;
+                for (SRVRecord srvRecord : srvRecords) {
+                    if (srvRecord.getTtl() < 0) {
+                        return -1;
+                    }
+                    ttl = Math.min(ttl, srvRecord.getTtl());
+                }
+                return ttl;
+            }
+        }, failedAddresses);
+        if (srvRecords == null) {
+            return null;
+        }
+        // HostAddress instances record the connection failures, hence every caller needs its own copies.
+        List<SRVRecord> res = new ArrayList<>(srvRecords.size());
+        for (SRVRecord srvRecord : srvRecords) {
+            res.add(new SRVRecord(srvRecord.getFQDN(), srvRecord.getPort(), srvRecord.getPriority(),
+                            srvRecord.getWeight(), srvRecord.getInetAddresses(), srvRecord.getTtl()));
+        }
+        return res;
+    }
+
+    @Override
+    protected List<InetAddress> lookupHostAddress0(final String name, List<HostAddress> failedAddresses,
+                    final DnssecMode dnssecMode) {
+        return lookup("A/AAAA " + dnssecMode + ' ' + name, new Lookup<List<InetAddress>>() {
+            @Override
+            public List<InetAddress> lookup(List<HostAddress> failedAddresses) {
+                List<InetAddress> inetAddresses = resolver.lookupHostAddress0(name, failedAddresses, dnssecMode);
+                if (inetAddresses == null) {
+                    return null;
+                }
+                return Collections.unmodifiableList(inetAddresses);
+            }
+
+            @Override
+            public long getTtl(List<InetAddress> inetAddresses) {
+                return -1;
+            }
+        }, failedAddresses);
+    }
+
+    private <T extends List<?>> T lookup(final String key, final Lookup<T> lookup, List<HostAddress> failedAddresses) {
+        CacheEntry<T> entry = getEntry(key);
+        if (entry != null) {
+            final long now = System.nanoTime();
+            if (now - entry.expiresAt < 0) {
+                if (entry.value == null) {
+                    negativeHits.incrementAndGet();
+                } else {
+                    hits.incrementAndGet();
+                }
+                return entry.get(failedAddresses);
+            }
+            if (entry.value != null && now - entry.expiresAt < staleWhileRevalidate) {
+                staleHits.incrementAndGet();
+                refresh(key, lookup, entry);
+                return entry.get(failedAddresses);
+            }
+        }
+
+        // Coalesce concurrent lookups of the same name.
+        Object lock = new Object();
+        Object existingLock = lookupLocks.putIfAbsent(key, lock);
+        if (existingLock != null) {
+            lock = existingLock;
+        }
+        try {
+            synchronized (lock) {
+                CacheEntry<T> currentEntry = getEntry(key);
+                if (currentEntry != null && currentEntry != entry && System.nanoTime() - currentEntry.expiresAt < 0) {
+                    // Another thread performed the lookup in the meantime.
+                    hits.incrementAndGet();
+                    return currentEntry.get(failedAddresses);
+                }
+                misses.incrementAndGet();
+                return performLookup(key, lookup, true).get(failedAddresses);
+            }
+        } finally {
+            lookupLocks.remove(key, lock);
+        }
+    }
+
+    private <T extends List<?>> CacheEntry<T> performLookup(String key, Lookup<T> lookup, boolean cacheFailure) {
+        List<HostAddress> lookupFailures = new ArrayList<>(0);
+        T value = lookup.lookup(lookupFailures);
+        long ttl;
+        if (value == null || value.isEmpty()) {
+            value = null;
+            ttl = negativeTtl;
+        } else {
+            ttl = lookup.getTtl(value);
+            if (ttl < 0) {
+                ttl = defaultTtl;
+            } else {
+                ttl = Math.min(TimeUnit.SECONDS.toNanos(ttl), maxTtl);
+            }
+        }
+        CacheEntry<T> entry = new CacheEntry<>(value, lookupFailures, System.nanoTime() + ttl);
+        if (ttl > 0 && (value != null || cacheFailure)) {
+            synchronized (cache) {
+                cache.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    private <T extends List<?>> void refresh(final String key, final Lookup<T> lookup, final CacheEntry<T> entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Async.go(new Runnable() {
+            @Override
+            public void run() {
+                // Keep serving the stale result if the refresh fails, and allow the next lookup to retry the refresh.
+                try {
+                    CacheEntry<T> refreshedEntry = performLookup(key, lookup, false);
+                    if (refreshedEntry.value == null) {
+                        LOGGER.fine("Refreshing the cached DNS result for '" + key + "' failed");
+                        entry.refreshing.set(false);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Exception while refreshing the cached DNS result for '" + key + "'", e);
+                    entry.refreshing.set(false);
+                }
+            }
+        }, "Smack DNS cache refresh");
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends List<?>> CacheEntry<T> getEntry(String key) {
+        synchronized (cache) {
+            return (CacheEntry<T>) cache.lookup(key);
+        }
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Get the number of lookups answered by a valid cache entry.
+     *
+     * @return the number of cache hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of lookups answered by an expired cache entry, while the entry was refreshed.
+     *
+     * @return the number of stale cache hits.
+     */
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    /**
+     * Get the number of lookups answered by a cached failure.
+     *
+     * @return the number of negative cache hits.
+     */
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    /**
+     * Get the number of lookups which had to be performed by the underlying resolver.
+     *
+     * @return the number of cache misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CachingDNSResolver(" + resolver.getClass().getSimpleName() + ", hits: " + getHits() + ", stale hits: "
+                        + getStaleHits() + ", negative hits: " + getNegativeHits() + ", misses: " + getMisses() + ')';
+    }
+
+    private interface Lookup<T> {
+        T lookup(List<HostAddress> failedAddresses);
+
+        /**
+         * Get the TTL of the given result in seconds.
+         *
+         * @param value the result.
+         * @return the TTL in seconds, or '-1' if unknown.
+         */
+        long getTtl(T value);
+    }
+
+    private static final class CacheEntry<T> {
+        private final T value;
+        private final List<HostAddress> failedAddresses;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private CacheEntry(T value, List<HostAddress> failedAddresses, long expiresAt) {
+            this.value = value;
+            this.failedAddresses = failedAddresses;
+            this.expiresAt = expiresAt;
+        }
+
+        private T get(List<HostAddress> failedAddresses) {
+            for (HostAddress failedAddress : this.failedAddresses) {
+                Exception exception = failedAddress.getExceptions().get(null);
+                if (exception != null) {
+                    failedAddresses.add(new HostAddress(failedAddress.getFQDN(), exception));
+                } else {
+                    failedAddresses.add(failedAddress);
+                }
+            }
+            return value;
+        }
+    }
+}
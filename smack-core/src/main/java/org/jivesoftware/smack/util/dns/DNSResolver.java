@@ -38,6 +38,15 @@ public abstract class DNSResolver {
         this.supportsDnssec = supportsDnssec;
     }
 
+    /**
+     * Check if this resolver supports DNSSEC.
+     *
+     * @return true if DNSSEC is supported.
+     */
+    public final boolean isSupportingDnssec() {
+        return supportsDnssec;
+    }
+
     /**
      * Gets a list of service records for the specified service.
      * @param name The symbolic name of the service.
@@ -32,6 +32,7 @@ public class HostAddress {
     private final int port;
     private final Map<InetAddress, Exception> exceptions = new LinkedHashMap<>();
     private final List<InetAddress> inetAddresses;
+    private final boolean directTls;
 
     /**
      * Creates a new HostAddress with the given FQDN.
@@ -41,6 +42,19 @@ public class HostAddress {
      * @throws IllegalArgumentException If the port is out of valid range (0 - 65535).
      */
     public HostAddress(String fqdn, int port, List<InetAddress> inetAddresses) {
+        this(fqdn, port, inetAddresses, false);
+    }
+
+    /**
+     * Creates a new HostAddress with the given FQDN.
+     *
+     * @param fqdn the optional fully qualified domain name (FQDN).
+     * @param port The port to connect on.
+     * @param inetAddresses the resolved addresses.
+     * @param directTls true if TLS has to be established immediately after the TCP connection (XEP-0368).
+     * @throws IllegalArgumentException If the port is out of valid range (0 - 65535).
+     */
+    public HostAddress(String fqdn, int port, List<InetAddress> inetAddresses, boolean directTls) {
         if (port < 0 || port > 65535)
             throw new IllegalArgumentException(
                     "Port must be a 16-bit unsiged integer (i.e. between 0-65535. Port was: " + port);
@@ -55,6 +69,7 @@ public class HostAddress {
             throw new IllegalArgumentException("Must provide at least one InetAddress");
         }
         this.inetAddresses = inetAddresses;
+        this.directTls = directTls;
     }
 
     public HostAddress(int port, InetAddress hostAddress) {
@@ -72,6 +87,7 @@ public class HostAddress {
         this.fqdn = fqdn;
         this.port = 5222;
         inetAddresses = Collections.emptyList();
+        directTls = false;
         setException(e);
     }
 
@@ -83,6 +99,17 @@ public class HostAddress {
         return port;
     }
 
+    /**
+     * Check if TLS has to be established immediately after the TCP connection to this host address, instead of
+     * negotiating it using STARTTLS.
+     *
+     * @return true if this is a Direct TLS endpoint.
+     * @see <a href="https://xmpp.org/extensions/xep-0368.html">XEP-0368: SRV records for XMPP over TLS</a>
+     */
+    public boolean isDirectTls() {
+        return directTls;
+    }
+
     public void setException(Exception exception) {
         setException(null, exception);
     }
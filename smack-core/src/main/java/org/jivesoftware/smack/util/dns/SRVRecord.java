@@ -33,6 +33,7 @@ public class SRVRecord extends HostAddress implements Comparable<SRVRecord> {
 
     private int weight;
     private int priority;
+    private final long ttl;
 
     /**
      * SRV Record constructor.
@@ -44,6 +45,21 @@ public class SRVRecord extends HostAddress implements Comparable<SRVRecord> {
      * @throws IllegalArgumentException fqdn is null or any other field is not in valid range (0-65535).
      */
     public SRVRecord(String fqdn, int port, int priority, int weight, List<InetAddress> inetAddresses) {
+        this(fqdn, port, priority, weight, inetAddresses, -1);
+    }
+
+    /**
+     * SRV Record constructor.
+     *
+     * @param fqdn Fully qualified domain name
+     * @param port The connection port
+     * @param priority Priority of the target host
+     * @param weight Relative weight for records with same priority
+     * @param inetAddresses the resolved addresses of the target host
+     * @param ttl the time to live of the record in seconds, or '-1' if unknown
+     * @throws IllegalArgumentException fqdn is null or any other field is not in valid range (0-65535).
+     */
+    public SRVRecord(String fqdn, int port, int priority, int weight, List<InetAddress> inetAddresses, long ttl) {
         super(fqdn, port, inetAddresses);
         StringUtils.requireNotNullOrEmpty(fqdn, "The FQDN must not be null");
         if (weight < 0 || weight > 65535)
@@ -58,6 +74,7 @@ public class SRVRecord extends HostAddress implements Comparable<SRVRecord> {
 
         this.priority = priority;
         this.weight = weight;
+        this.ttl = ttl;
 
     }
 
@@ -69,6 +86,15 @@ public class SRVRecord extends HostAddress implements Comparable<SRVRecord> {
         return weight;
     }
 
+    /**
+     * Get the time to live of this record in seconds, as reported by the DNS resolver.
+     *
+     * @return the time to live in seconds, or '-1' if unknown.
+     */
+    public long getTtl() {
+        return ttl;
+    }
+
     @Override
     public int compareTo(SRVRecord other) {
         // According to RFC2782,
@@ -0,0 +1,77 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jivesoftware.smack.filter.StanzaTypeFilter;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Stanza;
+import org.junit.Test;
+import org.jxmpp.jid.impl.JidCreate;
+
+public class ParallelStanzaDispatchTest {
+
+    @Test
+    public void switchingDispatchShouldNotDropStanzas() throws Exception {
+        final DummyConnection connection = new DummyConnection();
+        connection.setParallelStanzaDispatch(BareJidDispatchKeyExtractor.INSTANCE, 2);
+
+        final int stanzaCount = 5000;
+        final CountDownLatch allProcessed = new CountDownLatch(stanzaCount);
+        final AtomicInteger processed = new AtomicInteger();
+        connection.addSyncStanzaListener(new StanzaListener() {
+            @Override
+            public void processStanza(Stanza packet) {
+                processed.incrementAndGet();
+                allProcessed.countDown();
+            }
+        }, StanzaTypeFilter.MESSAGE);
+
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread switcher = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; !done.get(); i++) {
+                    connection.setParallelStanzaDispatch(BareJidDispatchKeyExtractor.INSTANCE, 1 + i % 4);
+                }
+            }
+        };
+        switcher.start();
+
+        try {
+            for (int i = 0; i < stanzaCount; i++) {
+                Message message = new Message();
+                message.setFrom(JidCreate.from("user" + (i % 10) + "@example.org/resource"));
+                connection.processStanza(message);
+            }
+        } finally {
+            done.set(true);
+            switcher.join();
+        }
+
+        assertTrue(allProcessed.await(10, TimeUnit.SECONDS));
+        assertEquals(stanzaCount, processed.get());
+        connection.setParallelStanzaDispatch(null);
+    }
+}
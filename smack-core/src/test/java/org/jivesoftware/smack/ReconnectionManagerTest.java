@@ -0,0 +1,103 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ReconnectionManagerTest {
+
+    @Test
+    public void decorrelatedJitterDelayShouldStayWithinBounds() {
+        Random random = new Random(42);
+        long delay = 0;
+        for (int i = 0; i < 1000; i++) {
+            long previous = delay;
+            delay = ReconnectionManager.decorrelatedJitterDelay(previous, 1000, 300000, random);
+            assertTrue(delay >= 1000);
+            assertTrue(delay <= 300000);
+            assertTrue(delay <= Math.max(1000, previous) * 3);
+        }
+    }
+
+    @Test
+    public void firstDecorrelatedJitterDelayShouldBeSpread() {
+        Random random = new Random(42);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long delay = ReconnectionManager.decorrelatedJitterDelay(0, 1000, 300000, random);
+            assertTrue(delay >= 1000);
+            assertTrue(delay <= 3000);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        // Clients disconnected at the same time must not reconnect in lockstep.
+        assertTrue(min < 1200);
+        assertTrue(max > 2800);
+    }
+
+    @Test
+    public void decorrelatedJitterDelayShouldBeCapped() {
+        assertEquals(5000, ReconnectionManager.decorrelatedJitterDelay(1000000, 5000, 5000, new Random()));
+    }
+
+    @Test
+    public void shouldKeepReconnectingAfterRuntimeException() throws Exception {
+        final AtomicInteger connectAttempts = new AtomicInteger();
+        DummyConnection connection = new DummyConnection() {
+            @Override
+            protected void connectInternal() {
+                if (connectAttempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("Failure of the first reconnection attempt");
+                }
+                super.connectInternal();
+            }
+        };
+        final CountDownLatch reconnectionFailed = new CountDownLatch(1);
+        connection.addConnectionListener(new AbstractConnectionListener() {
+            @Override
+            public void reconnectionFailed(Exception e) {
+                if (e instanceof IllegalStateException) {
+                    reconnectionFailed.countDown();
+                }
+            }
+        });
+        ReconnectionManager reconnectionManager = ReconnectionManager.getInstanceFor(connection);
+        reconnectionManager.setFixedDelay(0);
+        reconnectionManager.enableAutomaticReconnection();
+
+        connection.callConnectionClosedOnErrorListener(new Exception("Connection lost"));
+
+        assertTrue(reconnectionFailed.await(5, TimeUnit.SECONDS));
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!connection.isAuthenticated() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(connection.isAuthenticated());
+        assertEquals(2, connectAttempts.get());
+        reconnectionManager.disableAutomaticReconnection();
+        connection.disconnect();
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.jivesoftware.smack.packet.Mechanisms;
+import org.jivesoftware.smack.sasl.SASLMechanism;
+import org.jivesoftware.smack.sasl.SASLToken;
+import org.jivesoftware.smack.sasl.SASLTokenProvider;
+import org.jivesoftware.smack.sasl.packet.SaslStreamElements.AuthMechanism;
+import org.jivesoftware.smack.sasl.packet.SaslStreamElements.SASLFailure;
+import org.jivesoftware.smack.sasl.packet.SaslStreamElements.Success;
+import org.jivesoftware.smack.test.util.SmackTestSuite;
+import org.jivesoftware.smack.util.stringencoder.Base64;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.jxmpp.jid.DomainBareJid;
+
+public class SASLTokenAuthenticationTest extends SmackTestSuite {
+
+    private static final String TOKEN_MECHANISM = "X-TEST-TOKEN";
+    private static final String PASSWORD_MECHANISM = "X-TEST-PASSWORD";
+
+    @BeforeClass
+    public static void registerPasswordMechanism() {
+        SASLAuthentication.registerSASLMechanism(new PasswordMechanism());
+    }
+
+    @AfterClass
+    public static void unregisterPasswordMechanism() {
+        SASLAuthentication.unregisterSASLMechanism(PasswordMechanism.class.getName());
+    }
+
+    @Test
+    public void shouldAuthenticateWithToken() throws Exception {
+        RecordingTokenProvider tokenProvider = new RecordingTokenProvider("valid-token");
+        List<String> attempts = authenticate(tokenProvider, TOKEN_MECHANISM, PASSWORD_MECHANISM);
+
+        assertEquals(Collections.singletonList(TOKEN_MECHANISM + ":valid-token"), attempts);
+        assertTrue(tokenProvider.rejectedTokens.isEmpty());
+        assertEquals(Collections.singletonList(TOKEN_MECHANISM + ":true"), tokenProvider.authentications);
+    }
+
+    @Test
+    public void shouldFallBackToPasswordIfTokenIsRejected() throws Exception {
+        RecordingTokenProvider tokenProvider = new RecordingTokenProvider("expired-token");
+        List<String> attempts = authenticate(tokenProvider, TOKEN_MECHANISM, PASSWORD_MECHANISM);
+
+        assertEquals(Arrays.asList(TOKEN_MECHANISM + ":expired-token", PASSWORD_MECHANISM + ":password"), attempts);
+        assertEquals(1, tokenProvider.rejectedTokens.size());
+        assertSame(tokenProvider.token, tokenProvider.rejectedTokens.get(0));
+        assertEquals(Collections.singletonList(PASSWORD_MECHANISM + ":false"), tokenProvider.authentications);
+    }
+
+    @Test
+    public void shouldNotUseTokenIfMechanismIsNotAnnounced() throws Exception {
+        RecordingTokenProvider tokenProvider = new RecordingTokenProvider("valid-token");
+        List<String> attempts = authenticate(tokenProvider, PASSWORD_MECHANISM);
+
+        assertEquals(Collections.singletonList(PASSWORD_MECHANISM + ":password"), attempts);
+        assertTrue(tokenProvider.rejectedTokens.isEmpty());
+        assertEquals(Collections.singletonList(PASSWORD_MECHANISM + ":false"), tokenProvider.authentications);
+    }
+
+    /**
+     * Authenticate against a scripted server, which announces the given mechanisms and accepts the token
+     * 'valid-token' and the password 'password'.
+     *
+     * @return the authentication attempts in the form 'mechanism:credential'.
+     */
+    private static List<String> authenticate(SASLTokenProvider tokenProvider, String... serverMechanisms)
+                    throws Exception {
+        final DummyConnection connection = new DummyConnection(DummyConnection.getDummyConfigurationBuilder()
+                        .setSaslTokenProvider(tokenProvider)
+                        .build());
+        connection.enableStreamFeature(new Mechanisms(Arrays.asList(serverMechanisms)));
+        final SASLAuthentication saslAuthentication = connection.getSASLAuthentication();
+        final List<String> attempts = Collections.synchronizedList(new ArrayList<String>());
+
+        Thread server = new Thread() {
+            @Override
+            public void run() {
+                while (true) {
+                    AuthMechanism auth = connection.getSentPacket(5);
+                    if (auth == null) {
+                        return;
+                    }
+                    String credential = Base64.decodeToString(auth.getAuthenticationText());
+                    attempts.add(auth.getMechanism() + ':' + credential);
+                    if (credential.equals("valid-token") || credential.equals("password")) {
+                        try {
+                            saslAuthentication.authenticated(new Success(null));
+                        }
+                        catch (SmackException | InterruptedException e) {
+                            throw new AssertionError(e);
+                        }
+                        return;
+                    }
+                    saslAuthentication.authenticationFailed(new SASLFailure("not-authorized"));
+                }
+            }
+        };
+        server.start();
+
+        saslAuthentication.authenticate("user", "password", null, null);
+        server.join();
+        assertTrue(saslAuthentication.authenticationSuccessful());
+        return attempts;
+    }
+
+    private static final class RecordingTokenProvider implements SASLTokenProvider {
+
+        private final SASLToken token;
+        private final List<SASLToken> rejectedTokens = new ArrayList<>();
+        private final List<String> authentications = new ArrayList<>();
+
+        private RecordingTokenProvider(String token) {
+            this.token = new SASLToken(new TokenMechanism(), token);
+        }
+
+        @Override
+        public SASLToken getToken(String username, DomainBareJid xmppServiceDomain) {
+            return token;
+        }
+
+        @Override
+        public void tokenRejected(String username, DomainBareJid xmppServiceDomain, SASLToken token) {
+            rejectedTokens.add(token);
+        }
+
+        @Override
+        public void authenticated(String username, DomainBareJid xmppServiceDomain, String mechanism,
+                        boolean tokenUsed) {
+            authentications.add(mechanism + ':' + tokenUsed);
+        }
+    }
+
+    /**
+     * A SASL mechanism sending the password, or token, as initial response.
+     */
+    private abstract static class PlainTextMechanism extends SASLMechanism {
+
+        @Override
+        protected void authenticateInternal(CallbackHandler cbh) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected byte[] getAuthenticationText() {
+            return toBytes(password);
+        }
+
+        @Override
+        public void checkIfSuccessfulOrThrow() {
+        }
+    }
+
+    private static final class TokenMechanism extends PlainTextMechanism {
+
+        @Override
+        public String getName() {
+            return TOKEN_MECHANISM;
+        }
+
+        @Override
+        public int getPriority() {
+            return 10;
+        }
+
+        @Override
+        protected SASLMechanism newInstance() {
+            return new TokenMechanism();
+        }
+    }
+
+    private static final class PasswordMechanism extends PlainTextMechanism {
+
+        @Override
+        public String getName() {
+            return PASSWORD_MECHANISM;
+        }
+
+        @Override
+        public int getPriority() {
+            return 20;
+        }
+
+        @Override
+        protected SASLMechanism newInstance() {
+            return new PasswordMechanism();
+        }
+    }
+}
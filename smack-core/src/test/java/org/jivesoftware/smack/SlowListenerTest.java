@@ -0,0 +1,139 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.filter.StanzaTypeFilter;
+import org.jivesoftware.smack.metrics.SimpleConnectionMetrics;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.Stanza;
+import org.junit.Test;
+
+public class SlowListenerTest {
+
+    @Test
+    public void slowListenerShouldBeIsolated() throws Exception {
+        DummyConnection connection = new DummyConnection();
+        SimpleConnectionMetrics metrics = new SimpleConnectionMetrics();
+        connection.setConnectionMetrics(metrics);
+        connection.setSlowListenerThreshold(20);
+        connection.setIsolateSlowListeners(true);
+
+        final CountDownLatch slowListenerDone = new CountDownLatch(2);
+        final String[] slowListenerThread = new String[1];
+        connection.addSyncStanzaListener(new StanzaListener() {
+            private boolean first = true;
+            @Override
+            public void processStanza(Stanza packet) throws InterruptedException {
+                if (first) {
+                    first = false;
+                    Thread.sleep(50);
+                } else {
+                    slowListenerThread[0] = Thread.currentThread().getName();
+                }
+                slowListenerDone.countDown();
+            }
+        }, StanzaTypeFilter.MESSAGE);
+
+        final CountDownLatch fastListenerDone = new CountDownLatch(2);
+        final String[] fastListenerThread = new String[1];
+        connection.addSyncStanzaListener(new StanzaListener() {
+            @Override
+            public void processStanza(Stanza packet) {
+                fastListenerThread[0] = Thread.currentThread().getName();
+                fastListenerDone.countDown();
+            }
+        }, StanzaTypeFilter.MESSAGE);
+
+        connection.processStanza(new Message());
+        connection.processStanza(new Message());
+
+        assertTrue(slowListenerDone.await(5, TimeUnit.SECONDS));
+        assertTrue(fastListenerDone.await(5, TimeUnit.SECONDS));
+        assertEquals(1, metrics.getSlowListenerInvocations());
+        assertNotEquals(fastListenerThread[0], slowListenerThread[0]);
+    }
+
+    @Test
+    public void isolatedListenerBacklogShouldApplyBackpressure() throws Exception {
+        DummyConnection connection = new DummyConnection();
+        connection.setSlowListenerThreshold(20);
+        connection.setIsolateSlowListeners(true);
+
+        final CountDownLatch isolated = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> processed = new CopyOnWriteArrayList<>();
+        connection.addSyncStanzaListener(new StanzaListener() {
+            @Override
+            public void processStanza(Stanza packet) throws InterruptedException {
+                processed.add(packet.getStanzaId());
+                if (processed.size() == 1) {
+                    Thread.sleep(50);
+                } else if (processed.size() == 2) {
+                    // Now running on the isolated executor, block it so that the backlog builds up.
+                    isolated.countDown();
+                    release.await();
+                }
+            }
+        }, StanzaTypeFilter.MESSAGE);
+
+        final List<String> sent = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Message message = new Message();
+            sent.add(message.getStanzaId());
+            connection.processStanza(message);
+        }
+        assertTrue(isolated.await(5, TimeUnit.SECONDS));
+
+        final int additionalStanzas = AbstractXMPPConnection.ISOLATED_LISTENER_QUEUE_CAPACITY + 100;
+        for (int i = 0; i < additionalStanzas; i++) {
+            Message message = new Message();
+            sent.add(message.getStanzaId());
+            connection.processStanza(message);
+        }
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        connection.addSyncStanzaListener(new StanzaListener() {
+            @Override
+            public void processStanza(Stanza packet) {
+                dispatched.countDown();
+            }
+        }, StanzaTypeFilter.PRESENCE);
+        connection.processStanza(new Presence(Presence.Type.available));
+        // The dispatcher is held back by the full queue of the isolated listener.
+        assertFalse(dispatched.await(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50 && processed.size() < sent.size(); i++) {
+            Thread.sleep(100);
+        }
+        // No stanza got lost, and the order was kept.
+        assertEquals(sent, processed);
+        connection.disconnect();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.compression;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.compression.XMPPInputOutputStream.FlushMethod;
+import org.jivesoftware.smack.test.util.BenchmarkUtils;
+import org.jivesoftware.smack.util.StringUtils;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compares the compression ratio of plain zlib and zlib primed with the XMPP preset dictionary on the first kilobytes
+ * of a session. Every stanza is flushed on its own, like the connection's writer does when there is no further
+ * stanza queued.
+ */
+public class DictionaryZlibCompressionBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(DictionaryZlibCompressionBenchmark.class.getName());
+
+    private static final int[] SESSION_PREFIXES = new int[] { 1024, 2048, 4096, 8192, 16384 };
+
+    private static final String[] SESSION_START = new String[] {
+        "<iq type='set' id='bind1'><bind xmlns='urn:ietf:params:xml:ns:xmpp-bind'><resource>balcony</resource></bind></iq>",
+        "<enable xmlns='urn:xmpp:sm:3' resume='true'/>",
+        "<iq type='get' id='roster1'><query xmlns='jabber:iq:roster'/></iq>",
+        "<iq to='capulet.lit' type='get' id='disco1'><query xmlns='http://jabber.org/protocol/disco#info'/></iq>",
+        "<presence id='pres1'><c xmlns='http://jabber.org/protocol/caps' hash='sha-1' "
+                        + "node='https://igniterealtime.org/projects/smack' ver='QgayPKawpkPSDYmwT/WM94uAlu0='/></presence>",
+        "<iq to='pubsub.capulet.lit' type='get' id='items1'><pubsub xmlns='http://jabber.org/protocol/pubsub'>"
+                        + "<items node='urn:xmpp:avatar:metadata'/></pubsub></iq>",
+        "<r xmlns='urn:xmpp:sm:3'/>",
+    };
+
+    private static final String[] SESSION_TRAFFIC = new String[] {
+        "<message to='romeo@montague.lit' type='chat' id='msg%d'><body>Message number %d</body>"
+                        + "<active xmlns='http://jabber.org/protocol/chatstates'/>"
+                        + "<request xmlns='urn:xmpp:receipts'/></message>",
+        "<message to='romeo@montague.lit' type='chat' id='cs%d'>"
+                        + "<composing xmlns='http://jabber.org/protocol/chatstates'/></message>",
+        "<iq to='romeo@montague.lit/orchard' type='result' id='ping%d'/>",
+        "<a xmlns='urn:xmpp:sm:3' h='%d'/>",
+    };
+
+    @BeforeClass
+    public static void assumeBenchmarksEnabled() {
+        BenchmarkUtils.assumeBenchmarksEnabled();
+    }
+
+    @After
+    public void resetDefaults() {
+        XMPPInputOutputStream.setFlushMethod(FlushMethod.FULL_FLUSH);
+    }
+
+    @Test
+    public void benchmarkSessionStart() throws IOException {
+        List<byte[]> stanzas = new ArrayList<>();
+        int sessionSize = 0;
+        for (int i = 0; sessionSize < SESSION_PREFIXES[SESSION_PREFIXES.length - 1]; i++) {
+            String stanza;
+            if (i < SESSION_START.length) {
+                stanza = SESSION_START[i];
+            } else {
+                stanza = String.format(Locale.US, SESSION_TRAFFIC[i % SESSION_TRAFFIC.length], i, i);
+            }
+            byte[] bytes = StringUtils.toBytes(stanza);
+            stanzas.add(bytes);
+            sessionSize += bytes.length;
+        }
+
+        XMPPInputOutputStream plain = new Java7ZlibInputOutputStream();
+        XMPPInputOutputStream dictionary = new DictionaryZlibInputOutputStream();
+
+        StringBuilder sb = new StringBuilder("Compressed size of the first bytes of a session, plain zlib vs. zlib with "
+                        + "XMPP preset dictionary");
+        for (FlushMethod flushMethod : FlushMethod.values()) {
+            XMPPInputOutputStream.setFlushMethod(flushMethod);
+            for (int prefix : SESSION_PREFIXES) {
+                int plainSize = compress(plain, stanzas, prefix);
+                int dictionarySize = compress(dictionary, stanzas, prefix);
+                assertTrue(dictionarySize <= plainSize);
+                sb.append(String.format(Locale.US, "%n%s %5d bytes: plain %5d (%4.1f%%), dictionary %5d (%4.1f%%)",
+                                flushMethod, prefix, plainSize, 100d * plainSize / prefix, dictionarySize,
+                                100d * dictionarySize / prefix));
+            }
+        }
+        LOGGER.info(sb.toString());
+    }
+
+    private static int compress(XMPPInputOutputStream handler, List<byte[]> stanzas, int prefix) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream os = handler.getOutputStream(compressed);
+        int written = 0;
+        for (byte[] stanza : stanzas) {
+            int len = Math.min(stanza.length, prefix - written);
+            os.write(stanza, 0, len);
+            os.flush();
+            written += len;
+            if (written == prefix) {
+                break;
+            }
+        }
+        os.close();
+        return compressed.size();
+    }
+}
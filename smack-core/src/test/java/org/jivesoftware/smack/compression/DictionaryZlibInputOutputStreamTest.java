@@ -0,0 +1,90 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.jivesoftware.smack.packet.Bind;
+import org.jivesoftware.smack.util.StringUtils;
+import org.junit.Test;
+
+public class DictionaryZlibInputOutputStreamTest {
+
+    private static final byte[] STANZA = StringUtils.toBytes(Java7ZlibInputOutputStreamTest.STANZAS[0]);
+
+    @Test
+    public void shouldRoundTripWithDictionary() throws IOException {
+        DictionaryZlibInputOutputStream handler = new DictionaryZlibInputOutputStream();
+        byte[] compressed = compress(handler);
+        assertArrayEquals(STANZA, decompress(handler, compressed));
+    }
+
+    @Test
+    public void shouldCompressBetterThanPlainZlib() throws IOException {
+        byte[] plain = compress(new Java7ZlibInputOutputStream());
+        byte[] withDictionary = compress(new DictionaryZlibInputOutputStream());
+        assertTrue(withDictionary.length < plain.length);
+    }
+
+    @Test
+    public void dictionaryShouldContainRegisteredNamespaces() {
+        String dictionary = new String(DictionaryZlibInputOutputStream.buildDictionary(), StandardCharsets.UTF_8);
+        // Registered by SmackInitialization.
+        assertTrue(dictionary.contains("<bind xmlns='" + Bind.NAMESPACE + "'>"));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectDifferentDictionary() throws IOException {
+        byte[] compressed = compress(new DictionaryZlibInputOutputStream(StringUtils.toBytes("<message to='")));
+        decompress(new DictionaryZlibInputOutputStream(StringUtils.toBytes("<presence to='")), compressed);
+    }
+
+    @Test(expected = IOException.class)
+    public void plainZlibShouldRejectDictionary() throws IOException {
+        byte[] compressed = compress(new DictionaryZlibInputOutputStream());
+        decompress(new Java7ZlibInputOutputStream(), compressed);
+    }
+
+    private static byte[] compress(XMPPInputOutputStream handler) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream os = handler.getOutputStream(compressed);
+        os.write(STANZA);
+        os.flush();
+        os.close();
+        return compressed.toByteArray();
+    }
+
+    private static byte[] decompress(XMPPInputOutputStream handler, byte[] compressed) throws IOException {
+        InputStream is = handler.getInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        byte[] buf = new byte[64];
+        int read;
+        while (decompressed.size() < STANZA.length && (read = is.read(buf)) > 0) {
+            decompressed.write(buf, 0, read);
+        }
+        is.close();
+        return decompressed.toByteArray();
+    }
+}
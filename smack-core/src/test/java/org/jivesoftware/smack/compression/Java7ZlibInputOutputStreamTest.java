@@ -0,0 +1,132 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import org.jivesoftware.smack.compression.XMPPInputOutputStream.FlushMethod;
+import org.jivesoftware.smack.util.StringUtils;
+import org.junit.After;
+import org.junit.Test;
+
+public class Java7ZlibInputOutputStreamTest {
+
+    static final String[] STANZAS = new String[] {
+        "<message to='juliet@capulet.lit/balcony' from='romeo@montague.lit/orchard' type='chat' id='ktx72v49'>"
+                        + "<body>Art thou not Romeo, and a Montague?</body>"
+                        + "<active xmlns='http://jabber.org/protocol/chatstates'/></message>",
+        "<presence from='romeo@montague.lit/orchard'><c xmlns='http://jabber.org/protocol/caps' hash='sha-1' "
+                        + "node='https://igniterealtime.org/projects/smack' ver='QgayPKawpkPSDYmwT/WM94uAlu0='/>"
+                        + "<priority>5</priority></presence>",
+        "<iq type='result' id='disco1' to='romeo@montague.lit/orchard' from='juliet@capulet.lit/balcony'>"
+                        + "<query xmlns='http://jabber.org/protocol/disco#info'><identity category='client' "
+                        + "type='pc' name='Smack'/><feature var='http://jabber.org/protocol/disco#info'/>"
+                        + "<feature var='http://jabber.org/protocol/caps'/></query></iq>",
+        "<r xmlns='urn:xmpp:sm:3'/>",
+    };
+
+    @After
+    public void resetDefaults() {
+        Java7ZlibInputOutputStream.setCompressionLevel(Deflater.DEFAULT_COMPRESSION);
+        Java7ZlibInputOutputStream.setCompressionStrategy(Deflater.DEFAULT_STRATEGY);
+        Java7ZlibInputOutputStream.setBufferSize(Java7ZlibInputOutputStream.DEFAULT_BUFFER_SIZE);
+        XMPPInputOutputStream.setFlushMethod(FlushMethod.FULL_FLUSH);
+    }
+
+    @Test
+    public void shouldRoundTripWithAllLevels() throws IOException {
+        for (int level = 0; level <= 9; level++) {
+            Java7ZlibInputOutputStream.setCompressionLevel(level);
+            roundTrip();
+        }
+    }
+
+    @Test
+    public void shouldRoundTripWithSyncFlushAndSmallBuffers() throws IOException {
+        XMPPInputOutputStream.setFlushMethod(FlushMethod.SYNC_FLUSH);
+        Java7ZlibInputOutputStream.setCompressionStrategy(Deflater.FILTERED);
+        Java7ZlibInputOutputStream.setBufferSize(16);
+        roundTrip();
+    }
+
+    @Test
+    public void shouldReturnDeflaterToPoolOnClose() throws IOException {
+        DeflaterPool.setMaxPooledDeflaters(DeflaterPool.DEFAULT_MAX_POOLED_DEFLATERS);
+        Java7ZlibInputOutputStream handler = new Java7ZlibInputOutputStream();
+        // Drain the pool.
+        OutputStream[] streams = new OutputStream[DeflaterPool.DEFAULT_MAX_POOLED_DEFLATERS];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = handler.getOutputStream(new ByteArrayOutputStream());
+        }
+        assertEquals(0, DeflaterPool.size());
+        for (OutputStream stream : streams) {
+            stream.close();
+            // Closing twice must not return the Deflater twice.
+            stream.close();
+        }
+        assertEquals(DeflaterPool.DEFAULT_MAX_POOLED_DEFLATERS, DeflaterPool.size());
+
+        // A pooled Deflater must produce a valid stream.
+        roundTrip();
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldNotWriteAfterClose() throws IOException {
+        OutputStream os = new Java7ZlibInputOutputStream().getOutputStream(new ByteArrayOutputStream());
+        os.close();
+        os.write(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidLevel() {
+        Java7ZlibInputOutputStream.setCompressionLevel(10);
+    }
+
+    private static void roundTrip() throws IOException {
+        Java7ZlibInputOutputStream handler = new Java7ZlibInputOutputStream();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        OutputStream os = handler.getOutputStream(compressed);
+        for (int i = 0; i < 50; i++) {
+            byte[] stanza = StringUtils.toBytes(STANZAS[i % STANZAS.length]);
+            os.write(stanza);
+            os.flush();
+            expected.write(stanza);
+        }
+        os.close();
+
+        InputStream is = handler.getInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        byte[] buf = new byte[100];
+        int read;
+        while (decompressed.size() < expected.size() && (read = is.read(buf)) > 0) {
+            decompressed.write(buf, 0, read);
+        }
+        is.close();
+        assertTrue(compressed.size() > 0);
+        assertArrayEquals(expected.toByteArray(), decompressed.toByteArray());
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.compression;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+import org.jivesoftware.smack.compression.XMPPInputOutputStream.FlushMethod;
+import org.jivesoftware.smack.test.util.BenchmarkUtils;
+import org.jivesoftware.smack.util.StringUtils;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compares the bandwidth and CPU time per stanza of the "zlib" compression levels for typical XMPP traffic. Every
+ * stanza is flushed on its own, like the connection's writer does when there is no further stanza queued.
+ */
+public class ZlibCompressionBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(ZlibCompressionBenchmark.class.getName());
+
+    private static final int STANZA_COUNT = 5000;
+
+    private static final int[] LEVELS = new int[] { Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, 3,
+                    Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION };
+
+    @BeforeClass
+    public static void assumeBenchmarksEnabled() {
+        BenchmarkUtils.assumeBenchmarksEnabled();
+    }
+
+    @After
+    public void resetDefaults() {
+        Java7ZlibInputOutputStream.setCompressionLevel(Deflater.DEFAULT_COMPRESSION);
+        XMPPInputOutputStream.setFlushMethod(FlushMethod.FULL_FLUSH);
+    }
+
+    @Test
+    public void benchmarkCompressionLevels() throws IOException {
+        byte[][] stanzas = new byte[STANZA_COUNT][];
+        long uncompressedBytes = 0;
+        for (int i = 0; i < STANZA_COUNT; i++) {
+            // Vary the stanza IDs, as it is the case with real traffic.
+            String stanza = Java7ZlibInputOutputStreamTest.STANZAS[i % Java7ZlibInputOutputStreamTest.STANZAS.length];
+            stanzas[i] = StringUtils.toBytes(stanza.replace("id='", "id='" + i));
+            uncompressedBytes += stanzas[i].length;
+        }
+
+        // Warm up.
+        run(stanzas, Deflater.DEFAULT_COMPRESSION);
+
+        StringBuilder sb = new StringBuilder("zlib compression of ").append(STANZA_COUNT).append(
+                        " stanzas, ").append(uncompressedBytes / STANZA_COUNT).append(" bytes/stanza uncompressed");
+        for (FlushMethod flushMethod : FlushMethod.values()) {
+            XMPPInputOutputStream.setFlushMethod(flushMethod);
+            for (int level : LEVELS) {
+                Result result = run(stanzas, level);
+                if (level != Deflater.NO_COMPRESSION) {
+                    assertTrue(result.bytes < uncompressedBytes);
+                }
+                sb.append(String.format(Locale.US, "%n%s level %2d: %6.1f bytes/stanza, %6.2f us CPU/stanza",
+                                flushMethod, level, (double) result.bytes / STANZA_COUNT,
+                                result.cpuNanos / 1000d / STANZA_COUNT));
+            }
+        }
+        LOGGER.info(sb.toString());
+    }
+
+    private static Result run(byte[][] stanzas, int level) throws IOException {
+        Java7ZlibInputOutputStream.setCompressionLevel(level);
+        CountingOutputStream counter = new CountingOutputStream();
+        OutputStream os = new Java7ZlibInputOutputStream().getOutputStream(counter);
+        long start = cpuTime();
+        for (byte[] stanza : stanzas) {
+            os.write(stanza);
+            os.flush();
+        }
+        long cpuNanos = cpuTime() - start;
+        os.close();
+        return new Result(counter.count, cpuNanos);
+    }
+
+    private static long cpuTime() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean.isCurrentThreadCpuTimeSupported()) {
+            return threadMXBean.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+    private static final class Result {
+        private final long bytes;
+        private final long cpuNanos;
+
+        private Result(long bytes, long cpuNanos) {
+            this.bytes = bytes;
+            this.cpuNanos = cpuNanos;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
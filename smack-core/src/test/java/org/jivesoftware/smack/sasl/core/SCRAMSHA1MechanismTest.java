@@ -17,6 +17,8 @@
 package org.jivesoftware.smack.sasl.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 
 import org.jivesoftware.smack.DummyConnection;
 import org.jivesoftware.smack.SmackException;
@@ -39,6 +41,33 @@ public class SCRAMSHA1MechanismTest extends SmackTestSuite {
 
     @Test
     public void testScramSha1Mechanism() throws NotConnectedException, SmackException, InterruptedException {
+        performScramSha1Authentication();
+    }
+
+    @Test
+    public void testScramSha1MechanismWithoutKeyCache() throws NotConnectedException, SmackException,
+                    InterruptedException {
+        ScramMechanism.setKeyCacheSize(0);
+        try {
+            performScramSha1Authentication();
+        }
+        finally {
+            ScramMechanism.setKeyCacheSize(ScramMechanism.DEFAULT_KEY_CACHE_SIZE);
+        }
+    }
+
+    @Test
+    public void keyCacheKeyShouldNotContainPassword() throws SmackException {
+        SCRAMSHA1Mechanism mech = new SCRAMSHA1Mechanism();
+        String key = mech.getKeyCacheKey(PASSWORD, "QSXCR+Q6sek8bf92", 4096);
+        assertFalse(key.contains(PASSWORD));
+        assertEquals(key, mech.getKeyCacheKey(PASSWORD, "QSXCR+Q6sek8bf92", 4096));
+        assertNotEquals(key, mech.getKeyCacheKey(PASSWORD, "QSXCR+Q6sek8bf92", 4097));
+        assertNotEquals(key, mech.getKeyCacheKey(PASSWORD + ",QSXCR", "+Q6sek8bf92", 4096));
+    }
+
+    private static void performScramSha1Authentication() throws NotConnectedException, SmackException,
+                    InterruptedException {
         final DummyConnection con = new DummyConnection();
         SCRAMSHA1Mechanism mech = new SCRAMSHA1Mechanism() {
             @Override
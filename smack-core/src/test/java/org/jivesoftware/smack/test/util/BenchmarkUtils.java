@@ -0,0 +1,40 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.test.util;
+
+import org.junit.Assume;
+
+/**
+ * Benchmarks are JUnit tests which log their results instead of asserting them. As they take long, they are skipped
+ * unless the system property {@value #BENCHMARKS_PROPERTY} is set to 'true', e.g. with
+ * {@code gradle test -Dsmack.benchmarks=true}.
+ */
+public final class BenchmarkUtils {
+
+    public static final String BENCHMARKS_PROPERTY = "smack.benchmarks";
+
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * Skip the current test if benchmarks are not enabled. Invoke this in a {@code @Before} method of the benchmark.
+     */
+    public static void assumeBenchmarksEnabled() {
+        Assume.assumeTrue("Benchmarks are disabled, set -D" + BENCHMARKS_PROPERTY + "=true to run them",
+                        Boolean.getBoolean(BENCHMARKS_PROPERTY));
+    }
+}
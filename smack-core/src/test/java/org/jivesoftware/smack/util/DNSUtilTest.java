@@ -0,0 +1,97 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jivesoftware.smack.ConnectionConfiguration.DnssecMode;
+import org.jivesoftware.smack.util.dns.DNSResolver;
+import org.jivesoftware.smack.util.dns.HostAddress;
+import org.jivesoftware.smack.util.dns.SRVRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DNSUtilTest {
+
+    private DNSResolver previousResolver;
+
+    @Before
+    public void setResolver() {
+        previousResolver = DNSUtil.getDNSResolver();
+        DNSUtil.setDNSResolver(new DNSResolver(false) {
+            @Override
+            protected List<SRVRecord> lookupSRVRecords0(String name, List<HostAddress> failedAddresses,
+                            DnssecMode dnssecMode) {
+                List<InetAddress> inetAddresses = Collections.singletonList(InetAddress.getLoopbackAddress());
+                List<SRVRecord> res = new ArrayList<>();
+                if (name.equals("_xmpp-client._tcp.example.org")) {
+                    res.add(new SRVRecord("starttls.example.org", 5222, 10, 0, inetAddresses));
+                } else if (name.equals("_xmpps-client._tcp.example.org")) {
+                    res.add(new SRVRecord("directtls.example.org", 443, 5, 0, inetAddresses));
+                }
+                return res;
+            }
+
+            @Override
+            protected List<InetAddress> lookupHostAddress0(String name, List<HostAddress> failedAddresses,
+                            DnssecMode dnssecMode) {
+                return Collections.singletonList(InetAddress.getLoopbackAddress());
+            }
+        });
+    }
+
+    @After
+    public void restoreResolver() {
+        if (previousResolver != null) {
+            DNSUtil.setDNSResolver(previousResolver);
+        }
+    }
+
+    @Test
+    public void shouldNotResolveDirectTlsPerDefault() {
+        List<HostAddress> hostAddresses = DNSUtil.resolveXMPPServiceDomain("example.org",
+                        new ArrayList<HostAddress>(), DnssecMode.disabled);
+        assertEquals(2, hostAddresses.size());
+        assertEquals("starttls.example.org", hostAddresses.get(0).getFQDN());
+        for (HostAddress hostAddress : hostAddresses) {
+            assertFalse(hostAddress.isDirectTls());
+        }
+    }
+
+    @Test
+    public void shouldMergeDirectTlsRecordsByPriority() {
+        List<HostAddress> hostAddresses = DNSUtil.resolveXMPPServiceDomain("example.org",
+                        new ArrayList<HostAddress>(), DnssecMode.disabled, true);
+        assertEquals(3, hostAddresses.size());
+        assertEquals("directtls.example.org", hostAddresses.get(0).getFQDN());
+        assertEquals(443, hostAddresses.get(0).getPort());
+        assertTrue(hostAddresses.get(0).isDirectTls());
+        assertEquals("starttls.example.org", hostAddresses.get(1).getFQDN());
+        assertFalse(hostAddresses.get(1).isDirectTls());
+        // The fallback A/AAAA lookup of the domain itself.
+        assertEquals("example.org", hostAddresses.get(2).getFQDN());
+        assertFalse(hostAddresses.get(2).isDirectTls());
+    }
+}
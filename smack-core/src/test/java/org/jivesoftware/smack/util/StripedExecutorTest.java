@@ -0,0 +1,78 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class StripedExecutorTest {
+
+    @Test
+    public void sameKeyShouldUseSameStripe() {
+        StripedExecutor executor = new StripedExecutor(4, Executors.defaultThreadFactory());
+        try {
+            assertSame(executor.getStripe("foo@example.org"), executor.getStripe("foo@example.org"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void stripeIndexShouldBeInRange() {
+        int[] hashCodes = { 0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 0x10000, "room@muc.example.org".hashCode() };
+        for (int hashCode : hashCodes) {
+            int index = StripedExecutor.stripeIndex(hashCode, 3);
+            assertTrue(index >= 0 && index < 3);
+        }
+    }
+
+    @Test
+    public void shouldKeepOrderPerKey() throws InterruptedException {
+        StripedExecutor executor = new StripedExecutor(4, Executors.defaultThreadFactory());
+        final int count = 1000;
+        final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                final int value = i;
+                executor.execute("key", new Runnable() {
+                    @Override
+                    public void run() {
+                        processed.add(value);
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, processed.get(i).intValue());
+        }
+    }
+}
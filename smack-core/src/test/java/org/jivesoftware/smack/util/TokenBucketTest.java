@@ -0,0 +1,50 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void shouldAllowBurstAndSpreadReservations() {
+        TokenBucket bucket = new TokenBucket(2, 2);
+        final long now = System.nanoTime();
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now));
+        // The bucket is empty, further reservations are spread with the refill rate.
+        assertEquals(SECOND / 2, bucket.reserve(now));
+        assertEquals(SECOND, bucket.reserve(now));
+    }
+
+    @Test
+    public void shouldRefill() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        final long now = System.nanoTime();
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now + SECOND));
+        // Never refill above the burst size.
+        assertEquals(0, bucket.reserve(now + 10 * SECOND));
+        assertEquals(SECOND, bucket.reserve(now + 10 * SECOND));
+    }
+}
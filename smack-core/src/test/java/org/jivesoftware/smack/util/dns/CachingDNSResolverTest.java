@@ -0,0 +1,127 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util.dns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jivesoftware.smack.ConnectionConfiguration.DnssecMode;
+import org.junit.Test;
+
+public class CachingDNSResolverTest {
+
+    private static final class CountingResolver extends DNSResolver {
+        private int srvLookups;
+        private int hostLookups;
+
+        private CountingResolver() {
+            super(false);
+        }
+
+        @Override
+        protected List<SRVRecord> lookupSRVRecords0(String name, List<HostAddress> failedAddresses,
+                        DnssecMode dnssecMode) {
+            srvLookups++;
+            if (name.startsWith("_xmpp-client._tcp.unknown")) {
+                failedAddresses.add(new HostAddress(name, new Exception("NXDOMAIN")));
+                return null;
+            }
+            List<InetAddress> inetAddresses = Collections.singletonList(InetAddress.getLoopbackAddress());
+            List<SRVRecord> res = new ArrayList<>();
+            res.add(new SRVRecord("xmpp.example.org", 5222, 0, 0, inetAddresses, 300));
+            return res;
+        }
+
+        @Override
+        protected List<InetAddress> lookupHostAddress0(String name, List<HostAddress> failedAddresses,
+                        DnssecMode dnssecMode) {
+            hostLookups++;
+            return Collections.singletonList(InetAddress.getLoopbackAddress());
+        }
+    }
+
+    @Test
+    public void shouldCacheSrvRecords() {
+        CountingResolver countingResolver = new CountingResolver();
+        CachingDNSResolver resolver = new CachingDNSResolver(countingResolver);
+        List<HostAddress> failedAddresses = new ArrayList<>();
+
+        List<SRVRecord> first = resolver.lookupSRVRecords("_xmpp-client._tcp.example.org", failedAddresses,
+                        DnssecMode.disabled);
+        List<SRVRecord> second = resolver.lookupSRVRecords("_xmpp-client._tcp.example.org", failedAddresses,
+                        DnssecMode.disabled);
+
+        assertEquals(1, countingResolver.srvLookups);
+        assertEquals(1, resolver.getMisses());
+        assertEquals(1, resolver.getHits());
+        assertEquals(first.get(0).getFQDN(), second.get(0).getFQDN());
+        assertEquals(300, second.get(0).getTtl());
+        // Every caller must get its own HostAddress instances.
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals(0, failedAddresses.size());
+    }
+
+    @Test
+    public void shouldCacheFailedLookups() {
+        CountingResolver countingResolver = new CountingResolver();
+        CachingDNSResolver resolver = new CachingDNSResolver(countingResolver);
+
+        for (int i = 0; i < 3; i++) {
+            List<HostAddress> failedAddresses = new ArrayList<>();
+            assertNull(resolver.lookupSRVRecords("_xmpp-client._tcp.unknown.example.org", failedAddresses,
+                            DnssecMode.disabled));
+            assertEquals(1, failedAddresses.size());
+        }
+
+        assertEquals(1, countingResolver.srvLookups);
+        assertEquals(2, resolver.getNegativeHits());
+    }
+
+    @Test
+    public void shouldNotCacheFailedLookupsIfNegativeTtlIsZero() {
+        CountingResolver countingResolver = new CountingResolver();
+        CachingDNSResolver resolver = new CachingDNSResolver(countingResolver);
+        resolver.setNegativeTtl(0);
+
+        resolver.lookupSRVRecords("_xmpp-client._tcp.unknown.example.org", new ArrayList<HostAddress>(),
+                        DnssecMode.disabled);
+        resolver.lookupSRVRecords("_xmpp-client._tcp.unknown.example.org", new ArrayList<HostAddress>(),
+                        DnssecMode.disabled);
+
+        assertEquals(2, countingResolver.srvLookups);
+    }
+
+    @Test
+    public void shouldCacheHostAddresses() {
+        CountingResolver countingResolver = new CountingResolver();
+        CachingDNSResolver resolver = new CachingDNSResolver(countingResolver);
+
+        HostAddress first = resolver.lookupHostAddress("example.org", 5222, new ArrayList<HostAddress>(),
+                        DnssecMode.disabled);
+        HostAddress second = resolver.lookupHostAddress("example.org", 5222, new ArrayList<HostAddress>(),
+                        DnssecMode.disabled);
+
+        assertEquals(1, countingResolver.hostLookups);
+        assertEquals(first.getInetAddresses(), second.getInetAddresses());
+    }
+}
@@ -65,7 +65,6 @@ import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -266,6 +265,7 @@ public final class EntityCapsManager extends Manager {
 
     private boolean entityCapsEnabled;
     private CapsVersionAndHash currentCapsVersion;
+    private String currentCapsEntityNode;
     private volatile Presence presenceSend;
 
     /**
@@ -480,9 +480,20 @@ public final class EntityCapsManager extends Manager {
         discoverInfo.setType(IQ.Type.result);
         sdm.addDiscoverInfoTo(discoverInfo);
 
+        CapsVersionAndHash capsVersion = generateVerificationString(discoverInfo);
+        if (currentCapsVersion != null && currentCapsVersion.version.equals(capsVersion.version)
+                        && entityNode.equals(currentCapsEntityNode)) {
+            // Neither our features, identities and extended info nor the entity node changed, hence the node
+            // information is already provided and there is no need to re-send the presence.
+            if (connection != null)
+                JID_TO_NODEVER_CACHE.put(connection.getUser(), new NodeVerHash(entityNode, currentCapsVersion));
+            return;
+        }
+
         // getLocalNodeVer() will return a result only after currentCapsVersion is set. Therefore
         // set it first and then call getLocalNodeVer()
-        currentCapsVersion = generateVerificationString(discoverInfo);
+        currentCapsVersion = capsVersion;
+        currentCapsEntityNode = entityNode;
         final String localNodeVer = getLocalNodeVer();
         discoverInfo.setNode(localNodeVer);
         addDiscoverInfoByNode(localNodeVer, discoverInfo);
@@ -616,9 +627,8 @@ public final class EntityCapsManager extends Manager {
 
         DataForm extendedInfo =  DataForm.from(discoverInfo);
 
-        // 1. Initialize an empty string S ('sb' in this method).
-        StringBuilder sb = new StringBuilder(); // Use StringBuilder as we don't
-                                                // need thread-safe StringBuffer
+        // The string S is not build as a whole. Instead its components are sorted first and then fed into the hash
+        // function one by one.
 
         // 2. Sort the service discovery identities by category and then by
         // type and then by xml:lang
@@ -626,53 +636,30 @@ public final class EntityCapsManager extends Manager {
         // [NAME]. Note that each slash is included even if the LANG or
         // NAME is not included (in accordance with XEP-0030, the category and
         // type MUST be included.
-        SortedSet<DiscoverInfo.Identity> sortedIdentities = new TreeSet<DiscoverInfo.Identity>();
-
-        for (DiscoverInfo.Identity i : discoverInfo.getIdentities())
-            sortedIdentities.add(i);
-
-        // 3. For each identity, append the 'category/type/lang/name' to S,
-        // followed by the '<' character.
-        for (DiscoverInfo.Identity identity : sortedIdentities) {
-            sb.append(identity.getCategory());
-            sb.append('/');
-            sb.append(identity.getType());
-            sb.append('/');
-            sb.append(identity.getLanguage() == null ? "" : identity.getLanguage());
-            sb.append('/');
-            sb.append(identity.getName() == null ? "" : identity.getName());
-            sb.append('<');
-        }
+        SortedSet<DiscoverInfo.Identity> sortedIdentities = new TreeSet<DiscoverInfo.Identity>(discoverInfo.getIdentities());
 
         // 4. Sort the supported service discovery features.
         SortedSet<String> features = new TreeSet<String>();
         for (Feature f : discoverInfo.getFeatures())
             features.add(f.getVar());
 
-        // 5. For each feature, append the feature to S, followed by the '<'
-        // character
-        for (String f : features) {
-            sb.append(f);
-            sb.append('<');
-        }
-
         // only use the data form for calculation is it has a hidden FORM_TYPE
         // field
         // see XEP-0115 5.4 step 3.6
+        FormField ft = null;
+        SortedSet<FormField> fs = null;
         if (extendedInfo != null && extendedInfo.hasHiddenFormTypeField()) {
             synchronized (extendedInfo) {
                 // 6. If the service discovery information response includes
                 // XEP-0128 data forms, sort the forms by the FORM_TYPE (i.e.,
                 // by the XML character data of the <value/> element).
-                SortedSet<FormField> fs = new TreeSet<FormField>(new Comparator<FormField>() {
+                fs = new TreeSet<FormField>(new Comparator<FormField>() {
                     @Override
                     public int compare(FormField f1, FormField f2) {
                         return f1.getVariable().compareTo(f2.getVariable());
                     }
                 });
 
-                FormField ft = null;
-
                 for (FormField f : extendedInfo.getFields()) {
                     if (!f.getVariable().equals("FORM_TYPE")) {
                         fs.add(f);
@@ -680,10 +667,47 @@ public final class EntityCapsManager extends Manager {
                         ft = f;
                     }
                 }
+            }
+        }
+
+        // 8. Ensure that S is encoded according to the UTF-8 encoding (RFC
+        // 3269).
+        // 9. Compute the verification string by hashing S using the algorithm
+        // specified in the 'hash' attribute (e.g., SHA-1 as defined in RFC
+        // 3174).
+        // The hashed data MUST be generated with binary output and
+        // encoded using Base64 as specified in Section 4 of RFC 4648
+        // (note: the Base64 output MUST NOT include whitespace and MUST set
+        // padding bits to zero).
+        byte[] digest;
+        synchronized (md) {
+            // 1. Initialize an empty string S ('sd' in this method).
+            StreamingDigest sd = new StreamingDigest(md);
+
+            // 3. For each identity, append the 'category/type/lang/name' to S,
+            // followed by the '<' character.
+            for (DiscoverInfo.Identity identity : sortedIdentities) {
+                sd.append(identity.getCategory());
+                sd.append('/');
+                sd.append(identity.getType());
+                sd.append('/');
+                sd.append(identity.getLanguage() == null ? "" : identity.getLanguage());
+                sd.append('/');
+                sd.append(identity.getName() == null ? "" : identity.getName());
+                sd.append('<');
+            }
 
+            // 5. For each feature, append the feature to S, followed by the '<'
+            // character
+            for (String f : features) {
+                sd.append(f);
+                sd.append('<');
+            }
+
+            if (fs != null) {
                 // Add FORM_TYPE values
                 if (ft != null) {
-                    formFieldValuesToCaps(ft.getValues(), sb);
+                    formFieldValuesToCaps(ft.getValues(), sd);
                 }
 
                 // 7. 3. For each field other than FORM_TYPE:
@@ -694,44 +718,22 @@ public final class EntityCapsManager extends Manager {
                 // 3. For each <value/> element, append the XML character data,
                 // followed by the '<' character.
                 for (FormField f : fs) {
-                    sb.append(f.getVariable());
-                    sb.append('<');
-                    formFieldValuesToCaps(f.getValues(), sb);
+                    sd.append(f.getVariable());
+                    sd.append('<');
+                    formFieldValuesToCaps(f.getValues(), sd);
                 }
             }
-        }
-        // 8. Ensure that S is encoded according to the UTF-8 encoding (RFC
-        // 3269).
-        // 9. Compute the verification string by hashing S using the algorithm
-        // specified in the 'hash' attribute (e.g., SHA-1 as defined in RFC
-        // 3174).
-        // The hashed data MUST be generated with binary output and
-        // encoded using Base64 as specified in Section 4 of RFC 4648
-        // (note: the Base64 output MUST NOT include whitespace and MUST set
-        // padding bits to zero).
-        byte[] bytes;
-        try {
-            bytes = sb.toString().getBytes(StringUtils.UTF8);
-        }
-        catch (UnsupportedEncodingException e) {
-            throw new AssertionError(e);
-        }
-        byte[] digest;
-        synchronized(md) {
-            digest = md.digest(bytes);
+            digest = sd.digest();
         }
         String version = Base64.encodeToString(digest);
         return new CapsVersionAndHash(version, hash);
     }
 
-    private static void formFieldValuesToCaps(List<String> i, StringBuilder sb) {
-        SortedSet<String> fvs = new TreeSet<String>();
-        for (String s : i) {
-            fvs.add(s);
-        }
+    private static void formFieldValuesToCaps(List<String> i, StreamingDigest sd) {
+        SortedSet<String> fvs = new TreeSet<String>(i);
         for (String fv : fvs) {
-            sb.append(fv);
-            sb.append('<');
+            sd.append(fv);
+            sd.append('<');
         }
     }
 
@@ -0,0 +1,96 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.caps;
+
+import java.security.MessageDigest;
+
+/**
+ * Feeds the UTF-8 encoding of strings into a message digest, without building the complete input as one string or
+ * byte array first. The characters are encoded into a small buffer, which is passed to the digest whenever it is full.
+ * Unpaired surrogates are encoded as '?', like {@link String#getBytes(String)} does.
+ */
+final class StreamingDigest {
+
+    private final MessageDigest md;
+
+    private final byte[] buffer = new byte[1024];
+
+    private int length;
+
+    StreamingDigest(MessageDigest md) {
+        this.md = md;
+        md.reset();
+    }
+
+    StreamingDigest append(String string) {
+        final int stringLength = string.length();
+        for (int i = 0; i < stringLength; i++) {
+            if (length > buffer.length - 4) {
+                flush();
+            }
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            }
+            else if (c < 0x800) {
+                buffer[length++] = (byte) (0xc0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3f));
+            }
+            else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+                buffer[length++] = (byte) (0xe0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[length++] = (byte) (0x80 | (c & 0x3f));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < stringLength
+                            && Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer[length++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+            }
+            else {
+                buffer[length++] = '?';
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Append a character from the ASCII range.
+     *
+     * @param c the character.
+     * @return a reference to this.
+     */
+    StreamingDigest append(char c) {
+        if (length == buffer.length) {
+            flush();
+        }
+        buffer[length++] = (byte) c;
+        return this;
+    }
+
+    byte[] digest() {
+        flush();
+        return md.digest();
+    }
+
+    private void flush() {
+        md.update(buffer, 0, length);
+        length = 0;
+    }
+}
@@ -0,0 +1,649 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.caps.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.packet.ExtensionElement;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.jivesoftware.smack.util.SmackExecutorThreadFactory;
+import org.jivesoftware.smack.util.StringUtils;
+import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
+import org.jivesoftware.smackx.xdata.FormField;
+import org.jivesoftware.smackx.xdata.packet.DataForm;
+
+/**
+ * An EntityCapsPersistentCache which stores the Caps information of all known nodes in a single, memory-mapped file.
+ * <p>
+ * Compared to {@link SimpleDirectoryPersistentCache}, which stores every node as serialized XML in its own file, the
+ * information is stored in a compact binary encoding, so that a lookup only copies the record out of the mapped file
+ * and does not involve XML parsing. Only disco#info results with extensions other than simple data forms are stored
+ * as XML. The file is indexed once when the cache is created. New information is written behind by a background
+ * thread, and if the file grows beyond the maximum size, the least recently used records are evicted.
+ * </p>
+ * <p>
+ * The file is only accessed by the cache instance which created it. Use {@link #close()} to write all pending
+ * information and release the file.
+ * </p>
+ */
+public class SingleFilePersistentCache implements EntityCapsPersistentCache, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(SingleFilePersistentCache.class.getName());
+
+    /**
+     * The default maximum size of the cache file in bytes.
+     */
+    public static final int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+    private static final int MAGIC = 0x534d4343;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_LENGTH = 8;
+
+    /**
+     * The length of the record length and key length fields preceding every record.
+     */
+    private static final int RECORD_PREFIX_LENGTH = 6;
+
+    private static final byte ENCODING_BINARY = 1;
+
+    private static final byte ENCODING_XML = 2;
+
+    private final File file;
+
+    private final int maxSize;
+
+    /**
+     * The records in the file by node#ver, with the least recently used record first. Guarded by 'this'.
+     */
+    private final LinkedHashMap<String, Record> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The information which has been added, but not yet written to the file.
+     */
+    private final Map<String, DiscoverInfo> pending = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+
+    private final ThreadPoolExecutor writer;
+
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+
+    private RandomAccessFile randomAccessFile;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer mapped;
+
+    private int fileSize;
+
+    private boolean closed;
+
+    /**
+     * Creates a new SingleFilePersistentCache using the given file with a maximum size of {@link #DEFAULT_MAX_SIZE}.
+     * The file is created if it does not exist.
+     *
+     * @param file the file where the cache will be stored.
+     * @throws IOException if the file could not be opened.
+     */
+    public SingleFilePersistentCache(File file) throws IOException {
+        this(file, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a new SingleFilePersistentCache using the given file. The file is created if it does not exist. If it
+     * exists, but is not a cache file, its content is discarded.
+     *
+     * @param file the file where the cache will be stored.
+     * @param maxSize the maximum size of the file in bytes.
+     * @throws IOException if the file could not be opened.
+     */
+    public SingleFilePersistentCache(File file, int maxSize) throws IOException {
+        if (maxSize <= HEADER_LENGTH) {
+            throw new IllegalArgumentException("maxSize must be greater than " + HEADER_LENGTH);
+        }
+        this.file = file;
+        this.maxSize = maxSize;
+        writer = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new SmackExecutorThreadFactory("Entity Caps Cache Writer"));
+        writer.allowCoreThreadTimeOut(true);
+        synchronized (this) {
+            open();
+        }
+    }
+
+    @Override
+    public void addDiscoverInfoByNodePersistent(String nodeVer, DiscoverInfo info) {
+        synchronized (this) {
+            if (closed || index.containsKey(nodeVer)) {
+                return;
+            }
+        }
+        pending.put(nodeVer, info);
+        if (writeScheduled.compareAndSet(false, true)) {
+            try {
+                writer.execute(writeTask);
+            }
+            catch (RejectedExecutionException e) {
+                // The cache has been closed concurrently.
+                pending.remove(nodeVer);
+            }
+        }
+    }
+
+    @Override
+    public DiscoverInfo lookup(String nodeVer) {
+        DiscoverInfo info = pending.get(nodeVer);
+        if (info != null) {
+            return info;
+        }
+        byte[] payload;
+        synchronized (this) {
+            Record record = index.get(nodeVer);
+            if (record == null) {
+                return null;
+            }
+            payload = new byte[record.offset + record.length - record.payloadOffset];
+            ByteBuffer buffer = mapped.duplicate();
+            buffer.position(record.payloadOffset);
+            buffer.get(payload);
+        }
+        try {
+            return decode(payload);
+        }
+        catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not restore info of " + nodeVer, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void emptyCache() {
+        pending.clear();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                reset();
+            }
+            catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not empty cache file " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of nodes in this cache, including the ones which are not yet written to the file.
+     *
+     * @return the number of nodes.
+     */
+    public int size() {
+        synchronized (this) {
+            int size = index.size();
+            for (String nodeVer : pending.keySet()) {
+                if (!index.containsKey(nodeVer)) {
+                    size++;
+                }
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Wait until all information added to this cache has been written to the file.
+     *
+     * @throws InterruptedException
+     */
+    public void flush() throws InterruptedException {
+        try {
+            writer.submit(writeTask).get();
+        }
+        catch (ExecutionException e) {
+            LOGGER.log(Level.WARNING, "Could not write pending information", e);
+        }
+    }
+
+    /**
+     * Write all pending information and close the file. Information added afterwards is ignored.
+     *
+     * @throws IOException if the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        try {
+            flush();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closed = true;
+            index.clear();
+            mapped = null;
+            randomAccessFile.close();
+        }
+        writer.shutdown();
+    }
+
+    private void writePending() {
+        writeScheduled.set(false);
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> nodeVers = new ArrayList<>(pending.size());
+        List<byte[]> records = new ArrayList<>(pending.size());
+        for (Map.Entry<String, DiscoverInfo> entry : pending.entrySet()) {
+            try {
+                records.add(encodeRecord(entry.getKey(), entry.getValue()));
+                nodeVers.add(entry.getKey());
+            }
+            catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not encode info of " + entry.getKey(), e);
+                pending.remove(entry.getKey());
+            }
+        }
+        try {
+            synchronized (this) {
+                if (!closed) {
+                    append(nodeVers, records);
+                }
+            }
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write to cache file " + file, e);
+        }
+        finally {
+            for (String nodeVer : nodeVers) {
+                pending.remove(nodeVer);
+            }
+        }
+    }
+
+    private void append(List<String> nodeVers, List<byte[]> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        List<Record> appended = new ArrayList<>(records.size());
+        int offset = fileSize;
+        for (int i = 0; i < records.size(); i++) {
+            String nodeVer = nodeVers.get(i);
+            byte[] record = records.get(i);
+            if (index.containsKey(nodeVer)) {
+                appended.add(null);
+                continue;
+            }
+            bytes.write(record);
+            appended.add(Record.from(offset, record));
+            offset += record.length;
+        }
+        if (bytes.size() == 0) {
+            return;
+        }
+        writeFully(ByteBuffer.wrap(bytes.toByteArray()), fileSize);
+        fileSize = offset;
+        for (int i = 0; i < appended.size(); i++) {
+            Record record = appended.get(i);
+            if (record != null) {
+                index.put(nodeVers.get(i), record);
+            }
+        }
+        if (fileSize > maxSize) {
+            evict();
+        }
+        else {
+            remap();
+        }
+    }
+
+    /**
+     * Rewrite the file with the most recently used records, so that the file is at most three quarters of the
+     * maximum size afterwards.
+     *
+     * @throws IOException
+     */
+    private void evict() throws IOException {
+        final int budget = maxSize / 4 * 3 - HEADER_LENGTH;
+        remap();
+        List<Map.Entry<String, Record>> entries = new ArrayList<>(index.entrySet());
+        int first = entries.size();
+        int keptSize = 0;
+        while (first > 0 && keptSize + entries.get(first - 1).getValue().length <= budget) {
+            first--;
+            keptSize += entries.get(first).getValue().length;
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        LinkedHashMap<String, Record> keptIndex = new LinkedHashMap<>(16, 0.75f, true);
+        RandomAccessFile tmp = new RandomAccessFile(tmpFile, "rw");
+        try {
+            tmp.setLength(0);
+            tmp.write(createHeader().array());
+            int offset = HEADER_LENGTH;
+            for (Map.Entry<String, Record> entry : entries.subList(first, entries.size())) {
+                Record record = entry.getValue();
+                byte[] bytes = new byte[record.length];
+                ByteBuffer buffer = mapped.duplicate();
+                buffer.position(record.offset);
+                buffer.get(bytes);
+                tmp.write(bytes);
+                keptIndex.put(entry.getKey(), new Record(offset, record.length,
+                                offset + record.payloadOffset - record.offset));
+                offset += record.length;
+            }
+        }
+        finally {
+            tmp.close();
+        }
+
+        mapped = null;
+        randomAccessFile.close();
+        boolean replaced = tmpFile.renameTo(file) || (file.delete() && tmpFile.renameTo(file));
+        openFile();
+        if (!replaced) {
+            // The state of the file is unknown, start over with an empty cache.
+            reset();
+            throw new IOException("Could not replace " + file + " with " + tmpFile);
+        }
+        LOGGER.fine("Evicted " + first + " records from " + file);
+        index.clear();
+        index.putAll(keptIndex);
+        fileSize = (int) channel.size();
+        remap();
+    }
+
+    private void open() throws IOException {
+        openFile();
+        long size = channel.size();
+        if (size < HEADER_LENGTH || size > Integer.MAX_VALUE) {
+            reset();
+            return;
+        }
+        fileSize = (int) size;
+        remap();
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION) {
+            LOGGER.warning("Discarding content of " + file + " as it is not a cache file of this version");
+            reset();
+            return;
+        }
+
+        int offset = HEADER_LENGTH;
+        while (fileSize - offset >= RECORD_PREFIX_LENGTH) {
+            int recordLength = mapped.getInt(offset);
+            int keyLength = mapped.getShort(offset + 4) & 0xffff;
+            if (recordLength <= keyLength + 2 || recordLength > fileSize - offset - 4) {
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            ByteBuffer buffer = mapped.duplicate();
+            buffer.position(offset + RECORD_PREFIX_LENGTH);
+            buffer.get(key);
+            Record record = new Record(offset, recordLength + 4, offset + RECORD_PREFIX_LENGTH + keyLength);
+            index.put(new String(key, StringUtils.UTF8), record);
+            offset += record.length;
+        }
+        if (offset < fileSize) {
+            // The last record is incomplete, e.g. because the process died while it was written.
+            LOGGER.fine("Truncating incomplete record at " + offset + " of " + file);
+            mapped = null;
+            channel.truncate(offset);
+            fileSize = offset;
+            remap();
+        }
+    }
+
+    private void openFile() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+    }
+
+    private void reset() throws IOException {
+        index.clear();
+        mapped = null;
+        channel.truncate(0);
+        writeFully(createHeader(), 0);
+        fileSize = HEADER_LENGTH;
+        remap();
+    }
+
+    private void remap() throws IOException {
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static ByteBuffer createHeader() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION);
+        header.flip();
+        return header;
+    }
+
+    static byte[] encodeRecord(String nodeVer, DiscoverInfo info) throws IOException {
+        byte[] key = StringUtils.toBytes(nodeVer);
+        if (key.length > 0xffff) {
+            throw new IOException("node#ver too long");
+        }
+        byte[] payload = encode(info);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_PREFIX_LENGTH + key.length + payload.length);
+        record.putInt(2 + key.length + payload.length);
+        record.putShort((short) key.length);
+        record.put(key);
+        record.put(payload);
+        return record.array();
+    }
+
+    static byte[] encode(DiscoverInfo info) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (!isBinaryEncodable(info)) {
+            out.writeByte(ENCODING_XML);
+            out.write(StringUtils.toBytes(info.toXML().toString()));
+            return bytes.toByteArray();
+        }
+        out.writeByte(ENCODING_BINARY);
+        writeNullableString(out, info.getNode());
+        List<DiscoverInfo.Identity> identities = info.getIdentities();
+        out.writeInt(identities.size());
+        for (DiscoverInfo.Identity identity : identities) {
+            out.writeUTF(identity.getCategory());
+            out.writeUTF(identity.getType());
+            writeNullableString(out, identity.getName());
+            writeNullableString(out, identity.getLanguage());
+        }
+        List<DiscoverInfo.Feature> features = info.getFeatures();
+        out.writeInt(features.size());
+        for (DiscoverInfo.Feature feature : features) {
+            out.writeUTF(feature.getVar());
+        }
+        List<ExtensionElement> extensions = info.getExtensions();
+        out.writeInt(extensions.size());
+        for (ExtensionElement extension : extensions) {
+            DataForm form = (DataForm) extension;
+            out.writeUTF(form.getType().name());
+            writeNullableString(out, form.getTitle());
+            List<String> instructions = form.getInstructions();
+            out.writeInt(instructions.size());
+            for (String instruction : instructions) {
+                out.writeUTF(instruction);
+            }
+            List<FormField> fields = form.getFields();
+            out.writeInt(fields.size());
+            for (FormField field : fields) {
+                writeNullableString(out, field.getVariable());
+                FormField.Type type = field.getType();
+                writeNullableString(out, type != null ? type.toString() : null);
+                writeNullableString(out, field.getLabel());
+                List<String> values = field.getValues();
+                out.writeInt(values.size());
+                for (String value : values) {
+                    out.writeUTF(value);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static DiscoverInfo decode(byte[] payload) throws Exception {
+        if (payload[0] == ENCODING_XML) {
+            return PacketParserUtils.parseStanza(new String(payload, 1, payload.length - 1, StringUtils.UTF8));
+        }
+        if (payload[0] != ENCODING_BINARY) {
+            throw new IOException("Unknown encoding " + payload[0]);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1));
+        DiscoverInfo info = new DiscoverInfo();
+        // The stanza ID and addresses of the response are not part of the Caps information.
+        info.setStanzaId(null);
+        info.setType(IQ.Type.result);
+        info.setNode(readNullableString(in));
+        int identities = in.readInt();
+        for (int i = 0; i < identities; i++) {
+            String category = in.readUTF();
+            String type = in.readUTF();
+            String name = readNullableString(in);
+            String lang = readNullableString(in);
+            info.addIdentity(new DiscoverInfo.Identity(category, type, name, lang));
+        }
+        int features = in.readInt();
+        for (int i = 0; i < features; i++) {
+            info.addFeature(in.readUTF());
+        }
+        int forms = in.readInt();
+        for (int i = 0; i < forms; i++) {
+            DataForm form = new DataForm(DataForm.Type.fromString(in.readUTF()));
+            String title = readNullableString(in);
+            if (title != null) {
+                form.setTitle(title);
+            }
+            int instructions = in.readInt();
+            for (int j = 0; j < instructions; j++) {
+                form.addInstruction(in.readUTF());
+            }
+            int fields = in.readInt();
+            for (int j = 0; j < fields; j++) {
+                String variable = readNullableString(in);
+                FormField field = variable != null ? new FormField(variable) : new FormField();
+                String type = readNullableString(in);
+                if (type != null) {
+                    field.setType(FormField.Type.fromString(type));
+                }
+                String label = readNullableString(in);
+                if (label != null) {
+                    field.setLabel(label);
+                }
+                int values = in.readInt();
+                for (int k = 0; k < values; k++) {
+                    field.addValue(in.readUTF());
+                }
+                form.addField(field);
+            }
+            info.addExtension(form);
+        }
+        return info;
+    }
+
+    /**
+     * Check if the given info can be stored in the binary encoding, which covers the identities, features and
+     * extended information as data forms (XEP-0128) without options, descriptions or validation.
+     */
+    private static boolean isBinaryEncodable(DiscoverInfo info) {
+        for (ExtensionElement extension : info.getExtensions()) {
+            if (!(extension instanceof DataForm)) {
+                return false;
+            }
+            DataForm form = (DataForm) extension;
+            if (form.getReportedData() != null || !form.getItems().isEmpty()) {
+                return false;
+            }
+            for (FormField field : form.getFields()) {
+                if (field.getDescription() != null || field.isRequired() || !field.getOptions().isEmpty()
+                                || field.getValidateElement() != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return in.readUTF();
+    }
+
+    private static final class Record {
+        private final int offset;
+        private final int length;
+        private final int payloadOffset;
+
+        private Record(int offset, int length, int payloadOffset) {
+            this.offset = offset;
+            this.length = length;
+            this.payloadOffset = payloadOffset;
+        }
+
+        private static Record from(int offset, byte[] record) {
+            int keyLength = ((record[4] & 0xff) << 8) | (record[5] & 0xff);
+            return new Record(offset, record.length, offset + RECORD_PREFIX_LENGTH + keyLength);
+        }
+    }
+}
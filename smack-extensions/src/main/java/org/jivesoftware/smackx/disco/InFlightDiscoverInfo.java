@@ -0,0 +1,79 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.disco;
+
+import org.jivesoftware.smack.SmackException.NoResponseException;
+import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.XMPPException.XMPPErrorException;
+import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
+
+/**
+ * A disco#info request which is in flight. Concurrent callers requesting the same information wait for the outcome of
+ * this request instead of sending their own.
+ */
+final class InFlightDiscoverInfo {
+
+    private DiscoverInfo result;
+
+    private Exception exception;
+
+    private boolean completed;
+
+    synchronized void complete(DiscoverInfo result, Exception exception) {
+        this.result = result;
+        this.exception = exception;
+        completed = true;
+        notifyAll();
+    }
+
+    /**
+     * Wait until the request completed.
+     *
+     * @throws InterruptedException
+     */
+    synchronized void await() throws InterruptedException {
+        while (!completed) {
+            wait();
+        }
+    }
+
+    /**
+     * Wait until the request completed and return its result, or throw the exception it failed with. If the request
+     * failed for reasons which are specific to the thread which issued it, e.g. because the thread was interrupted,
+     * then <code>null</code> is returned and the caller should issue the request itself.
+     *
+     * @return the result of the request or <code>null</code>.
+     * @throws NoResponseException
+     * @throws XMPPErrorException
+     * @throws NotConnectedException
+     * @throws InterruptedException if the calling thread was interrupted while waiting.
+     */
+    synchronized DiscoverInfo get() throws NoResponseException, XMPPErrorException, NotConnectedException,
+                    InterruptedException {
+        await();
+        if (exception instanceof NoResponseException) {
+            throw (NoResponseException) exception;
+        }
+        if (exception instanceof XMPPErrorException) {
+            throw (XMPPErrorException) exception;
+        }
+        if (exception instanceof NotConnectedException) {
+            throw (NotConnectedException) exception;
+        }
+        return result;
+    }
+}
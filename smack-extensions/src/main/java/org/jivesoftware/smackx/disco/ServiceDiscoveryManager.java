@@ -18,6 +18,7 @@ package org.jivesoftware.smackx.disco;
 
 import org.jivesoftware.smack.SmackException.NoResponseException;
 import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.AbstractConnectionListener;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.ConnectionCreationListener;
 import org.jivesoftware.smack.Manager;
@@ -36,8 +37,8 @@ import org.jivesoftware.smackx.disco.packet.DiscoverItems;
 import org.jivesoftware.smackx.disco.packet.DiscoverInfo.Identity;
 import org.jivesoftware.smackx.xdata.packet.DataForm;
 import org.jxmpp.jid.DomainBareJid;
+import org.jxmpp.jid.EntityFullJid;
 import org.jxmpp.jid.Jid;
-import org.jxmpp.util.cache.Cache;
 import org.jxmpp.util.cache.ExpirationCache;
 
 import java.util.ArrayList;
@@ -51,6 +52,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -85,9 +87,39 @@ public final class ServiceDiscoveryManager extends Manager {
 
     private final Set<String> features = new HashSet<String>();
     private DataForm extendedInfo = null;
+
+    /**
+     * The disco#info requests in flight by the node#version they were issued for.
+     */
+    private final ConcurrentMap<String, InFlightDiscoverInfo> inFlightByNodeVer = new ConcurrentHashMap<>();
+
+    /**
+     * The disco#info requests in flight by the entity they were issued for, if the node#version of the entity is
+     * unknown or could not be verified.
+     */
+    private final ConcurrentMap<Jid, InFlightDiscoverInfo> inFlightByJid = new ConcurrentHashMap<>();
+
     private Map<String, NodeInformationProvider> nodeInformationProviders =
             new ConcurrentHashMap<String, NodeInformationProvider>();
 
+    private static long defaultResultCacheExpirationTime = 60 * 60 * 1000;
+
+    private volatile long resultCacheExpirationTime = defaultResultCacheExpirationTime;
+
+    /**
+     * The disco#info results of the server, its services and our own account by the address and node they were
+     * discovered for.
+     */
+    private final ExpirationCache<ResultCacheKey, DiscoverInfo> discoverInfoCache = new ExpirationCache<>(500,
+                    defaultResultCacheExpirationTime);
+
+    /**
+     * The disco#items results of the server, i.e. the services it hosts. The items of other entities are not cached,
+     * since they may change at any time, e.g. the rooms of a MUC service or the PEP nodes of our own account.
+     */
+    private final ExpirationCache<ResultCacheKey, DiscoverItems> discoverItemsCache = new ExpirationCache<>(500,
+                    defaultResultCacheExpirationTime);
+
     // Create a new ServiceDiscoveryManager on every established connection
     static {
         XMPPConnectionRegistry.addConnectionCreationListener(new ConnectionCreationListener() {
@@ -98,6 +130,21 @@ public final class ServiceDiscoveryManager extends Manager {
         });
     }
 
+    /**
+     * Set the default time in milliseconds the results of disco#info and disco#items requests to the server, its
+     * services and our own account are cached by new ServiceDiscoveryManager instances. The default is one hour. A
+     * value of zero disables caching.
+     *
+     * @param expirationTime the default expiration time in milliseconds.
+     * @see #setResultCacheExpirationTime(long)
+     */
+    public static void setDefaultResultCacheExpirationTime(long expirationTime) {
+        if (expirationTime < 0) {
+            throw new IllegalArgumentException("expirationTime must not be negative");
+        }
+        defaultResultCacheExpirationTime = expirationTime;
+    }
+
     /**
      * Set the default identity all new connections will have. If unchanged the default identity is an
      * identity where category is set to 'client', type is set to 'pc' and name is set to 'Smack'.
@@ -121,6 +168,22 @@ public final class ServiceDiscoveryManager extends Manager {
         addFeature(DiscoverInfo.NAMESPACE);
         addFeature(DiscoverItems.NAMESPACE);
 
+        // The services of the server may have changed when a new stream is established, or the session could not be
+        // resumed.
+        connection.addConnectionListener(new AbstractConnectionListener() {
+            @Override
+            public void connected(XMPPConnection connection) {
+                clearResultCache();
+            }
+
+            @Override
+            public void authenticated(XMPPConnection connection, boolean resumed) {
+                if (!resumed) {
+                    clearResultCache();
+                }
+            }
+        });
+
         // Listen for disco#items requests and answer with an empty result        
         connection.registerIQRequestHandler(new AbstractIqRequestHandler(DiscoverItems.ELEMENT, DiscoverItems.NAMESPACE, IQ.Type.get, Mode.async) {
             @Override
@@ -240,7 +303,9 @@ public final class ServiceDiscoveryManager extends Manager {
      * @param identity
      */
     public synchronized void addIdentity(DiscoverInfo.Identity identity) {
-        identities.add(identity);
+        if (!identities.add(identity)) {
+            return;
+        }
         // Notify others of a state change of SDM. In order to keep the state consistent, this
         // method is synchronized
         renewEntityCapsVersion();
@@ -255,7 +320,9 @@ public final class ServiceDiscoveryManager extends Manager {
      */
     public synchronized boolean removeIdentity(DiscoverInfo.Identity identity) {
         if (identity.equals(this.identity)) return false;
-        identities.remove(identity);
+        if (!identities.remove(identity)) {
+            return true;
+        }
         // Notify others of a state change of SDM. In order to keep the state consistent, this
         // method is synchronized
         renewEntityCapsVersion();
@@ -381,7 +448,9 @@ public final class ServiceDiscoveryManager extends Manager {
      * @param feature the feature to register as supported.
      */
     public synchronized void addFeature(String feature) {
-        features.add(feature);
+        if (!features.add(feature)) {
+            return;
+        }
         // Notify others of a state change of SDM. In order to keep the state consistent, this
         // method is synchronized
         renewEntityCapsVersion();
@@ -396,7 +465,9 @@ public final class ServiceDiscoveryManager extends Manager {
      * @param feature the feature to remove from the supported features.
      */
     public synchronized void removeFeature(String feature) {
-        features.remove(feature);
+        if (!features.remove(feature)) {
+            return;
+        }
         // Notify others of a state change of SDM. In order to keep the state consistent, this
         // method is synchronized
         renewEntityCapsVersion();
@@ -488,36 +559,87 @@ public final class ServiceDiscoveryManager extends Manager {
         if (entityID == null)
             return discoverInfo(null, null);
 
-        // Check if the have it cached in the Entity Capabilities Manager
-        DiscoverInfo info = EntityCapsManager.getDiscoverInfoByUser(entityID);
-
-        if (info != null) {
-            // We were able to retrieve the information from Entity Caps and
-            // avoided a disco request, hurray!
-            return info;
-        }
+        while (true) {
+            // Check if the have it cached in the Entity Capabilities Manager
+            DiscoverInfo info = EntityCapsManager.getDiscoverInfoByUser(entityID);
 
-        // Try to get the newest node#version if it's known, otherwise null is
-        // returned
-        EntityCapsManager.NodeVerHash nvh = EntityCapsManager.getNodeVerHashByJid(entityID);
+            if (info != null) {
+                // We were able to retrieve the information from Entity Caps and
+                // avoided a disco request, hurray!
+                return info;
+            }
 
-        // Discover by requesting the information from the remote entity
-        // Note that wee need to use NodeVer as argument for Node if it exists
-        info = discoverInfo(entityID, nvh != null ? nvh.getNodeVer() : null);
+            // Try to get the newest node#version if it's known, otherwise null is
+            // returned
+            EntityCapsManager.NodeVerHash nvh = EntityCapsManager.getNodeVerHashByJid(entityID);
+
+            // Concurrent callers requesting the same information share one disco#info request. Entities which
+            // announced the same node#version share the request of the first one of them.
+            InFlightDiscoverInfo request = new InFlightDiscoverInfo();
+            InFlightDiscoverInfo inFlight;
+            if (nvh != null) {
+                inFlight = inFlightByNodeVer.putIfAbsent(nvh.getNodeVer(), request);
+                if (inFlight == null) {
+                    return discoverInfoAndComplete(request, inFlightByNodeVer, nvh.getNodeVer(), entityID, nvh);
+                }
+                inFlight.await();
+                // The result of another entity is only used if it could be verified against the node#version, in
+                // which case it is now found in the Entity Capabilities Manager. Otherwise query the entity itself.
+                info = EntityCapsManager.getDiscoverInfoByUser(entityID);
+                if (info != null) {
+                    return info;
+                }
+            }
 
-        // If the node version is known, store the new entry.
-        if (nvh != null) {
-            if (EntityCapsManager.verifyDiscoverInfoVersion(nvh.getVer(), nvh.getHash(), info))
-                EntityCapsManager.addDiscoverInfoByNode(nvh.getNodeVer(), info);
+            inFlight = inFlightByJid.putIfAbsent(entityID, request);
+            if (inFlight == null) {
+                return discoverInfoAndComplete(request, inFlightByJid, entityID, entityID, nvh);
+            }
+            info = inFlight.get();
+            if (info != null) {
+                return info;
+            }
+            // The request of the other caller failed for reasons specific to its thread, try again.
         }
+    }
 
-        return info;
+    private <K> DiscoverInfo discoverInfoAndComplete(InFlightDiscoverInfo request,
+                    ConcurrentMap<K, InFlightDiscoverInfo> inFlightRequests, K key, Jid entityID,
+                    EntityCapsManager.NodeVerHash nvh) throws NoResponseException, XMPPErrorException,
+                    NotConnectedException, InterruptedException {
+        DiscoverInfo info = null;
+        Exception exception = null;
+        try {
+            // Discover by requesting the information from the remote entity
+            // Note that wee need to use NodeVer as argument for Node if it exists
+            info = discoverInfo(entityID, nvh != null ? nvh.getNodeVer() : null);
+
+            // If the node version is known, store the new entry.
+            if (nvh != null) {
+                if (EntityCapsManager.verifyDiscoverInfoVersion(nvh.getVer(), nvh.getHash(), info))
+                    EntityCapsManager.addDiscoverInfoByNode(nvh.getNodeVer(), info);
+            }
+
+            return info;
+        }
+        catch (NoResponseException | XMPPErrorException | NotConnectedException | InterruptedException
+                        | RuntimeException e) {
+            exception = e;
+            throw e;
+        }
+        finally {
+            inFlightRequests.remove(key, request);
+            request.complete(info, exception);
+        }
     }
 
     /**
      * Returns the discovered information of a given XMPP entity addressed by its JID and
      * note attribute. Use this message only when trying to query information which is not 
      * directly addressable.
+     * <p>
+     * The result may be a cached instance, which is shared with all other callers and must therefore not be modified.
+     * </p>
      * 
      * @see <a href="http://xmpp.org/extensions/xep-0030.html#info-basic">XEP-30 Basic Protocol</a>
      * @see <a href="http://xmpp.org/extensions/xep-0030.html#info-nodes">XEP-30 Info Nodes</a>
@@ -531,6 +653,31 @@ public final class ServiceDiscoveryManager extends Manager {
      * @throws InterruptedException 
      */
     public DiscoverInfo discoverInfo(Jid entityID, String node) throws NoResponseException, XMPPErrorException, NotConnectedException, InterruptedException {
+        ResultCacheKey key = getResultCacheKey(entityID, node);
+        if (key != null) {
+            DiscoverInfo info = discoverInfoCache.lookup(key);
+            if (info != null) {
+                return info;
+            }
+        }
+        return refreshDiscoverInfo(entityID, node);
+    }
+
+    /**
+     * Returns the discovered information of a given XMPP entity addressed by its JID and node attribute, without
+     * looking up the result cache first. If the entity is the server, one of its services or our own account, then
+     * the cached result is replaced.
+     *
+     * @param entityID the address of the XMPP entity.
+     * @param node the optional attribute that supplements the 'jid' attribute.
+     * @return the discovered information.
+     * @throws XMPPErrorException if the operation failed for some reason.
+     * @throws NoResponseException if there was no response from the server.
+     * @throws NotConnectedException
+     * @throws InterruptedException
+     * @see #setResultCacheExpirationTime(long)
+     */
+    public DiscoverInfo refreshDiscoverInfo(Jid entityID, String node) throws NoResponseException, XMPPErrorException, NotConnectedException, InterruptedException {
         // Discover the entity's info
         DiscoverInfo disco = new DiscoverInfo();
         disco.setType(IQ.Type.get);
@@ -539,7 +686,12 @@ public final class ServiceDiscoveryManager extends Manager {
 
         Stanza result = connection().createStanzaCollectorAndSend(disco).nextResultOrThrow();
 
-        return (DiscoverInfo) result;
+        DiscoverInfo info = (DiscoverInfo) result;
+        ResultCacheKey key = getResultCacheKey(entityID, node);
+        if (key != null) {
+            discoverInfoCache.put(key, info, resultCacheExpirationTime);
+        }
+        return info;
     }
 
     /**
@@ -560,6 +712,10 @@ public final class ServiceDiscoveryManager extends Manager {
      * Returns the discovered items of a given XMPP entity addressed by its JID and
      * note attribute. Use this message only when trying to query information which is not 
      * directly addressable.
+     * <p>
+     * The items of the server may be a cached instance, which is shared with all other callers and must therefore not
+     * be modified.
+     * </p>
      * 
      * @param entityID the address of the XMPP entity.
      * @param node the optional attribute that supplements the 'jid' attribute.
@@ -570,6 +726,30 @@ public final class ServiceDiscoveryManager extends Manager {
      * @throws InterruptedException 
      */
     public DiscoverItems discoverItems(Jid entityID, String node) throws NoResponseException, XMPPErrorException, NotConnectedException, InterruptedException {
+        ResultCacheKey key = getItemsResultCacheKey(entityID, node);
+        if (key != null) {
+            DiscoverItems items = discoverItemsCache.lookup(key);
+            if (items != null) {
+                return items;
+            }
+        }
+        return refreshDiscoverItems(entityID, node);
+    }
+
+    /**
+     * Returns the discovered items of a given XMPP entity addressed by its JID and node attribute, without looking up
+     * the result cache first. If the entity is the server, then the cached result is replaced.
+     *
+     * @param entityID the address of the XMPP entity.
+     * @param node the optional attribute that supplements the 'jid' attribute.
+     * @return the discovered items.
+     * @throws XMPPErrorException if the operation failed for some reason.
+     * @throws NoResponseException if there was no response from the server.
+     * @throws NotConnectedException
+     * @throws InterruptedException
+     * @see #setResultCacheExpirationTime(long)
+     */
+    public DiscoverItems refreshDiscoverItems(Jid entityID, String node) throws NoResponseException, XMPPErrorException, NotConnectedException, InterruptedException {
         // Discover the entity's items
         DiscoverItems disco = new DiscoverItems();
         disco.setType(IQ.Type.get);
@@ -577,7 +757,65 @@ public final class ServiceDiscoveryManager extends Manager {
         disco.setNode(node);
 
         Stanza result = connection().createStanzaCollectorAndSend(disco).nextResultOrThrow();
-        return (DiscoverItems) result;
+        DiscoverItems items = (DiscoverItems) result;
+        ResultCacheKey key = getItemsResultCacheKey(entityID, node);
+        if (key != null) {
+            discoverItemsCache.put(key, items, resultCacheExpirationTime);
+        }
+        return items;
+    }
+
+    /**
+     * Set the time in milliseconds the results of disco#info requests to the server, its services and our own account,
+     * and of the disco#items request to the server, are cached. The results of other entities, like contacts or chat
+     * rooms, and the disco#items of the services, like the rooms of a MUC service, are never cached by this manager. A value of zero disables caching. The cache is cleared whenever a new stream is established,
+     * unless the previous stream was resumed.
+     *
+     * @param expirationTime the expiration time in milliseconds.
+     * @see #setDefaultResultCacheExpirationTime(long)
+     * @see #clearResultCache()
+     */
+    public void setResultCacheExpirationTime(long expirationTime) {
+        if (expirationTime < 0) {
+            throw new IllegalArgumentException("expirationTime must not be negative");
+        }
+        resultCacheExpirationTime = expirationTime;
+        if (expirationTime == 0) {
+            clearResultCache();
+        }
+    }
+
+    /**
+     * Remove all cached disco#info and disco#items results, including the services found by
+     * {@link #findServicesDiscoverInfo(String, boolean, boolean)}.
+     */
+    public void clearResultCache() {
+        discoverInfoCache.clear();
+        discoverItemsCache.clear();
+        services.clear();
+    }
+
+    private ResultCacheKey getResultCacheKey(Jid entityID, String node) {
+        if (resultCacheExpirationTime == 0) {
+            return null;
+        }
+        if (entityID != null && !entityID.isDomainBareJid()) {
+            EntityFullJid user = connection().getUser();
+            if (user == null || !entityID.equals(user.asBareJid())) {
+                return null;
+            }
+        }
+        return new ResultCacheKey(entityID, node);
+    }
+
+    private ResultCacheKey getItemsResultCacheKey(Jid entityID, String node) {
+        if (resultCacheExpirationTime == 0 || node != null) {
+            return null;
+        }
+        if (entityID != null && !entityID.equals(connection().getXMPPServiceDomain())) {
+            return null;
+        }
+        return new ResultCacheKey(entityID, node);
     }
 
     /**
@@ -649,6 +887,9 @@ public final class ServiceDiscoveryManager extends Manager {
         discoverItems.setNode(node);
 
         connection().createStanzaCollectorAndSend(discoverItems).nextResultOrThrow();
+
+        // The published items replace the ones we may have cached.
+        discoverItemsCache.remove(new ResultCacheKey(entityID, node));
     }
 
     /**
@@ -711,7 +952,7 @@ public final class ServiceDiscoveryManager extends Manager {
      * Create a cache to hold the 25 most recently lookup services for a given feature for a period
      * of 24 hours.
      */
-    private Cache<String, List<DiscoverInfo>> services = new ExpirationCache<>(25,
+    private final ExpirationCache<String, List<DiscoverInfo>> services = new ExpirationCache<>(25,
                     24 * 60 * 60 * 1000);
 
     /**
@@ -858,4 +1099,33 @@ public final class ServiceDiscoveryManager extends Manager {
         if (capsManager != null && capsManager.entityCapsEnabled())
             capsManager.updateLocalEntityCaps();
     }
+
+    private static final class ResultCacheKey {
+        private final Jid entityID;
+        private final String node;
+
+        private ResultCacheKey(Jid entityID, String node) {
+            this.entityID = entityID;
+            this.node = node;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ResultCacheKey)) {
+                return false;
+            }
+            ResultCacheKey otherKey = (ResultCacheKey) other;
+            return (entityID == null ? otherKey.entityID == null : entityID.equals(otherKey.entityID))
+                            && (node == null ? otherKey.node == null : node.equals(otherKey.node));
+        }
+
+        @Override
+        public int hashCode() {
+            int hashCode = entityID == null ? 0 : entityID.hashCode();
+            return 31 * hashCode + (node == null ? 0 : node.hashCode());
+        }
+    }
 }
@@ -18,6 +18,7 @@ package org.jivesoftware.smackx.muc;
 
 import java.util.Date;
 
+import org.jivesoftware.smack.SmackConfiguration;
 import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.util.Objects;
 import org.jivesoftware.smackx.muc.packet.MUCInitialPresence;
@@ -45,6 +46,34 @@ public final class MucEnterConfiguration {
     private final Date since;
     private final long timeout;
     private final Presence joinPresence;
+    private final int messageQueueSize;
+    private final MessageQueueOverflowPolicy messageQueueOverflowPolicy;
+
+    /**
+     * What to do with a newly received groupchat message if the message queue of a room is full.
+     *
+     * @see Builder#withMessageQueue(int, MessageQueueOverflowPolicy)
+     */
+    public enum MessageQueueOverflowPolicy {
+        /**
+         * Drop the oldest queued message. The queue then acts as a ring buffer of the latest messages.
+         */
+        dropOldest,
+
+        /**
+         * Block the thread dispatching the incoming stanzas until a message was taken from the queue, but at most one
+         * second per message, after which the new message is dropped. This applies backpressure: no further stanzas
+         * are processed on the connection until the application consumed a message.
+         * <p>
+         * <b>Warning:</b> the blocked thread is the connection's shared listener thread, which also delivers IQ
+         * results. A consumer which performs an IQ request, e.g. {@link MultiUserChat#getModerators()}, before taking
+         * the next message from the full queue deadlocks until the block timeout elapses, and every further message then costs the block timeout. Only
+         * use this policy if the messages are consumed by a thread of its own, e.g. using
+         * {@link MultiUserChat#getMessageIterator()}, which does not send IQ requests while the queue is full.
+         * </p>
+         */
+        block,
+    }
 
     MucEnterConfiguration(Builder builder) {
         nickname = builder.nickname;
@@ -54,6 +83,8 @@ public final class MucEnterConfiguration {
         seconds = builder.seconds;
         since = builder.since;
         timeout = builder.timeout;
+        messageQueueSize = builder.messageQueueSize;
+        messageQueueOverflowPolicy = builder.messageQueueOverflowPolicy;
 
         if (builder.joinPresence == null) {
             joinPresence = new Presence(Presence.Type.available);
@@ -76,6 +107,18 @@ public final class MucEnterConfiguration {
         return timeout;
     }
 
+    /**
+     * Create the queue for the groupchat messages of the room.
+     *
+     * @return the message queue, or <code>null</code> if the queue was disabled.
+     */
+    MucMessageQueue createMessageQueue() {
+        if (messageQueueSize == 0) {
+            return null;
+        }
+        return new MucMessageQueue(messageQueueSize, messageQueueOverflowPolicy);
+    }
+
     public static final class Builder {
         private final Resourcepart nickname;
 
@@ -86,6 +129,8 @@ public final class MucEnterConfiguration {
         private Date since;
         private long timeout;
         private Presence joinPresence;
+        private int messageQueueSize = SmackConfiguration.getStanzaCollectorSize();
+        private MessageQueueOverflowPolicy messageQueueOverflowPolicy = MessageQueueOverflowPolicy.dropOldest;
 
         Builder(Resourcepart nickname, long timeout) {
             this.nickname = Objects.requireNonNull(nickname, "Nickname must not be null");
@@ -198,6 +243,38 @@ public final class MucEnterConfiguration {
             return this;
         }
 
+        /**
+         * Set the size and the overflow policy of the queue of groupchat messages, which are consumed with
+         * {@link MultiUserChat#nextMessage()}, {@link MultiUserChat#pollMessage()} and
+         * {@link MultiUserChat#getMessageIterator()}. The default is a queue of
+         * {@link SmackConfiguration#getStanzaCollectorSize()} messages, dropping the oldest message once the queue is
+         * full.
+         *
+         * @param size the maximum number of queued messages.
+         * @param overflowPolicy what to do with new messages if the queue is full.
+         * @return a reference to this builder.
+         * @see #disableMessageQueue()
+         */
+        public Builder withMessageQueue(int size, MessageQueueOverflowPolicy overflowPolicy) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("size must be positive");
+            }
+            messageQueueSize = size;
+            messageQueueOverflowPolicy = Objects.requireNonNull(overflowPolicy, "overflowPolicy must not be null");
+            return this;
+        }
+
+        /**
+         * Do not queue the groupchat messages of the room. This is recommended if all messages are processed by
+         * {@link org.jivesoftware.smack.MessageListener}s, since it avoids keeping messages which are never consumed.
+         *
+         * @return a reference to this builder.
+         */
+        public Builder disableMessageQueue() {
+            messageQueueSize = 0;
+            return this;
+        }
+
         /**
          * Build a new {@link MucEnterConfiguration} with the current builder.
          *
@@ -0,0 +1,158 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.muc;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jivesoftware.smack.SmackException.NoResponseException;
+import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.XMPPException.XMPPErrorException;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smackx.muc.MultiUserChatException.NotAMucServiceException;
+
+/**
+ * The pending result of joining a room with {@link MultiUserChatManager#joinAll(java.util.Map)}. The future completes
+ * with the presence reflected by the MUC service, or with the exception which caused the join to fail, i.e. a
+ * {@link XMPPErrorException} if the service rejected the join, a {@link NoResponseException} if the service did not
+ * reflect the join presence in time, a {@link NotConnectedException} if the connection got disconnected before the
+ * join presence was sent, or a {@link NotAMucServiceException}.
+ * <p>
+ * The join presence has already been sent once the future exists, hence it can not be cancelled. Use
+ * {@link MultiUserChat#leave()} to leave the room again.
+ * </p>
+ */
+public final class MucJoinFuture implements Future<Presence> {
+
+    private final MultiUserChat multiUserChat;
+
+    private Presence result;
+
+    private Exception exception;
+
+    MucJoinFuture(MultiUserChat multiUserChat) {
+        this.multiUserChat = multiUserChat;
+    }
+
+    /**
+     * Get the room this future belongs to.
+     *
+     * @return the multi user chat.
+     */
+    public MultiUserChat getMultiUserChat() {
+        return multiUserChat;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return result != null || exception != null;
+    }
+
+    @Override
+    public synchronized Presence get() throws InterruptedException, ExecutionException {
+        while (!isDone()) {
+            wait();
+        }
+        return getResultOrThrowExecutionException();
+    }
+
+    @Override
+    public synchronized Presence get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+                    TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isDone()) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResultOrThrowExecutionException();
+    }
+
+    /**
+     * Wait for the join to complete and return the presence reflected by the MUC service. Unlike {@link #get()}, the
+     * exception which caused the join to fail is thrown as is.
+     *
+     * @return the presence returned by the MUC service.
+     * @throws NoResponseException if the service did not reflect the join presence in time.
+     * @throws XMPPErrorException if the service rejected the join.
+     * @throws NotConnectedException
+     * @throws InterruptedException
+     * @throws NotAMucServiceException if the room is not hosted by a MUC service.
+     */
+    public synchronized Presence getOrThrow() throws NoResponseException, XMPPErrorException, NotConnectedException,
+                    InterruptedException, NotAMucServiceException {
+        while (!isDone()) {
+            wait();
+        }
+        if (exception == null) {
+            return result;
+        }
+        if (exception instanceof NoResponseException) {
+            throw (NoResponseException) exception;
+        }
+        if (exception instanceof XMPPErrorException) {
+            throw (XMPPErrorException) exception;
+        }
+        if (exception instanceof NotConnectedException) {
+            throw (NotConnectedException) exception;
+        }
+        if (exception instanceof NotAMucServiceException) {
+            throw (NotAMucServiceException) exception;
+        }
+        if (exception instanceof InterruptedException) {
+            throw (InterruptedException) exception;
+        }
+        throw new IllegalStateException(exception);
+    }
+
+    synchronized void setResult(Presence presence) {
+        if (isDone()) {
+            return;
+        }
+        result = presence;
+        notifyAll();
+    }
+
+    synchronized void setException(Exception exception) {
+        if (isDone()) {
+            return;
+        }
+        this.exception = exception;
+        notifyAll();
+    }
+
+    private Presence getResultOrThrowExecutionException() throws ExecutionException {
+        if (exception != null) {
+            throw new ExecutionException(exception);
+        }
+        return result;
+    }
+}
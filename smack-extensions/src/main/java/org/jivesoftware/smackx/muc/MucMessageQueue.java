@@ -0,0 +1,190 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.muc;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smackx.muc.MucEnterConfiguration.MessageQueueOverflowPolicy;
+
+/**
+ * A bounded queue of the groupchat messages of a room. Unlike a {@link org.jivesoftware.smack.StanzaCollector}, the
+ * queue does not allocate its full capacity upfront, and it can apply backpressure instead of dropping messages once
+ * it is full.
+ */
+final class MucMessageQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(MucMessageQueue.class.getName());
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum time in milliseconds {@link #add(Message)} blocks if the overflow policy is
+     * {@link MessageQueueOverflowPolicy#block} and the queue is full.
+     */
+    static final long DEFAULT_BLOCK_TIMEOUT = 1000;
+
+    private final ArrayDeque<Message> queue;
+
+    private final int capacity;
+
+    private final MessageQueueOverflowPolicy overflowPolicy;
+
+    private final long blockTimeout;
+
+    private boolean closed;
+
+    MucMessageQueue(int capacity, MessageQueueOverflowPolicy overflowPolicy) {
+        this(capacity, overflowPolicy, DEFAULT_BLOCK_TIMEOUT);
+    }
+
+    MucMessageQueue(int capacity, MessageQueueOverflowPolicy overflowPolicy, long blockTimeout) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (blockTimeout <= 0) {
+            throw new IllegalArgumentException("blockTimeout must be positive");
+        }
+        this.queue = new ArrayDeque<>(Math.min(capacity, INITIAL_CAPACITY));
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeout = blockTimeout;
+    }
+
+    /**
+     * Add a message to the queue. If the queue is full, then either the oldest message is dropped, or the calling
+     * thread blocks until a consumer took a message from the queue or the queue got closed. The calling thread is
+     * usually the connection's listener thread, which also delivers IQ results. A consumer waiting for an IQ result
+     * would therefore deadlock with an unbounded wait, hence the wait is bounded by the block timeout, after which
+     * the new message is dropped.
+     *
+     * @param message the message.
+     * @throws InterruptedException if the calling thread was interrupted while waiting for space in the queue.
+     */
+    synchronized void add(Message message) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + blockTimeout;
+        long remaining = blockTimeout;
+        while (!closed && queue.size() >= capacity) {
+            if (overflowPolicy == MessageQueueOverflowPolicy.dropOldest) {
+                queue.poll();
+                break;
+            }
+            if (remaining <= 0) {
+                LOGGER.warning("Message queue full for " + blockTimeout + "ms, dropping message from "
+                                + message.getFrom());
+                return;
+            }
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        if (closed) {
+            return;
+        }
+        queue.add(message);
+        notifyAll();
+    }
+
+    synchronized Message poll() {
+        Message message = queue.poll();
+        if (message != null) {
+            notifyAll();
+        }
+        return message;
+    }
+
+    /**
+     * Take the next message from the queue, waiting up to the given timeout for a message to arrive.
+     *
+     * @param timeout the timeout in milliseconds.
+     * @return the next message or <code>null</code> if the timeout elapsed or the queue got closed.
+     * @throws InterruptedException
+     */
+    synchronized Message poll(long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        long remaining = timeout;
+        while (queue.isEmpty() && !closed && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return poll();
+    }
+
+    /**
+     * Take the next message from the queue, waiting until a message arrives or the queue gets closed.
+     *
+     * @return the next message or <code>null</code> if the queue got closed.
+     * @throws InterruptedException
+     */
+    synchronized Message take() throws InterruptedException {
+        while (queue.isEmpty() && !closed) {
+            wait();
+        }
+        return poll();
+    }
+
+    /**
+     * Close the queue, discarding all queued messages and waking up all waiting consumers and producers.
+     */
+    synchronized void close() {
+        closed = true;
+        queue.clear();
+        notifyAll();
+    }
+
+    synchronized int size() {
+        return queue.size();
+    }
+
+    Iterator<Message> iterator() {
+        return new Iterator<Message>() {
+            private Message next;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) {
+                    return true;
+                }
+                try {
+                    next = take();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                return next != null;
+            }
+
+            @Override
+            public Message next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Message message = next;
+                next = null;
+                return message;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
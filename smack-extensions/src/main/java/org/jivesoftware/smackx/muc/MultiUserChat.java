@@ -19,6 +19,7 @@ package org.jivesoftware.smackx.muc;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -27,6 +28,7 @@ import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jivesoftware.smack.ExceptionCallback;
 import org.jivesoftware.smack.MessageListener;
 import org.jivesoftware.smack.StanzaCollector;
 import org.jivesoftware.smack.StanzaListener;
@@ -42,18 +44,17 @@ import org.jivesoftware.smack.filter.AndFilter;
 import org.jivesoftware.smack.filter.FromMatchesFilter;
 import org.jivesoftware.smack.filter.MessageTypeFilter;
 import org.jivesoftware.smack.filter.MessageWithSubjectFilter;
-import org.jivesoftware.smack.filter.NotFilter;
 import org.jivesoftware.smack.filter.OrFilter;
 import org.jivesoftware.smack.filter.PresenceTypeFilter;
 import org.jivesoftware.smack.filter.StanzaFilter;
 import org.jivesoftware.smack.filter.StanzaIdFilter;
 import org.jivesoftware.smack.filter.StanzaExtensionFilter;
 import org.jivesoftware.smack.filter.StanzaTypeFilter;
-import org.jivesoftware.smack.filter.ToMatchesFilter;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Message;
 import org.jivesoftware.smack.packet.Stanza;
 import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.util.Objects;
 import org.jivesoftware.smack.util.StringUtils;
 import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
 import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
@@ -110,7 +111,11 @@ public class MultiUserChat {
     private final XMPPConnection connection;
     private final EntityBareJid room;
     private final MultiUserChatManager multiUserChatManager;
+    private static OccupantTracking defaultOccupantTracking = OccupantTracking.presence;
+
     private final Map<EntityFullJid, Presence> occupantsMap = new ConcurrentHashMap<>();
+    private final OccupantIndex occupantIndex = new OccupantIndex();
+    private volatile OccupantTracking occupantTracking = defaultOccupantTracking;
 
     private final Set<InvitationRejectionListener> invitationRejectionListeners = new CopyOnWriteArraySet<InvitationRejectionListener>();
     private final Set<SubjectUpdatedListener> subjectUpdatedListeners = new CopyOnWriteArraySet<SubjectUpdatedListener>();
@@ -144,7 +149,8 @@ public class MultiUserChat {
     private String subject;
     private Resourcepart nickname;
     private boolean joined = false;
-    private StanzaCollector messageCollector;
+    private volatile MucMessageQueue messageQueue;
+    private volatile boolean messageQueueDisabled;
 
     MultiUserChat(XMPPConnection connection, EntityBareJid room, MultiUserChatManager multiUserChatManager) {
         this.connection = connection;
@@ -197,16 +203,22 @@ public class MultiUserChat {
                 boolean isUserStatusModification = presence.getFrom().equals(myRoomJID);
                 switch (presence.getType()) {
                 case available:
-                    Presence oldPresence = occupantsMap.put(from, presence);
-                    if (oldPresence != null) {
+                    final OccupantTracking tracking = occupantTracking;
+                    if (tracking == OccupantTracking.disabled) {
+                        break;
+                    }
+                    Occupant newOccupant = new Occupant(presence);
+                    Occupant oldOccupant = occupantIndex.put(from, newOccupant);
+                    if (tracking == OccupantTracking.presence) {
+                        occupantsMap.put(from, presence);
+                    }
+                    if (oldOccupant != null) {
                         // Get the previous occupant's affiliation & role
-                        MUCUser mucExtension = MUCUser.from(oldPresence);
-                        MUCAffiliation oldAffiliation = mucExtension.getItem().getAffiliation();
-                        MUCRole oldRole = mucExtension.getItem().getRole();
+                        MUCAffiliation oldAffiliation = oldOccupant.getAffiliation();
+                        MUCRole oldRole = oldOccupant.getRole();
                         // Get the new occupant's affiliation & role
-                        mucExtension = MUCUser.from(packet);
-                        MUCAffiliation newAffiliation = mucExtension.getItem().getAffiliation();
-                        MUCRole newRole = mucExtension.getItem().getRole();
+                        MUCAffiliation newAffiliation = newOccupant.getAffiliation();
+                        MUCRole newRole = newOccupant.getRole();
                         // Fire role modification events
                         checkRoleModifications(oldRole, newRole, isUserStatusModification, from);
                         // Fire affiliation modification events
@@ -226,6 +238,7 @@ public class MultiUserChat {
                     }
                     break;
                 case unavailable:
+                    occupantIndex.remove(from);
                     occupantsMap.remove(from);
                     MUCUser mucUser = MUCUser.from(packet);
                     if (mucUser != null && mucUser.hasStatus()) {
@@ -306,6 +319,76 @@ public class MultiUserChat {
      */
     private Presence enter(MucEnterConfiguration conf) throws NotConnectedException, NoResponseException,
                     XMPPErrorException, InterruptedException, NotAMucServiceException {
+        ensureMucService();
+        Presence joinPresence = prepareEnter(conf);
+
+        // Wait for a presence packet back from the server.
+        Presence presence;
+        try {
+            presence = connection.createStanzaCollectorAndSend(getEnterResponseFilter(joinPresence), joinPresence).nextResultOrThrow(conf.getTimeout());
+        }
+        catch (NotConnectedException | InterruptedException | NoResponseException | XMPPErrorException e) {
+            // Ensure that all callbacks are removed if there is an exception
+            removeConnectionCallbacks();
+            throw e;
+        }
+
+        enterCompleted(presence);
+        return presence;
+    }
+
+    /**
+     * Enter a room without waiting for the reflected presence of the service. This is used by
+     * {@link MultiUserChatManager#joinAll(Map)} to pipeline the join presences of multiple rooms. The returned future
+     * is completed once the service reflected the join presence, or the join failed.
+     *
+     * @param conf the configuration used to enter the room.
+     * @return a future for the presence returned by the service.
+     * @throws NotConnectedException
+     * @throws InterruptedException
+     */
+    synchronized MucJoinFuture joinAsync(MucEnterConfiguration conf) throws NotConnectedException,
+                    InterruptedException {
+        final MucJoinFuture future = new MucJoinFuture(this);
+        if (joined) {
+            leave();
+        }
+        try {
+            ensureMucService();
+        }
+        catch (NoResponseException | XMPPErrorException | NotAMucServiceException e) {
+            future.setException(e);
+            return future;
+        }
+        Presence joinPresence = prepareEnter(conf);
+        StanzaListener callback = new StanzaListener() {
+            @Override
+            public void processStanza(Stanza stanza) {
+                Presence presence = (Presence) stanza;
+                enterCompleted(presence);
+                future.setResult(presence);
+            }
+        };
+        ExceptionCallback exceptionCallback = new ExceptionCallback() {
+            @Override
+            public void processException(Exception exception) {
+                removeConnectionCallbacks();
+                future.setException(exception);
+            }
+        };
+        try {
+            connection.sendStanzaWithResponseCallback(joinPresence, getEnterResponseFilter(joinPresence), callback,
+                            exceptionCallback, conf.getTimeout());
+        }
+        catch (NotConnectedException | InterruptedException e) {
+            removeConnectionCallbacks();
+            throw e;
+        }
+        return future;
+    }
+
+    private void ensureMucService() throws NoResponseException, XMPPErrorException, NotConnectedException,
+                    InterruptedException, NotAMucServiceException {
         final DomainBareJid mucService = room.asDomainBareJid();
         if (!KNOWN_MUC_SERVICES.containsKey(mucService)) {
             if (multiUserChatManager.providesMucService(mucService)) {
@@ -314,24 +397,24 @@ public class MultiUserChat {
                 throw new NotAMucServiceException(this);
             }
         }
+    }
+
+    private Presence prepareEnter(MucEnterConfiguration conf) {
         // We enter a room by sending a presence packet where the "to"
         // field is in the form "roomName@service/nickname"
         Presence joinPresence = conf.getJoinPresence(this);
 
-        // Setup the messageListeners and presenceListeners *before* the join presence is send.
-        connection.addSyncStanzaListener(messageListener, fromRoomGroupchatFilter);
-        connection.addSyncStanzaListener(presenceListener, new AndFilter(fromRoomFilter,
-                        StanzaTypeFilter.PRESENCE));
-        connection.addSyncStanzaListener(subjectListener, new AndFilter(fromRoomFilter,
-                        MessageWithSubjectFilter.INSTANCE, new NotFilter(MessageTypeFilter.ERROR)));
-        connection.addSyncStanzaListener(declinesListener, DECLINE_FILTER);
-        connection.addPacketInterceptor(presenceInterceptor, new AndFilter(ToMatchesFilter.create(room),
-                        StanzaTypeFilter.PRESENCE));
-        messageCollector = connection.createStanzaCollector(fromRoomGroupchatFilter);
+        // Setup the message queue and let the manager dispatch the stanzas of the room to us *before* the join
+        // presence is send.
+        messageQueue = conf.createMessageQueue();
+        messageQueueDisabled = messageQueue == null;
+        multiUserChatManager.addDispatchTarget(this);
+        return joinPresence;
+    }
 
-        // Wait for a presence packet back from the server.
+    private StanzaFilter getEnterResponseFilter(Presence joinPresence) {
         // @formatter:off
-        StanzaFilter responseFilter = new AndFilter(StanzaTypeFilter.PRESENCE,
+        return new AndFilter(StanzaTypeFilter.PRESENCE,
                         new OrFilter(
                             // We use a bare JID filter for positive responses, since the MUC service/room may rewrite the nickname.
                             new AndFilter(FromMatchesFilter.createBare(getRoom()), MUCUserStatusCodeFilter.STATUS_110_PRESENCE_TO_SELF),
@@ -341,16 +424,9 @@ public class MultiUserChat {
                         )
                     );
         // @formatter:on
-        Presence presence;
-        try {
-            presence = connection.createStanzaCollectorAndSend(responseFilter, joinPresence).nextResultOrThrow(conf.getTimeout());
-        }
-        catch (NotConnectedException | InterruptedException | NoResponseException | XMPPErrorException e) {
-            // Ensure that all callbacks are removed if there is an exception
-            removeConnectionCallbacks();
-            throw e;
-        }
+    }
 
+    private synchronized void enterCompleted(Presence presence) {
         // This presence must be send from a full JID. We use the resourcepart of this JID as nick, since the room may
         // performed roomnick rewriting
         this.nickname = presence.getFrom().asEntityFullJidIfPossible().getResourcepart();
@@ -358,7 +434,6 @@ public class MultiUserChat {
 
         // Update the list of joined rooms
         multiUserChatManager.addJoinedRoom(room);
-        return presence;
     }
 
     /**
@@ -728,7 +803,7 @@ public class MultiUserChat {
         leavePresence.setTo(JidCreate.fullFrom(room, nickname));
         connection.sendStanza(leavePresence);
         // Reset occupant information.
-        occupantsMap.clear();
+        clearOccupants();
         nickname = null;
         joined = false;
         userHasLeft();
@@ -872,7 +947,7 @@ public class MultiUserChat {
         connection.createStanzaCollectorAndSend(iq).nextResultOrThrow();
 
         // Reset occupant information.
-        occupantsMap.clear();
+        clearOccupants();
         nickname = null;
         joined = false;
         userHasLeft();
@@ -1627,7 +1702,7 @@ public class MultiUserChat {
      * @return the number of occupants in the group chat.
      */
     public int getOccupantsCount() {
-        return occupantsMap.size();
+        return occupantIndex.size();
     }
 
     /**
@@ -1642,12 +1717,13 @@ public class MultiUserChat {
      * @return a List of the occupants in the group chat.
      */
     public List<EntityFullJid> getOccupants() {
-        return new ArrayList<>(occupantsMap.keySet());
+        return occupantIndex.getOccupantJids();
     }
 
     /**
      * Returns the presence info for a particular user, or <tt>null</tt> if the user
-     * is not in the room.<p>
+     * is not in the room. Presences are only kept if the {@link OccupantTracking occupant tracking}
+     * is set to {@link OccupantTracking#presence}.<p>
      *
      * @param user the room occupant to search for his presence. The format of user must
      * be: roomName@service/nickname (e.g. darkcave@macbeth.shakespeare.lit/thirdwitch).
@@ -1668,11 +1744,71 @@ public class MultiUserChat {
      * @return the Occupant or <tt>null</tt> if the user is unavailable (i.e. not in the room).
      */
     public Occupant getOccupant(EntityFullJid user) {
-        Presence presence = getOccupantPresence(user);
-        if (presence != null) {
-            return new Occupant(presence);
-        }
-        return null;
+        return occupantIndex.get(user);
+    }
+
+    /**
+     * Returns the occupants of the room with the given role, as known from their presences. Unlike
+     * {@link #getModerators()} and {@link #getParticipants()}, this does not query the room.
+     *
+     * @param role the role of the occupants.
+     * @return the occupants with the given role.
+     * @since 4.3
+     */
+    public List<Occupant> getOccupantsByRole(MUCRole role) {
+        return occupantIndex.getByRole(role);
+    }
+
+    /**
+     * Returns the occupants of the room with the given affiliation, as known from their presences.
+     * Unlike {@link #getOwners()} and the other affiliation list getters, this does not query the
+     * room, and only reports affiliated users which are currently in the room.
+     *
+     * @param affiliation the affiliation of the occupants.
+     * @return the occupants with the given affiliation.
+     * @since 4.3
+     */
+    public List<Occupant> getOccupantsByAffiliation(MUCAffiliation affiliation) {
+        return occupantIndex.getByAffiliation(affiliation);
+    }
+
+    /**
+     * Set the default occupant tracking of newly created {@link MultiUserChat} instances. The
+     * default is {@link OccupantTracking#presence}.
+     *
+     * @param occupantTracking the default occupant tracking.
+     * @since 4.3
+     */
+    public static void setDefaultOccupantTracking(OccupantTracking occupantTracking) {
+        defaultOccupantTracking = Objects.requireNonNull(occupantTracking, "occupantTracking must not be null");
+    }
+
+    /**
+     * Set how this room keeps track of its occupants. Changing the occupant tracking discards all
+     * information about the current occupants, hence it should be set before joining the room.
+     *
+     * @param occupantTracking the occupant tracking.
+     * @see OccupantTracking
+     * @since 4.3
+     */
+    public void setOccupantTracking(OccupantTracking occupantTracking) {
+        this.occupantTracking = Objects.requireNonNull(occupantTracking, "occupantTracking must not be null");
+        clearOccupants();
+    }
+
+    /**
+     * Get how this room keeps track of its occupants.
+     *
+     * @return the occupant tracking.
+     * @since 4.3
+     */
+    public OccupantTracking getOccupantTracking() {
+        return occupantTracking;
+    }
+
+    private void clearOccupants() {
+        occupantIndex.clear();
+        occupantsMap.clear();
     }
 
     /**
@@ -1901,10 +2037,7 @@ public class MultiUserChat {
      * @throws MucNotJoinedException 
     */
     public Message pollMessage() throws MucNotJoinedException {
-        if (messageCollector == null) {
-            throw new MucNotJoinedException(this);
-        }
-        return messageCollector.pollResult();
+        return getMessageQueue().poll();
     }
 
     /**
@@ -1916,10 +2049,7 @@ public class MultiUserChat {
      * @throws InterruptedException 
      */
     public Message nextMessage() throws MucNotJoinedException, InterruptedException {
-        if (messageCollector == null) {
-            throw new MucNotJoinedException(this);
-        }
-        return  messageCollector.nextResult();
+        return nextMessage(connection.getReplyTimeout());
     }
 
     /**
@@ -1934,10 +2064,38 @@ public class MultiUserChat {
      * @throws InterruptedException 
      */
     public Message nextMessage(long timeout) throws MucNotJoinedException, InterruptedException {
-        if (messageCollector == null) {
+        return getMessageQueue().poll(timeout);
+    }
+
+    /**
+     * Returns a blocking iterator over the groupchat messages of this room. {@link Iterator#hasNext()} waits until
+     * the next message arrives, and returns <code>false</code> once the room was left or the calling thread was
+     * interrupted. The iterator consumes the same message queue as {@link #nextMessage()}, hence its size and
+     * overflow policy are set with
+     * {@link MucEnterConfiguration.Builder#withMessageQueue(int, MucEnterConfiguration.MessageQueueOverflowPolicy)}.
+     * Combined with {@link MucEnterConfiguration.MessageQueueOverflowPolicy#block}, a slow consumer applies
+     * backpressure on the connection's listener thread, and messages are only dropped once the consumer stalls for
+     * longer than the block timeout. Do not send IQ requests from the consuming thread while the queue is full, their
+     * results are stuck behind the blocked message.
+     *
+     * @return a blocking iterator over the messages of this room.
+     * @throws MucNotJoinedException if the room is not joined.
+     * @throws IllegalStateException if the message queue was disabled when joining the room.
+     * @since 4.3
+     */
+    public Iterator<Message> getMessageIterator() throws MucNotJoinedException {
+        return getMessageQueue().iterator();
+    }
+
+    private MucMessageQueue getMessageQueue() throws MucNotJoinedException {
+        MucMessageQueue messageQueue = this.messageQueue;
+        if (messageQueue == null) {
+            if (messageQueueDisabled) {
+                throw new IllegalStateException("The message queue of " + room + " is disabled");
+            }
             throw new MucNotJoinedException(this);
         }
-        return messageCollector.nextResult(timeout);
+        return messageQueue;
     }
 
     /**
@@ -1996,20 +2154,58 @@ public class MultiUserChat {
     }
 
     /**
-     * Remove the connection callbacks (PacketListener, PacketInterceptor, StanzaCollector) used by this MUC from the
-     * connection.
+     * Stop the dispatching of the stanzas of this room by the {@link MultiUserChatManager} and discard the queued
+     * messages.
      */
     private void removeConnectionCallbacks() {
-        connection.removeSyncStanzaListener(messageListener);
-        connection.removeSyncStanzaListener(presenceListener);
-        connection.removeSyncStanzaListener(declinesListener);
-        connection.removePacketInterceptor(presenceInterceptor);
-        if (messageCollector != null) {
-            messageCollector.cancel();
-            messageCollector = null;
+        multiUserChatManager.removeDispatchTarget(this);
+        MucMessageQueue messageQueue = this.messageQueue;
+        if (messageQueue != null) {
+            messageQueue.close();
+            this.messageQueue = null;
+        }
+    }
+
+    /**
+     * Process a stanza received from this room. Invoked by the {@link MultiUserChatManager}, which routes the incoming
+     * messages and presences to the rooms by their bare 'from' JID.
+     *
+     * @param stanza the message or presence received from this room.
+     * @throws NotConnectedException
+     * @throws InterruptedException
+     */
+    void dispatch(Stanza stanza) throws NotConnectedException, InterruptedException {
+        if (stanza instanceof Presence) {
+            presenceListener.processStanza(stanza);
+            return;
+        }
+        Message message = (Message) stanza;
+        if (message.getType() == Message.Type.groupchat) {
+            MucMessageQueue messageQueue = this.messageQueue;
+            if (messageQueue != null) {
+                messageQueue.add(message);
+            }
+            messageListener.processStanza(message);
+        }
+        if (message.getType() != Message.Type.error && MessageWithSubjectFilter.INSTANCE.accept(message)) {
+            subjectListener.processStanza(message);
+        }
+        if (DECLINE_FILTER.accept(message)) {
+            declinesListener.processStanza(message);
         }
     }
 
+    /**
+     * Process a presence about to be sent to this room. Invoked by the {@link MultiUserChatManager}.
+     *
+     * @param presence the outgoing presence.
+     * @throws NotConnectedException
+     * @throws InterruptedException
+     */
+    void intercept(Presence presence) throws NotConnectedException, InterruptedException {
+        presenceInterceptor.processStanza(presence);
+    }
+
     /**
      * Remove all callbacks and resources necessary when the user has left the room for some reason.
      */
@@ -2337,7 +2533,7 @@ public class MultiUserChat {
                 }
 
                 // Reset occupant information.
-                occupantsMap.clear();
+                clearOccupants();
                 nickname = null;
                 userHasLeft();
             }
@@ -2357,7 +2553,7 @@ public class MultiUserChat {
                 }
 
                 // Reset occupant information.
-                occupantsMap.clear();
+                clearOccupants();
                 nickname = null;
                 userHasLeft();
             }
@@ -2377,7 +2573,7 @@ public class MultiUserChat {
                 }
 
                 // Reset occupant information.
-                occupantsMap.clear();
+                clearOccupants();
                 nickname = null;
                 userHasLeft();
             }
@@ -2396,7 +2592,7 @@ public class MultiUserChat {
             }
 
             // Reset occupant information.
-            occupantsMap.clear();
+            clearOccupants();
             nickname = null;
             userHasLeft();
         }
@@ -18,13 +18,16 @@ package org.jivesoftware.smackx.muc;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -43,8 +46,10 @@ import org.jivesoftware.smack.filter.MessageTypeFilter;
 import org.jivesoftware.smack.filter.StanzaExtensionFilter;
 import org.jivesoftware.smack.filter.StanzaFilter;
 import org.jivesoftware.smack.filter.NotFilter;
+import org.jivesoftware.smack.filter.OrFilter;
 import org.jivesoftware.smack.filter.StanzaTypeFilter;
 import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.packet.Stanza;
 import org.jivesoftware.smack.util.Async;
 import org.jivesoftware.smackx.disco.AbstractNodeInformationProvider;
@@ -132,7 +137,17 @@ public final class MultiUserChatManager extends Manager {
                     new NotFilter(MessageTypeFilter.ERROR));
 
     private final Set<InvitationListener> invitationsListeners = new CopyOnWriteArraySet<InvitationListener>();
-    private final Set<EntityBareJid> joinedRooms = new HashSet<>();
+    private final Set<EntityBareJid> joinedRooms = Collections.newSetFromMap(new ConcurrentHashMap<EntityBareJid, Boolean>());
+
+    private static final StanzaFilter DISPATCH_FILTER = new OrFilter(StanzaTypeFilter.MESSAGE, StanzaTypeFilter.PRESENCE);
+
+    /**
+     * The rooms which are entered, or about to be entered, by their JID. Incoming messages and presences are routed to
+     * the room with the bare 'from' JID of the stanza, and outgoing presences to the room with the bare 'to' JID. This
+     * way, only a single listener and interceptor need to be registered with the connection, and the room lookup costs
+     * O(1), regardless how many rooms are joined.
+     */
+    private final ConcurrentMap<EntityBareJid, MultiUserChat> dispatchTargets = new ConcurrentHashMap<>();
 
     /**
      * A Map of MUC JIDs to {@link MultiUserChat} instances. We use weak references for the values in order to allow
@@ -177,6 +192,27 @@ public final class MultiUserChatManager extends Manager {
         };
         connection.addAsyncStanzaListener(invitationPacketListener, INVITATION_FILTER);
 
+        connection.addSyncStanzaListener(new StanzaListener() {
+            @Override
+            public void processStanza(Stanza stanza) throws NotConnectedException, InterruptedException {
+                MultiUserChat muc = getDispatchTarget(stanza.getFrom());
+                if (muc == null) {
+                    return;
+                }
+                muc.dispatch(stanza);
+            }
+        }, DISPATCH_FILTER);
+        connection.addPacketInterceptor(new StanzaListener() {
+            @Override
+            public void processStanza(Stanza stanza) throws NotConnectedException, InterruptedException {
+                MultiUserChat muc = getDispatchTarget(stanza.getTo());
+                if (muc == null) {
+                    return;
+                }
+                muc.intercept((Presence) stanza);
+            }
+        }, StanzaTypeFilter.PRESENCE);
+
         connection.addConnectionListener(new AbstractConnectionListener() {
             @Override
             public void authenticated(XMPPConnection connection, boolean resumed) {
@@ -251,6 +287,75 @@ public final class MultiUserChatManager extends Manager {
         return multiUserChat;
     }
 
+    /**
+     * Join multiple rooms at once. The join presences of all rooms are send without waiting for the reflected presence
+     * of the previous room, and the reflected presences are correlated concurrently. Compared to calling
+     * {@link MultiUserChat#join(MucEnterConfiguration)} for every room, this reduces the time required to join n rooms
+     * from n round trips to roughly one. Rooms which are already joined are left and re-joined.
+     * <p>
+     * The given configurations may be used to limit the discussion history requested per room, see for example
+     * {@link MucEnterConfiguration.Builder#requestMaxStanzasHistory(int)}, which avoids being flooded with the history
+     * of every room at once.
+     * </p>
+     * <p>
+     * Whether a room is hosted by a MUC service is only determined once per service. A room which could not be joined
+     * does not affect the other rooms; its future will complete with the exception which caused the join to fail.
+     * If the connection gets disconnected while the join presences are send, then the futures of the rooms whose
+     * join presence was not send complete with the {@link NotConnectedException}, while the joins already sent are
+     * still pending.
+     * </p>
+     *
+     * @param rooms the rooms to join and the configuration used to enter them.
+     * @return the pending joins by room, in the iteration order of the given map.
+     * @throws InterruptedException
+     * @since 4.3
+     */
+    public Map<EntityBareJid, MucJoinFuture> joinAll(Map<EntityBareJid, MucEnterConfiguration> rooms)
+                    throws InterruptedException {
+        Map<EntityBareJid, MucJoinFuture> futures = new LinkedHashMap<>(rooms.size());
+        NotConnectedException notConnectedException = null;
+        for (Map.Entry<EntityBareJid, MucEnterConfiguration> entry : rooms.entrySet()) {
+            MultiUserChat muc = getMultiUserChat(entry.getKey());
+            if (notConnectedException == null) {
+                try {
+                    futures.put(entry.getKey(), muc.joinAsync(entry.getValue()));
+                    continue;
+                }
+                catch (NotConnectedException e) {
+                    LOGGER.log(Level.FINE, "Could not join " + entry.getKey(), e);
+                    notConnectedException = e;
+                }
+            }
+            MucJoinFuture future = new MucJoinFuture(muc);
+            future.setException(notConnectedException);
+            futures.put(entry.getKey(), future);
+        }
+        return futures;
+    }
+
+    /**
+     * Join multiple rooms at once using the same nickname, requesting at most the given number of history stanzas
+     * per room.
+     *
+     * @param rooms the rooms to join.
+     * @param nickname the nickname used in all rooms.
+     * @param maxStanzasHistory the maximum number of history stanzas requested per room, may be 0.
+     * @return the pending joins by room.
+     * @throws InterruptedException
+     * @see #joinAll(Map)
+     * @since 4.3
+     */
+    public Map<EntityBareJid, MucJoinFuture> joinAll(Collection<EntityBareJid> rooms, Resourcepart nickname,
+                    int maxStanzasHistory) throws InterruptedException {
+        Map<EntityBareJid, MucEnterConfiguration> configurations = new LinkedHashMap<>(rooms.size());
+        for (EntityBareJid room : rooms) {
+            MucEnterConfiguration conf = getMultiUserChat(room).getEnterConfigurationBuilder(nickname)
+                            .requestMaxStanzasHistory(maxStanzasHistory).build();
+            configurations.put(room, conf);
+        }
+        return joinAll(configurations);
+    }
+
     private MultiUserChat createNewMucAndAddToMap(EntityBareJid jid) {
         MultiUserChat multiUserChat = new MultiUserChat(connection(), jid, this);
         multiUserChats.put(jid, new WeakReference<MultiUserChat>(multiUserChat));
@@ -457,4 +562,23 @@ public final class MultiUserChatManager extends Manager {
     void removeJoinedRoom(EntityBareJid room) {
         joinedRooms.remove(room);
     }
+
+    void addDispatchTarget(MultiUserChat muc) {
+        dispatchTargets.put(muc.getRoom(), muc);
+    }
+
+    void removeDispatchTarget(MultiUserChat muc) {
+        dispatchTargets.remove(muc.getRoom(), muc);
+    }
+
+    private MultiUserChat getDispatchTarget(Jid jid) {
+        if (jid == null || dispatchTargets.isEmpty()) {
+            return null;
+        }
+        EntityBareJid room = jid.asEntityBareJidIfPossible();
+        if (room == null) {
+            return null;
+        }
+        return dispatchTargets.get(room);
+    }
 }
@@ -51,12 +51,19 @@ public class Occupant {
     }
 
     Occupant(Presence presence) {
-        MUCUser mucUser = (MUCUser) presence.getExtension("x",
-                "http://jabber.org/protocol/muc#user");
-        MUCItem item = mucUser.getItem();
-        this.jid = item.getJid();
-        this.affiliation = item.getAffiliation();
-        this.role = item.getRole();
+        MUCUser mucUser = MUCUser.from(presence);
+        MUCItem item = mucUser != null ? mucUser.getItem() : null;
+        if (item == null) {
+            // Not every service includes the muc#user item, fall back to no role and no affiliation.
+            LOGGER.fine("Occupant presence without muc#user item: " + presence.getFrom());
+            this.jid = null;
+            this.affiliation = MUCAffiliation.none;
+            this.role = MUCRole.none;
+        } else {
+            this.jid = item.getJid();
+            this.affiliation = item.getAffiliation();
+            this.role = item.getRole();
+        }
         // Get the nickname from the FROM attribute of the presence
         EntityFullJid from = presence.getFrom().asEntityFullJidIfPossible();
         if (from == null) {
@@ -0,0 +1,132 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.muc;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jxmpp.jid.EntityFullJid;
+
+/**
+ * An index of the occupants of a room by their occupant JID, with secondary lookups by role and affiliation.
+ */
+final class OccupantIndex {
+
+    private final Map<EntityFullJid, Occupant> occupants = new ConcurrentHashMap<>();
+
+    private final Map<MUCRole, Set<EntityFullJid>> byRole = new EnumMap<>(MUCRole.class);
+
+    private final Map<MUCAffiliation, Set<EntityFullJid>> byAffiliation = new EnumMap<>(MUCAffiliation.class);
+
+    /**
+     * Add or replace the occupant with the given occupant JID.
+     *
+     * @param occupantJid the occupant JID, i.e. the room JID with the nickname as resourcepart.
+     * @param occupant the occupant.
+     * @return the previous occupant with the same occupant JID, or <code>null</code>.
+     */
+    synchronized Occupant put(EntityFullJid occupantJid, Occupant occupant) {
+        Occupant previous = occupants.put(occupantJid, occupant);
+        if (previous != null) {
+            unindex(occupantJid, previous);
+        }
+        index(byRole, occupant.getRole(), occupantJid);
+        index(byAffiliation, occupant.getAffiliation(), occupantJid);
+        return previous;
+    }
+
+    synchronized Occupant remove(EntityFullJid occupantJid) {
+        Occupant previous = occupants.remove(occupantJid);
+        if (previous != null) {
+            unindex(occupantJid, previous);
+        }
+        return previous;
+    }
+
+    synchronized void clear() {
+        occupants.clear();
+        byRole.clear();
+        byAffiliation.clear();
+    }
+
+    Occupant get(EntityFullJid occupantJid) {
+        return occupants.get(occupantJid);
+    }
+
+    int size() {
+        return occupants.size();
+    }
+
+    List<EntityFullJid> getOccupantJids() {
+        return new ArrayList<>(occupants.keySet());
+    }
+
+    synchronized List<Occupant> getByRole(MUCRole role) {
+        return lookup(byRole.get(role));
+    }
+
+    synchronized List<Occupant> getByAffiliation(MUCAffiliation affiliation) {
+        return lookup(byAffiliation.get(affiliation));
+    }
+
+    private List<Occupant> lookup(Set<EntityFullJid> occupantJids) {
+        if (occupantJids == null) {
+            return new ArrayList<>(0);
+        }
+        List<Occupant> result = new ArrayList<>(occupantJids.size());
+        for (EntityFullJid occupantJid : occupantJids) {
+            result.add(occupants.get(occupantJid));
+        }
+        return result;
+    }
+
+    private void unindex(EntityFullJid occupantJid, Occupant occupant) {
+        unindex(byRole, occupant.getRole(), occupantJid);
+        unindex(byAffiliation, occupant.getAffiliation(), occupantJid);
+    }
+
+    private static <K> void index(Map<K, Set<EntityFullJid>> index, K key, EntityFullJid occupantJid) {
+        if (key == null) {
+            return;
+        }
+        Set<EntityFullJid> occupantJids = index.get(key);
+        if (occupantJids == null) {
+            occupantJids = new LinkedHashSet<>();
+            index.put(key, occupantJids);
+        }
+        occupantJids.add(occupantJid);
+    }
+
+    private static <K> void unindex(Map<K, Set<EntityFullJid>> index, K key, EntityFullJid occupantJid) {
+        if (key == null) {
+            return;
+        }
+        Set<EntityFullJid> occupantJids = index.get(key);
+        if (occupantJids == null) {
+            return;
+        }
+        occupantJids.remove(occupantJid);
+        if (occupantJids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
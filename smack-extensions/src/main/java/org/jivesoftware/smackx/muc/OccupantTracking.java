@@ -0,0 +1,45 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.muc;
+
+/**
+ * The ways a {@link MultiUserChat} can keep track of the occupants of a room.
+ *
+ * @see MultiUserChat#setOccupantTracking(OccupantTracking)
+ * @see MultiUserChat#setDefaultOccupantTracking(OccupantTracking)
+ */
+public enum OccupantTracking {
+
+    /**
+     * Keep an {@link Occupant} record and the last full presence of every occupant. This is the default and
+     * required for {@link MultiUserChat#getOccupantPresence(org.jxmpp.jid.EntityFullJid)}.
+     */
+    presence,
+
+    /**
+     * Keep only a compact {@link Occupant} record, consisting of the nickname, role, affiliation and real JID, of
+     * every occupant. Recommended when joining many large rooms.
+     */
+    compact,
+
+    /**
+     * Do not keep track of the occupants at all. This is suitable for write-mostly rooms, e.g. those used by bots. The
+     * occupant related methods of {@link MultiUserChat} report no occupants, and no joined, role and affiliation
+     * change events are fired to the {@link ParticipantStatusListener}s.
+     */
+    disabled,
+}
@@ -16,6 +16,7 @@
  */
 package org.jivesoftware.smackx.muc.bookmarkautojoin;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
@@ -30,12 +31,18 @@ import org.jivesoftware.smack.SmackException.NotConnectedException;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPConnectionRegistry;
 import org.jivesoftware.smack.XMPPException.XMPPErrorException;
+import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smackx.bookmarks.BookmarkManager;
 import org.jivesoftware.smackx.bookmarks.BookmarkedConference;
+import org.jivesoftware.smackx.muc.MucEnterConfiguration;
+import org.jivesoftware.smackx.muc.MucJoinFuture;
 import org.jivesoftware.smackx.muc.MultiUserChat;
-import org.jivesoftware.smackx.muc.MultiUserChat.MucCreateConfigFormHandle;
 import org.jivesoftware.smackx.muc.MultiUserChatException.NotAMucServiceException;
 import org.jivesoftware.smackx.muc.MultiUserChatManager;
+import org.jivesoftware.smackx.muc.packet.MUCUser;
+import org.jivesoftware.smackx.xdata.Form;
+import org.jivesoftware.smackx.xdata.packet.DataForm;
+import org.jxmpp.jid.EntityBareJid;
 import org.jxmpp.jid.parts.Resourcepart;
 
 /**
@@ -116,20 +123,41 @@ public final class MucBookmarkAutojoinManager extends Manager {
         final XMPPConnection connection = connection();
         Resourcepart defaultNick = connection.getUser().getResourcepart();
 
+        Map<EntityBareJid, MucEnterConfiguration> rooms = new LinkedHashMap<>();
         for (BookmarkedConference bookmarkedConference : bookmarkedConferences) {
             if (!bookmarkedConference.isAutoJoin()) {
                 continue;
             }
+            MultiUserChat muc = multiUserChatManager.getMultiUserChat(bookmarkedConference.getJid());
+            if (muc.isJoined()) {
+                continue;
+            }
             Resourcepart nick = bookmarkedConference.getNickname();
             if (nick == null) {
                 nick = defaultNick;
             }
             String password = bookmarkedConference.getPassword();
-            MultiUserChat muc = multiUserChatManager.getMultiUserChat(bookmarkedConference.getJid());
+            rooms.put(muc.getRoom(), muc.getEnterConfigurationBuilder(nick).withPassword(password).build());
+        }
+        if (rooms.isEmpty()) {
+            return;
+        }
+
+        Map<EntityBareJid, MucJoinFuture> joins;
+        try {
+            joins = multiUserChatManager.joinAll(rooms);
+        }
+        catch (InterruptedException e) {
+            LOGGER.log(Level.FINER, "Could not autojoin bookmarked MUCs", e);
+            return;
+        }
+        for (MucJoinFuture join : joins.values()) {
             try {
-                MucCreateConfigFormHandle handle = muc.createOrJoinIfNecessary(nick, password);
-                if (handle != null) {
-                    handle.makeInstant();
+                Presence presence = join.getOrThrow();
+                MUCUser mucUser = MUCUser.from(presence);
+                if (mucUser != null && mucUser.getStatus().contains(MUCUser.Status.ROOM_CREATED_201)) {
+                    // The room got created by joining it, make it an instant room.
+                    join.getMultiUserChat().sendConfigurationForm(new Form(DataForm.Type.submit));
                 }
             }
             catch (NotConnectedException | InterruptedException e) {
@@ -0,0 +1,50 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.pubsub;
+
+import org.jivesoftware.smack.BareJidDispatchKeyExtractor;
+import org.jivesoftware.smack.DispatchKeyExtractor;
+import org.jivesoftware.smack.packet.Stanza;
+
+/**
+ * A {@link DispatchKeyExtractor} which orders PubSub event notifications per node. Events of different nodes of the
+ * same PubSub service may be processed in parallel. All other stanzas are ordered by the bare JID of their sender.
+ *
+ * @see org.jivesoftware.smack.AbstractXMPPConnection#setParallelStanzaDispatch(DispatchKeyExtractor, int)
+ */
+public final class PubSubNodeDispatchKeyExtractor implements DispatchKeyExtractor {
+
+    public static final PubSubNodeDispatchKeyExtractor INSTANCE = new PubSubNodeDispatchKeyExtractor();
+
+    private PubSubNodeDispatchKeyExtractor() {
+    }
+
+    @Override
+    public Object getDispatchKey(Stanza stanza) {
+        Object bareJidKey = BareJidDispatchKeyExtractor.INSTANCE.getDispatchKey(stanza);
+        EventElement event = EventElement.from(stanza);
+        if (event == null || event.getEvent() == null) {
+            return bareJidKey;
+        }
+        String node = event.getEvent().getNode();
+        if (node == null) {
+            return bareJidKey;
+        }
+        return String.valueOf(bareJidKey) + '#' + node;
+    }
+
+}
@@ -16,22 +16,34 @@
  */
 package org.jivesoftware.smackx.caps;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
+import org.jivesoftware.smack.DummyConnection;
 import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.util.SHA1;
 import org.jivesoftware.smack.util.StringUtils;
 import org.jivesoftware.smack.util.stringencoder.Base32;
+import org.jivesoftware.smack.util.stringencoder.Base64;
 import org.jivesoftware.smack.util.stringencoder.StringEncoder;
 import org.jivesoftware.smackx.InitExtensions;
 import org.jivesoftware.smackx.caps.cache.EntityCapsPersistentCache;
 import org.jivesoftware.smackx.caps.cache.SimpleDirectoryPersistentCache;
+import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
 import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
 import org.jivesoftware.smackx.xdata.FormField;
 import org.jivesoftware.smackx.xdata.packet.DataForm;
@@ -55,6 +67,48 @@ public class EntityCapsManagerTest extends InitExtensions {
         assertEquals("q07IKJEyjvHSyhy//CH0CxmKi8w=", versionAndHash.version);
     }
 
+    @Test
+    public void testStreamingDigestEncodesLikeString() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("a\u00e9\u20ac\ud83d\ude00");
+        }
+        // An unpaired low and high surrogate.
+        sb.append("\ude00x\ud83d");
+        String string = sb.toString();
+
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        byte[] expected = md.digest(string.getBytes(StringUtils.UTF8));
+        byte[] actual = new StreamingDigest(md).append(string).append('<').digest();
+        byte[] expectedWithSuffix = md.digest((string + '<').getBytes(StringUtils.UTF8));
+        assertArrayEquals(expectedWithSuffix, actual);
+        assertArrayEquals(expected, new StreamingDigest(md).append(string).digest());
+    }
+
+    @Test
+    public void testVerificationStringOfLargeDiscoverInfo() throws XmppStringprepException {
+        DiscoverInfo di = createLargeDiscoverInfo(500);
+        CapsVersionAndHash versionAndHash = EntityCapsManager.generateVerificationString(di, StringUtils.SHA1);
+        assertEquals(referenceVerificationString(di), versionAndHash.version);
+    }
+
+    @Test
+    public void testLocalCapsVersionOnlyChangesWithFeatures() throws Exception {
+        DummyConnection connection = DummyConnection.newConnectedDummyConnection();
+        EntityCapsManager capsManager = EntityCapsManager.getInstanceFor(connection);
+        ServiceDiscoveryManager sdm = ServiceDiscoveryManager.getInstanceFor(connection);
+        CapsVersionAndHash initial = capsManager.getCapsVersionAndHash();
+
+        sdm.addFeature(EntityCapsManager.NAMESPACE);
+        assertSame(initial, capsManager.getCapsVersionAndHash());
+
+        sdm.addFeature("urn:xmpp:test:local-caps");
+        assertFalse(initial.version.equals(capsManager.getCapsVersionAndHash().version));
+        sdm.removeFeature("urn:xmpp:test:local-caps");
+        assertEquals(initial.version, capsManager.getCapsVersionAndHash().version);
+        connection.disconnect();
+    }
+
     @Test
     public void testSimpleDirectoryCacheBase32() throws IOException {
         EntityCapsManager.persistentCache = null;
@@ -93,7 +147,7 @@ public class EntityCapsManagerTest extends InitExtensions {
         assertEquals(di.toXML().toString(), restored_di.toXML().toString());
     }
 
-    private static DiscoverInfo createComplexSamplePacket() throws XmppStringprepException {
+    static DiscoverInfo createComplexSamplePacket() throws XmppStringprepException {
         DiscoverInfo di = new DiscoverInfo();
         di.setFrom(JidCreate.from("benvolio@capulet.lit/230193"));
         di.setStanzaId("disco1");
@@ -144,6 +198,49 @@ public class EntityCapsManagerTest extends InitExtensions {
         return di;
     }
 
+    static DiscoverInfo createLargeDiscoverInfo(int features) throws XmppStringprepException {
+        DiscoverInfo di = createComplexSamplePacket();
+        for (int i = 0; i < features; i++) {
+            di.addFeature("urn:xmpp:large:feature:" + (i * 7919 % features));
+        }
+        di.addIdentity(new DiscoverInfo.Identity("automation", "bot", "\ud83e\udd16", "x-emoji"));
+        return di;
+    }
+
+    /**
+     * Generate the verification string by building the string S as a whole, as described in XEP-0115 § 5.1.
+     */
+    static String referenceVerificationString(DiscoverInfo di) {
+        StringBuilder sb = new StringBuilder();
+        for (DiscoverInfo.Identity identity : new TreeSet<>(di.getIdentities())) {
+            sb.append(identity.getCategory()).append('/').append(identity.getType()).append('/');
+            sb.append(identity.getLanguage() == null ? "" : identity.getLanguage()).append('/');
+            sb.append(identity.getName() == null ? "" : identity.getName()).append('<');
+        }
+        SortedSet<String> features = new TreeSet<>();
+        for (DiscoverInfo.Feature feature : di.getFeatures()) {
+            features.add(feature.getVar());
+        }
+        for (String feature : features) {
+            sb.append(feature).append('<');
+        }
+        DataForm form = DataForm.from(di);
+        SortedMap<String, FormField> fields = new TreeMap<>();
+        for (FormField field : form.getFields()) {
+            fields.put(field.getVariable(), field);
+        }
+        for (String value : new TreeSet<>(fields.remove("FORM_TYPE").getValues())) {
+            sb.append(value).append('<');
+        }
+        for (FormField field : fields.values()) {
+            sb.append(field.getVariable()).append('<');
+            for (String value : new TreeSet<>(field.getValues())) {
+                sb.append(value).append('<');
+            }
+        }
+        return Base64.encodeToString(SHA1.bytes(sb.toString()));
+    }
+
     private static DiscoverInfo createMalformedDiscoverInfo() throws XmppStringprepException {
         DiscoverInfo di = new DiscoverInfo();
         di.setFrom(JidCreate.from("benvolio@capulet.lit/230193"));
@@ -0,0 +1,73 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.caps;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.test.util.BenchmarkUtils;
+import org.jivesoftware.smack.util.StringUtils;
+import org.jivesoftware.smackx.InitExtensions;
+import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Measures the generation of verification strings of disco#info results with large feature sets, once by building the
+ * string S as a whole and once by streaming its components into the digest.
+ */
+public class EntityCapsVerificationBenchmark extends InitExtensions {
+
+    private static final Logger LOGGER = Logger.getLogger(EntityCapsVerificationBenchmark.class.getName());
+
+    private static final int ITERATIONS = 200;
+
+    @BeforeClass
+    public static void assumeBenchmarksEnabled() {
+        BenchmarkUtils.assumeBenchmarksEnabled();
+    }
+
+    @Test
+    public void benchmarkVerificationString() throws Exception {
+        for (int features : new int[] { 100, 1000, 10000 }) {
+            DiscoverInfo di = EntityCapsManagerTest.createLargeDiscoverInfo(features);
+            assertEquals(EntityCapsManagerTest.referenceVerificationString(di),
+                            EntityCapsManager.generateVerificationString(di, StringUtils.SHA1).version);
+            // Warm up.
+            measure(di, false);
+            measure(di, true);
+            long string = measure(di, false);
+            long streaming = measure(di, true);
+            LOGGER.info(String.format(Locale.US, "%d features: string %d us, streaming %d us per verification string",
+                            features, string / ITERATIONS / 1000, streaming / ITERATIONS / 1000));
+        }
+    }
+
+    private static long measure(DiscoverInfo di, boolean streaming) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (streaming) {
+                EntityCapsManager.generateVerificationString(di, StringUtils.SHA1);
+            } else {
+                EntityCapsManagerTest.referenceVerificationString(di);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
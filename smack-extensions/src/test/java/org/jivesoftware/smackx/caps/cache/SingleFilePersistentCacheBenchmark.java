@@ -0,0 +1,88 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.caps.cache;
+
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.test.util.BenchmarkUtils;
+import org.jivesoftware.smackx.InitExtensions;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Measures cold-start lookups of the Caps information of many contacts, once from a
+ * {@link SimpleDirectoryPersistentCache} and once from a {@link SingleFilePersistentCache}.
+ */
+public class SingleFilePersistentCacheBenchmark extends InitExtensions {
+
+    private static final Logger LOGGER = Logger.getLogger(SingleFilePersistentCacheBenchmark.class.getName());
+
+    private static final int NODE_COUNT = 5000;
+
+    @BeforeClass
+    public static void assumeBenchmarksEnabled() {
+        BenchmarkUtils.assumeBenchmarksEnabled();
+    }
+
+    @Test
+    public void benchmarkColdLookups() throws Exception {
+        File directory = File.createTempFile("entity", "caps");
+        directory.delete();
+        directory.mkdir();
+        File file = File.createTempFile("entity", "caps");
+        try {
+            SimpleDirectoryPersistentCache directoryCache = new SimpleDirectoryPersistentCache(directory);
+            SingleFilePersistentCache fileCache = new SingleFilePersistentCache(file);
+            for (int i = 0; i < NODE_COUNT; i++) {
+                String nodeVer = SingleFilePersistentCacheTest.nodeVer(i);
+                directoryCache.addDiscoverInfoByNodePersistent(nodeVer, SingleFilePersistentCacheTest.createInfo(i));
+                fileCache.addDiscoverInfoByNodePersistent(nodeVer, SingleFilePersistentCacheTest.createInfo(i));
+            }
+            fileCache.close();
+
+            long directoryTime = lookupAll(new SimpleDirectoryPersistentCache(directory));
+            long start = System.nanoTime();
+            fileCache = new SingleFilePersistentCache(file);
+            long fileTime = lookupAll(fileCache) + System.nanoTime() - start;
+            fileCache.close();
+            LOGGER.info(String.format(Locale.US, "%d cold lookups: directory cache %d ms, single file cache %d ms "
+                            + "including opening the file (%d KiB)", NODE_COUNT, directoryTime / 1000000,
+                            fileTime / 1000000, file.length() / 1024));
+        }
+        finally {
+            deleteDirectory(directory);
+            file.delete();
+        }
+    }
+
+    private static long lookupAll(EntityCapsPersistentCache cache) {
+        long start = System.nanoTime();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            assertNotNull(cache.lookup(SingleFilePersistentCacheTest.nodeVer(i)));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void deleteDirectory(File directory) {
+        new SimpleDirectoryPersistentCache(directory).emptyCache();
+        directory.delete();
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.caps.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smackx.InitExtensions;
+import org.jivesoftware.smackx.caps.EntityCapsManager;
+import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
+import org.jivesoftware.smackx.xdata.FormField;
+import org.jivesoftware.smackx.xdata.packet.DataForm;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SingleFilePersistentCacheTest extends InitExtensions {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("entity", "caps");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void shouldRestoreInfoFromBinaryEncoding() throws Exception {
+        SingleFilePersistentCache cache = new SingleFilePersistentCache(file);
+        DiscoverInfo info = createInfo(1);
+        cache.addDiscoverInfoByNodePersistent(nodeVer(1), info);
+        cache.flush();
+
+        DiscoverInfo restored = cache.lookup(nodeVer(1));
+        assertEquals(info.toXML().toString(), restored.toXML().toString());
+        assertNull(cache.lookup(nodeVer(2)));
+        cache.close();
+    }
+
+    @Test
+    public void shouldRestoreInfoAfterReopen() throws Exception {
+        SingleFilePersistentCache cache = new SingleFilePersistentCache(file);
+        for (int i = 0; i < 100; i++) {
+            cache.addDiscoverInfoByNodePersistent(nodeVer(i), createInfo(i));
+        }
+        cache.close();
+
+        cache = new SingleFilePersistentCache(file);
+        assertEquals(100, cache.size());
+        assertEquals(createInfo(42).toXML().toString(), cache.lookup(nodeVer(42)).toXML().toString());
+        cache.emptyCache();
+        assertEquals(0, cache.size());
+        assertNull(cache.lookup(nodeVer(42)));
+        cache.close();
+    }
+
+    @Test
+    public void shouldStoreComplexFormsAsXml() throws Exception {
+        SingleFilePersistentCache cache = new SingleFilePersistentCache(file);
+        DiscoverInfo info = createInfo(1);
+        DataForm form = new DataForm(DataForm.Type.result);
+        FormField field = new FormField("choice");
+        field.setType(FormField.Type.list_single);
+        field.addOption(new FormField.Option("Yes", "1"));
+        field.addValue("1");
+        form.addField(field);
+        info.addExtension(form);
+        cache.addDiscoverInfoByNodePersistent(nodeVer(1), info);
+        cache.close();
+
+        cache = new SingleFilePersistentCache(file);
+        assertEquals(info.toXML().toString(), cache.lookup(nodeVer(1)).toXML().toString());
+        cache.close();
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedRecords() throws Exception {
+        final int maxSize = 8 * 1024;
+        SingleFilePersistentCache cache = new SingleFilePersistentCache(file, maxSize);
+        cache.addDiscoverInfoByNodePersistent(nodeVer(0), createInfo(0));
+        cache.flush();
+        for (int i = 1; i < 200; i++) {
+            cache.addDiscoverInfoByNodePersistent(nodeVer(i), createInfo(i));
+            cache.flush();
+            // Keep the first record in use.
+            assertNotNull(cache.lookup(nodeVer(0)));
+        }
+
+        assertTrue(file.length() <= maxSize);
+        assertTrue(cache.size() < 200);
+        assertNull(cache.lookup(nodeVer(1)));
+        assertNotNull(cache.lookup(nodeVer(199)));
+        cache.close();
+
+        cache = new SingleFilePersistentCache(file, maxSize);
+        assertNotNull(cache.lookup(nodeVer(0)));
+        assertNotNull(cache.lookup(nodeVer(199)));
+        cache.close();
+    }
+
+    @Test
+    public void shouldTruncateIncompleteRecord() throws Exception {
+        SingleFilePersistentCache cache = new SingleFilePersistentCache(file);
+        cache.addDiscoverInfoByNodePersistent(nodeVer(1), createInfo(1));
+        cache.close();
+        long length = file.length();
+
+        byte[] record = SingleFilePersistentCache.encodeRecord(nodeVer(2), createInfo(2));
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(record, 0, record.length / 2);
+        }
+        finally {
+            out.close();
+        }
+
+        cache = new SingleFilePersistentCache(file);
+        assertEquals(length, file.length());
+        assertEquals(1, cache.size());
+        assertNotNull(cache.lookup(nodeVer(1)));
+        assertNull(cache.lookup(nodeVer(2)));
+        cache.close();
+    }
+
+    @Test
+    public void shouldDiscardForeignFile() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("This is not a cache file".getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+
+        SingleFilePersistentCache cache = new SingleFilePersistentCache(file);
+        assertEquals(0, cache.size());
+        cache.addDiscoverInfoByNodePersistent(nodeVer(1), createInfo(1));
+        cache.flush();
+        assertNotNull(cache.lookup(nodeVer(1)));
+        cache.close();
+    }
+
+    static String nodeVer(int i) {
+        return "http://client.example.org#ver" + i;
+    }
+
+    static DiscoverInfo createInfo(int i) {
+        DiscoverInfo info = new DiscoverInfo();
+        info.setStanzaId(null);
+        info.setType(IQ.Type.result);
+        info.setNode(nodeVer(i));
+        info.addIdentity(new DiscoverInfo.Identity("client", "pc", "Client " + i, "en"));
+        info.addIdentity(new DiscoverInfo.Identity("client", "pc", "Ψ " + i, "el"));
+        info.addFeature("http://jabber.org/protocol/disco#info");
+        info.addFeature("http://jabber.org/protocol/disco#items");
+        info.addFeature(EntityCapsManager.NAMESPACE);
+        info.addFeature("http://jabber.org/protocol/muc");
+        info.addFeature("urn:xmpp:feature:" + i);
+
+        DataForm form = new DataForm(DataForm.Type.result);
+        FormField field = new FormField("FORM_TYPE");
+        field.setType(FormField.Type.hidden);
+        field.addValue("urn:xmpp:dataforms:softwareinfo");
+        form.addField(field);
+        field = new FormField("ip_version");
+        field.addValue("ipv4");
+        field.addValue("ipv6");
+        form.addField(field);
+        field = new FormField("software_version");
+        field.addValue("0." + i);
+        form.addField(field);
+        info.addExtension(form);
+        return info;
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.disco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jivesoftware.smack.DummyConnection;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.TopLevelStreamElement;
+import org.jivesoftware.smackx.InitExtensions;
+import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
+import org.jivesoftware.smackx.disco.packet.DiscoverItems;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+
+public class DiscoResultCacheTest extends InitExtensions {
+
+    private DummyConnection connection;
+    private ServiceDiscoveryManager manager;
+    private Responder responder;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = DummyConnection.newConnectedDummyConnection();
+        manager = ServiceDiscoveryManager.getInstanceFor(connection);
+        responder = new Responder();
+        responder.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        responder.running = false;
+        responder.join();
+        connection.disconnect();
+    }
+
+    @Test
+    public void shouldCacheResultsOfServices() throws Exception {
+        Jid server = connection.getXMPPServiceDomain();
+        Jid upload = JidCreate.from("upload." + server);
+
+        DiscoverInfo info = manager.discoverInfo(server);
+        assertSame(info, manager.discoverInfo(server));
+        manager.discoverInfo(upload);
+        manager.discoverInfo(upload);
+        DiscoverItems items = manager.discoverItems(server);
+        assertSame(items, manager.discoverItems(server));
+        manager.discoverInfo(connection.getUser().asBareJid());
+        manager.discoverInfo(connection.getUser().asBareJid());
+        assertEquals(4, responder.requests.get());
+
+        // Other nodes of the same entity are cached separately.
+        manager.discoverInfo(server, "node");
+        assertEquals(5, responder.requests.get());
+
+        manager.refreshDiscoverInfo(server, null);
+        assertEquals(6, responder.requests.get());
+        manager.discoverInfo(server);
+        assertEquals(6, responder.requests.get());
+    }
+
+    @Test
+    public void shouldNotCacheResultsOfOtherEntities() throws Exception {
+        Jid contact = JidCreate.from("juliet@capulet.example/balcony");
+        Jid room = JidCreate.from("room@conference.capulet.example");
+
+        manager.discoverInfo(contact);
+        manager.discoverInfo(contact);
+        manager.discoverInfo(room);
+        manager.discoverInfo(room);
+        assertEquals(4, responder.requests.get());
+    }
+
+    @Test
+    public void shouldOnlyCacheItemsOfServer() throws Exception {
+        Jid server = connection.getXMPPServiceDomain();
+        Jid conference = JidCreate.from("conference." + server);
+
+        // The items of a MUC service are its rooms, which may change at any time.
+        manager.discoverItems(conference);
+        manager.discoverItems(conference);
+        // The items of our own account are its PEP nodes.
+        manager.discoverItems(connection.getUser().asBareJid());
+        manager.discoverItems(connection.getUser().asBareJid());
+        manager.discoverItems(server, "node");
+        manager.discoverItems(server, "node");
+        assertEquals(6, responder.requests.get());
+    }
+
+    @Test
+    public void shouldClearCache() throws Exception {
+        Jid server = connection.getXMPPServiceDomain();
+        manager.discoverInfo(server);
+        manager.discoverItems(server);
+        manager.discoverInfo(server);
+        assertEquals(2, responder.requests.get());
+
+        manager.clearResultCache();
+        manager.discoverInfo(server);
+        manager.discoverItems(server);
+        assertEquals(4, responder.requests.get());
+    }
+
+    @Test
+    public void shouldNotCacheIfDisabled() throws Exception {
+        Jid server = connection.getXMPPServiceDomain();
+        manager.discoverInfo(server);
+        manager.setResultCacheExpirationTime(0);
+        manager.discoverInfo(server);
+        manager.discoverInfo(server);
+        assertEquals(3, responder.requests.get());
+    }
+
+    /**
+     * Answers every disco#info and disco#items request of the connection with an empty result.
+     */
+    private final class Responder extends Thread {
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile boolean running = true;
+
+        private Responder() {
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                TopLevelStreamElement element = connection.getSentPacket(1);
+                if (!(element instanceof IQ)) {
+                    continue;
+                }
+                IQ request = (IQ) element;
+                IQ response;
+                if (request instanceof DiscoverInfo) {
+                    DiscoverInfo info = new DiscoverInfo();
+                    info.setNode(((DiscoverInfo) request).getNode());
+                    response = info;
+                } else if (request instanceof DiscoverItems) {
+                    response = new DiscoverItems();
+                } else {
+                    continue;
+                }
+                requests.incrementAndGet();
+                response.setType(IQ.Type.result);
+                response.setStanzaId(request.getStanzaId());
+                response.setFrom(request.getTo());
+                response.setTo(request.getFrom());
+                connection.processStanza(response);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.disco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.DummyConnection;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.util.SHA1;
+import org.jivesoftware.smack.util.stringencoder.Base64;
+import org.jivesoftware.smackx.InitExtensions;
+import org.jivesoftware.smackx.caps.EntityCapsManager;
+import org.jivesoftware.smackx.caps.packet.CapsExtension;
+import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+
+public class DiscoverInfoCoalescingTest extends InitExtensions {
+
+    private static final int CALLERS = 5;
+
+    private DummyConnection connection;
+    private ServiceDiscoveryManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = DummyConnection.newConnectedDummyConnection();
+        manager = ServiceDiscoveryManager.getInstanceFor(connection);
+    }
+
+    @After
+    public void tearDown() {
+        connection.disconnect();
+    }
+
+    @Test
+    public void shouldShareRequestForSameEntity() throws Exception {
+        Jid entity = JidCreate.from("juliet@capulet.example/balcony");
+        List<Jid> entities = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            entities.add(entity);
+        }
+        BlockingQueue<Object> results = discoverInfoConcurrently(entities);
+
+        DiscoverInfo request = connection.getSentPacket(5);
+        assertNull(request.getNode());
+        // Give the other callers the chance to send their own request.
+        Thread.sleep(200);
+        assertEquals(0, connection.getNumberOfSentPackets());
+
+        DiscoverInfo response = createResponse(request, "urn:xmpp:test:same-entity");
+        connection.processStanza(response);
+        for (int i = 0; i < CALLERS; i++) {
+            assertSame(response, results.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void shouldShareRequestForSameNodeVer() throws Exception {
+        final String feature = "urn:xmpp:test:same-ver";
+        final String node = "http://client.example.org";
+        final String ver = Base64.encodeToString(SHA1.bytes("client/pc//Coalesce<" + feature + '<'));
+        List<Jid> entities = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            Jid entity = JidCreate.from("contact" + i + "@example.org/client");
+            Presence presence = new Presence(Presence.Type.available);
+            presence.setFrom(entity);
+            presence.addExtension(new CapsExtension(node, ver, "sha-1"));
+            connection.processStanza(presence);
+            entities.add(entity);
+        }
+        for (Jid entity : entities) {
+            waitForNodeVer(entity);
+        }
+        BlockingQueue<Object> results = discoverInfoConcurrently(entities);
+
+        DiscoverInfo request = connection.getSentPacket(5);
+        assertEquals(node + '#' + ver, request.getNode());
+        Thread.sleep(200);
+        assertEquals(0, connection.getNumberOfSentPackets());
+
+        connection.processStanza(createResponse(request, feature));
+        for (int i = 0; i < CALLERS; i++) {
+            Object result = results.poll(5, TimeUnit.SECONDS);
+            assertTrue(result instanceof DiscoverInfo);
+            assertTrue(((DiscoverInfo) result).containsFeature(feature));
+        }
+        assertEquals(0, connection.getNumberOfSentPackets());
+    }
+
+    @Test
+    public void shouldQueryEachEntityIfNodeVerCanNotBeVerified() throws Exception {
+        final String node = "http://client.example.org";
+        final String ver = "not-the-right-ver=";
+        List<Jid> entities = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Jid entity = JidCreate.from("spoofer" + i + "@example.org/client");
+            Presence presence = new Presence(Presence.Type.available);
+            presence.setFrom(entity);
+            presence.addExtension(new CapsExtension(node, ver, "sha-1"));
+            connection.processStanza(presence);
+            entities.add(entity);
+        }
+        for (Jid entity : entities) {
+            waitForNodeVer(entity);
+        }
+        BlockingQueue<Object> results = discoverInfoConcurrently(entities);
+
+        DiscoverInfo request = connection.getSentPacket(5);
+        Thread.sleep(200);
+        assertEquals(0, connection.getNumberOfSentPackets());
+        connection.processStanza(createResponse(request, "urn:xmpp:test:first"));
+        assertNotNull(results.poll(5, TimeUnit.SECONDS));
+
+        // The result does not match the announced ver, hence the other entity is queried on its own.
+        DiscoverInfo secondRequest = connection.getSentPacket(5);
+        assertEquals(entities.indexOf(request.getTo()), 1 - entities.indexOf(secondRequest.getTo()));
+        connection.processStanza(createResponse(secondRequest, "urn:xmpp:test:second"));
+        Object result = results.poll(5, TimeUnit.SECONDS);
+        assertTrue(((DiscoverInfo) result).containsFeature("urn:xmpp:test:second"));
+    }
+
+    private BlockingQueue<Object> discoverInfoConcurrently(List<Jid> entities) throws InterruptedException {
+        final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        final CountDownLatch started = new CountDownLatch(entities.size());
+        for (final Jid entity : entities) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        results.add(manager.discoverInfo(entity));
+                    }
+                    catch (Exception e) {
+                        results.add(e);
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+        started.await();
+        return results;
+    }
+
+    private static void waitForNodeVer(Jid entity) throws InterruptedException {
+        for (int i = 0; i < 100 && EntityCapsManager.getNodeVerHashByJid(entity) == null; i++) {
+            Thread.sleep(10);
+        }
+        assertNotNull(EntityCapsManager.getNodeVerHashByJid(entity));
+    }
+
+    private static DiscoverInfo createResponse(DiscoverInfo request, String feature) {
+        DiscoverInfo response = new DiscoverInfo();
+        response.setType(IQ.Type.result);
+        response.setStanzaId(request.getStanzaId());
+        response.setFrom(request.getTo());
+        response.setTo(request.getFrom());
+        response.setNode(request.getNode());
+        response.addIdentity(new DiscoverInfo.Identity("client", "Coalesce", "pc"));
+        response.addFeature(feature);
+        return response;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.muc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smackx.muc.MucEnterConfiguration.MessageQueueOverflowPolicy;
+import org.junit.Test;
+
+public class MucMessageQueueTest {
+
+    private static Message message(String body) {
+        Message message = new Message();
+        message.setBody(body);
+        return message;
+    }
+
+    @Test
+    public void shouldDropOldestMessages() throws Exception {
+        MucMessageQueue queue = new MucMessageQueue(2, MessageQueueOverflowPolicy.dropOldest);
+        queue.add(message("1"));
+        queue.add(message("2"));
+        queue.add(message("3"));
+
+        assertEquals(2, queue.size());
+        assertEquals("2", queue.poll().getBody());
+        assertEquals("3", queue.poll().getBody());
+        assertNull(queue.poll(10));
+    }
+
+    @Test
+    public void shouldApplyBackpressure() throws Exception {
+        final MucMessageQueue queue = new MucMessageQueue(1, MessageQueueOverflowPolicy.block);
+        final CountDownLatch added = new CountDownLatch(2);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.add(message("1"));
+                    added.countDown();
+                    queue.add(message("2"));
+                    added.countDown();
+                }
+                catch (InterruptedException e) {
+                    // Ignore, the test will fail.
+                }
+            }
+        };
+        producer.start();
+
+        // The producer must block on the second message until we consumed the first one.
+        assertFalse(added.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, added.getCount());
+        Iterator<Message> it = queue.iterator();
+        assertTrue(it.hasNext());
+        assertEquals("1", it.next().getBody());
+        assertTrue(added.await(5, TimeUnit.SECONDS));
+        assertEquals("2", it.next().getBody());
+        producer.join();
+    }
+
+    @Test
+    public void shouldDropNewMessageAfterBlockTimeout() throws Exception {
+        MucMessageQueue queue = new MucMessageQueue(1, MessageQueueOverflowPolicy.block, 100);
+        queue.add(message("1"));
+        long start = System.currentTimeMillis();
+        queue.add(message("2"));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+
+        assertEquals(1, queue.size());
+        assertEquals("1", queue.poll().getBody());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void shouldEndIteratorAndUnblockProducerOnClose() throws Exception {
+        final MucMessageQueue queue = new MucMessageQueue(1, MessageQueueOverflowPolicy.block);
+        Message message = message("1");
+        queue.add(message);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.add(message("2"));
+                }
+                catch (InterruptedException e) {
+                    // Ignore, the test will fail.
+                }
+            }
+        };
+        producer.start();
+
+        Iterator<Message> it = queue.iterator();
+        assertSame(message, it.next());
+        queue.close();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertFalse(it.hasNext());
+    }
+}
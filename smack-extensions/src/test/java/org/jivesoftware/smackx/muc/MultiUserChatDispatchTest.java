@@ -0,0 +1,129 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.muc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.DummyConnection;
+import org.jivesoftware.smack.MessageListener;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smackx.InitExtensions;
+import org.jivesoftware.smackx.muc.packet.MUCItem;
+import org.jivesoftware.smackx.muc.packet.MUCUser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.EntityFullJid;
+import org.jxmpp.jid.impl.JidCreate;
+
+public class MultiUserChatDispatchTest extends InitExtensions {
+
+    private DummyConnection connection;
+    private MultiUserChatManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = DummyConnection.newConnectedDummyConnection();
+        manager = MultiUserChatManager.getInstanceFor(connection);
+    }
+
+    @After
+    public void tearDown() {
+        connection.disconnect();
+    }
+
+    @Test
+    public void shouldRouteStanzasToTheirRoom() throws Exception {
+        EntityBareJid roomA = JidCreate.entityBareFrom("a@conference.example.org");
+        EntityBareJid roomB = JidCreate.entityBareFrom("b@conference.example.org");
+        MultiUserChat mucA = manager.getMultiUserChat(roomA);
+        MultiUserChat mucB = manager.getMultiUserChat(roomB);
+        BlockingQueue<Message> messagesA = collectMessages(mucA);
+        BlockingQueue<Message> messagesB = collectMessages(mucB);
+        manager.addDispatchTarget(mucA);
+        manager.addDispatchTarget(mucB);
+
+        Message message = new Message(roomA, Message.Type.groupchat);
+        message.setFrom(JidCreate.entityFullFrom("a@conference.example.org/alice"));
+        message.setBody("Hi");
+        connection.processStanza(message);
+        assertSame(message, messagesA.poll(5, TimeUnit.SECONDS));
+
+        EntityFullJid bob = JidCreate.entityFullFrom("b@conference.example.org/bob");
+        Presence presence = new Presence(Presence.Type.available);
+        presence.setFrom(bob);
+        MUCUser mucUser = new MUCUser();
+        mucUser.setItem(new MUCItem(MUCAffiliation.member, MUCRole.participant, null, null, null, null, null));
+        presence.addExtension(mucUser);
+        connection.processStanza(presence);
+        // A message sent afterwards ensures that the presence has been processed by the sync listener.
+        Message messageB = new Message(roomB, Message.Type.groupchat);
+        messageB.setFrom(bob);
+        connection.processStanza(messageB);
+        assertSame(messageB, messagesB.poll(5, TimeUnit.SECONDS));
+        assertEquals(MUCRole.participant, mucB.getOccupant(bob).getRole());
+        assertEquals(0, mucA.getOccupantsCount());
+        assertNull(messagesA.poll());
+
+        manager.removeDispatchTarget(mucA);
+        connection.processStanza(message);
+        connection.processStanza(messageB);
+        assertSame(messageB, messagesB.poll(5, TimeUnit.SECONDS));
+        assertNull(messagesA.poll());
+    }
+
+    @Test
+    public void shouldIndexOccupantWithoutMucUserItem() throws Exception {
+        EntityBareJid room = JidCreate.entityBareFrom("a@conference.example.org");
+        MultiUserChat muc = manager.getMultiUserChat(room);
+        BlockingQueue<Message> messages = collectMessages(muc);
+        manager.addDispatchTarget(muc);
+
+        EntityFullJid carol = JidCreate.entityFullFrom("a@conference.example.org/carol");
+        Presence presence = new Presence(Presence.Type.available);
+        presence.setFrom(carol);
+        connection.processStanza(presence);
+        Message message = new Message(room, Message.Type.groupchat);
+        message.setFrom(carol);
+        connection.processStanza(message);
+        assertSame(message, messages.poll(5, TimeUnit.SECONDS));
+
+        Occupant occupant = muc.getOccupant(carol);
+        assertEquals(MUCRole.none, occupant.getRole());
+        assertEquals(MUCAffiliation.none, occupant.getAffiliation());
+        assertEquals(1, muc.getOccupantsCount());
+    }
+
+    private static BlockingQueue<Message> collectMessages(MultiUserChat muc) {
+        final BlockingQueue<Message> messages = new LinkedBlockingQueue<>();
+        muc.addMessageListener(new MessageListener() {
+            @Override
+            public void processMessage(Message message) {
+                messages.add(message);
+            }
+        });
+        return messages;
+    }
+}
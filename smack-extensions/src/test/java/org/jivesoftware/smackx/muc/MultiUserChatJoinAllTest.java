@@ -0,0 +1,216 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.muc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.DummyConnection;
+import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.XMPPException.XMPPErrorException;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.TopLevelStreamElement;
+import org.jivesoftware.smack.packet.XMPPError;
+import org.jivesoftware.smackx.InitExtensions;
+import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
+import org.jivesoftware.smackx.muc.packet.MUCInitialPresence;
+import org.jivesoftware.smackx.muc.packet.MUCItem;
+import org.jivesoftware.smackx.muc.packet.MUCUser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.jid.parts.Resourcepart;
+
+public class MultiUserChatJoinAllTest extends InitExtensions {
+
+    private DummyConnection connection;
+    private MultiUserChatManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = DummyConnection.newConnectedDummyConnection();
+        manager = MultiUserChatManager.getInstanceFor(connection);
+    }
+
+    @After
+    public void tearDown() {
+        connection.disconnect();
+    }
+
+    @Test
+    public void shouldPipelineJoinPresences() throws Exception {
+        EntityBareJid roomA = JidCreate.entityBareFrom("a@conference.joinall.example");
+        EntityBareJid roomB = JidCreate.entityBareFrom("b@conference.joinall.example");
+        EntityBareJid roomC = JidCreate.entityBareFrom("c@conference.joinall.example");
+        Resourcepart nickname = Resourcepart.from("alice");
+
+        JoinAllThread joinAllThread = new JoinAllThread(Arrays.asList(roomA, roomB, roomC), nickname);
+        joinAllThread.start();
+
+        // All join presences are send before any of them is reflected.
+        List<Presence> joinPresences = new ArrayList<>();
+        while (joinPresences.size() < 3) {
+            TopLevelStreamElement element = connection.getSentPacket(5);
+            if (element instanceof DiscoverInfo) {
+                connection.processStanza(createMucServiceInfo((DiscoverInfo) element));
+            } else if (element instanceof Presence) {
+                joinPresences.add((Presence) element);
+            } else {
+                fail("Unexpected element: " + element);
+            }
+        }
+        joinAllThread.join(5000);
+        Map<EntityBareJid, MucJoinFuture> futures = joinAllThread.futures;
+        assertEquals(Arrays.asList(roomA, roomB, roomC), new ArrayList<>(futures.keySet()));
+        for (Presence joinPresence : joinPresences) {
+            MUCInitialPresence mucInitialPresence = joinPresence.getExtension(MUCInitialPresence.ELEMENT,
+                            MUCInitialPresence.NAMESPACE);
+            assertEquals(5, mucInitialPresence.getHistory().getMaxStanzas());
+        }
+        for (MucJoinFuture future : futures.values()) {
+            assertFalse(future.isDone());
+        }
+
+        // Reflect the joins out of order, and reject the join of room b.
+        Presence reflectionC = createSelfPresence(roomC, "alice");
+        connection.processStanza(reflectionC);
+        Presence error = new Presence(Presence.Type.error);
+        error.setStanzaId(joinPresences.get(1).getStanzaId());
+        error.setFrom(joinPresences.get(1).getTo());
+        error.setError(XMPPError.getBuilder(XMPPError.Condition.registration_required));
+        connection.processStanza(error);
+        // The service may rewrite the nickname.
+        Presence reflectionA = createSelfPresence(roomA, "alice2");
+        connection.processStanza(reflectionA);
+
+        assertSame(reflectionA, futures.get(roomA).get(5, TimeUnit.SECONDS));
+        assertSame(reflectionC, futures.get(roomC).getOrThrow());
+        try {
+            futures.get(roomB).get(5, TimeUnit.SECONDS);
+            fail("Expected the join of room b to fail");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof XMPPErrorException);
+        }
+
+        MultiUserChat mucA = manager.getMultiUserChat(roomA);
+        assertTrue(mucA.isJoined());
+        assertEquals(Resourcepart.from("alice2"), mucA.getNickname());
+        assertFalse(manager.getMultiUserChat(roomB).isJoined());
+        assertTrue(manager.getMultiUserChat(roomC).isJoined());
+        assertEquals(2, manager.getJoinedRooms().size());
+    }
+
+    @Test
+    public void shouldCompleteRemainingJoinsIfDisconnected() throws Exception {
+        final EntityBareJid roomA = JidCreate.entityBareFrom("a@conference.joinall-disconnect.example");
+        final EntityBareJid roomB = JidCreate.entityBareFrom("b@conference.joinall-disconnect.example");
+        final EntityBareJid roomC = JidCreate.entityBareFrom("c@conference.joinall-disconnect.example");
+        connection.disconnect();
+        // The connection gets lost right when the join presence of room b is send.
+        connection = new DummyConnection() {
+            @Override
+            public void sendStanza(Stanza packet) throws NotConnectedException, InterruptedException {
+                if (packet.getTo() != null && roomB.equals(packet.getTo().asEntityBareJidIfPossible())) {
+                    throw new NotConnectedException();
+                }
+                super.sendStanza(packet);
+            }
+        };
+        connection.connect();
+        connection.login();
+        manager = MultiUserChatManager.getInstanceFor(connection);
+
+        JoinAllThread joinAllThread = new JoinAllThread(Arrays.asList(roomA, roomB, roomC),
+                        Resourcepart.from("alice"));
+        joinAllThread.start();
+        TopLevelStreamElement element = connection.getSentPacket(5);
+        connection.processStanza(createMucServiceInfo((DiscoverInfo) element));
+        joinAllThread.join(5000);
+
+        Map<EntityBareJid, MucJoinFuture> futures = joinAllThread.futures;
+        assertEquals(Arrays.asList(roomA, roomB, roomC), new ArrayList<>(futures.keySet()));
+        assertTrue(connection.getSentPacket(5) instanceof Presence);
+        assertEquals(0, connection.getNumberOfSentPackets());
+        assertFalse(futures.get(roomA).isDone());
+        for (EntityBareJid room : Arrays.asList(roomB, roomC)) {
+            try {
+                futures.get(room).get(5, TimeUnit.SECONDS);
+                fail("Expected the join of " + room + " to fail");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof NotConnectedException);
+            }
+        }
+    }
+
+    private static DiscoverInfo createMucServiceInfo(DiscoverInfo request) {
+        DiscoverInfo response = new DiscoverInfo();
+        response.setType(IQ.Type.result);
+        response.setStanzaId(request.getStanzaId());
+        response.setFrom(request.getTo());
+        response.setTo(request.getFrom());
+        response.addFeature(MUCInitialPresence.NAMESPACE);
+        return response;
+    }
+
+    private static Presence createSelfPresence(EntityBareJid room, String nickname) throws Exception {
+        Presence presence = new Presence(Presence.Type.available);
+        presence.setFrom(JidCreate.entityFullFrom(room, Resourcepart.from(nickname)));
+        MUCUser mucUser = new MUCUser();
+        mucUser.setItem(new MUCItem(MUCAffiliation.member, MUCRole.participant, null, null, null, null, null));
+        mucUser.addStatusCode(MUCUser.Status.PRESENCE_TO_SELF_110);
+        presence.addExtension(mucUser);
+        return presence;
+    }
+
+    private final class JoinAllThread extends Thread {
+        private final List<EntityBareJid> rooms;
+        private final Resourcepart nickname;
+        private volatile Map<EntityBareJid, MucJoinFuture> futures = new HashMap<>();
+
+        private JoinAllThread(List<EntityBareJid> rooms, Resourcepart nickname) {
+            this.rooms = rooms;
+            this.nickname = nickname;
+        }
+
+        @Override
+        public void run() {
+            try {
+                futures = manager.joinAll(rooms, nickname, 5);
+            }
+            catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
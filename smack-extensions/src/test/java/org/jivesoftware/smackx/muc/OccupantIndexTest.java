@@ -0,0 +1,90 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.muc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.jivesoftware.smackx.muc.packet.MUCItem;
+import org.junit.Test;
+import org.jxmpp.jid.EntityFullJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.jid.parts.Resourcepart;
+
+public class OccupantIndexTest {
+
+    private final OccupantIndex index = new OccupantIndex();
+
+    private static EntityFullJid occupantJid(String nick) throws Exception {
+        return JidCreate.entityFullFrom("room@conference.example.org/" + nick);
+    }
+
+    private static Occupant occupant(String nick, MUCAffiliation affiliation, MUCRole role) throws Exception {
+        return new Occupant(new MUCItem(affiliation, role, null, null, JidCreate.from(nick + "@example.org/res"),
+                        Resourcepart.from(nick), null));
+    }
+
+    @Test
+    public void shouldLookupByRoleAndAffiliation() throws Exception {
+        Occupant alice = occupant("alice", MUCAffiliation.owner, MUCRole.moderator);
+        Occupant bob = occupant("bob", MUCAffiliation.member, MUCRole.participant);
+        Occupant carol = occupant("carol", MUCAffiliation.none, MUCRole.participant);
+        index.put(occupantJid("alice"), alice);
+        index.put(occupantJid("bob"), bob);
+        index.put(occupantJid("carol"), carol);
+
+        assertEquals(3, index.size());
+        assertSame(bob, index.get(occupantJid("bob")));
+        List<Occupant> participants = index.getByRole(MUCRole.participant);
+        assertEquals(2, participants.size());
+        assertTrue(participants.contains(bob));
+        assertTrue(participants.contains(carol));
+        assertEquals(1, index.getByAffiliation(MUCAffiliation.owner).size());
+        assertTrue(index.getByRole(MUCRole.visitor).isEmpty());
+    }
+
+    @Test
+    public void shouldReindexOnChange() throws Exception {
+        Occupant bob = occupant("bob", MUCAffiliation.member, MUCRole.participant);
+        Occupant promotedBob = occupant("bob", MUCAffiliation.admin, MUCRole.moderator);
+        assertNull(index.put(occupantJid("bob"), bob));
+        assertSame(bob, index.put(occupantJid("bob"), promotedBob));
+
+        assertTrue(index.getByRole(MUCRole.participant).isEmpty());
+        assertTrue(index.getByAffiliation(MUCAffiliation.member).isEmpty());
+        assertEquals(1, index.getByRole(MUCRole.moderator).size());
+        assertEquals(1, index.getByAffiliation(MUCAffiliation.admin).size());
+    }
+
+    @Test
+    public void shouldRemoveAndClear() throws Exception {
+        index.put(occupantJid("alice"), occupant("alice", MUCAffiliation.owner, MUCRole.moderator));
+        index.put(occupantJid("bob"), occupant("bob", MUCAffiliation.member, MUCRole.participant));
+
+        index.remove(occupantJid("alice"));
+        assertEquals(1, index.size());
+        assertTrue(index.getByRole(MUCRole.moderator).isEmpty());
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.getByRole(MUCRole.participant).isEmpty());
+    }
+}
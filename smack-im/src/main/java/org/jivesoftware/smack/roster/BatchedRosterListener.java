@@ -0,0 +1,46 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster;
+
+/**
+ * A listener which receives the changes of the roster and the presences of the roster entries in batches.
+ * <p>
+ * Unlike a {@link RosterListener}, which is invoked for every single presence and roster push, a batched roster
+ * listener is invoked with a {@link RosterChangeSet} aggregating all changes of a time window. The window starts with
+ * the first change and ends once no further change happened within the quiet period, or at the latest once the
+ * maximum batching window elapsed. This avoids tens of thousands of callbacks, and possibly UI refreshes, caused by
+ * the presence flood after login.
+ * </p>
+ * <p>
+ * Batched roster listeners are invoked from a separate thread, one change set at a time.
+ * </p>
+ *
+ * @see Roster#addBatchedRosterListener(BatchedRosterListener)
+ * @see Roster#setBatchingWindow(int)
+ * @see Roster#setBatchingQuietPeriod(int)
+ */
+public interface BatchedRosterListener {
+
+    /**
+     * Called with the changes of the roster and the presences of the roster entries collected within a batching
+     * window.
+     *
+     * @param changeSet the aggregated changes.
+     */
+    public void rosterChanged(RosterChangeSet changeSet);
+
+}
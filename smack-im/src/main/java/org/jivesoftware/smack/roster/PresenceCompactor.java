@@ -0,0 +1,114 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.jivesoftware.smack.packet.ExtensionElement;
+import org.jivesoftware.smack.packet.Presence;
+import org.jxmpp.util.cache.LruCache;
+
+/**
+ * Creates compact copies of presences which are stored by the {@link Roster}.
+ * <p>
+ * Incoming presences carry a lot of state which is not required once they have been dispatched to the listeners: the
+ * stanza ID, the 'to' address, the language and extension elements the application is usually not interested in. For
+ * very large rosters the retained stanzas make up a considerable part of the heap. A compact presence keeps only the
+ * type, mode, priority, status, 'from' address and the extension elements with one of the retained namespaces.
+ * Status texts are interned, since many contacts tend to use the same few status messages.
+ * </p>
+ */
+final class PresenceCompactor {
+
+    /**
+     * The namespaces of the extension elements retained by default: Entity Capabilities (XEP-0115), vCard-Based
+     * Avatars (XEP-0153), Last User Interaction in Presence (XEP-0319) and Delayed Delivery (XEP-0203).
+     */
+    static final Set<String> DEFAULT_RETAINED_NAMESPACES = Collections.unmodifiableSet(new LinkedHashSet<>(
+                    Arrays.asList("http://jabber.org/protocol/caps", "vcard-temp:x:update", "urn:xmpp:idle:1",
+                                    "urn:xmpp:delay")));
+
+    private static final Set<String> RETAINED_NAMESPACES = new CopyOnWriteArraySet<>(DEFAULT_RETAINED_NAMESPACES);
+
+    private static final int STATUS_CACHE_SIZE = 1000;
+
+    private static final LruCache<String, String> STATUS_CACHE = new LruCache<>(STATUS_CACHE_SIZE);
+
+    private PresenceCompactor() {
+    }
+
+    static boolean addRetainedNamespace(String namespace) {
+        return RETAINED_NAMESPACES.add(namespace);
+    }
+
+    static boolean removeRetainedNamespace(String namespace) {
+        return RETAINED_NAMESPACES.remove(namespace);
+    }
+
+    static Set<String> getRetainedNamespaces() {
+        return Collections.unmodifiableSet(RETAINED_NAMESPACES);
+    }
+
+    /**
+     * Create a compact copy of the given presence. Error presences are returned as they are, since they are rare and
+     * their error element should be kept as it is.
+     *
+     * @param presence the presence to compact.
+     * @return a compact copy of the presence.
+     */
+    static Presence compact(Presence presence) {
+        if (presence.getType() == Presence.Type.error) {
+            return presence;
+        }
+        Presence compact = new Presence(presence.getType());
+        compact.setStanzaId(null);
+        compact.setFrom(presence.getFrom());
+        compact.setStatus(intern(presence.getStatus()));
+        int priority = presence.getPriority();
+        if (priority != Integer.MIN_VALUE) {
+            compact.setPriority(priority);
+        }
+        Presence.Mode mode = presence.getMode();
+        if (mode != Presence.Mode.available) {
+            compact.setMode(mode);
+        }
+        for (ExtensionElement extension : presence.getExtensions()) {
+            if (RETAINED_NAMESPACES.contains(extension.getNamespace())) {
+                compact.addExtension(extension);
+            }
+        }
+        return compact;
+    }
+
+    static String intern(String status) {
+        if (status == null) {
+            return null;
+        }
+        synchronized (STATUS_CACHE) {
+            String interned = STATUS_CACHE.lookup(status);
+            if (interned != null) {
+                return interned;
+            }
+            STATUS_CACHE.put(status, status);
+            return status;
+        }
+    }
+}
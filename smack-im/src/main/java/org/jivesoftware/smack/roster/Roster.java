@@ -30,6 +30,8 @@ import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -131,6 +133,20 @@ public final class Roster extends Manager {
 
     private static boolean rosterLoadedAtLoginDefault = true;
 
+    private static boolean keepFullPresencesDefault = false;
+
+    public static final int INITIAL_DEFAULT_BATCHING_WINDOW = 1000;
+
+    public static final int INITIAL_DEFAULT_BATCHING_QUIET_PERIOD = 100;
+
+    private static int defaultBatchingWindow = INITIAL_DEFAULT_BATCHING_WINDOW;
+
+    private static int defaultBatchingQuietPeriod = INITIAL_DEFAULT_BATCHING_QUIET_PERIOD;
+
+    private static int defaultBulkItemsPerRequest = 1;
+
+    private static int defaultBulkMaxPendingRequests = 50;
+
     /**
      * The default subscription processing mode to use when a Roster is created. By default
      * all subscription requests are automatically rejected.
@@ -158,6 +174,9 @@ public final class Roster extends Manager {
 
     private final Set<PresenceEventListener> presenceEventListeners = new CopyOnWriteArraySet<>();
 
+    private final RosterChangeBatcher changeBatcher = new RosterChangeBatcher(defaultBatchingWindow,
+                    defaultBatchingQuietPeriod);
+
     /**
      * A map of JIDs to another Map of Resourceparts to Presences. The 'inner' map may contain
      * {@link Resourcepart#EMPTY} if there are no other Presences available.
@@ -202,6 +221,12 @@ public final class Roster extends Manager {
      */
     private boolean rosterLoadedAtLogin = rosterLoadedAtLoginDefault;
 
+    private volatile boolean keepFullPresences = keepFullPresencesDefault;
+
+    private volatile int bulkItemsPerRequest = defaultBulkItemsPerRequest;
+
+    private volatile int bulkMaxPendingRequests = defaultBulkMaxPendingRequests;
+
     private SubscriptionMode subscriptionMode = getDefaultSubscriptionMode();
 
     private final Set<SubscribeListener> subscribeListeners = new CopyOnWriteArraySet<>();
@@ -533,6 +558,31 @@ public final class Roster extends Manager {
         }
     }
 
+    /**
+     * Adds a batched listener to this roster. The listener will be invoked with the aggregated roster and presence
+     * changes of a batching window.
+     *
+     * @param batchedRosterListener a batched roster listener.
+     * @return true if the listener was not already added.
+     * @see #setBatchingWindow(int)
+     * @see #setBatchingQuietPeriod(int)
+     * @since 4.3
+     */
+    public boolean addBatchedRosterListener(BatchedRosterListener batchedRosterListener) {
+        return changeBatcher.addListener(batchedRosterListener);
+    }
+
+    /**
+     * Removes a batched listener from this roster.
+     *
+     * @param batchedRosterListener a batched roster listener.
+     * @return true if the listener was active and got removed.
+     * @since 4.3
+     */
+    public boolean removeBatchedRosterListener(BatchedRosterListener batchedRosterListener) {
+        return changeBatcher.removeListener(batchedRosterListener);
+    }
+
     /**
      * Add a roster loaded listener.
      *
@@ -678,6 +728,110 @@ public final class Roster extends Manager {
         return connection.hasFeature(SubscriptionPreApproval.ELEMENT, SubscriptionPreApproval.NAMESPACE);
     }
 
+    /**
+     * Creates new roster entries and presence subscriptions for all given items. Unlike
+     * {@link #createEntry(BareJid, String, String[])}, this method does not wait for the response of every roster set
+     * request before sending the next one, but keeps up to
+     * {@link #setBulkMaxPendingRequests(int) a number of requests} pending. This method returns once all requests
+     * have been answered or timed out, failures of single items are reported in the returned result.
+     *
+     * @param items the roster items describing the address, name and groups of the new entries.
+     * @return the result reporting the successfully created and the failed entries.
+     * @throws NotLoggedInException if not logged in.
+     * @throws InterruptedException
+     * @see #setBulkItemsPerRequest(int)
+     * @since 4.3
+     */
+    public RosterBulkResult createEntries(Collection<RosterPacket.Item> items) throws NotLoggedInException, InterruptedException {
+        RosterBulkResult result = sendRosterSets(new ArrayList<>(items));
+        for (BareJid jid : result.getSucceeded()) {
+            try {
+                sendSubscriptionRequest(jid);
+            }
+            catch (NotConnectedException e) {
+                result.failed(jid, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the given roster entries from the roster. The roster set requests are pipelined like the ones of
+     * {@link #createEntries(Collection)}. Entries which are not part of the roster are ignored.
+     *
+     * @param entries the roster entries to remove.
+     * @return the result reporting the successfully removed and the failed entries.
+     * @throws NotLoggedInException if not logged in.
+     * @throws InterruptedException
+     * @since 4.3
+     */
+    public RosterBulkResult removeEntries(Collection<RosterEntry> entries) throws NotLoggedInException, InterruptedException {
+        List<RosterPacket.Item> items = new ArrayList<>(entries.size());
+        for (RosterEntry entry : entries) {
+            if (!this.entries.containsKey(entry.getJid())) {
+                continue;
+            }
+            RosterPacket.Item item = RosterEntry.toRosterItem(entry);
+            item.setItemType(RosterPacket.ItemType.remove);
+            items.add(item);
+        }
+        return sendRosterSets(items);
+    }
+
+    /**
+     * Send roster set requests for the given items, with up to {@link #bulkItemsPerRequest} items per request, while
+     * keeping up to {@link #bulkMaxPendingRequests} requests pending.
+     *
+     * @param items the items to send.
+     * @return the result of the requests.
+     * @throws NotLoggedInException if not logged in.
+     * @throws InterruptedException
+     */
+    RosterBulkResult sendRosterSets(List<RosterPacket.Item> items) throws NotLoggedInException, InterruptedException {
+        final XMPPConnection connection = getAuthenticatedConnectionOrThrow();
+        final RosterBulkResult result = new RosterBulkResult();
+        final int itemsPerRequest = bulkItemsPerRequest;
+        final int requestCount = (items.size() + itemsPerRequest - 1) / itemsPerRequest;
+        final Semaphore pendingRequests = new Semaphore(bulkMaxPendingRequests);
+        final CountDownLatch completedRequests = new CountDownLatch(requestCount);
+        for (int i = 0; i < items.size(); i += itemsPerRequest) {
+            final List<RosterPacket.Item> requestItems = items.subList(i, Math.min(i + itemsPerRequest, items.size()));
+            RosterPacket rosterPacket = new RosterPacket();
+            rosterPacket.setType(IQ.Type.set);
+            for (RosterPacket.Item item : requestItems) {
+                rosterPacket.addRosterItem(item);
+            }
+            pendingRequests.acquire();
+            try {
+                connection.sendIqWithResponseCallback(rosterPacket, new StanzaListener() {
+                    @Override
+                    public void processStanza(Stanza packet) {
+                        result.succeeded(requestItems);
+                        pendingRequests.release();
+                        completedRequests.countDown();
+                    }
+                }, new ExceptionCallback() {
+                    @Override
+                    public void processException(Exception exception) {
+                        result.failed(requestItems, exception);
+                        pendingRequests.release();
+                        completedRequests.countDown();
+                    }
+                });
+            }
+            catch (NotConnectedException e) {
+                // Mark this and all following items as failed, and don't wait for requests which are never sent.
+                result.failed(items.subList(i, items.size()), e);
+                for (int j = i / itemsPerRequest; j < requestCount; j++) {
+                    completedRequests.countDown();
+                }
+                break;
+            }
+        }
+        completedRequests.await();
+        return result;
+    }
+
     public void sendSubscriptionRequest(BareJid jid) throws NotLoggedInException, NotConnectedException, InterruptedException {
         final XMPPConnection connection = getAuthenticatedConnectionOrThrow();
 
@@ -1137,6 +1291,64 @@ public final class Roster extends Manager {
         return entry.canSeeHisPresence();
     }
 
+    /**
+     * Sets if newly created instances of {@link Roster} keep the full presence stanzas received from the contacts.
+     * <p>
+     * By default, the roster only stores a compact copy of every presence, consisting of the type, mode, priority,
+     * status, 'from' address and the extension elements with a retained namespace. The presence listeners are always
+     * invoked with the full presence.
+     * </p>
+     *
+     * @param keepFullPresencesDefault if the full presence stanzas should be kept.
+     * @see #setKeepFullPresences(boolean)
+     * @see #addRetainedPresenceNamespace(String)
+     */
+    public static void setKeepFullPresencesDefault(boolean keepFullPresencesDefault) {
+        Roster.keepFullPresencesDefault = keepFullPresencesDefault;
+    }
+
+    /**
+     * Sets if this roster keeps the full presence stanzas received from the contacts. Only presences received after
+     * this setting got changed are affected.
+     *
+     * @param keepFullPresences if the full presence stanzas should be kept.
+     * @see #setKeepFullPresencesDefault(boolean)
+     */
+    public void setKeepFullPresences(boolean keepFullPresences) {
+        this.keepFullPresences = keepFullPresences;
+    }
+
+    /**
+     * Add a namespace of extension elements which are retained in the compact presences stored by all roster
+     * instances. Per default the extension elements of Entity Capabilities, vCard-Based Avatars, Last User Interaction
+     * in Presence and Delayed Delivery are retained.
+     *
+     * @param namespace the namespace of the extension elements to retain.
+     * @return true if the namespace was not retained before.
+     * @see #setKeepFullPresencesDefault(boolean)
+     */
+    public static boolean addRetainedPresenceNamespace(String namespace) {
+        return PresenceCompactor.addRetainedNamespace(namespace);
+    }
+
+    /**
+     * Remove a namespace of extension elements which are retained in the compact presences.
+     *
+     * @param namespace the namespace of the extension elements to no longer retain.
+     * @return true if the namespace was retained before.
+     * @see #addRetainedPresenceNamespace(String)
+     */
+    public static boolean removeRetainedPresenceNamespace(String namespace) {
+        return PresenceCompactor.removeRetainedNamespace(namespace);
+    }
+
+    private Presence toStoredPresence(Presence presence) {
+        if (keepFullPresences) {
+            return presence;
+        }
+        return PresenceCompactor.compact(presence);
+    }
+
     /**
      * Sets if the roster will be loaded from the server when logging in for newly created instances
      * of {@link Roster}.
@@ -1243,6 +1455,9 @@ public final class Roster extends Manager {
                 }
             }
         }
+        if (changeBatcher.hasListeners()) {
+            changeBatcher.entriesChanged(addedEntries, updatedEntries, deletedEntries);
+        }
     }
 
     /**
@@ -1256,6 +1471,9 @@ public final class Roster extends Manager {
                 listener.presenceChanged(presence);
             }
         }
+        if (changeBatcher.hasListeners()) {
+            changeBatcher.presenceChanged(presence);
+        }
     }
 
     private void addUpdateEntry(Collection<Jid> addedEntries, Collection<Jid> updatedEntries,
@@ -1475,7 +1693,7 @@ public final class Roster extends Manager {
                 // it since we now have an online presence.
                 userPresences.remove(Resourcepart.EMPTY);
                 // Add the new presence, using the resources as a key.
-                userPresences.put(fromResource, presence);
+                userPresences.put(fromResource, toStoredPresence(presence));
                 // If the user is in the roster, fire an event.
                 if (contains(key)) {
                     fireRosterPresenceEvent(presence);
@@ -1491,14 +1709,14 @@ public final class Roster extends Manager {
                 if (from.hasNoResource()) {
                     // Get the user presence map
                     userPresences = getOrCreatePresencesInternal(key);
-                    userPresences.put(Resourcepart.EMPTY, presence);
+                    userPresences.put(Resourcepart.EMPTY, toStoredPresence(presence));
                 }
                 // Otherwise, this is a normal offline presence.
                 else if (presenceMap.get(key) != null) {
                     userPresences = presenceMap.get(key);
                     // Store the offline presence, as it may include extra information
                     // such as the user being on vacation.
-                    userPresences.put(fromResource, presence);
+                    userPresences.put(fromResource, toStoredPresence(presence));
                 }
                 // If the user is in the roster, fire an event.
                 if (contains(key)) {
@@ -1732,6 +1950,109 @@ public final class Roster extends Manager {
         }
     }
 
+    /**
+     * Set the default number of items per roster set request of bulk operations of newly created rosters. The
+     * default is 1.
+     *
+     * @param itemsPerRequest the number of items per request.
+     * @see #setBulkItemsPerRequest(int)
+     * @since 4.3
+     */
+    public static void setDefaultBulkItemsPerRequest(int itemsPerRequest) {
+        defaultBulkItemsPerRequest = requirePositive(itemsPerRequest, "itemsPerRequest");
+    }
+
+    /**
+     * Set the number of items per roster set request of bulk operations like {@link #createEntries(Collection)}.
+     * <p>
+     * Note that RFC 6121 § 2.1.5 requires a roster set to contain exactly one item, and most services will reject
+     * requests with more items. Only increase this value if the service is known to accept them. If a request with
+     * multiple items fails, then all its items are reported as failed.
+     * </p>
+     *
+     * @param itemsPerRequest the number of items per request.
+     * @since 4.3
+     */
+    public void setBulkItemsPerRequest(int itemsPerRequest) {
+        bulkItemsPerRequest = requirePositive(itemsPerRequest, "itemsPerRequest");
+    }
+
+    /**
+     * Set the default maximum number of pending roster set requests of bulk operations of newly created rosters. The
+     * default is 50.
+     *
+     * @param maxPendingRequests the maximum number of pending requests.
+     * @see #setBulkMaxPendingRequests(int)
+     * @since 4.3
+     */
+    public static void setDefaultBulkMaxPendingRequests(int maxPendingRequests) {
+        defaultBulkMaxPendingRequests = requirePositive(maxPendingRequests, "maxPendingRequests");
+    }
+
+    /**
+     * Set the maximum number of roster set requests of bulk operations which have been sent but not yet been
+     * answered.
+     *
+     * @param maxPendingRequests the maximum number of pending requests.
+     * @since 4.3
+     */
+    public void setBulkMaxPendingRequests(int maxPendingRequests) {
+        bulkMaxPendingRequests = requirePositive(maxPendingRequests, "maxPendingRequests");
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive");
+        }
+        return value;
+    }
+
+    /**
+     * Set the default batching window, in milliseconds, of newly created rosters. The default is
+     * {@value #INITIAL_DEFAULT_BATCHING_WINDOW}.
+     *
+     * @param window the maximum batching window in milliseconds.
+     * @see #setBatchingWindow(int)
+     * @since 4.3
+     */
+    public static void setDefaultBatchingWindow(int window) {
+        defaultBatchingWindow = requirePositive(window, "window");
+    }
+
+    /**
+     * Set the maximum time in milliseconds changes are collected before they are delivered to the
+     * {@link BatchedRosterListener}s, measured from the first change of a batch.
+     *
+     * @param window the maximum batching window in milliseconds.
+     * @since 4.3
+     */
+    public void setBatchingWindow(int window) {
+        changeBatcher.setWindow(window);
+    }
+
+    /**
+     * Set the default batching quiet period, in milliseconds, of newly created rosters. The default is
+     * {@value #INITIAL_DEFAULT_BATCHING_QUIET_PERIOD}.
+     *
+     * @param quietPeriod the quiet period in milliseconds.
+     * @see #setBatchingQuietPeriod(int)
+     * @since 4.3
+     */
+    public static void setDefaultBatchingQuietPeriod(int quietPeriod) {
+        defaultBatchingQuietPeriod = requirePositive(quietPeriod, "quietPeriod");
+    }
+
+    /**
+     * Set the time in milliseconds without further changes after which the collected changes are delivered to the
+     * {@link BatchedRosterListener}s, i.e. the time after which a presence flood is considered settled.
+     *
+     * @param quietPeriod the quiet period in milliseconds.
+     * @since 4.3
+     */
+    public void setBatchingQuietPeriod(int quietPeriod) {
+        changeBatcher.setQuietPeriod(quietPeriod);
+    }
+
     /**
      * Set the default maximum size of the non-Roster presence map.
      * <p>
@@ -0,0 +1,99 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jivesoftware.smack.roster.packet.RosterPacket;
+import org.jxmpp.jid.BareJid;
+
+/**
+ * The result of a bulk roster operation, like {@link Roster#createEntries(Collection)}, reporting which items were
+ * processed successfully and why the others failed.
+ * <p>
+ * The roster set requests of a bulk operation are pipelined, hence the order of the successfully processed items may
+ * differ from the order of the items of the operation.
+ * </p>
+ */
+public final class RosterBulkResult {
+
+    private final Set<BareJid> succeeded = new LinkedHashSet<>();
+
+    private final Map<BareJid, Exception> failures = new LinkedHashMap<>();
+
+    RosterBulkResult() {
+    }
+
+    synchronized void succeeded(Collection<RosterPacket.Item> items) {
+        for (RosterPacket.Item item : items) {
+            succeeded.add(item.getJid());
+        }
+    }
+
+    synchronized void failed(Collection<RosterPacket.Item> items, Exception exception) {
+        for (RosterPacket.Item item : items) {
+            failed(item.getJid(), exception);
+        }
+    }
+
+    synchronized void failed(BareJid jid, Exception exception) {
+        succeeded.remove(jid);
+        failures.put(jid, exception);
+    }
+
+    /**
+     * Get the XMPP addresses of the items which were processed successfully.
+     *
+     * @return the addresses of the successfully processed items.
+     */
+    public synchronized List<BareJid> getSucceeded() {
+        return Collections.unmodifiableList(new ArrayList<>(succeeded));
+    }
+
+    /**
+     * Get the failed items together with the reason of the failure. The reason is usually a
+     * {@link org.jivesoftware.smack.XMPPException.XMPPErrorException}, a
+     * {@link org.jivesoftware.smack.SmackException.NoResponseException} or a
+     * {@link org.jivesoftware.smack.SmackException.NotConnectedException}.
+     *
+     * @return a map from the addresses of the failed items to the reason of their failure.
+     */
+    public synchronized Map<BareJid, Exception> getFailures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    /**
+     * Check if all items were processed successfully.
+     *
+     * @return true if no item failed.
+     */
+    public synchronized boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RosterBulkResult(succeeded=" + succeeded.size() + ", failed=" + failures.size() + ')';
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.util.SmackExecutorThreadFactory;
+import org.jxmpp.jid.Jid;
+
+/**
+ * Collects roster and presence changes and delivers them as {@link RosterChangeSet} to the
+ * {@link BatchedRosterListener}s of a roster.
+ */
+final class RosterChangeBatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(RosterChangeBatcher.class.getName());
+
+    /**
+     * The scheduler shared by all batchers. Since it is single threaded, change sets are delivered one after another.
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+                    new SmackExecutorThreadFactory("Roster Change Batcher"));
+
+    private enum EntryChange {
+        added,
+        updated,
+        deleted,
+    }
+
+    private final Set<BatchedRosterListener> listeners = new CopyOnWriteArraySet<>();
+
+    private final Map<Jid, EntryChange> entryChanges = new LinkedHashMap<>();
+
+    private final Map<Jid, Presence> presences = new LinkedHashMap<>();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushIfDue();
+        }
+    };
+
+    private volatile int window;
+
+    private volatile int quietPeriod;
+
+    /**
+     * The System.nanoTime() of the first change of the current batch.
+     */
+    private long firstChange;
+
+    /**
+     * The System.nanoTime() of the last change of the current batch.
+     */
+    private long lastChange;
+
+    private boolean flushScheduled;
+
+    RosterChangeBatcher(int window, int quietPeriod) {
+        setWindow(window);
+        setQuietPeriod(quietPeriod);
+    }
+
+    void setWindow(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("The batching window must be positive");
+        }
+        this.window = window;
+    }
+
+    void setQuietPeriod(int quietPeriod) {
+        if (quietPeriod <= 0) {
+            throw new IllegalArgumentException("The batching quiet period must be positive");
+        }
+        this.quietPeriod = quietPeriod;
+    }
+
+    boolean addListener(BatchedRosterListener listener) {
+        return listeners.add(listener);
+    }
+
+    boolean removeListener(BatchedRosterListener listener) {
+        return listeners.remove(listener);
+    }
+
+    boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    synchronized void entriesChanged(Collection<Jid> addedEntries, Collection<Jid> updatedEntries,
+                    Collection<Jid> deletedEntries) {
+        for (Jid jid : addedEntries) {
+            EntryChange previous = entryChanges.get(jid);
+            if (previous == null) {
+                entryChanges.put(jid, EntryChange.added);
+            } else if (previous == EntryChange.deleted) {
+                entryChanges.put(jid, EntryChange.updated);
+            }
+        }
+        for (Jid jid : updatedEntries) {
+            EntryChange previous = entryChanges.get(jid);
+            if (previous != EntryChange.added) {
+                entryChanges.put(jid, EntryChange.updated);
+            }
+        }
+        for (Jid jid : deletedEntries) {
+            EntryChange previous = entryChanges.get(jid);
+            if (previous == EntryChange.added) {
+                entryChanges.remove(jid);
+            } else {
+                entryChanges.put(jid, EntryChange.deleted);
+            }
+        }
+        changed();
+    }
+
+    synchronized void presenceChanged(Presence presence) {
+        Jid from = presence.getFrom();
+        // Remove the previous presence first, so that the order reflects the latest change.
+        presences.remove(from);
+        presences.put(from, presence);
+        changed();
+    }
+
+    private void changed() {
+        lastChange = System.nanoTime();
+        if (flushScheduled) {
+            return;
+        }
+        firstChange = lastChange;
+        flushScheduled = true;
+        SCHEDULER.schedule(flushTask, Math.min(quietPeriod, window), TimeUnit.MILLISECONDS);
+    }
+
+    private void flushIfDue() {
+        RosterChangeSet changeSet;
+        synchronized (this) {
+            long due = Math.min(firstChange + TimeUnit.MILLISECONDS.toNanos(window),
+                            lastChange + TimeUnit.MILLISECONDS.toNanos(quietPeriod));
+            long remaining = due - System.nanoTime();
+            if (remaining > 0) {
+                SCHEDULER.schedule(flushTask, remaining, TimeUnit.NANOSECONDS);
+                return;
+            }
+            changeSet = createChangeSet();
+            entryChanges.clear();
+            presences.clear();
+            flushScheduled = false;
+        }
+        if (changeSet.isEmpty()) {
+            return;
+        }
+        for (BatchedRosterListener listener : listeners) {
+            try {
+                listener.rosterChanged(changeSet);
+            }
+            catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Batched roster listener threw exception", e);
+            }
+        }
+    }
+
+    private RosterChangeSet createChangeSet() {
+        Set<Jid> added = new LinkedHashSet<>();
+        Set<Jid> updated = new LinkedHashSet<>();
+        Set<Jid> deleted = new LinkedHashSet<>();
+        for (Map.Entry<Jid, EntryChange> entry : entryChanges.entrySet()) {
+            switch (entry.getValue()) {
+            case added:
+                added.add(entry.getKey());
+                break;
+            case updated:
+                updated.add(entry.getKey());
+                break;
+            case deleted:
+                deleted.add(entry.getKey());
+                break;
+            }
+        }
+        return new RosterChangeSet(Collections.unmodifiableSet(added), Collections.unmodifiableSet(updated),
+                        Collections.unmodifiableSet(deleted),
+                        Collections.unmodifiableCollection(new ArrayList<>(presences.values())));
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster;
+
+import java.util.Collection;
+import java.util.Set;
+
+import org.jivesoftware.smack.packet.Presence;
+import org.jxmpp.jid.Jid;
+
+/**
+ * The aggregated changes of the roster and the presences of the roster entries delivered to a
+ * {@link BatchedRosterListener}.
+ * <p>
+ * Multiple changes of the same roster entry are coalesced: an entry which was added and subsequently updated is only
+ * reported as added, an entry which was added and deleted within the same batch is not reported at all, and an entry
+ * which was deleted and added again is reported as updated. Of the presences, only the last one received from every
+ * address is reported.
+ * </p>
+ */
+public final class RosterChangeSet {
+
+    private final Set<Jid> addedEntries;
+    private final Set<Jid> updatedEntries;
+    private final Set<Jid> deletedEntries;
+    private final Collection<Presence> presences;
+
+    RosterChangeSet(Set<Jid> addedEntries, Set<Jid> updatedEntries, Set<Jid> deletedEntries,
+                    Collection<Presence> presences) {
+        this.addedEntries = addedEntries;
+        this.updatedEntries = updatedEntries;
+        this.deletedEntries = deletedEntries;
+        this.presences = presences;
+    }
+
+    /**
+     * Get the XMPP addresses of the contacts that have been added to the roster.
+     *
+     * @return the addresses of the added contacts.
+     */
+    public Set<Jid> getAddedEntries() {
+        return addedEntries;
+    }
+
+    /**
+     * Get the XMPP addresses of the contacts whose entries have been updated.
+     *
+     * @return the addresses of the updated contacts.
+     */
+    public Set<Jid> getUpdatedEntries() {
+        return updatedEntries;
+    }
+
+    /**
+     * Get the XMPP addresses of the contacts that have been removed from the roster.
+     *
+     * @return the addresses of the deleted contacts.
+     */
+    public Set<Jid> getDeletedEntries() {
+        return deletedEntries;
+    }
+
+    /**
+     * Get the latest presence of every address of a roster entry whose presence changed, in the order the addresses
+     * last changed their presence.
+     *
+     * @return the changed presences.
+     * @see RosterListener#presenceChanged(Presence)
+     */
+    public Collection<Presence> getPresences() {
+        return presences;
+    }
+
+    /**
+     * Check if this change set contains no changes.
+     *
+     * @return true if there are no changes.
+     */
+    public boolean isEmpty() {
+        return addedEntries.isEmpty() && updatedEntries.isEmpty() && deletedEntries.isEmpty() && presences.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "RosterChangeSet(added=" + addedEntries.size() + ", updated=" + updatedEntries.size() + ", deleted="
+                        + deletedEntries.size() + ", presences=" + presences.size() + ')';
+    }
+}
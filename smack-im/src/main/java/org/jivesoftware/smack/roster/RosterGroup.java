@@ -18,6 +18,7 @@
 package org.jivesoftware.smack.roster;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -26,6 +27,7 @@ import org.jivesoftware.smack.Manager;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.SmackException.NoResponseException;
 import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.SmackException.NotLoggedInException;
 import org.jivesoftware.smack.XMPPException.XMPPErrorException;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.roster.packet.RosterPacket;
@@ -184,6 +186,31 @@ public class RosterGroup extends Manager {
         }
     }
 
+    /**
+     * Adds multiple roster entries to this group. The roster set requests are pipelined like the ones of
+     * {@link Roster#createEntries(Collection)}. Entries which are already part of this group are ignored.
+     *
+     * @param entries the roster entries to add.
+     * @return the result reporting the successfully added and the failed entries.
+     * @throws NotLoggedInException if not logged in.
+     * @throws InterruptedException
+     * @since 4.3
+     */
+    public RosterBulkResult addEntries(Collection<RosterEntry> entries) throws NotLoggedInException, InterruptedException {
+        List<RosterPacket.Item> items = new ArrayList<>(entries.size());
+        synchronized (this.entries) {
+            for (RosterEntry entry : entries) {
+                if (this.entries.contains(entry)) {
+                    continue;
+                }
+                RosterPacket.Item item = RosterEntry.toRosterItem(entry);
+                item.addGroupName(getName());
+                items.add(item);
+            }
+        }
+        return Roster.getInstanceFor(connection()).sendRosterSets(items);
+    }
+
     /**
      * Removes a roster entry from this group. If the entry does not belong to any other group 
      * then it will be considered as unfiled, therefore it will be added to the list of unfiled 
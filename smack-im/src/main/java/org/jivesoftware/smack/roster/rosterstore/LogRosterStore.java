@@ -0,0 +1,522 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster.rosterstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.jivesoftware.smack.roster.packet.RosterPacket.Item;
+import org.jivesoftware.smack.roster.packet.RosterPacket.ItemType;
+import org.jivesoftware.smack.util.StringUtils;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+/**
+ * Stores roster entries as specified by RFC 6121 for roster versioning in a single append-only log file.
+ * <p>
+ * Every roster push results in a single record appended to the log, and all entries are kept in memory, so updates
+ * and lookups are O(1), and a cold start only has to read one file sequentially. Records are binary encoded and
+ * protected by a CRC-32 checksum. A trailing record which was only partially written, e.g. because the process got
+ * killed, is discarded when the store is opened. Once the log contains more superseded than live records, it is
+ * compacted by writing a snapshot of the current entries into a new file, which then replaces the log. Compared to
+ * {@link DirectoryRosterStore}, this store scales to rosters with tens of thousands of entries.
+ * </p>
+ */
+public final class LogRosterStore implements RosterStore {
+
+    private static final Logger LOGGER = Logger.getLogger(LogRosterStore.class.getName());
+
+    private static final int MAGIC = 0x534d524c;
+    private static final byte FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 5;
+
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final byte RECORD_VERSION = 3;
+
+    // The persisted codes of the item types, which must not depend on the declaration order of ItemType.
+    private static final byte ITEM_TYPE_NONE = 0;
+    private static final byte ITEM_TYPE_TO = 1;
+    private static final byte ITEM_TYPE_FROM = 2;
+    private static final byte ITEM_TYPE_BOTH = 3;
+    private static final byte ITEM_TYPE_REMOVE = 4;
+
+    /**
+     * The minimum number of superseded records before the log is compacted.
+     */
+    private static final int MIN_COMPACTION_THRESHOLD = 1000;
+
+    private final File file;
+
+    private final Map<BareJid, Item> entries = new LinkedHashMap<>();
+
+    private String version = "";
+
+    /**
+     * The number of records in the log which have been superseded by later records.
+     */
+    private int supersededRecords;
+
+    private DataOutputStream out;
+
+    private LogRosterStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates a new roster store on disk. An already existing file is overwritten.
+     *
+     * @param file the file to create the store in.
+     * @return A {@link LogRosterStore} instance if successful, <code>null</code> else.
+     */
+    public static LogRosterStore init(File file) {
+        LogRosterStore store = new LogRosterStore(file);
+        if (store.compact()) {
+            return store;
+        }
+        return null;
+    }
+
+    /**
+     * Opens a roster store.
+     *
+     * @param file the file containing the roster store.
+     * @return A {@link LogRosterStore} instance if successful, <code>null</code> else.
+     */
+    public static LogRosterStore open(File file) {
+        LogRosterStore store = new LogRosterStore(file);
+        if (store.load()) {
+            return store;
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized List<Item> getEntries() {
+        List<Item> items = new ArrayList<>(entries.size());
+        for (Item item : entries.values()) {
+            items.add(copy(item));
+        }
+        return items;
+    }
+
+    @Override
+    public synchronized Item getEntry(Jid bareJid) {
+        Item item = entries.get(bareJid.asBareJid());
+        if (item == null) {
+            return null;
+        }
+        return copy(item);
+    }
+
+    @Override
+    public synchronized String getRosterVersion() {
+        return version;
+    }
+
+    @Override
+    public synchronized boolean addEntry(Item item, String version) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(record);
+        try {
+            data.writeByte(RECORD_ADD);
+            writeString(data, version);
+            writeItem(data, item);
+        }
+        catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        if (!append(record.toByteArray())) {
+            return false;
+        }
+        if (entries.put(item.getJid(), copy(item)) != null) {
+            supersededRecords++;
+        }
+        this.version = version;
+        maybeCompact();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeEntry(Jid bareJid, String version) {
+        BareJid jid = bareJid.asBareJid();
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(record);
+        try {
+            data.writeByte(RECORD_REMOVE);
+            writeString(data, version);
+            writeString(data, jid.toString());
+        }
+        catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        if (!append(record.toByteArray())) {
+            return false;
+        }
+        if (entries.remove(jid) != null) {
+            // Both, the record adding the entry and the record removing it, are superseded.
+            supersededRecords += 2;
+        } else {
+            supersededRecords++;
+        }
+        this.version = version;
+        maybeCompact();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean resetEntries(Collection<Item> items, String version) {
+        entries.clear();
+        for (Item item : items) {
+            entries.put(item.getJid(), copy(item));
+        }
+        this.version = version;
+        return compact();
+    }
+
+    @Override
+    public void resetStore() {
+        resetEntries(Collections.<Item>emptyList(), "");
+    }
+
+    /**
+     * Close the log file. The store must not be used afterwards.
+     */
+    public synchronized void close() {
+        closeOutputStream();
+    }
+
+    private boolean load() {
+        long validLength = HEADER_LENGTH;
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+        catch (FileNotFoundException e) {
+            LOGGER.log(Level.FINE, "Roster log file not found", e);
+            return false;
+        }
+        int records = 0;
+        try {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                LOGGER.warning("Not a roster log file or unsupported format: " + file);
+                return false;
+            }
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                }
+                catch (EOFException e) {
+                    break;
+                }
+                byte[] record;
+                try {
+                    long checksum = in.readInt() & 0xffffffffL;
+                    if (length <= 0 || length > file.length()) {
+                        throw new IOException("Invalid record length " + length);
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                    crc.reset();
+                    crc.update(record);
+                    if (crc.getValue() != checksum) {
+                        throw new IOException("Checksum mismatch");
+                    }
+                }
+                catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Discarding incomplete or corrupt trailing record of roster log " + file,
+                                    e);
+                    break;
+                }
+                replay(record);
+                records++;
+                validLength += 8 + length;
+            }
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Exception while reading roster log " + file, e);
+            return false;
+        }
+        finally {
+            try {
+                in.close();
+            }
+            catch (IOException e) {
+                LOGGER.log(Level.FINE, "Exception while closing roster log", e);
+            }
+        }
+
+        supersededRecords = records - entries.size();
+        if (validLength != file.length()) {
+            try {
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                try {
+                    randomAccessFile.setLength(validLength);
+                }
+                finally {
+                    randomAccessFile.close();
+                }
+            }
+            catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not truncate roster log " + file, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void replay(byte[] record) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = data.readByte();
+        String recordVersion = readString(data);
+        switch (type) {
+        case RECORD_ADD:
+            Item item = readItem(data);
+            entries.put(item.getJid(), item);
+            break;
+        case RECORD_REMOVE:
+            entries.remove(readJid(data));
+            break;
+        case RECORD_VERSION:
+            break;
+        default:
+            throw new IOException("Unknown record type " + type);
+        }
+        version = recordVersion;
+    }
+
+    private boolean append(byte[] record) {
+        try {
+            if (out == null) {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            }
+            writeRecord(out, record);
+            out.flush();
+            return true;
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Exception while appending to roster log " + file, e);
+            closeOutputStream();
+            return false;
+        }
+    }
+
+    private void maybeCompact() {
+        if (supersededRecords > Math.max(MIN_COMPACTION_THRESHOLD, entries.size())) {
+            compact();
+        }
+    }
+
+    /**
+     * Write the current entries and version into a new log file, which then replaces the current log file.
+     *
+     * @return true if successful.
+     */
+    private boolean compact() {
+        closeOutputStream();
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                tmpOut.writeInt(MAGIC);
+                tmpOut.writeByte(FORMAT_VERSION);
+                for (Item item : entries.values()) {
+                    ByteArrayOutputStream record = new ByteArrayOutputStream();
+                    DataOutputStream data = new DataOutputStream(record);
+                    data.writeByte(RECORD_ADD);
+                    writeString(data, version);
+                    writeItem(data, item);
+                    writeRecord(tmpOut, record.toByteArray());
+                }
+                ByteArrayOutputStream record = new ByteArrayOutputStream();
+                DataOutputStream data = new DataOutputStream(record);
+                data.writeByte(RECORD_VERSION);
+                writeString(data, version);
+                writeRecord(tmpOut, record.toByteArray());
+            }
+            finally {
+                tmpOut.close();
+            }
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Exception while writing roster log " + tmpFile, e);
+            return false;
+        }
+        if (!tmpFile.renameTo(file)) {
+            // On some platforms renameTo() fails if the destination already exists.
+            if (!file.delete() || !tmpFile.renameTo(file)) {
+                LOGGER.severe("Could not replace roster log " + file + " with " + tmpFile);
+                return false;
+            }
+        }
+        supersededRecords = 0;
+        return true;
+    }
+
+    private void closeOutputStream() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.FINE, "Exception while closing roster log", e);
+        }
+        out = null;
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        out.writeInt(record.length);
+        out.writeInt((int) crc.getValue());
+        out.write(record);
+    }
+
+    private static void writeItem(DataOutputStream data, Item item) throws IOException {
+        writeString(data, item.getJid().toString());
+        writeString(data, item.getName());
+        data.writeByte(toCode(item.getItemType()));
+        data.writeBoolean(item.isSubscriptionPending());
+        data.writeBoolean(item.isApproved());
+        Collection<String> groupNames = item.getGroupNames();
+        data.writeInt(groupNames.size());
+        for (String groupName : groupNames) {
+            writeString(data, groupName);
+        }
+    }
+
+    private static Item readItem(DataInputStream data) throws IOException {
+        BareJid jid = readJid(data);
+        String name = readString(data);
+        Item item = new Item(jid, name);
+        item.setItemType(fromCode(data.readByte()));
+        item.setSubscriptionPending(data.readBoolean());
+        item.setApproved(data.readBoolean());
+        int groupCount = data.readInt();
+        for (int i = 0; i < groupCount; i++) {
+            item.addGroupName(readString(data));
+        }
+        return item;
+    }
+
+    private static byte toCode(ItemType itemType) {
+        switch (itemType) {
+        case none:
+            return ITEM_TYPE_NONE;
+        case to:
+            return ITEM_TYPE_TO;
+        case from:
+            return ITEM_TYPE_FROM;
+        case both:
+            return ITEM_TYPE_BOTH;
+        case remove:
+            return ITEM_TYPE_REMOVE;
+        default:
+            throw new AssertionError("Unknown item type " + itemType);
+        }
+    }
+
+    private static ItemType fromCode(byte code) throws IOException {
+        switch (code) {
+        case ITEM_TYPE_NONE:
+            return ItemType.none;
+        case ITEM_TYPE_TO:
+            return ItemType.to;
+        case ITEM_TYPE_FROM:
+            return ItemType.from;
+        case ITEM_TYPE_BOTH:
+            return ItemType.both;
+        case ITEM_TYPE_REMOVE:
+            return ItemType.remove;
+        default:
+            throw new IOException("Invalid item type " + code);
+        }
+    }
+
+    private static BareJid readJid(DataInputStream data) throws IOException {
+        String jid = readString(data);
+        try {
+            return JidCreate.bareFrom(jid);
+        }
+        catch (XmppStringprepException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Write the given, possibly <code>null</code>, String. Unlike {@link DataOutputStream#writeUTF(String)}, the
+     * length of the String is not limited.
+     */
+    private static void writeString(DataOutputStream data, String string) throws IOException {
+        if (string == null) {
+            data.writeInt(-1);
+            return;
+        }
+        byte[] bytes = StringUtils.toBytes(string);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > data.available()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, StringUtils.UTF8);
+    }
+
+    private static Item copy(Item item) {
+        Item copy = new Item(item.getJid(), item.getName(), item.isSubscriptionPending());
+        copy.setItemType(item.getItemType());
+        copy.setApproved(item.isApproved());
+        for (String groupName : item.getGroupNames()) {
+            copy.addGroupName(groupName);
+        }
+        return copy;
+    }
+}
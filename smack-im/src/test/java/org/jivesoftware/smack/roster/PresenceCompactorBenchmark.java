@@ -0,0 +1,78 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.test.util.BenchmarkUtils;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Measures the heap occupied by the presences of a large roster, once stored as received and once stored as compact
+ * presences.
+ */
+public class PresenceCompactorBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(PresenceCompactorBenchmark.class.getName());
+
+    private static final int PRESENCE_COUNT = 20000;
+
+    private static final String[] STATUS = new String[] { "Available", "In a meeting", "Working from home", "Busy" };
+
+    @BeforeClass
+    public static void assumeBenchmarksEnabled() {
+        BenchmarkUtils.assumeBenchmarksEnabled();
+    }
+
+    @Test
+    public void benchmarkPresenceMemory() throws Exception {
+        long full = measure(false);
+        long compact = measure(true);
+        LOGGER.info(String.format(Locale.US, "%d presences: full %d KiB (%d bytes each), compact %d KiB (%d bytes each)",
+                        PRESENCE_COUNT, full / 1024, full / PRESENCE_COUNT, compact / 1024, compact / PRESENCE_COUNT));
+    }
+
+    private static long measure(boolean compact) throws Exception {
+        List<Presence> presences = new ArrayList<>(PRESENCE_COUNT);
+        long before = usedMemory();
+        for (int i = 0; i < PRESENCE_COUNT; i++) {
+            Presence presence = PacketParserUtils.parseStanza(
+                            PresenceCompactorTest.createPresence(i, STATUS[i % STATUS.length]));
+            presences.add(compact ? PresenceCompactor.compact(presence) : presence);
+        }
+        long after = usedMemory();
+        assertEquals(PRESENCE_COUNT, presences.size());
+        return after - before;
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
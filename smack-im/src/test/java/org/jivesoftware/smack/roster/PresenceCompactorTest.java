@@ -0,0 +1,96 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.junit.Test;
+
+public class PresenceCompactorTest {
+
+    static String createPresence(int i, String status) {
+        return "<presence from='contact" + i + "@example.org/phone' to='user@example.org/desktop' id='presence-" + i
+                        + "' xml:lang='en'>"
+                        + "<show>away</show><status>" + status + "</status><priority>5</priority>"
+                        + "<c xmlns='http://jabber.org/protocol/caps' hash='sha-1' node='https://example.org/client'"
+                        + " ver='QgayPKawpkPSDYmwT/WM94uAlu0='/>"
+                        + "<x xmlns='vcard-temp:x:update'><photo>01b87fcd030b72895ff8e88db57ec525450f000d</photo></x>"
+                        + "<nick xmlns='http://jabber.org/protocol/nick'>Contact " + i + "</nick>"
+                        + "<x xmlns='jabber:x:signed'>iQEcBAABAgAGBQJYXr8LAAoJEMZ5SvcbJ1pJ3Y0H/3dFnBlJSF</x>"
+                        + "</presence>";
+    }
+
+    @Test
+    public void shouldKeepRelevantState() throws Exception {
+        Presence presence = PacketParserUtils.parseStanza(createPresence(1, "In a meeting"));
+        Presence compact = PresenceCompactor.compact(presence);
+
+        assertEquals(Presence.Type.available, compact.getType());
+        assertEquals(Presence.Mode.away, compact.getMode());
+        assertEquals(5, compact.getPriority());
+        assertEquals("In a meeting", compact.getStatus());
+        assertEquals(presence.getFrom(), compact.getFrom());
+        assertNotNull(compact.getExtension("c", "http://jabber.org/protocol/caps"));
+        assertNotNull(compact.getExtension("x", "vcard-temp:x:update"));
+    }
+
+    @Test
+    public void shouldDropUnretainedState() throws Exception {
+        Presence compact = PresenceCompactor.compact(PacketParserUtils.<Presence>parseStanza(createPresence(1, "Busy")));
+
+        assertNull(compact.getStanzaId());
+        assertNull(compact.getTo());
+        assertNull(compact.getLanguage());
+        assertNull(compact.getExtension("nick", "http://jabber.org/protocol/nick"));
+        assertNull(compact.getExtension("x", "jabber:x:signed"));
+        assertEquals(2, compact.getExtensions().size());
+    }
+
+    @Test
+    public void shouldRetainAddedNamespaces() throws Exception {
+        String namespace = "http://jabber.org/protocol/nick";
+        assertTrue(Roster.addRetainedPresenceNamespace(namespace));
+        try {
+            Presence compact = PresenceCompactor.compact(PacketParserUtils.<Presence>parseStanza(createPresence(1, "Busy")));
+            assertNotNull(compact.getExtension("nick", namespace));
+        }
+        finally {
+            assertTrue(Roster.removeRetainedPresenceNamespace(namespace));
+        }
+    }
+
+    @Test
+    public void shouldInternStatus() throws Exception {
+        Presence first = PresenceCompactor.compact(PacketParserUtils.<Presence>parseStanza(createPresence(1, "Lunch")));
+        Presence second = PresenceCompactor.compact(PacketParserUtils.<Presence>parseStanza(createPresence(2, "Lunch")));
+        assertSame(first.getStatus(), second.getStatus());
+    }
+
+    @Test
+    public void shouldNotSetUnsetPriorityAndMode() {
+        Presence presence = new Presence(Presence.Type.unavailable);
+        Presence compact = PresenceCompactor.compact(presence);
+        assertEquals(Integer.MIN_VALUE, compact.getPriority());
+        assertEquals(presence.toXML().toString().replaceFirst(" id='[^']*'", ""), compact.toXML().toString());
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.DummyConnection;
+import org.jivesoftware.smack.im.InitSmackIm;
+import org.jivesoftware.smack.roster.packet.RosterPacket.Item;
+import org.jivesoftware.smack.test.util.BenchmarkUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compares the throughput of creating roster entries one by one with {@link Roster#createEntry(org.jxmpp.jid.BareJid,
+ * String, String[])} and in bulk with {@link Roster#createEntries(java.util.Collection)}, against a stand-in server
+ * with a simulated round trip time.
+ */
+public class RosterBulkOperationsBenchmark extends InitSmackIm {
+
+    private static final Logger LOGGER = Logger.getLogger(RosterBulkOperationsBenchmark.class.getName());
+
+    private static final int ITEM_COUNT = 500;
+
+    private static final long ROUND_TRIP_MILLIS = 5;
+
+    @BeforeClass
+    public static void assumeBenchmarksEnabled() {
+        BenchmarkUtils.assumeBenchmarksEnabled();
+    }
+
+    @Test
+    public void benchmarkCreateEntries() throws Exception {
+        List<Item> items = RosterBulkOperationsTest.createItems(ITEM_COUNT);
+
+        long sequential = run(items, false);
+        long bulk = run(items, true);
+
+        LOGGER.info(String.format(Locale.US,
+                        "%d entries with %d ms round trip time: sequential %d ms (%.0f entries/s), bulk %d ms (%.0f entries/s)",
+                        ITEM_COUNT, ROUND_TRIP_MILLIS, sequential, ITEM_COUNT * 1000d / sequential, bulk,
+                        ITEM_COUNT * 1000d / bulk));
+    }
+
+    private static long run(List<Item> items, boolean bulk) throws Exception {
+        DummyConnection connection = new DummyConnection();
+        connection.connect();
+        connection.login();
+        RosterSetResponder responder = new RosterSetResponder(connection, ROUND_TRIP_MILLIS);
+        responder.start();
+        try {
+            Roster roster = Roster.getInstanceFor(connection);
+            long start = System.nanoTime();
+            if (bulk) {
+                assertTrue(roster.createEntries(items).isSuccess());
+            } else {
+                for (Item item : items) {
+                    roster.createEntry(item.getJid(), item.getName(), new String[] { "Provisioned" });
+                }
+            }
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals(items.size(), responder.getRequestCount());
+            return duration;
+        }
+        finally {
+            responder.shutdown();
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.jivesoftware.smack.DummyConnection;
+import org.jivesoftware.smack.XMPPException.XMPPErrorException;
+import org.jivesoftware.smack.im.InitSmackIm;
+import org.jivesoftware.smack.packet.XMPPError.Condition;
+import org.jivesoftware.smack.roster.packet.RosterPacket.Item;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.impl.JidCreate;
+
+public class RosterBulkOperationsTest extends InitSmackIm {
+
+    private DummyConnection connection;
+    private Roster roster;
+    private RosterSetResponder responder;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = new DummyConnection();
+        connection.connect();
+        connection.login();
+        roster = Roster.getInstanceFor(connection);
+    }
+
+    @After
+    public void tearDown() {
+        if (responder != null) {
+            responder.shutdown();
+        }
+        connection.disconnect();
+    }
+
+    static List<Item> createItems(int count) throws Exception {
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Item item = new Item(JidCreate.entityBareFrom("contact" + i + "@example.org"), "Contact " + i);
+            item.addGroupName("Provisioned");
+            items.add(item);
+        }
+        return items;
+    }
+
+    @Test
+    public void shouldPipelineAndReportFailures() throws Exception {
+        List<Item> items = createItems(20);
+        BareJid failing = items.get(7).getJid();
+        responder = new RosterSetResponder(connection, 100, Collections.singleton(failing));
+        responder.start();
+
+        RosterBulkResult result = roster.createEntries(items);
+
+        assertEquals(20, responder.getRequestCount());
+        assertTrue(responder.getMaxPendingRequests() > 1);
+        assertEquals(19, result.getSucceeded().size());
+        assertEquals(Collections.singleton(failing), result.getFailures().keySet());
+        XMPPErrorException exception = (XMPPErrorException) result.getFailures().get(failing);
+        assertEquals(Condition.not_acceptable, exception.getXMPPError().getCondition());
+        // Roster pushes are processed asynchronously.
+        waitForEntryCount(19);
+        assertNotNull(roster.getEntry(items.get(0).getJid()));
+        assertEquals(19, roster.getGroup("Provisioned").getEntryCount());
+    }
+
+    @Test
+    public void shouldBoundPendingRequestsAndPackItems() throws Exception {
+        roster.setBulkMaxPendingRequests(2);
+        roster.setBulkItemsPerRequest(3);
+        responder = new RosterSetResponder(connection, 20);
+        responder.start();
+
+        RosterBulkResult result = roster.createEntries(createItems(10));
+
+        assertTrue(result.isSuccess());
+        assertEquals(10, result.getSucceeded().size());
+        assertEquals(4, responder.getRequestCount());
+        assertTrue(responder.getMaxPendingRequests() <= 2);
+    }
+
+    @Test
+    public void shouldRemoveEntries() throws Exception {
+        responder = new RosterSetResponder(connection, 0);
+        responder.start();
+        roster.createEntries(createItems(5));
+        waitForEntryCount(5);
+
+        RosterBulkResult result = roster.removeEntries(new HashSet<>(roster.getEntries()));
+
+        assertEquals(5, result.getSucceeded().size());
+        waitForEntryCount(0);
+    }
+
+    private void waitForEntryCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (roster.getEntryCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, roster.getEntryCount());
+    }
+}
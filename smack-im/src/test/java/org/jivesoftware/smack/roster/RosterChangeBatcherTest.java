@@ -0,0 +1,114 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.packet.Presence;
+import org.junit.Before;
+import org.junit.Test;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+
+public class RosterChangeBatcherTest {
+
+    private static final Collection<Jid> NONE = Collections.emptySet();
+
+    private final BlockingQueue<RosterChangeSet> changeSets = new LinkedBlockingQueue<>();
+
+    private RosterChangeBatcher batcher;
+
+    @Before
+    public void setUp() {
+        batcher = new RosterChangeBatcher(500, 50);
+        batcher.addListener(new BatchedRosterListener() {
+            @Override
+            public void rosterChanged(RosterChangeSet changeSet) {
+                changeSets.add(changeSet);
+            }
+        });
+    }
+
+    @Test
+    public void shouldCoalesceEntryChanges() throws Exception {
+        Jid a = JidCreate.from("a@example.org");
+        Jid b = JidCreate.from("b@example.org");
+        Jid c = JidCreate.from("c@example.org");
+        Jid d = JidCreate.from("d@example.org");
+
+        batcher.entriesChanged(Arrays.asList(a, b), NONE, Arrays.asList(c, d));
+        batcher.entriesChanged(NONE, Arrays.asList(a), NONE);
+        batcher.entriesChanged(Arrays.asList(c), NONE, Arrays.asList(b));
+
+        RosterChangeSet changeSet = changeSets.poll(5, TimeUnit.SECONDS);
+        assertNotNull(changeSet);
+        assertEquals(Collections.singleton(a), changeSet.getAddedEntries());
+        assertEquals(Collections.singleton(c), changeSet.getUpdatedEntries());
+        assertEquals(Collections.singleton(d), changeSet.getDeletedEntries());
+        assertTrue(changeSet.getPresences().isEmpty());
+        assertNull(changeSets.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldKeepLatestPresencePerAddress() throws Exception {
+        Jid first = JidCreate.from("a@example.org/one");
+        Jid second = JidCreate.from("a@example.org/two");
+        batcher.presenceChanged(createPresence(first, Presence.Type.available));
+        batcher.presenceChanged(createPresence(second, Presence.Type.available));
+        batcher.presenceChanged(createPresence(first, Presence.Type.unavailable));
+
+        RosterChangeSet changeSet = changeSets.poll(5, TimeUnit.SECONDS);
+        assertNotNull(changeSet);
+        assertEquals(2, changeSet.getPresences().size());
+        Iterator<Presence> it = changeSet.getPresences().iterator();
+        assertEquals(second, it.next().getFrom());
+        Presence last = it.next();
+        assertEquals(first, last.getFrom());
+        assertEquals(Presence.Type.unavailable, last.getType());
+    }
+
+    @Test
+    public void shouldDeliverAfterWindowDespiteContinuousChanges() throws Exception {
+        long start = System.currentTimeMillis();
+        int i = 0;
+        RosterChangeSet changeSet = null;
+        while (changeSet == null && System.currentTimeMillis() - start < 5000) {
+            batcher.presenceChanged(createPresence(JidCreate.from("contact" + i++ + "@example.org/r"),
+                            Presence.Type.available));
+            changeSet = changeSets.poll(10, TimeUnit.MILLISECONDS);
+        }
+        assertNotNull(changeSet);
+        assertTrue(changeSet.getPresences().size() > 1);
+    }
+
+    private static Presence createPresence(Jid from, Presence.Type type) {
+        Presence presence = new Presence(type);
+        presence.setFrom(from);
+        return presence;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jivesoftware.smack.DummyConnection;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.XMPPError.Condition;
+import org.jivesoftware.smack.roster.packet.RosterPacket;
+import org.jivesoftware.smack.roster.packet.RosterPacket.Item;
+import org.jivesoftware.smack.roster.packet.RosterPacket.ItemType;
+import org.jxmpp.jid.BareJid;
+
+/**
+ * A stand-in for the roster service of an XMPP server. It answers the roster set requests sent over a
+ * {@link DummyConnection} after a configurable delay, simulating the round trip time, with a roster push and a result,
+ * or with an error for the items which are configured to fail.
+ */
+class RosterSetResponder extends Thread {
+
+    private final DummyConnection connection;
+
+    private final long delayMillis;
+
+    private final Set<BareJid> failing;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private final AtomicInteger pendingRequests = new AtomicInteger();
+
+    private volatile int maxPendingRequests;
+
+    private volatile int requestCount;
+
+    RosterSetResponder(DummyConnection connection, long delayMillis) {
+        this(connection, delayMillis, Collections.<BareJid>emptySet());
+    }
+
+    RosterSetResponder(DummyConnection connection, long delayMillis, Set<BareJid> failing) {
+        this.connection = connection;
+        this.delayMillis = delayMillis;
+        this.failing = new HashSet<>(failing);
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isInterrupted()) {
+                Object packet = connection.getSentPacket();
+                if (!(packet instanceof RosterPacket) || ((IQ) packet).getType() != IQ.Type.set) {
+                    continue;
+                }
+                final RosterPacket request = (RosterPacket) packet;
+                requestCount++;
+                maxPendingRequests = Math.max(maxPendingRequests, pendingRequests.incrementAndGet());
+                executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        pendingRequests.decrementAndGet();
+                        respond(request);
+                    }
+                }, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (IllegalStateException e) {
+            // Interrupted while waiting for the next packet.
+        }
+    }
+
+    private void respond(RosterPacket request) {
+        for (Item item : request.getRosterItems()) {
+            if (failing.contains(item.getJid())) {
+                connection.processStanza(IQ.createErrorResponse(request, Condition.not_acceptable));
+                return;
+            }
+        }
+        // Roster pushes always contain exactly one item.
+        for (Item item : request.getRosterItems()) {
+            if (item.getItemType() != ItemType.remove) {
+                item.setItemType(ItemType.none);
+            }
+            RosterPacket push = new RosterPacket();
+            push.setType(IQ.Type.set);
+            push.setTo(connection.getUser());
+            push.addRosterItem(item);
+            connection.processStanza(push);
+        }
+        connection.processStanza(IQ.createResultIQ(request));
+    }
+
+    int getRequestCount() {
+        return requestCount;
+    }
+
+    int getMaxPendingRequests() {
+        return maxPendingRequests;
+    }
+
+    void shutdown() {
+        interrupt();
+        executor.shutdownNow();
+    }
+}
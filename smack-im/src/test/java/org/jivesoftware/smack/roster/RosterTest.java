@@ -461,6 +461,16 @@ public class RosterTest extends InitSmackIm {
         assertSame("Wrong number of roster entries.", 4, roster.getEntries().size());
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveDefaultBatchingWindow() {
+        Roster.setDefaultBatchingWindow(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveDefaultBatchingQuietPeriod() {
+        Roster.setDefaultBatchingQuietPeriod(-1);
+    }
+
     /**
      * Test processing a roster push with an empty group is equivalent with providing
      * no group.
@@ -0,0 +1,104 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster.rosterstore;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.roster.packet.RosterPacket.Item;
+import org.jivesoftware.smack.test.util.BenchmarkUtils;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compares {@link LogRosterStore} with {@link DirectoryRosterStore} for a large roster: the initial roster
+ * retrieval, a cold start, i.e. opening the store and reading all entries, and handling roster pushes.
+ */
+public class LogRosterStoreBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(LogRosterStoreBenchmark.class.getName());
+
+    private static final int ENTRY_COUNT = 5000;
+
+    private static final int PUSH_COUNT = 500;
+
+    @BeforeClass
+    public static void assumeBenchmarksEnabled() {
+        BenchmarkUtils.assumeBenchmarksEnabled();
+    }
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void benchmarkRosterStores() throws IOException {
+        List<Item> items = new ArrayList<>(ENTRY_COUNT);
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            items.add(LogRosterStoreTest.createItem(i));
+        }
+
+        File dir = tmpFolder.newFolder();
+        long start = System.nanoTime();
+        DirectoryRosterStore directoryStore = DirectoryRosterStore.init(dir);
+        directoryStore.resetEntries(items, "0");
+        long directoryReset = System.nanoTime() - start;
+        start = System.nanoTime();
+        assertEquals(ENTRY_COUNT, DirectoryRosterStore.open(dir).getEntries().size());
+        long directoryColdStart = System.nanoTime() - start;
+        start = System.nanoTime();
+        pushes(directoryStore, items);
+        long directoryPushes = System.nanoTime() - start;
+
+        File file = new File(tmpFolder.getRoot(), "roster.log");
+        start = System.nanoTime();
+        LogRosterStore logStore = LogRosterStore.init(file);
+        logStore.resetEntries(items, "0");
+        long logReset = System.nanoTime() - start;
+        start = System.nanoTime();
+        LogRosterStore openedLogStore = LogRosterStore.open(file);
+        assertEquals(ENTRY_COUNT, openedLogStore.getEntries().size());
+        long logColdStart = System.nanoTime() - start;
+        openedLogStore.close();
+        start = System.nanoTime();
+        pushes(logStore, items);
+        long logPushes = System.nanoTime() - start;
+        logStore.close();
+
+        LOGGER.info(String.format(Locale.US, "Roster store with %d entries and %d pushes:%n"
+                        + "DirectoryRosterStore: reset %6d ms, cold start %6d ms, %7.1f us/push%n"
+                        + "LogRosterStore:       reset %6d ms, cold start %6d ms, %7.1f us/push",
+                        ENTRY_COUNT, PUSH_COUNT,
+                        directoryReset / 1000000, directoryColdStart / 1000000, directoryPushes / 1000d / PUSH_COUNT,
+                        logReset / 1000000, logColdStart / 1000000, logPushes / 1000d / PUSH_COUNT));
+    }
+
+    private static void pushes(RosterStore store, List<Item> items) {
+        for (int i = 0; i < PUSH_COUNT; i++) {
+            Item item = items.get(i * 7 % items.size());
+            item.setName("Renamed " + i);
+            store.addEntry(item, Integer.toString(i + 1));
+        }
+    }
+}
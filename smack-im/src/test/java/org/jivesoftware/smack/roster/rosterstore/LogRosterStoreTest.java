@@ -0,0 +1,232 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster.rosterstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.jivesoftware.smack.roster.packet.RosterPacket.Item;
+import org.jivesoftware.smack.roster.packet.RosterPacket.ItemType;
+import org.jivesoftware.smack.util.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.JidTestUtil;
+import org.jxmpp.jid.impl.JidCreate;
+
+public class LogRosterStoreTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testStoreUninitialized() throws IOException {
+        assertNull(LogRosterStore.open(new File(tmpFolder.getRoot(), "roster.log")));
+        assertNull(LogRosterStore.open(tmpFolder.newFile()));
+    }
+
+    @Test
+    public void testStoreInitializedEmpty() throws IOException {
+        File file = tmpFolder.newFile();
+        LogRosterStore store = LogRosterStore.init(file);
+        assertNotNull(store);
+        assertEquals("", store.getRosterVersion());
+        assertEquals(0, store.getEntries().size());
+        store.close();
+
+        store = LogRosterStore.open(file);
+        assertNotNull(store);
+        assertEquals("", store.getRosterVersion());
+        assertEquals(0, store.getEntries().size());
+    }
+
+    @Test
+    public void shouldPersistAddUpdateRemoveAndReset() throws IOException {
+        File file = tmpFolder.newFile();
+        LogRosterStore store = LogRosterStore.init(file);
+
+        Item item1 = createItem(JidTestUtil.DUMMY_AT_EXAMPLE_ORG, null);
+        store.addEntry(item1, "1");
+        Item item2 = createItem(JidTestUtil.DUMMY_AT_EXAMPLE_ORG, "Ursula Example");
+        item2.addGroupName("users");
+        item2.setSubscriptionPending(true);
+        item2.setApproved(true);
+        store.addEntry(item2, "2");
+        Item item3 = createItem(JidTestUtil.BARE_JID_1, "Foo Bar");
+        store.addEntry(item3, "3");
+        store.removeEntry(JidTestUtil.BARE_JID_1, "4");
+        store.close();
+
+        store = LogRosterStore.open(file);
+        assertEquals("4", store.getRosterVersion());
+        assertEquals(1, store.getEntries().size());
+        assertEquals(item2, store.getEntry(JidTestUtil.DUMMY_AT_EXAMPLE_ORG));
+        assertNull(store.getEntry(JidTestUtil.BARE_JID_1));
+
+        List<Item> items = new ArrayList<>();
+        items.add(item3);
+        store.resetEntries(items, "5");
+        store.close();
+
+        store = LogRosterStore.open(file);
+        assertEquals("5", store.getRosterVersion());
+        assertEquals(items, store.getEntries());
+    }
+
+    @Test
+    public void shouldDiscardIncompleteTrailingRecord() throws IOException {
+        File file = tmpFolder.newFile();
+        LogRosterStore store = LogRosterStore.init(file);
+        Item item = createItem(JidTestUtil.BARE_JID_1, "Foo Bar");
+        store.addEntry(item, "1");
+        store.close();
+        long validLength = file.length();
+
+        // Simulate a partially written record.
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[] { 0, 0, 0, 42, 1, 2 });
+        out.close();
+
+        store = LogRosterStore.open(file);
+        assertNotNull(store);
+        assertEquals(validLength, file.length());
+        assertEquals("1", store.getRosterVersion());
+        assertEquals(item, store.getEntry(JidTestUtil.BARE_JID_1));
+
+        // The store must be usable after the corrupt record was discarded.
+        store.removeEntry(JidTestUtil.BARE_JID_1, "2");
+        store.close();
+        store = LogRosterStore.open(file);
+        assertEquals("2", store.getRosterVersion());
+        assertEquals(0, store.getEntries().size());
+    }
+
+    @Test
+    public void shouldCompactLog() throws IOException {
+        File file = tmpFolder.newFile();
+        LogRosterStore store = LogRosterStore.init(file);
+        Item item = createItem(JidTestUtil.BARE_JID_1, "Foo Bar");
+        store.addEntry(item, "0");
+        long compactLength = file.length();
+        for (int i = 1; i <= 2000; i++) {
+            store.addEntry(item, Integer.toString(i));
+        }
+        // The log was compacted on the way, so it must be much smaller than 2000 records.
+        long maxLength = compactLength * 1100;
+        assertEquals(true, file.length() < maxLength);
+        store.close();
+
+        store = LogRosterStore.open(file);
+        assertEquals("2000", store.getRosterVersion());
+        assertEquals(item, store.getEntry(JidTestUtil.BARE_JID_1));
+    }
+
+    @Test
+    public void shouldPersistAllItemTypes() throws IOException {
+        File file = tmpFolder.newFile();
+        LogRosterStore store = LogRosterStore.init(file);
+        List<Item> items = new ArrayList<>();
+        for (ItemType itemType : ItemType.values()) {
+            Item item = createItem(JidCreate.bareFrom(itemType.name() + "@example.org"), null);
+            item.setItemType(itemType);
+            items.add(item);
+            store.addEntry(item, itemType.name());
+        }
+        store.close();
+
+        store = LogRosterStore.open(file);
+        assertEquals(items, store.getEntries());
+    }
+
+    @Test
+    public void shouldRejectUnknownItemType() throws IOException {
+        LogRosterStore store = LogRosterStore.open(writeLogWithItemTypeCode(3));
+        assertEquals(ItemType.both, store.getEntry(JidCreate.bareFrom("contact@example.org")).getItemType());
+        assertNull(LogRosterStore.open(writeLogWithItemTypeCode(42)));
+    }
+
+    /**
+     * Write a roster log with a single add record, using the given code for the type of the item.
+     */
+    private File writeLogWithItemTypeCode(int itemTypeCode) throws IOException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        record.writeByte(1);
+        writeString(record, "1");
+        writeString(record, "contact@example.org");
+        writeString(record, null);
+        record.writeByte(itemTypeCode);
+        record.writeBoolean(false);
+        record.writeBoolean(false);
+        record.writeInt(0);
+        byte[] data = recordBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        File file = tmpFolder.newFile();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(0x534d524c);
+        out.writeByte(1);
+        out.writeInt(data.length);
+        out.writeInt((int) crc.getValue());
+        out.write(data);
+        out.close();
+        return file;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = StringUtils.toBytes(string);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Test
+    public void shouldNotExposeInternalItems() throws IOException {
+        LogRosterStore store = LogRosterStore.init(tmpFolder.newFile());
+        Item item = createItem(JidTestUtil.BARE_JID_1, "Foo Bar");
+        store.addEntry(item, "1");
+        item.setName("Changed");
+        store.getEntry(JidTestUtil.BARE_JID_1).setName("Changed");
+        assertEquals("Foo Bar", store.getEntry(JidTestUtil.BARE_JID_1).getName());
+    }
+
+    static Item createItem(BareJid jid, String name) {
+        Item item = new Item(jid, name);
+        item.setItemType(ItemType.both);
+        item.addGroupName("Friends");
+        return item;
+    }
+
+    static Item createItem(int i) throws IOException {
+        return createItem(JidCreate.bareFrom("contact" + i + "@example.org"), "Contact " + i);
+    }
+}
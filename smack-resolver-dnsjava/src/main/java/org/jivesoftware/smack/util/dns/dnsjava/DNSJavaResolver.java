@@ -76,7 +76,7 @@ public class DNSJavaResolver extends DNSResolver implements SmackInitializer {
                     continue;
                 }
 
-                SRVRecord r = new SRVRecord(host, port, priority, weight, hostAddresses);
+                SRVRecord r = new SRVRecord(host, port, priority, weight, hostAddresses, srvRecord.getTTL());
                 res.add(r);
             }
         }
@@ -35,6 +35,10 @@ package org.jivesoftware.smack.tcp;
  * stanzas will send immediately. You can also prematurely abort the bundling of stanzas by calling
  * {@link BundleAndDefer#stopCurrentBundleAndDefer()}.
  * </p>
+ * <p>
+ * Note that the writer thread is blocked for the whole bundle and defer period. Consider using a
+ * {@link BundlingPolicy}, which keeps writing stanzas into the buffer and never delays IQ requests.
+ * </p>
  */
 public interface BundleAndDeferCallback {
 
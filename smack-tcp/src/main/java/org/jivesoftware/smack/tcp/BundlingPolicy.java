@@ -0,0 +1,206 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import org.jivesoftware.smack.packet.Element;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.sm.packet.StreamManagement.AckAnswer;
+import org.jivesoftware.smack.sm.packet.StreamManagement.AckRequest;
+
+/**
+ * A time, size and count bounded bundling policy for outgoing stream elements.
+ * <p>
+ * If a bundling policy is set, then the writer of {@link XMPPTCPConnection} will keep writing outgoing stanzas into
+ * its buffer but defer flushing them to the network until either the maximum delay expired, or the number of
+ * buffered bytes or stanzas reached the configured limit. Compared to {@link BundleAndDeferCallback}, the writer thread
+ * is never parked while outgoing stanzas are pending, and elements which someone is waiting for, like IQ requests, are
+ * written out immediately together with everything bundled before them.
+ * </p>
+ * <p>
+ * Bundling is only performed once the connection is authenticated. In a mobile environment, bundling outgoing stanzas
+ * for a few milliseconds may reduce the number of radio wake-ups and TCP segments considerably.
+ * </p>
+ * <pre>
+ * {@code
+ * BundlingPolicy policy = BundlingPolicy.builder().setMaxDelay(50).setMaxBytes(8192).setMaxStanzas(20).build();
+ * }
+ * </pre>
+ *
+ * @see XMPPTCPConnectionConfiguration.Builder#setBundlingPolicy(BundlingPolicy)
+ * @see XMPPTCPConnection#setBundlingPolicy(BundlingPolicy)
+ */
+public final class BundlingPolicy {
+
+    private final int maxDelay;
+    private final int maxBytes;
+    private final int maxStanzas;
+
+    private BundlingPolicy(Builder builder) {
+        maxDelay = builder.maxDelay;
+        maxBytes = builder.maxBytes;
+        maxStanzas = builder.maxStanzas;
+    }
+
+    /**
+     * Get the maximum time in milliseconds an outgoing stanza may be deferred.
+     *
+     * @return the maximum delay in milliseconds.
+     */
+    public int getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Get the number of bundled bytes, measured in their UTF-8 encoding, after which the bundle is written out.
+     *
+     * @return the maximum number of bytes of a bundle.
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the number of bundled stanzas after which the bundle is written out.
+     *
+     * @return the maximum number of stanzas of a bundle.
+     */
+    public int getMaxStanzas() {
+        return maxStanzas;
+    }
+
+    /**
+     * Check if the given element may be bundled. IQ requests are never bundled, since the sender usually blocks
+     * waiting for the response. The same is true for all non-stanza stream elements, with the exception of Stream
+     * Management acknowledgements and acknowledgement requests.
+     *
+     * @param element the element which is about to be written.
+     * @return true if the element may be deferred.
+     */
+    boolean mayBundle(Element element) {
+        if (element instanceof IQ) {
+            return !((IQ) element).isRequestIQ();
+        }
+        if (element instanceof Stanza) {
+            return true;
+        }
+        return element instanceof AckRequest || element instanceof AckAnswer;
+    }
+
+    /**
+     * Check if a bundle of the given size has to be written out.
+     *
+     * @param bundledStanzas the number of bundled stanzas.
+     * @param bundledBytes the number of bundled bytes.
+     * @return true if one of the limits of this policy has been reached.
+     */
+    boolean limitReached(int bundledStanzas, int bundledBytes) {
+        return bundledStanzas >= maxStanzas || bundledBytes >= maxBytes;
+    }
+
+    /**
+     * Get the number of bytes the given XML occupies on the wire, i.e. the length of its UTF-8 encoding.
+     *
+     * @param xml the XML of a stream element.
+     * @return the number of encoded bytes.
+     */
+    static int encodedLength(String xml) {
+        final int length = xml.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            final char c = xml.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(xml.charAt(i + 1))) {
+                // A surrogate pair is encoded as four bytes.
+                bytes += 2;
+                i++;
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "BundlingPolicy(maxDelay=" + maxDelay + "ms, maxBytes=" + maxBytes + ", maxStanzas=" + maxStanzas + ')';
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private int maxDelay = 50;
+        private int maxBytes = 8192;
+        private int maxStanzas = 50;
+
+        private Builder() {
+        }
+
+        /**
+         * Set the maximum time in milliseconds an outgoing stanza may be deferred. The default is 50 milliseconds.
+         *
+         * @param maxDelay the maximum delay in milliseconds.
+         * @return a reference to this builder.
+         */
+        public Builder setMaxDelay(int maxDelay) {
+            if (maxDelay <= 0) {
+                throw new IllegalArgumentException("maxDelay must be positive");
+            }
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Set the number of bundled bytes, measured in their UTF-8 encoding, after which the bundle is written out. The
+         * default is 8192 bytes.
+         *
+         * @param maxBytes the maximum number of bytes of a bundle.
+         * @return a reference to this builder.
+         */
+        public Builder setMaxBytes(int maxBytes) {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("maxBytes must be positive");
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Set the number of bundled stanzas after which the bundle is written out. The default is 50 stanzas.
+         *
+         * @param maxStanzas the maximum number of stanzas of a bundle.
+         * @return a reference to this builder.
+         */
+        public Builder setMaxStanzas(int maxStanzas) {
+            if (maxStanzas <= 0) {
+                throw new IllegalArgumentException("maxStanzas must be positive");
+            }
+            this.maxStanzas = maxStanzas;
+            return this;
+        }
+
+        public BundlingPolicy build() {
+            return new BundlingPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.SocketFactory;
+
+import org.jivesoftware.smack.util.SmackExecutorThreadFactory;
+import org.jivesoftware.smack.util.dns.HostAddress;
+
+/**
+ * Establishes a TCP connection by racing staggered connection attempts across all resolved host addresses, as
+ * described in RFC 8305 "Happy Eyeballs Version 2".
+ * <p>
+ * The candidate addresses are ordered by host address, i.e. by the DNS SRV priority and weight, and within every host
+ * address the address families are interleaved. A new connection attempt is started whenever the previous one failed
+ * or the connection attempt delay expired. The first established connection wins, all other pending attempts are
+ * cancelled by closing their sockets.
+ * </p>
+ */
+final class HappyEyeballsConnector {
+
+    private static final Logger LOGGER = Logger.getLogger(HappyEyeballsConnector.class.getName());
+
+    private static final ExecutorService CONNECTION_ATTEMPT_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60,
+                    TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new SmackExecutorThreadFactory(
+                                    "Connection Attempt"));
+
+    private final SocketFactory socketFactory;
+    private final int connectTimeout;
+    private final int connectionAttemptDelay;
+
+    HappyEyeballsConnector(SocketFactory socketFactory, int connectTimeout, int connectionAttemptDelay) {
+        this.socketFactory = socketFactory;
+        this.connectTimeout = connectTimeout;
+        this.connectionAttemptDelay = connectionAttemptDelay;
+    }
+
+    /**
+     * Connect to one of the given host addresses. Failed connection attempts are recorded in the respective host
+     * address.
+     *
+     * @param hostAddresses the host addresses in the order of preference.
+     * @return the established connection, or <code>null</code> if all connection attempts failed.
+     * @throws InterruptedIOException if the calling thread was interrupted.
+     */
+    ConnectionAttempt connect(List<HostAddress> hostAddresses) throws InterruptedIOException {
+        final List<ConnectionAttempt> candidates = orderCandidates(hostAddresses);
+        final BlockingQueue<ConnectionAttempt> completedAttempts = new LinkedBlockingQueue<>();
+        final List<ConnectionAttempt> startedAttempts = new ArrayList<>(candidates.size());
+        final Iterator<ConnectionAttempt> it = candidates.iterator();
+
+        int pendingAttempts = 0;
+        long nextAttemptAt = System.currentTimeMillis();
+        try {
+            while (true) {
+                final long now = System.currentTimeMillis();
+                if (it.hasNext() && (pendingAttempts == 0 || now >= nextAttemptAt)) {
+                    ConnectionAttempt attempt = it.next();
+                    attempt.start(completedAttempts);
+                    startedAttempts.add(attempt);
+                    pendingAttempts++;
+                    nextAttemptAt = now + connectionAttemptDelay;
+                }
+                if (pendingAttempts == 0) {
+                    // All connection attempts failed.
+                    return null;
+                }
+
+                ConnectionAttempt completedAttempt;
+                if (it.hasNext()) {
+                    long wait = nextAttemptAt - System.currentTimeMillis();
+                    completedAttempt = completedAttempts.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                } else {
+                    // No further candidates, the pending attempts will complete at the latest after the connect
+                    // timeout.
+                    completedAttempt = completedAttempts.take();
+                }
+                if (completedAttempt == null) {
+                    // The connection attempt delay expired.
+                    continue;
+                }
+                pendingAttempts--;
+
+                if (completedAttempt.exception == null) {
+                    LOGGER.finer("Established TCP connection to " + completedAttempt);
+                    startedAttempts.remove(completedAttempt);
+                    return completedAttempt;
+                }
+                completedAttempt.hostAddress.setException(completedAttempt.inetAddress, completedAttempt.exception);
+                // Start the next attempt right away.
+                nextAttemptAt = System.currentTimeMillis();
+            }
+        } catch (InterruptedException e) {
+            InterruptedIOException interruptedIOException = new InterruptedIOException();
+            interruptedIOException.initCause(e);
+            throw interruptedIOException;
+        } finally {
+            for (ConnectionAttempt attempt : startedAttempts) {
+                attempt.cancel();
+            }
+        }
+    }
+
+    private List<ConnectionAttempt> orderCandidates(List<HostAddress> hostAddresses) {
+        List<ConnectionAttempt> candidates = new ArrayList<>();
+        for (HostAddress hostAddress : hostAddresses) {
+            for (InetAddress inetAddress : interleaveAddressFamilies(hostAddress.getInetAddresses())) {
+                candidates.add(new ConnectionAttempt(hostAddress, inetAddress));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Interleave the IPv6 and IPv4 addresses, starting with the family of the first, i.e. most preferred, address.
+     *
+     * @param inetAddresses the addresses in the order of preference.
+     * @return the interleaved addresses.
+     */
+    static List<InetAddress> interleaveAddressFamilies(List<InetAddress> inetAddresses) {
+        if (inetAddresses.size() < 2) {
+            return inetAddresses;
+        }
+        List<InetAddress> preferredFamily = new ArrayList<>(inetAddresses.size());
+        List<InetAddress> otherFamily = new ArrayList<>(inetAddresses.size());
+        final boolean ipv6Preferred = inetAddresses.get(0) instanceof Inet6Address;
+        for (InetAddress inetAddress : inetAddresses) {
+            if ((inetAddress instanceof Inet6Address) == ipv6Preferred) {
+                preferredFamily.add(inetAddress);
+            } else {
+                otherFamily.add(inetAddress);
+            }
+        }
+        List<InetAddress> interleaved = new ArrayList<>(inetAddresses.size());
+        Iterator<InetAddress> preferred = preferredFamily.iterator();
+        Iterator<InetAddress> other = otherFamily.iterator();
+        while (preferred.hasNext() || other.hasNext()) {
+            if (preferred.hasNext()) {
+                interleaved.add(preferred.next());
+            }
+            if (other.hasNext()) {
+                interleaved.add(other.next());
+            }
+        }
+        return interleaved;
+    }
+
+    final class ConnectionAttempt implements Runnable {
+        final HostAddress hostAddress;
+        final InetAddress inetAddress;
+
+        private volatile Socket socket;
+        private volatile boolean cancelled;
+        private Exception exception;
+        private BlockingQueue<ConnectionAttempt> completedAttempts;
+
+        private ConnectionAttempt(HostAddress hostAddress, InetAddress inetAddress) {
+            this.hostAddress = hostAddress;
+            this.inetAddress = inetAddress;
+        }
+
+        Socket getSocket() {
+            return socket;
+        }
+
+        private void start(BlockingQueue<ConnectionAttempt> completedAttempts) {
+            this.completedAttempts = completedAttempts;
+            LOGGER.finer("Trying to establish TCP connection to " + this);
+            CONNECTION_ATTEMPT_EXECUTOR.execute(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Create a *new* Socket before every connection attempt, i.e. connect() call, since Sockets are not
+                // re-usable after a failed connection attempt. See also SMACK-724.
+                socket = socketFactory.createSocket();
+                if (cancelled) {
+                    closeSocket();
+                    return;
+                }
+                socket.connect(new InetSocketAddress(inetAddress, hostAddress.getPort()), connectTimeout);
+            } catch (Exception e) {
+                exception = e;
+            }
+            if (cancelled) {
+                closeSocket();
+            }
+            completedAttempts.add(this);
+        }
+
+        private void cancel() {
+            cancelled = true;
+            closeSocket();
+        }
+
+        private void closeSocket() {
+            Socket socket = this.socket;
+            if (socket == null) {
+                return;
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINEST, "Exception while closing socket of cancelled connection attempt", e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return inetAddress + " at port " + hostAddress.getPort();
+        }
+    }
+}
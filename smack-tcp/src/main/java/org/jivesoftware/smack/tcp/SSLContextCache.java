@@ -0,0 +1,161 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.X509TrustManager;
+import javax.security.auth.callback.CallbackHandler;
+
+import org.jxmpp.jid.DomainBareJid;
+import org.jxmpp.util.cache.LruCache;
+
+/**
+ * A cache of the SSLContexts created by {@link XMPPTCPConnection}s, keyed by the XMPP service domain and the TLS
+ * related settings of the connection configuration.
+ * <p>
+ * The client side TLS session cache of JSSE is part of the SSLContext. Re-using the SSLContext across reconnects and
+ * across connections to the same service therefore enables TLS session resumption, i.e. TLS 1.2 session IDs and
+ * session tickets as well as TLS 1.3 PSK resumption, which saves a full handshake including the certificate
+ * verification. It also avoids the repeated setup of the key and trust managers.
+ * </p>
+ * <p>
+ * Connections with a custom SSLContext, or with DANE verification enabled, do not use this cache.
+ * </p>
+ *
+ * @see XMPPTCPConnectionConfiguration.Builder#setSslContextReuseEnabled(boolean)
+ */
+public final class SSLContextCache {
+
+    private static final LruCache<Key, SSLContext> CACHE = new LruCache<>(100);
+
+    private static int sessionCacheSize = 0;
+
+    private static int sessionTimeout = 86400;
+
+    private SSLContextCache() {
+    }
+
+    /**
+     * Set the maximum number of TLS sessions cached by every SSLContext created from now on. The default is '0', which
+     * means no limit.
+     *
+     * @param sessionCacheSize the maximum number of cached sessions.
+     */
+    public static void setSessionCacheSize(int sessionCacheSize) {
+        SSLContextCache.sessionCacheSize = sessionCacheSize;
+    }
+
+    /**
+     * Set the time in seconds a TLS session may be resumed, for every SSLContext created from now on. The default is
+     * 86400 seconds (24 hours).
+     *
+     * @param sessionTimeout the session timeout in seconds.
+     */
+    public static void setSessionTimeout(int sessionTimeout) {
+        SSLContextCache.sessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * Remove all cached SSLContexts, e.g. after the key store changed.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    static SSLContext lookup(Key key) {
+        synchronized (CACHE) {
+            return CACHE.lookup(key);
+        }
+    }
+
+    static void put(Key key, SSLContext context) {
+        SSLSessionContext sessionContext = context.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            sessionContext.setSessionTimeout(sessionTimeout);
+        }
+        synchronized (CACHE) {
+            CACHE.put(key, context);
+        }
+    }
+
+    static Key keyFor(XMPPTCPConnectionConfiguration config) {
+        return new Key(config.getXMPPServiceDomain(), config.getKeystoreType(), config.getKeystorePath(),
+                        config.getPKCS11Library(), config.getCallbackHandler(), config.getCustomX509TrustManager());
+    }
+
+    static final class Key {
+        private final DomainBareJid xmppServiceDomain;
+        private final String keystoreType;
+        private final String keystorePath;
+        private final String pkcs11Library;
+        private final CallbackHandler callbackHandler;
+        private final X509TrustManager customTrustManager;
+
+        private Key(DomainBareJid xmppServiceDomain, String keystoreType, String keystorePath, String pkcs11Library,
+                        CallbackHandler callbackHandler, X509TrustManager customTrustManager) {
+            this.xmppServiceDomain = xmppServiceDomain;
+            this.keystoreType = keystoreType;
+            this.keystorePath = keystorePath;
+            this.pkcs11Library = pkcs11Library;
+            this.callbackHandler = callbackHandler;
+            this.customTrustManager = customTrustManager;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key otherKey = (Key) other;
+            // The callback handler and the trust manager are compared by identity, as they usually do not implement
+            // equals().
+            return equals(xmppServiceDomain, otherKey.xmppServiceDomain)
+                            && equals(keystoreType, otherKey.keystoreType)
+                            && equals(keystorePath, otherKey.keystorePath)
+                            && equals(pkcs11Library, otherKey.pkcs11Library)
+                            && callbackHandler == otherKey.callbackHandler
+                            && customTrustManager == otherKey.customTrustManager;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 17;
+            result = 31 * result + hashCode(xmppServiceDomain);
+            result = 31 * result + hashCode(keystoreType);
+            result = 31 * result + hashCode(keystorePath);
+            result = 31 * result + hashCode(pkcs11Library);
+            result = 31 * result + System.identityHashCode(callbackHandler);
+            result = 31 * result + System.identityHashCode(customTrustManager);
+            return result;
+        }
+
+        private static boolean equals(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        private static int hashCode(Object o) {
+            return o == null ? 0 : o.hashCode();
+        }
+    }
+}
@@ -30,14 +30,18 @@ import org.jivesoftware.smack.SmackException.NoResponseException;
 import org.jivesoftware.smack.SmackException.NotConnectedException;
 import org.jivesoftware.smack.SmackException.ConnectionException;
 import org.jivesoftware.smack.SmackException.SecurityRequiredByServerException;
+import org.jivesoftware.smack.StanzaCollector;
 import org.jivesoftware.smack.SynchronizationPoint;
 import org.jivesoftware.smack.XMPPException.FailedNonzaException;
+import org.jivesoftware.smack.XMPPException.XMPPErrorException;
 import org.jivesoftware.smack.XMPPException.StreamErrorException;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.compress.packet.Compressed;
 import org.jivesoftware.smack.compression.XMPPInputOutputStream;
 import org.jivesoftware.smack.filter.StanzaFilter;
+import org.jivesoftware.smack.metrics.MeteredInputStream;
+import org.jivesoftware.smack.metrics.MeteredOutputStream;
 import org.jivesoftware.smack.compress.packet.Compress;
 import org.jivesoftware.smack.packet.Element;
 import org.jivesoftware.smack.packet.IQ;
@@ -112,6 +116,7 @@ import java.lang.reflect.Constructor;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.security.GeneralSecurityException;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -163,6 +168,17 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
 
     private SSLSocket secureSocket;
 
+    /**
+     * The streams created by the compression handler, which are closed on shutdown to free their resources.
+     */
+    private InputStream compressionInputStream;
+    private OutputStream compressionOutputStream;
+
+    /**
+     * True if the current connection was established to a Direct TLS (XEP-0368) endpoint.
+     */
+    private boolean directTls;
+
     /**
      * Protected access level because of unit test purposes
      */
@@ -210,10 +226,20 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
      */
     private BundleAndDeferCallback bundleAndDeferCallback = defaultBundleAndDeferCallback;
 
+    /**
+     * The used bundling policy, or <code>null</code> if outgoing stanzas are not bundled.
+     * <p>
+     * Like {@link #bundleAndDeferCallback}, this field is deliberately not 'volatile'.
+     * </p>
+     */
+    private BundlingPolicy bundlingPolicy;
+
     private static boolean useSmDefault = true;
 
     private static boolean useSmResumptionDefault = true;
 
+    private static boolean pipelinedLoginDefault = false;
+
     /**
      * The stream ID of the stream that is currently resumable, ie. the stream we hold the state
      * for in {@link #clientHandledStanzasCount}, {@link #serverHandledStanzasCount} and
@@ -243,6 +269,17 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
     private boolean useSm = useSmDefault;
     private boolean useSmResumption = useSmResumptionDefault;
 
+    /**
+     * Indicates whether resource binding, session establishment and enabling Stream Management should be pipelined if
+     * the post-authentication stream features of the server are known from a previous login.
+     */
+    private boolean pipelinedLogin = pipelinedLoginDefault;
+
+    /**
+     * The stream features the server announced after the last successful authentication, or <code>null</code>.
+     */
+    private PostAuthenticationFeatures postAuthenticationFeatures;
+
     /**
      * The counter that the server sends the client about it's current height. For example, if the server sends
      * {@code <a h='42'/>}, then this will be set to 42 (while also handling the {@link #unacknowledgedStanzas} queue).
@@ -305,6 +342,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
     public XMPPTCPConnection(XMPPTCPConnectionConfiguration config) {
         super(config);
         this.config = config;
+        this.bundlingPolicy = config.getBundlingPolicy();
         addConnectionListener(new AbstractConnectionListener() {
             @Override
             public void connectionClosedOnError(Exception e) {
@@ -417,9 +455,12 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         // Now bind the resource. It is important to do this *after* we dropped an eventually
         // existing Stream Management state. As otherwise <bind/> and <session/> may end up in
         // unacknowledgedStanzas and become duplicated on reconnect. See SMACK-706.
-        bindResourceAndEstablishSession(resource);
+        if (!mayPipelineLogin() || !pipelinedBindResourceAndEstablishSession(resource)) {
+            bindResourceAndEstablishSession(resource);
+        }
+        postAuthenticationFeatures = new PostAuthenticationFeatures(isLegacySessionRequired(), isSmAvailable());
 
-        if (isSmAvailable() && useSm) {
+        if (isSmAvailable() && useSm && !smEnabledSyncPoint.wasSuccessful()) {
             // Remove what is maybe left from previously stream managed sessions
             serverHandledStanzasCount = 0;
             // XEP-198 3. Enabling Stream Management. If the server response to 'Enable' is 'Failed'
@@ -442,6 +483,85 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         afterSuccessfulLogin(false);
     }
 
+    private boolean mayPipelineLogin() {
+        // Compression has to be negotiated before resource binding, so we can not pipeline in this case.
+        return pipelinedLogin && postAuthenticationFeatures != null && !config.isCompressionEnabled();
+    }
+
+    /**
+     * Send the resource binding request, the legacy session request and the Stream Management enable request
+     * back-to-back, based on the stream features the server announced after the last successful authentication, and
+     * only then wait for the responses.
+     *
+     * @param resource the resource to bind.
+     * @return true if the resource was bound, false if the sequential login process has to be performed.
+     * @throws XMPPErrorException if resource binding failed after the server already enabled Stream Management.
+     * @throws SmackException
+     * @throws InterruptedException
+     */
+    private boolean pipelinedBindResourceAndEstablishSession(Resourcepart resource) throws XMPPErrorException,
+                    SmackException, InterruptedException {
+        final PostAuthenticationFeatures features = postAuthenticationFeatures;
+        LOGGER.finer("Pipelining resource binding, session establishment and enabling of Stream Management");
+        StanzaCollector bindCollector = sendBindRequest(resource);
+        StanzaCollector sessionCollector = null;
+        if (features.legacySessionRequired) {
+            sessionCollector = sendSessionRequest();
+        }
+        // The <enable/> must be send *after* <bind/> and <session/>, so that they do not end up in
+        // unacknowledgedStanzas.
+        final boolean smPipelined = features.smAvailable && useSm;
+        if (smPipelined) {
+            serverHandledStanzasCount = 0;
+            smEnabledSyncPoint.sendRequest(new Enable(useSmResumption, smClientMaxResumptionTime));
+        }
+
+        try {
+            processBindResponse(bindCollector);
+            if (sessionCollector != null) {
+                sessionCollector.nextResultOrThrow();
+            }
+        }
+        catch (XMPPErrorException | NoResponseException e) {
+            bindCollector.cancel();
+            if (sessionCollector != null) {
+                sessionCollector.cancel();
+            }
+            postAuthenticationFeatures = null;
+            if (smPipelined) {
+                // Wait for the server to answer the <enable/>, which was send right after the resource binding request.
+                smEnabledSyncPoint.checkIfSuccessOrWait();
+                if (smEnabledSyncPoint.wasSuccessful()) {
+                    // The server enabled Stream Management on this stream. XEP-198 forbids to enable it a second time,
+                    // and performing the sequential login with Stream Management already enabled would put <bind/>
+                    // and <session/> into unacknowledgedStanzas (SMACK-706). Keep the state, so that it matches the
+                    // one of the server, and fail the login as the sequential process does if resource binding fails.
+                    LOGGER.log(Level.FINE, "Pipelined resource binding failed after Stream Management was enabled", e);
+                    throw e;
+                }
+                // The server did not enable Stream Management, so we are free to start over.
+                smEnabledSyncPoint.init();
+                dropSmState();
+            }
+            LOGGER.log(Level.FINE, "Pipelined resource binding failed, continuing with sequential login", e);
+            return false;
+        }
+
+        lastFeaturesReceived.checkIfSuccessOrWait();
+
+        if (smPipelined) {
+            SmackException smFailure = smEnabledSyncPoint.checkIfSuccessOrWait();
+            if (smFailure != null) {
+                // The server may simply have stopped announcing Stream Management. If it is still announced, then
+                // loginInternal() will try again to enable it sequentially.
+                LOGGER.log(Level.FINE, "Pipelined enabling of Stream Management failed", smFailure);
+                smEnabledSyncPoint.init();
+                dropSmState();
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean isSecureConnection() {
         return secureSocket != null;
@@ -508,6 +628,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         } catch (Exception e) {
                 LOGGER.log(Level.WARNING, "shutdown", e);
         }
+        closeCompressionStreams();
 
         setWasAuthenticated();
         // If we are able to resume the stream, then don't set
@@ -534,6 +655,29 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         initalOpenStreamSend.init();
     }
 
+    private void closeCompressionStreams() {
+        // Closing the streams frees the native memory held by the compression handler, e.g. by returning the
+        // Deflater to the DeflaterPool. The socket is already closed at this point.
+        if (compressionInputStream != null) {
+            try {
+                compressionInputStream.close();
+            }
+            catch (IOException e) {
+                LOGGER.log(Level.FINE, "Exception while closing compression input stream", e);
+            }
+            compressionInputStream = null;
+        }
+        if (compressionOutputStream != null) {
+            try {
+                compressionOutputStream.close();
+            }
+            catch (IOException e) {
+                LOGGER.log(Level.FINE, "Exception while closing compression output stream", e);
+            }
+            compressionOutputStream = null;
+        }
+    }
+
     @Override
     public void sendNonza(Nonza element) throws NotConnectedException, InterruptedException {
         packetWriter.sendStreamElement(element);
@@ -553,13 +697,30 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
     }
 
     private void connectUsingConfiguration() throws ConnectionException, IOException {
-        List<HostAddress> failedAddresses = populateHostAddresses();
+        List<HostAddress> failedAddresses = populateHostAddresses(config.isDirectTlsEnabled()
+                        && config.getSecurityMode() != SecurityMode.disabled);
+        directTls = false;
         SocketFactory socketFactory = config.getSocketFactory();
         ProxyInfo proxyInfo = config.getProxyInfo();
         int timeout = config.getConnectTimeout();
         if (socketFactory == null) {
             socketFactory = SocketFactory.getDefault();
         }
+        if (proxyInfo == null && config.getConnectionAttemptDelay() > 0) {
+            HappyEyeballsConnector connector = new HappyEyeballsConnector(socketFactory, timeout,
+                            config.getConnectionAttemptDelay());
+            HappyEyeballsConnector.ConnectionAttempt connectionAttempt = connector.connect(hostAddresses);
+            if (connectionAttempt != null) {
+                // We found a host to connect to, return here
+                socket = connectionAttempt.getSocket();
+                host = connectionAttempt.hostAddress.getFQDN();
+                port = connectionAttempt.hostAddress.getPort();
+                directTls = connectionAttempt.hostAddress.isDirectTls();
+                return;
+            }
+            failedAddresses.addAll(hostAddresses);
+            throw ConnectionException.from(failedAddresses);
+        }
         for (HostAddress hostAddress : hostAddresses) {
             Iterator<InetAddress> inetAddresses = null;
             String host = hostAddress.getFQDN();
@@ -590,6 +751,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                     // We found a host to connect to, return here
                     this.host = host;
                     this.port = port;
+                    this.directTls = hostAddress.isDirectTls();
                     return;
                 }
                 failedAddresses.add(hostAddress);
@@ -608,6 +770,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                 // We found a host to connect to, return here
                 this.host = host;
                 this.port = port;
+                this.directTls = hostAddress.isDirectTls();
                 return;
             }
         }
@@ -655,9 +818,15 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
     private void initReaderAndWriter() throws IOException {
         InputStream is = socket.getInputStream();
         OutputStream os = socket.getOutputStream();
+        if (isConnectionMetricsEnabled()) {
+            // Meter the bytes below the compression layer. Once TLS has been established, the socket is the
+            // SSLSocket, whose streams carry plaintext, so these are application-layer bytes without the TLS overhead.
+            is = new MeteredInputStream(is, getConnectionMetrics());
+            os = new MeteredOutputStream(os, getConnectionMetrics());
+        }
         if (compressionHandler != null) {
-            is = compressionHandler.getInputStream(is);
-            os = compressionHandler.getOutputStream(os);
+            is = compressionInputStream = compressionHandler.getInputStream(is);
+            os = compressionOutputStream = compressionHandler.getOutputStream(os);
         }
         // OutputStreamWriter is already buffered, no need to wrap it into a BufferedWriter
         writer = new OutputStreamWriter(os, "UTF-8");
@@ -668,9 +837,12 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
     }
 
     /**
-     * The server has indicated that TLS negotiation can start. We now need to secure the
-     * existing plain connection and perform a handshake. This method won't return until the
-     * connection has finished the handshake or an error occurred while securing the connection.
+     * Secure the plain TCP connection by performing the TLS handshake. This is either done after the server has
+     * indicated that TLS negotiation can start, or right away when connecting to a Direct TLS (XEP-0368) endpoint.
+     * This method won't return until the connection has finished the handshake or an error occurred while securing
+     * the connection.
+     *
+     * @param peerHost the host name used for the Server Name Indication (SNI) and the TLS session cache.
      * @throws IOException 
      * @throws CertificateException 
      * @throws NoSuchAlgorithmException 
@@ -682,7 +854,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
      * @throws Exception if an exception occurs.
      */
     @SuppressWarnings("LiteralClassName")
-    private void proceedTLSReceived() throws NoSuchAlgorithmException, CertificateException, IOException, KeyStoreException, NoSuchProviderException, UnrecoverableKeyException, KeyManagementException, SmackException {
+    private void establishTls(String peerHost) throws NoSuchAlgorithmException, CertificateException, IOException, KeyStoreException, NoSuchProviderException, UnrecoverableKeyException, KeyManagementException, SmackException {
         SSLContext context = this.config.getCustomSSLContext();
         KeyStore ks = null;
         KeyManager[] kms = null;
@@ -700,6 +872,12 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
             }
         }
 
+        SSLContextCache.Key sslContextCacheKey = null;
+        if (context == null && daneVerifier == null && config.isSslContextReuseEnabled()) {
+            sslContextCacheKey = SSLContextCache.keyFor(config);
+            context = SSLContextCache.lookup(sslContextCacheKey);
+        }
+
         if (context == null) {
             final String keyStoreType = config.getKeystoreType();
             final CallbackHandler callbackHandler = config.getCallbackHandler();
@@ -777,12 +955,16 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                 }
                 context.init(kms, customTrustManagers, secureRandom);
             }
+
+            if (sslContextCacheKey != null) {
+                SSLContextCache.put(sslContextCacheKey, context);
+            }
         }
 
         Socket plain = socket;
         // Secure the plain connection
         socket = context.getSocketFactory().createSocket(plain,
-                host, plain.getPort(), true);
+                peerHost, plain.getPort(), true);
 
         final SSLSocket sslSocket = (SSLSocket) socket;
         // Immediately set the enabled SSL protocols and ciphers. See SMACK-712 why this is
@@ -794,7 +976,14 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         initReaderAndWriter();
 
         // Proceed to do the handshake
+        final long handshakeStartMillis = System.currentTimeMillis();
+        final long handshakeStart = System.nanoTime();
         sslSocket.startHandshake();
+        if (isConnectionMetricsEnabled()) {
+            // A resumed session was created by a previous handshake.
+            final boolean resumed = sslSocket.getSession().getCreationTime() < handshakeStartMillis;
+            getConnectionMetrics().tlsHandshakeCompleted(System.nanoTime() - handshakeStart, resumed);
+        }
 
         if (daneVerifier != null) {
             daneVerifier.finish(sslSocket);
@@ -888,6 +1077,16 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         // there is an error establishing the connection
         connectUsingConfiguration();
 
+        if (directTls) {
+            // The endpoint expects TLS right away, instead of a STARTTLS negotiation (XEP-0368).
+            try {
+                establishTls(getXMPPServiceDomain().toString());
+            }
+            catch (GeneralSecurityException e) {
+                throw new SmackException(e);
+            }
+        }
+
         // We connected successfully to the servers TCP port
         initConnection();
     }
@@ -1051,7 +1250,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                         case "proceed":
                             try {
                                 // Secure the connection by negotiating TLS
-                                proceedTLSReceived();
+                                establishTls(host);
                                 // Send a new opening stream to the server
                                 openStream();
                             }
@@ -1271,6 +1470,21 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
          */
         private boolean shouldBundleAndDefer;
 
+        /**
+         * The number of stanzas written, but not yet flushed, because of the {@link BundlingPolicy}.
+         */
+        private int bundledStanzas;
+
+        /**
+         * The number of UTF-8 encoded bytes written, but not yet flushed, because of the {@link BundlingPolicy}.
+         */
+        private int bundledBytes;
+
+        /**
+         * The timestamp when the current bundle has to be flushed at the latest, or 0 if there is no pending bundle.
+         */
+        private long bundleDeadline;
+
         /** 
         * Initializes the writer in order to be used. It is called at the first connection and also 
         * is invoked if the connection is disconnected by an error.
@@ -1365,7 +1579,12 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
             }
             Element packet = null;
             try {
-                packet = queue.take();
+                if (bundleDeadline > 0) {
+                    // There is a pending bundle, only wait until it has to be written out.
+                    packet = queue.poll(bundleDeadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                } else {
+                    packet = queue.take();
+                }
             }
             catch (InterruptedException e) {
                 if (!queue.isShutdown()) {
@@ -1379,14 +1598,21 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         private void writePackets() {
             Exception writerException = null;
             try {
+                resetBundle();
                 openStream();
                 initalOpenStreamSend.reportSuccess();
                 // Write out packets from the queue.
                 while (!done()) {
                     Element element = nextStreamElement();
                     if (element == null) {
+                        if (bundleDeadline > 0 && System.currentTimeMillis() >= bundleDeadline) {
+                            flushBundle();
+                        }
                         continue;
                     }
+                    if (isConnectionMetricsEnabled()) {
+                        getConnectionMetrics().writerQueueSize(queue.size());
+                    }
 
                     // Get a local version of the bundle and defer callback, in case it's unset
                     // between the null check and the method invocation
@@ -1434,8 +1660,23 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                         writer.write(elementXml.toString());
                     }
 
-                    if (queue.isEmpty()) {
-                        writer.flush();
+                    final BundlingPolicy localBundlingPolicy = bundlingPolicy;
+                    if (localBundlingPolicy != null && isAuthenticated() && localBundlingPolicy.mayBundle(element)) {
+                        if (packet != null) {
+                            bundledStanzas++;
+                        }
+                        bundledBytes += BundlingPolicy.encodedLength(elementXml.toString());
+                        if (bundleDeadline == 0) {
+                            bundleDeadline = System.currentTimeMillis() + localBundlingPolicy.getMaxDelay();
+                        }
+                        if (localBundlingPolicy.limitReached(bundledStanzas, bundledBytes)) {
+                            flushBundle();
+                        }
+                    }
+                    else if (queue.isEmpty() || bundleDeadline > 0) {
+                        // Either there are no further elements to write, or there is a pending bundle which must not
+                        // delay the element that was just written, e.g. an IQ request someone is waiting a response for.
+                        flushBundle();
                     }
                     if (packet != null) {
                         firePacketSendingListeners(packet);
@@ -1499,6 +1740,17 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
             }
         }
 
+        private void flushBundle() throws IOException {
+            writer.flush();
+            resetBundle();
+        }
+
+        private void resetBundle() {
+            bundledStanzas = 0;
+            bundledBytes = 0;
+            bundleDeadline = 0;
+        }
+
         private void drainWriterQueueToUnacknowledgedStanzas() {
             List<Element> elements = new ArrayList<Element>(queue.size());
             queue.drainTo(elements);
@@ -1529,6 +1781,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                 catch (InterruptedException e) {
                     throw new IllegalStateException(e);
                 }
+                getConnectionMetrics().unacknowledgedStanzas(unacknowledgedStanzas.size());
             }
         }
     }
@@ -1542,6 +1795,34 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         XMPPTCPConnection.useSmDefault = useSmDefault;
     }
 
+    /**
+     * Set if the login process should be pipelined by default for new connections.
+     *
+     * @param pipelinedLoginDefault true to pipeline the login process of new connections.
+     * @see #setPipelinedLogin(boolean)
+     */
+    public static void setPipelinedLoginDefault(boolean pipelinedLoginDefault) {
+        XMPPTCPConnection.pipelinedLoginDefault = pipelinedLoginDefault;
+    }
+
+    /**
+     * Set if the login process should be pipelined.
+     * <p>
+     * Once this connection has logged in, it remembers the stream features the server announced after authentication.
+     * On subsequent logins, e.g. after a reconnect where the stream could not be resumed, resource binding, legacy
+     * session establishment and enabling Stream Management are then send back-to-back, without waiting for the
+     * response of the previous step. This saves up to two round trips. If resource binding fails, Smack falls back to
+     * the sequential login process, unless the server already enabled Stream Management, in which case the login fails.
+     * If enabling Stream Management fails, it is only retried if the server still announces it.
+     * Pipelining is never used if stream compression is enabled.
+     * </p>
+     *
+     * @param pipelinedLogin true to pipeline the login process.
+     */
+    public void setPipelinedLogin(boolean pipelinedLogin) {
+        this.pipelinedLogin = pipelinedLogin;
+    }
+
     /**
      * Set if Stream Management resumption should be used by default for new connections.
      * 
@@ -1859,6 +2140,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
             }
             ackedStanzas.add(ackedStanza);
         }
+        getConnectionMetrics().unacknowledgedStanzas(unacknowledgedStanzas.size());
 
         boolean atLeastOneStanzaAcknowledgedListener = false;
         if (!stanzaAcknowledgedListeners.isEmpty()) {
@@ -1937,4 +2219,37 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         this.bundleAndDeferCallback = bundleAndDeferCallback;
     }
 
+    /**
+     * Set the bundling policy used for outgoing stanzas of this connection. This overrides the policy set via
+     * {@link XMPPTCPConnectionConfiguration.Builder#setBundlingPolicy(BundlingPolicy)}.
+     * <p>
+     * You can use <code>null</code> as argument to disable bundling. A pending bundle will then be written out with the
+     * next outgoing element or once its delay expired.
+     * </p>
+     *
+     * @param bundlingPolicy the bundling policy or <code>null</code>.
+     * @see BundlingPolicy
+     */
+    public void setBundlingPolicy(BundlingPolicy bundlingPolicy) {
+        this.bundlingPolicy = bundlingPolicy;
+    }
+
+    /**
+     * Get the bundling policy used for outgoing stanzas of this connection.
+     *
+     * @return the bundling policy or <code>null</code> if bundling is disabled.
+     */
+    public BundlingPolicy getBundlingPolicy() {
+        return bundlingPolicy;
+    }
+
+    private static final class PostAuthenticationFeatures {
+        private final boolean legacySessionRequired;
+        private final boolean smAvailable;
+
+        private PostAuthenticationFeatures(boolean legacySessionRequired, boolean smAvailable) {
+            this.legacySessionRequired = legacySessionRequired;
+            this.smAvailable = smAvailable;
+        }
+    }
 }
@@ -41,6 +41,12 @@ public final class XMPPTCPConnectionConfiguration extends ConnectionConfiguratio
      */
     public static int DEFAULT_CONNECT_TIMEOUT = 30000;
 
+    /**
+     * The default delay in milliseconds between two parallel connection attempts. Preinitialized with 250, as
+     * recommended by RFC 8305. If this value is changed, new Builder instances will use the new value as default.
+     */
+    public static int DEFAULT_CONNECTION_ATTEMPT_DELAY = 250;
+
     private final boolean compressionEnabled;
 
     /**
@@ -48,10 +54,22 @@ public final class XMPPTCPConnectionConfiguration extends ConnectionConfiguratio
      */
     private final int connectTimeout;
 
+    private final int connectionAttemptDelay;
+
+    private final boolean sslContextReuseEnabled;
+
+    private final boolean directTlsEnabled;
+
+    private final BundlingPolicy bundlingPolicy;
+
     private XMPPTCPConnectionConfiguration(Builder builder) {
         super(builder);
         compressionEnabled = builder.compressionEnabled;
         connectTimeout = builder.connectTimeout;
+        connectionAttemptDelay = builder.connectionAttemptDelay;
+        sslContextReuseEnabled = builder.sslContextReuseEnabled;
+        directTlsEnabled = builder.directTlsEnabled;
+        bundlingPolicy = builder.bundlingPolicy;
     }
 
     /**
@@ -76,6 +94,48 @@ public final class XMPPTCPConnectionConfiguration extends ConnectionConfiguratio
         return connectTimeout;
     }
 
+    /**
+     * Get the delay in milliseconds after which the next connection attempt is started while the previous ones are
+     * still pending. Defaults to {@link #DEFAULT_CONNECTION_ATTEMPT_DELAY}. A value of '0' means that the connection
+     * attempts are performed one after another.
+     *
+     * @return the connection attempt delay in milliseconds.
+     */
+    public int getConnectionAttemptDelay() {
+        return connectionAttemptDelay;
+    }
+
+    /**
+     * Check if the SSLContext, and therefore the TLS session cache, is shared with other connections to the same
+     * service.
+     *
+     * @return true if the SSLContext is re-used.
+     * @see SSLContextCache
+     */
+    public boolean isSslContextReuseEnabled() {
+        return sslContextReuseEnabled;
+    }
+
+    /**
+     * Check if Direct TLS endpoints announced via "_xmpps-client" SRV records are used.
+     *
+     * @return true if Direct TLS is enabled.
+     * @see Builder#setDirectTlsEnabled(boolean)
+     */
+    public boolean isDirectTlsEnabled() {
+        return directTlsEnabled;
+    }
+
+    /**
+     * Get the bundling policy used for outgoing stanzas, or <code>null</code> if outgoing stanzas are not bundled.
+     *
+     * @return the bundling policy or <code>null</code>.
+     * @see BundlingPolicy
+     */
+    public BundlingPolicy getBundlingPolicy() {
+        return bundlingPolicy;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -87,6 +147,10 @@ public final class XMPPTCPConnectionConfiguration extends ConnectionConfiguratio
     public static final class Builder extends ConnectionConfiguration.Builder<Builder, XMPPTCPConnectionConfiguration> {
         private boolean compressionEnabled = false;
         private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        private int connectionAttemptDelay = DEFAULT_CONNECTION_ATTEMPT_DELAY;
+        private boolean sslContextReuseEnabled = true;
+        private boolean directTlsEnabled = false;
+        private BundlingPolicy bundlingPolicy;
 
         private Builder() {
         }
@@ -116,6 +180,67 @@ public final class XMPPTCPConnectionConfiguration extends ConnectionConfiguratio
             return this;
         }
 
+        /**
+         * Set the delay in milliseconds after which the next connection attempt is started while the previous ones
+         * are still pending. Connection attempts race across all resolved hosts and their addresses, alternating
+         * between IPv6 and IPv4, and the first established TCP connection wins ("Happy Eyeballs", RFC 8305). Use '0'
+         * to try the addresses one after another, waiting for each attempt to fail before starting the next one.
+         *
+         * @param connectionAttemptDelay the connection attempt delay in milliseconds.
+         * @return a reference to this object.
+         */
+        public Builder setConnectionAttemptDelay(int connectionAttemptDelay) {
+            if (connectionAttemptDelay < 0) {
+                throw new IllegalArgumentException("connectionAttemptDelay must not be negative");
+            }
+            this.connectionAttemptDelay = connectionAttemptDelay;
+            return this;
+        }
+
+        /**
+         * Set if the SSLContext created for this connection may be shared with other connections to the same service,
+         * which enables TLS session resumption across reconnects and connections. The default is <code>true</code>.
+         * This setting has no effect if a custom SSLContext is set.
+         *
+         * @param sslContextReuseEnabled true to re-use the SSLContext.
+         * @return a reference to this object.
+         * @see SSLContextCache
+         */
+        public Builder setSslContextReuseEnabled(boolean sslContextReuseEnabled) {
+            this.sslContextReuseEnabled = sslContextReuseEnabled;
+            return this;
+        }
+
+        /**
+         * Set if the Direct TLS endpoints of the service, announced via "_xmpps-client._tcp" SRV records, should be
+         * used (XEP-0368). TLS is established immediately after the TCP connection to such an endpoint, which saves the
+         * round trips of the plaintext stream header, the stream features and the STARTTLS negotiation. Direct TLS and
+         * STARTTLS endpoints are ordered together by their SRV priority and weight. The default is <code>false</code>.
+         * This setting has no effect if the host or host address is configured explicitly, or if the security mode
+         * is {@link ConnectionConfiguration.SecurityMode#disabled}.
+         *
+         * @param directTlsEnabled true to use Direct TLS endpoints.
+         * @return a reference to this object.
+         * @see <a href="https://xmpp.org/extensions/xep-0368.html">XEP-0368: SRV records for XMPP over TLS</a>
+         */
+        public Builder setDirectTlsEnabled(boolean directTlsEnabled) {
+            this.directTlsEnabled = directTlsEnabled;
+            return this;
+        }
+
+        /**
+         * Set the bundling policy used for outgoing stanzas. Use <code>null</code>, which is the default, to send
+         * outgoing stanzas without deferring them.
+         *
+         * @param bundlingPolicy the bundling policy or <code>null</code>.
+         * @return a reference to this object.
+         * @see BundlingPolicy
+         */
+        public Builder setBundlingPolicy(BundlingPolicy bundlingPolicy) {
+            this.bundlingPolicy = bundlingPolicy;
+            return this;
+        }
+
         @Override
         protected Builder getThis() {
             return this;
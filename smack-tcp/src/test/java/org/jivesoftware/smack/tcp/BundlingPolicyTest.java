@@ -0,0 +1,78 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.jivesoftware.smack.packet.EmptyResultIQ;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.StartTls;
+import org.jivesoftware.smack.sm.packet.StreamManagement.AckAnswer;
+import org.jivesoftware.smack.sm.packet.StreamManagement.AckRequest;
+import org.jivesoftware.smack.sm.packet.StreamManagement.Enable;
+import org.junit.Test;
+
+public class BundlingPolicyTest {
+
+    private final BundlingPolicy policy = BundlingPolicy.builder().setMaxDelay(20).setMaxBytes(100).setMaxStanzas(3).build();
+
+    @Test
+    public void shouldBundleStanzasAndAcks() {
+        assertTrue(policy.mayBundle(new Message()));
+        assertTrue(policy.mayBundle(new Presence(Presence.Type.available)));
+        assertTrue(policy.mayBundle(new EmptyResultIQ()));
+        assertTrue(policy.mayBundle(AckRequest.INSTANCE));
+        assertTrue(policy.mayBundle(new AckAnswer(42)));
+    }
+
+    @Test
+    public void shouldNotBundleRequestsAndNegotiation() {
+        IQ request = new EmptyResultIQ();
+        request.setType(IQ.Type.get);
+        assertFalse(policy.mayBundle(request));
+        request.setType(IQ.Type.set);
+        assertFalse(policy.mayBundle(request));
+        assertFalse(policy.mayBundle(new StartTls()));
+        assertFalse(policy.mayBundle(new Enable(true)));
+    }
+
+    @Test
+    public void shouldReachLimits() {
+        assertFalse(policy.limitReached(2, 99));
+        assertTrue(policy.limitReached(3, 0));
+        assertTrue(policy.limitReached(0, 100));
+    }
+
+    @Test
+    public void shouldCountEncodedBytes() {
+        assertEquals(3, BundlingPolicy.encodedLength("abc"));
+        // U+00E9 takes two bytes, U+20AC three and U+1F600, a surrogate pair, four.
+        assertEquals(2, BundlingPolicy.encodedLength("\u00e9"));
+        assertEquals(3, BundlingPolicy.encodedLength("\u20ac"));
+        assertEquals(4, BundlingPolicy.encodedLength("\ud83d\ude00"));
+        assertEquals(10, BundlingPolicy.encodedLength("a\u00e9\u20ac\ud83d\ude00"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveDelay() {
+        BundlingPolicy.builder().setMaxDelay(0);
+    }
+}
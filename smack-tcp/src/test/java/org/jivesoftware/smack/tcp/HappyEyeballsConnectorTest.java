@@ -0,0 +1,88 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.net.SocketFactory;
+
+import org.jivesoftware.smack.util.dns.HostAddress;
+import org.junit.Test;
+
+public class HappyEyeballsConnectorTest {
+
+    @Test
+    public void shouldInterleaveAddressFamilies() throws Exception {
+        InetAddress v6a = InetAddress.getByName("2001:db8::1");
+        InetAddress v6b = InetAddress.getByName("2001:db8::2");
+        InetAddress v4a = InetAddress.getByName("192.0.2.1");
+        InetAddress v4b = InetAddress.getByName("192.0.2.2");
+        List<InetAddress> interleaved = HappyEyeballsConnector.interleaveAddressFamilies(Arrays.asList(v6a, v6b, v4a,
+                        v4b));
+        assertEquals(Arrays.asList(v6a, v4a, v6b, v4b), interleaved);
+
+        interleaved = HappyEyeballsConnector.interleaveAddressFamilies(Arrays.asList(v4a, v4b, v6a));
+        assertEquals(Arrays.asList(v4a, v6a, v4b), interleaved);
+    }
+
+    @Test
+    public void shouldSkipFailedHostAddress() throws Exception {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        int closedPort;
+        try (ServerSocket closed = new ServerSocket(0, 1, loopback)) {
+            closedPort = closed.getLocalPort();
+        }
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, loopback)) {
+            HostAddress failing = new HostAddress("failing.example.org", closedPort,
+                            Collections.singletonList(loopback));
+            HostAddress working = new HostAddress("working.example.org", serverSocket.getLocalPort(),
+                            Collections.singletonList(loopback));
+            HappyEyeballsConnector connector = new HappyEyeballsConnector(SocketFactory.getDefault(), 5000, 250);
+
+            HappyEyeballsConnector.ConnectionAttempt attempt = connector.connect(Arrays.asList(failing, working));
+
+            assertNotNull(attempt);
+            assertEquals(working, attempt.hostAddress);
+            assertTrue(attempt.getSocket().isConnected());
+            assertEquals(1, failing.getExceptions().size());
+            attempt.getSocket().close();
+        }
+    }
+
+    @Test
+    public void shouldReturnNullIfAllAttemptsFailed() throws Exception {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        int closedPort;
+        try (ServerSocket closed = new ServerSocket(0, 1, loopback)) {
+            closedPort = closed.getLocalPort();
+        }
+        HostAddress failing = new HostAddress("failing.example.org", closedPort, Collections.singletonList(loopback));
+        HappyEyeballsConnector connector = new HappyEyeballsConnector(SocketFactory.getDefault(), 5000, 250);
+
+        assertNull(connector.connect(Collections.singletonList(failing)));
+        assertEquals(1, failing.getExceptions().size());
+    }
+}
@@ -18,15 +18,24 @@ package org.jivesoftware.smack.tcp;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.packet.EmptyResultIQ;
+import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Message;
 import org.jivesoftware.smack.tcp.XMPPTCPConnection.PacketWriter;
 import org.junit.Test;
 import org.jxmpp.stringprep.XmppStringprepException;
 
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class PacketWriterTest {
@@ -103,6 +112,120 @@ public class PacketWriterTest {
         }
     }
 
+    @Test
+    public void shouldFlushBundleOnDeadline() throws Exception {
+        RecordingWriter writer = new RecordingWriter();
+        PacketWriter pw = startBundlingPacketWriter(writer, BundlingPolicy.builder().setMaxDelay(300).build());
+        try {
+            pw.sendStreamElement(message("first"));
+            pw.sendStreamElement(message("second"));
+            // Nothing is written out before the delay of the bundle expired.
+            assertNull(writer.awaitFlush(100));
+            String flushed = writer.awaitFlush(5000);
+            assertNotNull(flushed);
+            assertTrue(flushed.contains("first"));
+            assertTrue(flushed.contains("second"));
+        }
+        finally {
+            pw.shutdown(true);
+        }
+    }
+
+    @Test
+    public void shouldFlushBundleWithIqRequest() throws Exception {
+        RecordingWriter writer = new RecordingWriter();
+        PacketWriter pw = startBundlingPacketWriter(writer, BundlingPolicy.builder().setMaxDelay(10000).build());
+        try {
+            pw.sendStreamElement(message("bundled"));
+            IQ request = new EmptyResultIQ();
+            request.setType(IQ.Type.get);
+            pw.sendStreamElement(request);
+            // The request is written out right away, together with the bundled message.
+            String flushed = writer.awaitFlush(5000);
+            assertNotNull(flushed);
+            assertTrue(flushed.contains("bundled"));
+            assertTrue(flushed.contains(request.getStanzaId()));
+        }
+        finally {
+            pw.shutdown(true);
+        }
+    }
+
+    @Test
+    public void shouldFlushBundleOnEncodedByteLimit() throws Exception {
+        RecordingWriter writer = new RecordingWriter();
+        PacketWriter pw = startBundlingPacketWriter(writer,
+                        BundlingPolicy.builder().setMaxDelay(10000).setMaxBytes(500).build());
+        try {
+            // Less than 500 characters, but more than 500 bytes once encoded.
+            char[] chars = new char[300];
+            Arrays.fill(chars, '\u00e9');
+            String body = new String(chars);
+            pw.sendStreamElement(message(body));
+            String flushed = writer.awaitFlush(5000);
+            assertNotNull(flushed);
+            assertTrue(flushed.length() < 500);
+            assertTrue(flushed.contains(body));
+        }
+        finally {
+            pw.shutdown(true);
+        }
+    }
+
+    private static Message message(String body) {
+        Message message = new Message();
+        message.setBody(body);
+        return message;
+    }
+
+    private static PacketWriter startBundlingPacketWriter(RecordingWriter writer, BundlingPolicy bundlingPolicy)
+                    throws Exception {
+        XMPPTCPConnection connection = new XMPPTCPConnection("user", "pass", "example.org") {
+            {
+                // Bundling is only performed on authenticated connections.
+                authenticated = true;
+            }
+        };
+        connection.setBundlingPolicy(bundlingPolicy);
+        PacketWriter pw = connection.new PacketWriter();
+        connection.packetWriter = pw;
+        connection.packetReader = connection.new PacketReader();
+        connection.setWriter(writer);
+        pw.init();
+        // The stream open element is not bundled.
+        assertNotNull(writer.awaitFlush(5000));
+        return pw;
+    }
+
+    /**
+     * A writer which records the data written between two flushes.
+     */
+    private static final class RecordingWriter extends Writer {
+        private final StringBuilder pending = new StringBuilder();
+        private final BlockingQueue<String> flushes = new LinkedBlockingQueue<>();
+
+        @Override
+        public synchronized void write(char[] cbuf, int off, int len) {
+            pending.append(cbuf, off, len);
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (pending.length() > 0) {
+                flushes.add(pending.toString());
+                pending.setLength(0);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private String awaitFlush(long millis) throws InterruptedException {
+            return flushes.poll(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
     public static class BlockingStringWriter extends Writer {
         @Override
         @SuppressWarnings("WaitNotInLoop")
@@ -0,0 +1,369 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jivesoftware.smack.ConnectionConfiguration.SecurityMode;
+import org.jivesoftware.smack.XMPPException.XMPPErrorException;
+import org.jivesoftware.smack.packet.XMPPError;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the pipelined login of {@link XMPPTCPConnection} against a scripted server.
+ */
+public class PipelinedLoginTest {
+
+    private ScriptedServer server;
+    private XMPPTCPConnection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ScriptedServer();
+        XMPPTCPConnectionConfiguration config = XMPPTCPConnectionConfiguration.builder()
+                        .setXmppDomain("example.org")
+                        .setHostAddress(server.getAddress())
+                        .setPort(server.getPort())
+                        .setSecurityMode(SecurityMode.disabled)
+                        .setSendPresence(false)
+                        .performSaslAnonymousAuthentication()
+                        .build();
+        connection = new XMPPTCPConnection(config);
+        connection.setReplyTimeout(2000);
+        connection.setUseStreamManagement(true);
+        connection.setUseStreamManagementResumption(false);
+        connection.setPipelinedLogin(true);
+
+        // The first login is always sequential, it records the stream features announced after authentication.
+        connection.connect().login();
+        assertTrue(connection.isSmEnabled());
+        assertEquals(Collections.singletonList("bind"), server.getIqRequestsBeforeEnable());
+        connection.disconnect();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        connection.disconnect();
+        server.close();
+    }
+
+    @Test
+    public void shouldPipelineLogin() throws Exception {
+        // Only answer the resource binding request once <enable/> has been received. A sequential login would time out.
+        server.holdBindResponseUntilEnable = true;
+
+        connection.connect().login();
+
+        assertTrue(connection.isAuthenticated());
+        assertTrue(connection.isSmEnabled());
+        assertEquals("anonymous@example.org/pipelined", connection.getUser().toString());
+        assertEquals(Collections.singletonList("bind"), server.getIqRequestsBeforeEnable());
+        assertEquals(1, server.getEnableCount());
+    }
+
+    @Test
+    public void shouldNotEnableStreamManagementTwiceIfBindingFails() throws Exception {
+        server.failingBindRequests = 1;
+
+        try {
+            connection.connect().login();
+            fail("Login should fail if resource binding fails");
+        }
+        catch (XMPPErrorException e) {
+            assertEquals(XMPPError.Condition.not_allowed, e.getXMPPError().getCondition());
+        }
+
+        // The server enabled Stream Management with the pipelined <enable/>, which must neither be forgotten nor be
+        // send a second time.
+        assertFalse(connection.isAuthenticated());
+        assertTrue(connection.isSmEnabled());
+        assertEquals(1, server.getEnableCount());
+        assertEquals(1, server.getBindCount());
+    }
+
+    @Test
+    public void shouldFallBackToSequentialLoginIfBindingAndStreamManagementFail() throws Exception {
+        server.failingBindRequests = 1;
+        server.failingEnableRequests = 1;
+
+        connection.connect().login();
+
+        assertTrue(connection.isAuthenticated());
+        assertTrue(connection.isSmEnabled());
+        assertEquals(2, server.getBindCount());
+        assertEquals(2, server.getEnableCount());
+    }
+
+    @Test
+    public void shouldRetryEnablingStreamManagementAfterFailure() throws Exception {
+        server.failingEnableRequests = 1;
+
+        connection.connect().login();
+
+        assertTrue(connection.isAuthenticated());
+        assertTrue(connection.isSmEnabled());
+        assertEquals(1, server.getBindCount());
+        assertEquals(2, server.getEnableCount());
+    }
+
+    /**
+     * A minimal XMPP server answering SASL ANONYMOUS authentication, resource binding and enabling of Stream
+     * Management, based on a script configured by the test. All counters refer to the most recent stream.
+     */
+    private static final class ScriptedServer implements Runnable {
+
+        private static final Pattern ID_PATTERN = Pattern.compile("id=['\"]([^'\"]*)['\"]");
+
+        private final ServerSocket serverSocket;
+        private final Thread thread;
+
+        volatile boolean holdBindResponseUntilEnable;
+        volatile int failingBindRequests;
+        volatile int failingEnableRequests;
+
+        private final List<String> received = new ArrayList<>();
+        private Socket socket;
+        private OutputStream out;
+        private boolean authenticated;
+        private String heldBindResponse;
+        private int streamCount;
+
+        private ScriptedServer() throws IOException {
+            serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            thread = new Thread(this, "Scripted XMPP Server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private InetAddress getAddress() {
+            return serverSocket.getInetAddress();
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private synchronized int getBindCount() {
+            return Collections.frequency(received, "bind");
+        }
+
+        private synchronized int getEnableCount() {
+            return Collections.frequency(received, "enable");
+        }
+
+        private synchronized List<String> getIqRequestsBeforeEnable() {
+            int enableIndex = received.indexOf("enable");
+            List<String> requests = new ArrayList<>();
+            for (String element : received.subList(0, enableIndex < 0 ? received.size() : enableIndex)) {
+                if (element.equals("bind") || element.equals("session")) {
+                    requests.add(element);
+                }
+            }
+            return requests;
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    synchronized (this) {
+                        this.socket = socket;
+                        out = socket.getOutputStream();
+                        authenticated = false;
+                        heldBindResponse = null;
+                    }
+                    serve(socket.getInputStream());
+                }
+                catch (IOException e) {
+                    // The client closed the connection or the server got closed.
+                }
+            }
+        }
+
+        private void serve(InputStream in) throws IOException {
+            StringBuilder buffer = new StringBuilder();
+            byte[] bytes = new byte[4096];
+            int read;
+            while ((read = in.read(bytes)) >= 0) {
+                buffer.append(new String(bytes, 0, read, StandardCharsets.UTF_8));
+                String element;
+                while ((element = nextElement(buffer)) != null) {
+                    if (!process(element)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Remove the next complete top level element from the buffer.
+         */
+        private static String nextElement(StringBuilder buffer) {
+            int start = 0;
+            while (start < buffer.length() && Character.isWhitespace(buffer.charAt(start))) {
+                start++;
+            }
+            buffer.delete(0, start);
+            if (buffer.length() == 0 || buffer.charAt(0) != '<') {
+                return null;
+            }
+            int end;
+            if (buffer.indexOf("<?xml") == 0) {
+                end = buffer.indexOf("?>");
+                end = end < 0 ? -1 : end + 2;
+            }
+            else if (buffer.indexOf("<stream:stream") == 0 || buffer.indexOf("</") == 0) {
+                end = buffer.indexOf(">");
+                end = end < 0 ? -1 : end + 1;
+            }
+            else {
+                int tagEnd = buffer.indexOf(">");
+                if (tagEnd < 0) {
+                    return null;
+                }
+                if (buffer.charAt(tagEnd - 1) == '/') {
+                    end = tagEnd + 1;
+                }
+                else {
+                    Matcher matcher = Pattern.compile("^<([\\w:]+)").matcher(buffer);
+                    if (!matcher.find()) {
+                        throw new IllegalStateException("Can not parse " + buffer);
+                    }
+                    String closingTag = "</" + matcher.group(1) + '>';
+                    end = buffer.indexOf(closingTag);
+                    end = end < 0 ? -1 : end + closingTag.length();
+                }
+            }
+            if (end < 0) {
+                return null;
+            }
+            String element = buffer.substring(0, end);
+            buffer.delete(0, end);
+            return element;
+        }
+
+        private synchronized boolean process(String element) throws IOException {
+            if (element.startsWith("<?xml")) {
+                return true;
+            }
+            if (element.startsWith("<stream:stream")) {
+                if (authenticated) {
+                    received.clear();
+                }
+                send("<stream:stream xmlns='jabber:client' xmlns:stream='http://etherx.jabber.org/streams' id='stream"
+                                + streamCount++ + "' from='example.org' version='1.0'>");
+                if (authenticated) {
+                    send("<stream:features><bind xmlns='urn:ietf:params:xml:ns:xmpp-bind'/>"
+                                    + "<sm xmlns='urn:xmpp:sm:3'/></stream:features>");
+                }
+                else {
+                    send("<stream:features><mechanisms xmlns='urn:ietf:params:xml:ns:xmpp-sasl'>"
+                                    + "<mechanism>ANONYMOUS</mechanism></mechanisms></stream:features>");
+                }
+                return true;
+            }
+            if (element.startsWith("</stream:stream")) {
+                send("</stream:stream>");
+                socket.close();
+                return false;
+            }
+            if (element.startsWith("<auth")) {
+                authenticated = true;
+                send("<success xmlns='urn:ietf:params:xml:ns:xmpp-sasl'/>");
+                return true;
+            }
+            if (element.startsWith("<iq") && element.contains("urn:ietf:params:xml:ns:xmpp-bind")) {
+                received.add("bind");
+                String response = bindResponse(element);
+                if (holdBindResponseUntilEnable && !received.contains("enable")) {
+                    heldBindResponse = response;
+                }
+                else {
+                    send(response);
+                }
+                return true;
+            }
+            if (element.startsWith("<enable")) {
+                received.add("enable");
+                if (heldBindResponse != null) {
+                    send(heldBindResponse);
+                    heldBindResponse = null;
+                }
+                if (failingEnableRequests > 0) {
+                    failingEnableRequests--;
+                    send("<failed xmlns='urn:xmpp:sm:3'>"
+                                    + "<unexpected-request xmlns='urn:ietf:params:xml:ns:xmpp-stanzas'/></failed>");
+                }
+                else {
+                    send("<enabled xmlns='urn:xmpp:sm:3'/>");
+                }
+                return true;
+            }
+            // Ignore everything else, e.g. presences or Stream Management acknowledgements.
+            return true;
+        }
+
+        private String bindResponse(String request) {
+            Matcher matcher = ID_PATTERN.matcher(request);
+            if (!matcher.find()) {
+                throw new IllegalStateException("IQ without id: " + request);
+            }
+            String id = matcher.group(1);
+            if (failingBindRequests > 0) {
+                failingBindRequests--;
+                return "<iq type='error' id='" + id + "'><error type='cancel'>"
+                                + "<not-allowed xmlns='urn:ietf:params:xml:ns:xmpp-stanzas'/></error></iq>";
+            }
+            String resource = streamCount > 2 ? "pipelined" : "sequential";
+            return "<iq type='result' id='" + id + "'><bind xmlns='urn:ietf:params:xml:ns:xmpp-bind'>"
+                            + "<jid>anonymous@example.org/" + resource + "</jid></bind></iq>";
+        }
+
+        private void send(String data) throws IOException {
+            out.write(data.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        private void close() throws IOException {
+            serverSocket.close();
+            synchronized (this) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ *
+ * Copyright 2017 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.X509TrustManager;
+
+import org.junit.Test;
+
+public class SSLContextCacheTest {
+
+    private static final class AcceptAllTrustManager implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+
+    @Test
+    public void keyShouldDependOnDomainAndTrustManager() throws Exception {
+        X509TrustManager trustManager = new AcceptAllTrustManager();
+        SSLContextCache.Key key = SSLContextCache.keyFor(XMPPTCPConnectionConfiguration.builder()
+                        .setXmppDomain("example.org").setCustomX509TrustManager(trustManager).build());
+        SSLContextCache.Key sameKey = SSLContextCache.keyFor(XMPPTCPConnectionConfiguration.builder()
+                        .setXmppDomain("example.org").setCustomX509TrustManager(trustManager).build());
+        SSLContextCache.Key otherDomainKey = SSLContextCache.keyFor(XMPPTCPConnectionConfiguration.builder()
+                        .setXmppDomain("example.com").setCustomX509TrustManager(trustManager).build());
+        SSLContextCache.Key otherTrustManagerKey = SSLContextCache.keyFor(XMPPTCPConnectionConfiguration.builder()
+                        .setXmppDomain("example.org").setCustomX509TrustManager(new AcceptAllTrustManager()).build());
+
+        assertEquals(key, sameKey);
+        assertEquals(key.hashCode(), sameKey.hashCode());
+        assertFalse(key.equals(otherDomainKey));
+        assertFalse(key.equals(otherTrustManagerKey));
+    }
+
+    @Test
+    public void shouldReturnCachedContext() throws Exception {
+        SSLContextCache.Key key = SSLContextCache.keyFor(XMPPTCPConnectionConfiguration.builder()
+                        .setXmppDomain("cache.example.org").build());
+        assertNull(SSLContextCache.lookup(key));
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, null, null);
+        SSLContextCache.put(key, context);
+        assertSame(context, SSLContextCache.lookup(key));
+
+        SSLContextCache.clear();
+        assertNull(SSLContextCache.lookup(key));
+        assertNotNull(context.getClientSessionContext());
+    }
+}